@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+/**
+ * Automatic compensation of the residual tilt and quadratic phase of a
+ * filtered field. The phase is modeled as
+ * <pre>
+ * phi(x, y) = a0 x + a1 y + a2 x^2 + a3 x y + a4 y^2
+ * </pre>
+ * with x, y in pixels measured from the center used by the spherical
+ * illumination. Instead of unwrapping, the phase differences between
+ * neighbour samples, arg(u(x + 1) u*(x)), are fitted to the derivatives of the
+ * model by weighted least squares, the weight being the product of the
+ * amplitudes; dark regions and noise barely affect the fit. The differences
+ * must stay within (-pi, pi], which holds for the small aberrations left
+ * after the spatial filtering.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class AberrationCompensator {
+
+    //terms to compensate, can be combined
+    public static final int TILT = 1;
+    public static final int QUADRATIC = 2;
+
+    private static final int TERMS = 5;
+
+    private AberrationCompensator() {
+    }
+
+    /**
+     * Fits the phase model to a field.
+     *
+     * @param field M x 2N field
+     * @param M
+     * @param N
+     * @return coefficients a0 to a4, in radians per pixel (squared); zero if
+     * the field is empty
+     */
+    public static double[] fit(float[][] field, int M, int N) {
+        double[][] ata = new double[TERMS][TERMS];
+        double[] atb = new double[TERMS];
+        double[] row = new double[TERMS];
+
+        int M2 = M / 2;
+        int N2 = N / 2;
+
+        for (int i = 0; i < M; i++) {
+            double x = i - M2 + 1;
+
+            for (int j = 0; j < N; j++) {
+                double y = j - N2 + 1;
+
+                float re = field[i][2 * j];
+                float im = field[i][2 * j + 1];
+
+                if (i + 1 < M) {
+                    //u(i + 1, j) u*(i, j)
+                    float re2 = field[i + 1][2 * j];
+                    float im2 = field[i + 1][2 * j + 1];
+                    double pr = re2 * re + im2 * im;
+                    double pi = im2 * re - re2 * im;
+
+                    //d phi / dx at x + 1/2
+                    row[0] = 1;
+                    row[1] = 0;
+                    row[2] = 2 * x + 1;
+                    row[3] = y;
+                    row[4] = 0;
+                    accumulate(ata, atb, row, Math.hypot(pr, pi), Math.atan2(pi, pr));
+                }
+
+                if (j + 1 < N) {
+                    //u(i, j + 1) u*(i, j)
+                    float re2 = field[i][2 * j + 2];
+                    float im2 = field[i][2 * j + 3];
+                    double pr = re2 * re + im2 * im;
+                    double pi = im2 * re - re2 * im;
+
+                    //d phi / dy at y + 1/2
+                    row[0] = 0;
+                    row[1] = 1;
+                    row[2] = 0;
+                    row[3] = x;
+                    row[4] = 2 * y + 1;
+                    accumulate(ata, atb, row, Math.hypot(pr, pi), Math.atan2(pi, pr));
+                }
+            }
+        }
+
+        return solve(ata, atb);
+    }
+
+    private static void accumulate(double[][] ata, double[] atb, double[] row, double w,
+            double b) {
+
+        if (w == 0) {
+            return;
+        }
+
+        for (int r = 0; r < TERMS; r++) {
+            double wr = w * row[r];
+            if (wr == 0) {
+                continue;
+            }
+            for (int c = 0; c < TERMS; c++) {
+                ata[r][c] += wr * row[c];
+            }
+            atb[r] += wr * b;
+        }
+    }
+
+    /**
+     * Gaussian elimination with partial pivoting; singular systems give zero.
+     */
+    private static double[] solve(double[][] a, double[] b) {
+        int n = b.length;
+
+        for (int p = 0; p < n; p++) {
+            int max = p;
+            for (int r = p + 1; r < n; r++) {
+                if (Math.abs(a[r][p]) > Math.abs(a[max][p])) {
+                    max = r;
+                }
+            }
+
+            if (Math.abs(a[max][p]) < 1E-12) {
+                return new double[n];
+            }
+
+            double[] tmp = a[p];
+            a[p] = a[max];
+            a[max] = tmp;
+            double t = b[p];
+            b[p] = b[max];
+            b[max] = t;
+
+            for (int r = p + 1; r < n; r++) {
+                double f = a[r][p] / a[p][p];
+                b[r] -= f * b[p];
+                for (int c = p; c < n; c++) {
+                    a[r][c] -= f * a[p][c];
+                }
+            }
+        }
+
+        double[] x = new double[n];
+        for (int r = n - 1; r >= 0; r--) {
+            double s = b[r];
+            for (int c = r + 1; c < n; c++) {
+                s -= a[r][c] * x[c];
+            }
+            x[r] = s / a[r][r];
+        }
+
+        return x;
+    }
+
+    /**
+     * Multiplies a wave by the conjugate of the fitted phase, only for the
+     * selected terms. A plane wave is assumed if wave is null.
+     *
+     * @param wave M x 2N wave, can be null
+     * @param coefficients from fit
+     * @param terms TILT, QUADRATIC or both
+     * @param M
+     * @param N
+     * @return new M x 2N wave
+     */
+    public static float[][] correct(float[][] wave, double[] coefficients, int terms, int M,
+            int N) {
+
+        double a0 = (terms & TILT) != 0 ? coefficients[0] : 0;
+        double a1 = (terms & TILT) != 0 ? coefficients[1] : 0;
+        double a2 = (terms & QUADRATIC) != 0 ? coefficients[2] : 0;
+        double a3 = (terms & QUADRATIC) != 0 ? coefficients[3] : 0;
+        double a4 = (terms & QUADRATIC) != 0 ? coefficients[4] : 0;
+
+        float[][] corrected = new float[M][2 * N];
+
+        int M2 = M / 2;
+        int N2 = N / 2;
+
+        for (int i = 0; i < M; i++) {
+            double x = i - M2 + 1;
+
+            for (int j = 0; j < N; j++) {
+                double y = j - N2 + 1;
+                double phase = -(a0 * x + a1 * y + a2 * x * x + a3 * x * y + a4 * y * y);
+
+                float cos = (float) Math.cos(phase);
+                float sin = (float) Math.sin(phase);
+
+                if (wave == null) {
+                    corrected[i][2 * j] = cos;
+                    corrected[i][2 * j + 1] = sin;
+                } else {
+                    float re = wave[i][2 * j];
+                    float im = wave[i][2 * j + 1];
+                    corrected[i][2 * j] = re * cos - im * sin;
+                    corrected[i][2 * j + 1] = re * sin + im * cos;
+                }
+            }
+        }
+
+        return corrected;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+/**
+ * Separable windows applied to the field before the propagation. The
+ * convolution methods wrap the light that leaves the field around to the
+ * opposite edge; tapering the edges suppresses the ringing this causes, so
+ * the field can be propagated with little or no padding.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class Apodization {
+
+    public static final String[] TYPES = {"None", "Tukey", "Hann", "Super-Gaussian"};
+
+    public static final int NONE = 0;
+    public static final int TUKEY = 1;
+    public static final int HANN = 2;
+    public static final int SUPER_GAUSSIAN = 3;
+
+    //order of the super-Gaussian
+    private static final int ORDER = 8;
+
+    private Apodization() {
+    }
+
+    /**
+     * One dimensional window; the window of the field is the product of the
+     * windows of both axes.
+     *
+     * @param length number of samples
+     * @param type TUKEY, HANN or SUPER_GAUSSIAN
+     * @param taper fraction of the length tapered on each side (Tukey), or
+     * where the super-Gaussian falls to half; Hann tapers the whole length
+     * @return window, null for NONE
+     */
+    public static float[] window(int length, int type, float taper) {
+        if (type == NONE) {
+            return null;
+        }
+
+        float[] w = new float[length];
+        double last = Math.max(1, length - 1);
+        double edge = Math.max(1, taper * last);
+
+        for (int i = 0; i < length; i++) {
+            //distance to the nearest edge, in samples
+            double d = Math.min(i, last - i);
+
+            switch (type) {
+                case TUKEY:
+                    w[i] = d >= edge ? 1
+                            : (float) (0.5 - 0.5 * Math.cos(Math.PI * d / edge));
+                    break;
+                case HANN:
+                    w[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / last));
+                    break;
+                default:
+                    //half maximum at edge samples from the border
+                    double r = (last / 2 - d) / (last / 2 - edge);
+                    w[i] = (float) Math.exp(-Math.log(2) * Math.pow(r, 2 * ORDER));
+                    break;
+            }
+        }
+
+        return w;
+    }
+
+    /**
+     * Number of samples tapered on each side by a window.
+     *
+     * @param length
+     * @param type
+     * @param taper
+     * @return
+     */
+    public static int taperedSamples(int length, int type, float taper) {
+        switch (type) {
+            case NONE:
+                return 0;
+            case HANN:
+                return length / 2;
+            default:
+                return (int) (taper * length);
+        }
+    }
+
+    /**
+     * Padding needed along one axis so that the light spread by a convolution
+     * kernel doesn't wrap around into the field. The spread is given by the
+     * largest angle of the propagated light: the one of the kernel, lambda /
+     * 2d, or the one of the filtered spectrum if it is narrower. The tapered
+     * samples already have little energy, so they count as guard band.
+     *
+     * @param length samples of the field
+     * @param lambda
+     * @param z
+     * @param d sampling pitch
+     * @param bandwidth fraction of the spectrum that holds the field, 1 if
+     * unknown
+     * @param tapered samples tapered on each side
+     * @return total number of samples to add, at most length (twice the size)
+     */
+    public static int guardBand(int length, float lambda, float z, float d, float bandwidth,
+            int tapered) {
+
+        double sin = Math.min(1, bandwidth * lambda / (2 * d));
+        double spread = sin >= 1 ? Double.POSITIVE_INFINITY
+                : Math.abs(z) * sin / Math.sqrt(1 - sin * sin) / d;
+
+        double guard = spread - tapered;
+        if (guard <= 0) {
+            return 0;
+        }
+
+        return (int) Math.min(length, Math.ceil(guard));
+    }
+}
@@ -17,16 +17,31 @@ package unal.od.np;
 
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.io.SaveDialog;
 import ij.measure.Calibration;
+import ij.measure.ResultsTable;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import java.awt.Cursor;
 import java.awt.Toolkit;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.prefs.Preferences;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
@@ -42,6 +57,9 @@ public class BatchFrame extends javax.swing.JFrame implements PreferencesKeys {
 
     private static final String TITLE = "Batch Propagation";
 
+    //planes waiting between two stages of the pipeline
+    private static final int PIPELINE_DEPTH = 2;
+
     private float from;
     private float to;
     private float step;
@@ -76,6 +94,27 @@ public class BatchFrame extends javax.swing.JFrame implements PreferencesKeys {
     private boolean intensityByteSelected;
 //    private boolean realByteSelected;
 //    private boolean imaginaryByteSelected;
+
+    private boolean unwrapSelected;
+
+    private boolean maxProjectionSelected;
+    private boolean meanProjectionSelected;
+    private boolean minProjectionSelected;
+    private boolean depthMapSelected;
+
+    private boolean localizeSelected;
+    private float localizationThreshold;
+    private int localizationRadius;
+    private int localizationGap;
+    private boolean localizationCsv;
+
+    private boolean volumeSelected;
+    private int volumeTile;
+    private int volumeChunkPlanes;
+    private int volumeLevel;
+
+    private int stackStorage;
+    private int batchTarget;
     // </editor-fold>
 
     private final Preferences pref;
@@ -144,6 +183,27 @@ public class BatchFrame extends javax.swing.JFrame implements PreferencesKeys {
         intensityByteSelected = pref.getBoolean(INTENSITY_8_BIT, true);
 //        realByteSelected = pref.getBoolean(REAL_8_BIT, true);
 //        imaginaryByteSelected = pref.getBoolean(IMAGINARY_8_BIT, true);
+
+        unwrapSelected = pref.getBoolean(UNWRAP_PHASE, false);
+
+        maxProjectionSelected = pref.getBoolean(MAX_PROJECTION, false);
+        meanProjectionSelected = pref.getBoolean(MEAN_PROJECTION, false);
+        minProjectionSelected = pref.getBoolean(MIN_PROJECTION, false);
+        depthMapSelected = pref.getBoolean(DEPTH_MAP, false);
+
+        localizeSelected = pref.getBoolean(LOCALIZE, false);
+        localizationThreshold = pref.getFloat(LOCALIZATION_THRESHOLD, 5);
+        localizationRadius = pref.getInt(LOCALIZATION_RADIUS, 5);
+        localizationGap = pref.getInt(LOCALIZATION_GAP, 1);
+        localizationCsv = pref.getBoolean(LOCALIZATION_CSV, false);
+
+        volumeSelected = pref.getBoolean(SAVE_VOLUME, false);
+        volumeTile = pref.getInt(VOLUME_TILE, 256);
+        volumeChunkPlanes = pref.getInt(VOLUME_CHUNK_PLANES, 8);
+        volumeLevel = pref.getInt(VOLUME_LEVEL, 1);
+
+        stackStorage = pref.getInt(STACK_STORAGE, CompactStack.FLOAT32);
+        batchTarget = pref.getInt(BATCH_TARGET, BatchWriter.WINDOWS);
     }
 
     private void fixUnits() {
@@ -344,6 +404,11 @@ public class BatchFrame extends javax.swing.JFrame implements PreferencesKeys {
     }// </editor-fold>//GEN-END:initComponents
 
     private void okBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_okBtnActionPerformed
+        if (data.isBusy()) {
+            JOptionPane.showMessageDialog(this, "A propagation is running, please wait until it finishes.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
         fromString = fromField.getText();
 //        System.out.println(fromString);
         try {
@@ -447,129 +512,416 @@ public class BatchFrame extends javax.swing.JFrame implements PreferencesKeys {
         info.append("\nInput Width: " + parameters[4]
                 + "\nInput Height: " + parameters[5]);
 
-        if (idx == 2) {
+        if (MainFrame.hasOutputSize(idx)) {
             info.append("\nOutput Width: " + parameters[6]
                     + "\nOutput Height: " + parameters[7]);
         }
 
+        if (stackStorage != CompactStack.FLOAT32) {
+            info.append("\nStacks: " + CompactStack.MODES[stackStorage]);
+        }
+
+        if (batchTarget != BatchWriter.WINDOWS) {
+            info.append("\nOutputs: " + BatchWriter.TARGETS[batchTarget]);
+        }
+
         parent.updateLog(true, info.toString());
 
         fixUnits();
 
         float z = from;
 
+        //the selected outputs are written to files as the planes are computed
+        //instead of being kept on stacks
+        File outputBase = null;
+        if (batchTarget != BatchWriter.WINDOWS) {
+            String extension = BatchWriter.extension(batchTarget);
+            SaveDialog sd = new SaveDialog("Save batch outputs", "batch", extension);
+            if (sd.getFileName() == null) {
+                return;
+            }
+
+            String name = sd.getFileName();
+            if (!extension.isEmpty() && name.endsWith(extension)) {
+                name = name.substring(0, name.length() - extension.length());
+            }
+            outputBase = new File(sd.getDirectory(), name);
+        }
+
+        //the complex field of every plane is streamed to a chunked volume file
+        ComplexVolume volume = null;
+        if (volumeSelected) {
+            SaveDialog sd = new SaveDialog("Save complex volume", "volume", ComplexVolume.EXTENSION);
+            if (sd.getFileName() == null) {
+                return;
+            }
+
+            float volumeDx = idx == 2 ? data.getOutputDx() : idx == 4 ? data.getZoomDx()
+                    : data.getDx();
+            float volumeDy = idx == 2 ? data.getOutputDy() : idx == 4 ? data.getZoomDy()
+                    : data.getDy();
+            try {
+                volume = ComplexVolume.create(new File(sd.getDirectory(), sd.getFileName()),
+                        outputM(), outputN(), volumeTile, volumeChunkPlanes, volumeLevel,
+                        data.getLambda(), volumeDx, volumeDy, from, step, idx);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this, "The complex volume couldn't be created: "
+                        + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+
         setVisible(false);
         parent.setCursor(Cursor.getPredefinedCursor(3));
 
         //<editor-fold defaultstate="collapsed" desc="for">
-        int M = data.getM();
-        int N = data.getN();
-        ImageStack phaseStack = new ImageStack(M, N);
-        ImageStack amplitudeStack = new ImageStack(M, N);
-        ImageStack intensityStack = new ImageStack(M, N);
-        ImageStack realStack = new ImageStack(M, N);
-        ImageStack imaginaryStack = new ImageStack(M, N);
+        int M = outputM();
+        int N = outputN();
+        CompactStack phaseStack = new CompactStack(M, N, stackStorage);
+        CompactStack amplitudeStack = new CompactStack(M, N, stackStorage);
+        CompactStack intensityStack = new CompactStack(M, N, stackStorage);
+        CompactStack realStack = new CompactStack(M, N, stackStorage);
+        CompactStack imaginaryStack = new CompactStack(M, N, stackStorage);
+        ImageStack unwrappedStack = new ImageStack(M, N);
+
+        String[] labels = new String[planes];
+        float[] depths = new float[planes];
+        float zLabel = from;
+        for (int i = 0; i < planes; i++) {
+            depths[i] = umToUnits(zLabel);
+            labels[i] = "z = " + df.format(depths[i]) + " " + zUnits;
+            zLabel += step;
+        }
+
+        Calibration outputCal = idx != 1 ? parent.getCalibration() : null;
+        //8-bit planes are written on a fixed range: the phase on -pi to pi,
+        //the normalized real and imaginary parts on -1 to 1; the rest have
+        //no bounded range and stay in 32 bits, see BatchWriter
+        BatchWriter phaseWriter = createWriter(outputBase, phaseEnabled, "Phase", labels,
+                outputCal, phaseByteSelected, -Math.PI, Math.PI);
+        BatchWriter amplitudeWriter = createWriter(outputBase, amplitudeEnabled, "Amplitude",
+                labels, outputCal, amplitudeByteSelected, 0, 0);
+        BatchWriter intensityWriter = createWriter(outputBase, intensityEnabled, "Intensity",
+                labels, outputCal, intensityByteSelected, 0, 0);
+        BatchWriter realWriter = createWriter(outputBase, realEnabled, "Real", labels,
+                outputCal, false, -1, 1);
+        BatchWriter imaginaryWriter = createWriter(outputBase, imaginaryEnabled, "Imaginary",
+                labels, outputCal, false, -1, 1);
+        BatchWriter unwrappedWriter = createWriter(outputBase, phaseEnabled && unwrapSelected,
+                "Unwrapped", labels, outputCal, false, 0, 0);
+        BatchWriter[] writers = {phaseWriter, amplitudeWriter, intensityWriter, realWriter,
+            imaginaryWriter, unwrappedWriter};
+
+        //the unwrapping runs in parallel with the propagation of the next
+        //planes, all of them sharing the same DCT plan; the store stage moves
+        //the finished planes to their writer or stack, in order, so only a
+        //few of them are held at a time
+        boolean unwrap = phaseEnabled && unwrapSelected;
+        final PhaseUnwrapper unwrapper = unwrap ? data.getPhaseUnwrapper(M, N) : null;
+        ExecutorService unwrapExecutor = unwrap
+                ? Executors.newFixedThreadPool(Performance.getBatchWorkers())
+                : null;
+        final BlockingQueue<Future<float[][]>> unwrappedPlanes
+                = new LinkedBlockingQueue<Future<float[][]>>();
+        final AtomicInteger unwrappedWritten = new AtomicInteger();
+
+        //projections are accumulated plane by plane instead of keeping the
+        //whole intensity stack
+        boolean project = maxProjectionSelected || meanProjectionSelected
+                || minProjectionSelected || depthMapSelected;
+        IntensityProjector projector = project
+                ? new IntensityProjector(M, N, maxProjectionSelected, meanProjectionSelected,
+                        minProjectionSelected, depthMapSelected)
+                : null;
+
+        //particles are searched plane by plane, only the objects seen in the
+        //last planes are kept open
+        ParticleLocator locator = localizeSelected
+                ? new ParticleLocator(M, N, localizationThreshold, localizationRadius,
+                        localizationGap, umToUnits(step))
+                : null;
 
         boolean fb = idx == 2;
 
-        for (int i = 0; i < planes; i++) {
+        final ComplexVolume planeVolume = volume;
 
-            data.setDistance(z, fb);
+        //method each plane was propagated with, kept by the volume for the
+        //automatic method
+        final int[] planeMethods = new int[planes];
+        final AtomicReference<IOException> volumeError = new AtomicReference<IOException>();
 
-            data.propagate(idx, filterEnabled, isPlane, curvRadius);
+        //fields handed back by the derive stage, reused by the next
+        //propagations
+        final BlockingQueue<float[][]> freeFields
+                = new ArrayBlockingQueue<float[][]>(PIPELINE_DEPTH + 2);
 
-            float[][] field = data.getOutputField();
-            String label = "z = " + df.format(umToUnits(z)) + " " + zUnits;
+        //second stage: outputs of each plane, in the order of the writers
+        PlanePipeline.Stage<float[][], ImageProcessor[]> derive
+                = new PlanePipeline.Stage<float[][], ImageProcessor[]>() {
+            private int i = 0;
 
-            float[][] amplitude = null;
-            float max = Float.MIN_VALUE;
+            @Override
+            public ImageProcessor[] process(float[][] field) {
+                ImageProcessor[] outputs = new ImageProcessor[5];
 
-            if (realEnabled || imaginaryEnabled) {
-                amplitude = ArrayUtils.modulus(field);
-                max = ArrayUtils.max(amplitude);
-            }
+                float[][] amplitude = null;
+                float max = Float.MIN_VALUE;
+
+                if (realEnabled || imaginaryEnabled) {
+                    amplitude = ArrayUtils.modulus(field);
+                    max = ArrayUtils.max(amplitude);
+                }
+
+                if (phaseEnabled) {
+                    final float[][] phase = ArrayUtils.phase(field);
+                    outputs[0] = new FloatProcessor(phase);
+
+                    if (unwrap) {
+                        unwrappedPlanes.add(unwrapExecutor.submit(new Callable<float[][]>() {
+                            @Override
+                            public float[][] call() {
+                                return unwrapper.unwrap(phase);
+                            }
+                        }));
+                    }
+                }
+
+                if (amplitudeEnabled) {
+                    outputs[1] = new FloatProcessor(realEnabled || imaginaryEnabled ? amplitude : ArrayUtils.modulus(field));
+                    if (amplitudeLogSelected) {
+                        outputs[1].log();
+                    }
+                }
+
+                if (intensityEnabled) {
+                    outputs[2] = new FloatProcessor(ArrayUtils.modulusSq(field));
+                    if (intensityLogSelected) {
+                        outputs[2].log();
+                    }
+                }
+
+                if (realEnabled) {
+                    float[][] real = ArrayUtils.real(field);
+                    ArrayUtils.divide(real, max);
+                    outputs[3] = new FloatProcessor(real);
+                }
+
+                if (imaginaryEnabled) {
+                    float[][] imaginary = ArrayUtils.imaginary(field);
+                    ArrayUtils.divide(imaginary, max);
+                    outputs[4] = new FloatProcessor(imaginary);
+                }
+
+                if (project) {
+                    projector.add(field, depths[i]);
+                }
+
+                if (localizeSelected) {
+                    locator.add(field, depths[i]);
+                }
+
+                if (planeVolume != null && volumeError.get() == null) {
+                    try {
+                        planeVolume.add(field, planeMethods[i]);
+                    } catch (IOException e) {
+                        volumeError.set(e);
+                    }
+                }
 
-            if (phaseEnabled) {
-                ImageProcessor ip1 = new FloatProcessor(ArrayUtils.phase(field));
-                phaseStack.addSlice(label, phaseByteSelected ? ip1.convertToByteProcessor() : ip1);
+                freeFields.offer(field);
+                i++;
+
+                return outputs;
             }
+        };
+
+        //third stage: stacks or writers
+        PlanePipeline.Stage<ImageProcessor[], Void> store
+                = new PlanePipeline.Stage<ImageProcessor[], Void>() {
+            private int i = 0;
+
+            @Override
+            public Void process(ImageProcessor[] outputs)
+                    throws IOException, InterruptedException {
+                String label = labels[i++];
 
-            if (amplitudeEnabled) {
-                ImageProcessor ip2 = new FloatProcessor(realEnabled || imaginaryEnabled ? amplitude : ArrayUtils.modulus(field));
-                if (amplitudeLogSelected) {
-                    ip2.log();
+                if (phaseEnabled) {
+                    addSlice(phaseWriter, phaseStack, label, outputs[0], phaseByteSelected);
                 }
-                amplitudeStack.addSlice(label, amplitudeByteSelected ? ip2.convertToByteProcessor() : ip2);
+
+                if (amplitudeEnabled) {
+                    addSlice(amplitudeWriter, amplitudeStack, label, outputs[1], amplitudeByteSelected);
+                }
+
+                if (intensityEnabled) {
+                    addSlice(intensityWriter, intensityStack, label, outputs[2], intensityByteSelected);
+                }
+
+                if (realEnabled) {
+                    addSlice(realWriter, realStack, label, outputs[3], false);
+                }
+
+                if (imaginaryEnabled) {
+                    addSlice(imaginaryWriter, imaginaryStack, label, outputs[4], false);
+                }
+
+                if (unwrap) {
+                    try {
+                        drainUnwrapped(unwrappedPlanes, Performance.getBatchWorkers(),
+                                unwrappedWriter, unwrappedStack, labels, unwrappedWritten);
+                    } catch (ExecutionException e) {
+                        throw new IOException("The phase couldn't be unwrapped: "
+                                + e.getCause());
+                    }
+                }
+
+                return null;
             }
+        };
 
-            if (intensityEnabled) {
-                ImageProcessor ip3 = new FloatProcessor(ArrayUtils.modulusSq(field));
-                if (intensityLogSelected) {
-                    ip3.log();
+        //first stage: the propagation itself, on this thread, while the
+        //previous planes are derived and stored
+        PlanePipeline<float[][], ImageProcessor[]> pipeline
+                = new PlanePipeline<float[][], ImageProcessor[]>("Batch", derive, store,
+                        PIPELINE_DEPTH);
+
+        try {
+            for (int i = 0; i < planes; i++) {
+
+                data.setDistance(z, fb);
+
+                data.propagate(idx, filterEnabled, isPlane, curvRadius);
+                if (idx == 3) {
+                    planeMethods[i] = data.getPlan().getMethod();
                 }
-                intensityStack.addSlice(label, intensityByteSelected ? ip3.convertToByteProcessor() : ip3);
+
+                pipeline.add(data.takeOutputField(freeFields.poll()));
+
+                z += step;
             }
 
-            if (realEnabled) {
-                float[][] real = ArrayUtils.real(field);
-                ArrayUtils.divide(real, max);
+            pipeline.finish();
+        } catch (ExecutionException e) {
+            JOptionPane.showMessageDialog(this, "The batch outputs couldn't be written: "
+                    + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            cancelBatch(writers, volume, unwrapExecutor);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pipeline.abort();
+            cancelBatch(writers, volume, unwrapExecutor);
+            return;
+        }
 
-                ImageProcessor ip4 = new FloatProcessor(real);
-                realStack.addSlice(label, ip4);
+        if (volume != null && volumeError.get() != null) {
+            JOptionPane.showMessageDialog(this, "The complex volume couldn't be written: "
+                    + volumeError.get().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            closeVolume(volume);
+            volume = null;
+        }
+
+        if (volume != null && closeVolume(volume)) {
+            parent.updateLog(false, "\nComplex volume: " + volume.getFile().getPath());
+        }
+
+        if (unwrap) {
+            try {
+                drainUnwrapped(unwrappedPlanes, 0, unwrappedWriter, unwrappedStack, labels,
+                        unwrappedWritten);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this, "The unwrapped phase couldn't be written: "
+                        + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                JOptionPane.showMessageDialog(this, "The phase couldn't be unwrapped: "
+                        + e.getCause(), "Error", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                unwrapExecutor.shutdownNow();
             }
 
-            if (imaginaryEnabled) {
-                float[][] imaginary = ArrayUtils.imaginary(field);
-                ArrayUtils.divide(imaginary, max);
+            //a writer missing planes would wait for them forever
+            if (unwrappedWriter != null && unwrappedWritten.get() < labels.length) {
+                unwrappedWriter.abort();
+                writers[5] = null;
+            }
+        }
 
-                ImageProcessor ip5 = new FloatProcessor(imaginary);
-                imaginaryStack.addSlice(label, ip5);
+        for (BatchWriter writer : writers) {
+            if (writer == null) {
+                continue;
             }
 
-            z += step;
+            try {
+                String path = writer.close().getPath();
+                int clipped = writer.getClippedPlanes();
+                parent.updateLog(false, "\nBatch output: " + path + (clipped == 0 ? ""
+                        : " (" + clipped + " planes clipped to the range of the first one)"));
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this, "The batch outputs couldn't be written: "
+                        + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
         }
 
         Calibration cal = parent.getCalibration();
 
         String names = "; Re: " + parameters[0] + "; Im: " + parameters[1];
 
-        if (phaseEnabled) {
-            ImagePlus imp1 = new ImagePlus("Phase" + names, phaseStack);
-            if (idx != 1) {
-                imp1.setCalibration(cal);
-            }
+        if (phaseEnabled && phaseWriter == null) {
+            ImagePlus imp1 = phaseStack.createImage("Phase" + names, idx != 1 ? cal : null);
             imp1.show();
         }
 
-        if (amplitudeEnabled) {
-            ImagePlus imp2 = new ImagePlus("Amplitude" + names, amplitudeStack);
+        if (unwrap && unwrappedStack.getSize() > 0) {
+            ImagePlus imp6 = new ImagePlus("Unwrapped phase" + names, unwrappedStack);
             if (idx != 1) {
-                imp2.setCalibration(cal);
+                imp6.setCalibration(cal);
             }
-            imp2.show();
+            imp6.show();
         }
 
-        if (intensityEnabled) {
-            ImagePlus imp3 = new ImagePlus("Intensity" + names, intensityStack);
-            if (idx != 1) {
-                imp3.setCalibration(cal);
+        if (project && !projector.isEmpty()) {
+            String range = "; z = " + df.format(umToUnits(from)) + " to "
+                    + df.format(umToUnits(to)) + " " + zUnits;
+
+            if (maxProjectionSelected) {
+                showProjection("Max. intensity" + range + names, projector.getMax(), cal);
             }
+
+            if (meanProjectionSelected) {
+                showProjection("Mean intensity" + range + names, projector.getMean(), cal);
+            }
+
+            if (minProjectionSelected) {
+                showProjection("Min. intensity" + range + names, projector.getMin(), cal);
+            }
+
+            if (depthMapSelected) {
+                showProjection("Depth map [" + zUnits + "]" + range + names, projector.getDepth(), cal);
+            }
+        }
+
+        if (localizeSelected) {
+            showParticles(locator.finish(), cal, names);
+        }
+
+        if (amplitudeEnabled && amplitudeWriter == null) {
+            ImagePlus imp2 = amplitudeStack.createImage("Amplitude" + names, idx != 1 ? cal : null);
+            imp2.show();
+        }
+
+        if (intensityEnabled && intensityWriter == null) {
+            ImagePlus imp3 = intensityStack.createImage("Intensity" + names, idx != 1 ? cal : null);
             imp3.show();
         }
 
-        if (realEnabled) {
-            ImagePlus imp4 = new ImagePlus("Real" + names, realStack);
-            if (idx != 1) {
-                imp4.setCalibration(cal);
-            }
+        if (realEnabled && realWriter == null) {
+            ImagePlus imp4 = realStack.createImage("Real" + names, idx != 1 ? cal : null);
             imp4.show();
         }
 
-        if (imaginaryEnabled) {
-            ImagePlus imp5 = new ImagePlus("Imaginary" + names, imaginaryStack);
-            if (idx != 1) {
-                imp5.setCalibration(cal);
-            }
+        if (imaginaryEnabled && imaginaryWriter == null) {
+            ImagePlus imp5 = imaginaryStack.createImage("Imaginary" + names, idx != 1 ? cal : null);
             imp5.show();
         }
 //</editor-fold>
@@ -579,6 +931,176 @@ public class BatchFrame extends javax.swing.JFrame implements PreferencesKeys {
         dispose();
     }//GEN-LAST:event_okBtnActionPerformed
 
+    /**
+     * Stops a batch that couldn't be finished.
+     */
+    private void cancelBatch(BatchWriter[] writers, ComplexVolume volume,
+            ExecutorService unwrapExecutor) {
+
+        for (BatchWriter writer : writers) {
+            if (writer != null) {
+                writer.abort();
+            }
+        }
+
+        if (volume != null) {
+            closeVolume(volume);
+        }
+
+        if (unwrapExecutor != null) {
+            unwrapExecutor.shutdownNow();
+        }
+
+        parent.setCursor(Cursor.getDefaultCursor());
+        dispose();
+    }
+
+    /**
+     * Width of the planes, the one of the zoom window for the zoom method.
+     */
+    private int outputM() {
+        return idx == 4 ? data.getZoomM() : data.getM();
+    }
+
+    /**
+     * Height of the planes, the one of the zoom window for the zoom method.
+     */
+    private int outputN() {
+        return idx == 4 ? data.getZoomN() : data.getN();
+    }
+
+    /**
+     * Starts the writer of an output, named after the chosen base file.
+     *
+     * @return null if the output isn't selected or goes to a window
+     */
+    private BatchWriter createWriter(File base, boolean enabled, String output,
+            String[] labels, Calibration cal, boolean toByte, double min, double max) {
+
+        if (base == null || !enabled) {
+            return null;
+        }
+
+        File file = new File(base.getParentFile(), base.getName() + "_" + output
+                + BatchWriter.extension(batchTarget));
+        BatchWriter writer = new BatchWriter(file, batchTarget, outputM(), outputN(), labels,
+                cal, toByte, min, max);
+        if (toByte && !writer.isByte()) {
+            parent.updateLog(false, "\n8-bit " + output.toLowerCase(Locale.US)
+                    + " needs the range of the whole stack, it's written in 32 bits.");
+        }
+        return writer;
+    }
+
+    /**
+     * Sends a plane to the writer of its output or, if there is none, to its
+     * stack.
+     */
+    private void addSlice(BatchWriter writer, CompactStack stack, String label,
+            ImageProcessor ip, boolean toByte) throws IOException {
+
+        if (writer == null) {
+            stack.addSlice(label, ip, toByte);
+        } else {
+            writer.add(ip);
+        }
+    }
+
+    /**
+     * Moves the finished unwrapped planes, oldest first, to their writer or,
+     * if there is none, to their stack. Stops at the first plane still being
+     * unwrapped, unless more than pending planes are queued.
+     *
+     * @param written planes moved so far, also the index of the next label
+     */
+    private void drainUnwrapped(BlockingQueue<Future<float[][]>> planes, int pending,
+            BatchWriter writer, ImageStack stack, String[] labels, AtomicInteger written)
+            throws IOException, InterruptedException, ExecutionException {
+
+        Future<float[][]> plane;
+        while ((plane = planes.peek()) != null && (plane.isDone() || planes.size() > pending)) {
+            FloatProcessor ip = new FloatProcessor(plane.get());
+            planes.poll();
+
+            if (writer == null) {
+                stack.addSlice(labels[written.get()], ip);
+            } else {
+                writer.add(ip);
+            }
+            written.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes the volume, reporting any error.
+     *
+     * @return true if the volume was closed
+     */
+    private boolean closeVolume(ComplexVolume volume) {
+        try {
+            volume.close();
+            return true;
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "The complex volume couldn't be closed: "
+                    + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
+    /**
+     * Shows the localized objects on a results table and, if selected, saves
+     * it as CSV. Lateral positions are calibrated unless the pixel size
+     * changes with z (Fresnel).
+     */
+    private void showParticles(List<ParticleLocator.Particle> particles, Calibration cal,
+            String names) {
+
+        ResultsTable rt = new ResultsTable();
+        rt.showRowNumbers(false);
+
+        for (ParticleLocator.Particle p : particles) {
+            rt.incrementCounter();
+            if (idx != 1) {
+                rt.addValue("X [" + cal.getUnit() + "]", cal.getX(p.getX()));
+                rt.addValue("Y [" + cal.getUnit() + "]", cal.getY(p.getY()));
+            }
+            rt.addValue("Z [" + zUnits + "]", p.getZ());
+            rt.addValue("X [px]", p.getX());
+            rt.addValue("Y [px]", p.getY());
+            rt.addValue("Peak intensity", p.getPeak());
+            rt.addValue("Peak plane", p.getPeakPlane() + 1);
+            rt.addValue("Planes", p.getPlanes());
+        }
+
+        parent.updateLog(false, "\nParticles: " + particles.size());
+        rt.show("Particles" + names);
+
+        if (!localizationCsv || particles.isEmpty()) {
+            return;
+        }
+
+        SaveDialog sd = new SaveDialog("Save particles", "particles", ".csv");
+        if (sd.getFileName() == null) {
+            return;
+        }
+
+        try {
+            rt.saveAs(sd.getDirectory() + sd.getFileName());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "The results couldn't be saved: "
+                    + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void showProjection(String title, ImageProcessor ip, Calibration cal) {
+        ip.resetMinAndMax();
+        ImagePlus imp = new ImagePlus(title, ip);
+        if (idx != 1) {
+            imp.setCalibration(cal);
+        }
+        imp.show();
+    }
+
     private void cancelBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cancelBtnActionPerformed
         setVisible(false);
         dispose();
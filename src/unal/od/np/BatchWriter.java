@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.ImagePlus;
+import ij.VirtualStack;
+import ij.io.FileSaver;
+import ij.measure.Calibration;
+import ij.plugin.filter.AVI_Writer;
+import ij.process.ImageProcessor;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the planes of one batch output straight to disk, without creating
+ * a stack or a window. Planes are handed over through a short queue to a
+ * thread of their own, which encodes them while the next planes are
+ * propagated; when the disk is slower than the propagation the queue fills
+ * and the batch waits.
+ * <p>
+ * Multi-page TIFF and AVI files are written by ImageJ from a stack whose
+ * slices are taken from the queue as the encoder asks for them, so only the
+ * queued planes are kept in memory.
+ * <p>
+ * Since the planes are written before the last one exists, 8-bit planes
+ * can't be scaled on the range of the whole stack. They are scaled on a
+ * fixed range given by the caller, so the gray levels mean the same in
+ * every plane; without one, TIFF planes are kept in 32 bits. AVI planes,
+ * always 8-bit, are then scaled on the range of the first plane, and the
+ * planes clipped by it are counted so the caller can report them.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class BatchWriter {
+
+    public static final String[] TARGETS = {"Windows", "TIFF sequence", "Multi-page TIFF",
+        "AVI"};
+
+    public static final int WINDOWS = 0;
+    public static final int TIFF_SEQUENCE = 1;
+    public static final int MULTIPAGE_TIFF = 2;
+    public static final int AVI = 3;
+
+    //planes waiting to be written
+    private static final int QUEUE_SIZE = 4;
+
+    private final File file;
+    private final int target;
+    private final int M, N;
+    private final String[] labels;
+    private final Calibration cal;
+    private final boolean toByte;
+
+    //range mapped to 0-255 when converting to 8-bit, taken from the first
+    //plane if not given
+    private double min, max;
+    private boolean fixedRange;
+    private volatile int clippedPlanes;
+
+    private final BlockingQueue<ImageProcessor> queue;
+    private final ExecutorService executor;
+    private final Future<Void> task;
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param file output file; the folder of a TIFF sequence
+     * @param target TIFF_SEQUENCE, MULTIPAGE_TIFF or AVI
+     * @param M
+     * @param N
+     * @param labels slice labels, one per plane
+     * @param cal calibration of the planes, can be null
+     * @param toByte converts the planes to 8-bit if a range is given; AVI
+     * planes always are
+     * @param min lower end of the 8-bit range
+     * @param max upper end of the 8-bit range; if it isn't above min there is
+     * no range, see the class description
+     */
+    public BatchWriter(File file, int target, int M, int N, String[] labels, Calibration cal,
+            boolean toByte, double min, double max) {
+
+        this.file = file;
+        this.target = target;
+        this.M = M;
+        this.N = N;
+        this.labels = labels;
+        this.cal = cal;
+        fixedRange = max > min;
+        this.toByte = target == AVI || toByte && fixedRange;
+        this.min = min;
+        this.max = max;
+
+        queue = new ArrayBlockingQueue<ImageProcessor>(QUEUE_SIZE);
+
+        final String name = "Batch writer: " + file.getName();
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        task = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+                write();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * File extension of a target, empty for TIFF sequences.
+     *
+     * @param target
+     * @return
+     */
+    public static String extension(int target) {
+        switch (target) {
+            case MULTIPAGE_TIFF:
+                return ".tif";
+            case AVI:
+                return ".avi";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Queues the next plane, waiting while the queue is full.
+     *
+     * @param ip
+     * @throws IOException if the writer failed
+     */
+    public void add(ImageProcessor ip) throws IOException {
+        try {
+            while (!queue.offer(ip, 100, TimeUnit.MILLISECONDS)) {
+                if (task.isDone()) {
+                    close();
+                    throw new IOException(file.getName() + " was closed before the last plane.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new IOException("Interrupted while writing " + file.getName());
+        }
+    }
+
+    /**
+     * Waits until every queued plane is written.
+     *
+     * @return the written file or folder
+     * @throws IOException
+     */
+    public File close() throws IOException {
+        try {
+            task.get();
+            return file;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new IOException("Interrupted while writing " + file.getName());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(file.getName() + ": " + cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns true if the planes are written in 8 bits.
+     *
+     * @return
+     */
+    public boolean isByte() {
+        return toByte;
+    }
+
+    /**
+     * Number of AVI planes clipped by the range of the first one, complete
+     * once the writer is closed.
+     *
+     * @return
+     */
+    public int getClippedPlanes() {
+        return clippedPlanes;
+    }
+
+    /**
+     * Stops the writer, leaving the file incomplete.
+     */
+    public void abort() {
+        task.cancel(true);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs on the writer thread.
+     */
+    private void write() throws IOException, InterruptedException {
+        if (target == TIFF_SEQUENCE) {
+            if (!file.isDirectory() && !file.mkdirs()) {
+                throw new IOException("The folder " + file.getPath() + " couldn't be created.");
+            }
+
+            for (int n = 0; n < labels.length; n++) {
+                ImagePlus imp = new ImagePlus(labels[n], next());
+                if (cal != null) {
+                    imp.setCalibration(cal);
+                }
+
+                File slice = new File(file, String.format("%04d.tif", n + 1));
+                if (!new FileSaver(imp).saveAsTiff(slice.getPath())) {
+                    throw new IOException("Couldn't write " + slice.getPath());
+                }
+            }
+            return;
+        }
+
+        //the stack takes the first plane, the encoders the rest
+        ImagePlus imp = new ImagePlus(file.getName(), new StreamedStack());
+        if (cal != null) {
+            imp.setCalibration(cal);
+        }
+
+        if (target == MULTIPAGE_TIFF) {
+            if (!new FileSaver(imp).saveAsTiffStack(file.getPath())) {
+                throw new IOException("Couldn't write " + file.getPath());
+            }
+        } else {
+            new AVI_Writer().writeImage(imp, file.getPath(), AVI_Writer.NO_COMPRESSION, 0);
+        }
+    }
+
+    /**
+     * Takes the next plane from the queue.
+     */
+    private ImageProcessor next() throws InterruptedException {
+        ImageProcessor ip = queue.take();
+        if (!toByte) {
+            return ip;
+        }
+
+        if (!fixedRange) {
+            ip.resetMinAndMax();
+            min = ip.getMin();
+            max = ip.getMax();
+            fixedRange = true;
+        } else if (target == AVI) {
+            ip.resetMinAndMax();
+            if (ip.getMin() < min || ip.getMax() > max) {
+                clippedPlanes++;
+            }
+        }
+
+        //values out of the range are clipped
+        ip.setMinAndMax(min, max);
+        return ip.convertToByteProcessor(true);
+    }
+
+    /**
+     * Stack whose slices are taken from the queue, in order, as the encoder
+     * asks for them. The last slice is kept, since ImageJ asks for it again.
+     */
+    private class StreamedStack extends VirtualStack {
+
+        private int current;
+        private ImageProcessor ip;
+
+        StreamedStack() {
+            super(M, N, null, null);
+        }
+
+        @Override
+        public ImageProcessor getProcessor(int n) {
+            if (n == current) {
+                return ip;
+            }
+            if (n != current + 1) {
+                throw new IllegalArgumentException("Slice " + n + " requested after slice "
+                        + current + ", the planes can only be written in order.");
+            }
+
+            try {
+                ip = next();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Writing was interrupted.");
+            }
+            current = n;
+
+            return ip;
+        }
+
+        @Override
+        public Object getPixels(int n) {
+            return getProcessor(n).getPixels();
+        }
+
+        @Override
+        public void setPixels(Object pixels, int n) {
+        }
+
+        @Override
+        public int getSize() {
+            return labels.length;
+        }
+
+        @Override
+        public int size() {
+            return getSize();
+        }
+
+        @Override
+        public String getSliceLabel(int n) {
+            return labels[n - 1];
+        }
+
+        @Override
+        public int getBitDepth() {
+            return toByte ? 8 : 32;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output stack of a batch, stored with fewer bits per pixel. Slices are added
+ * as they are produced while their minimum and maximum are tracked, so a
+ * single scale can be used for the whole stack and values stay comparable
+ * across z:
+ * <ul>
+ * <li>FLOAT32: the float slices, optionally converted to 8 bits each one on
+ * its own scale.</li>
+ * <li>FLOAT16: half precision floats (about 3 significant digits, saturated
+ * at +-65504), shown through a virtual stack.</li>
+ * <li>SHORT_GLOBAL, BYTE_GLOBAL: 16 or 8 bits with one scale for the stack.
+ * While streaming, each slice is kept in 16 bits on its own range; when the
+ * batch is finished they are requantized to the global range. The image gets
+ * a calibration function that gives back the original values.</li>
+ * </ul>
+ * Non finite values (e.g. the log of 0) are ignored by the range and stored
+ * as its minimum.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class CompactStack {
+
+    public static final String[] MODES = {"32-bit float", "16-bit float",
+        "16-bit, global scale", "8-bit, global scale"};
+
+    public static final int FLOAT32 = 0;
+    public static final int FLOAT16 = 1;
+    public static final int SHORT_GLOBAL = 2;
+    public static final int BYTE_GLOBAL = 3;
+
+    private static final int SHORT_LEVELS = 65535;
+    private static final int BYTE_LEVELS = 255;
+
+    private final int M, N;
+    private final int mode;
+
+    //FLOAT32
+    private final ImageStack stack;
+
+    //FLOAT16 halves, or 16 bits slices on their own range
+    private final List<short[]> slices;
+    //offset and step of each slice, global modes
+    private final List<float[]> ranges;
+    private final List<String> labels;
+
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+
+    /**
+     * Creates an empty stack.
+     *
+     * @param M
+     * @param N
+     * @param mode one of FLOAT32, FLOAT16, SHORT_GLOBAL, BYTE_GLOBAL
+     */
+    public CompactStack(int M, int N, int mode) {
+        this.M = M;
+        this.N = N;
+        this.mode = mode;
+
+        stack = mode == FLOAT32 ? new ImageStack(M, N) : null;
+        slices = mode == FLOAT32 ? null : new ArrayList<short[]>();
+        ranges = mode == FLOAT32 ? null : new ArrayList<float[]>();
+        labels = mode == FLOAT32 ? null : new ArrayList<String>();
+    }
+
+    /**
+     * Adds a float slice.
+     *
+     * @param label
+     * @param ip float processor, not modified
+     * @param toByte converts the slice to 8 bits on its own scale, only used
+     * by FLOAT32
+     */
+    public void addSlice(String label, ImageProcessor ip, boolean toByte) {
+        if (mode == FLOAT32) {
+            stack.addSlice(label, toByte ? ip.convertToByteProcessor() : ip);
+            return;
+        }
+
+        float[] pixels = (float[]) ip.getPixels();
+
+        float sliceMin = Float.POSITIVE_INFINITY;
+        float sliceMax = Float.NEGATIVE_INFINITY;
+        for (float v : pixels) {
+            if (v < sliceMin) {
+                sliceMin = v;
+            }
+            if (v > sliceMax && v != Float.POSITIVE_INFINITY) {
+                sliceMax = v;
+            }
+        }
+        if (sliceMin == Float.NEGATIVE_INFINITY || sliceMin > sliceMax) {
+            //-inf or NaN, scans again without them
+            sliceMin = Float.POSITIVE_INFINITY;
+            for (float v : pixels) {
+                if (v < sliceMin && v != Float.NEGATIVE_INFINITY) {
+                    sliceMin = v;
+                }
+            }
+        }
+
+        if (sliceMin <= sliceMax) {
+            min = Math.min(min, sliceMin);
+            max = Math.max(max, sliceMax);
+        } else {
+            sliceMin = sliceMax = 0;
+        }
+
+        short[] compact = new short[pixels.length];
+
+        if (mode == FLOAT16) {
+            for (int k = 0; k < pixels.length; k++) {
+                float v = pixels[k];
+                compact[k] = toHalf(isFinite(v) ? v : sliceMin);
+            }
+        } else {
+            float step = (sliceMax - sliceMin) / SHORT_LEVELS;
+            float scale = step == 0 ? 0 : 1 / step;
+
+            for (int k = 0; k < pixels.length; k++) {
+                float v = pixels[k];
+                compact[k] = (short) (isFinite(v) ? Math.round((v - sliceMin) * scale) : 0);
+            }
+            ranges.add(new float[]{sliceMin, step});
+        }
+
+        slices.add(compact);
+        labels.add(label);
+    }
+
+    /**
+     * Creates the image of the stack. In the global modes the slices are
+     * requantized and released one by one.
+     *
+     * @param title
+     * @param cal calibration of the slices, can be null
+     * @return
+     */
+    public ImagePlus createImage(String title, Calibration cal) {
+        ImagePlus imp;
+
+        switch (mode) {
+            case FLOAT32:
+                imp = new ImagePlus(title, stack);
+                break;
+            case FLOAT16:
+                imp = new ImagePlus(title, new HalfFloatStack());
+                break;
+            default:
+                imp = new ImagePlus(title, requantize());
+                break;
+        }
+
+        Calibration impCal = cal == null ? new Calibration() : cal.copy();
+
+        if (mode == SHORT_GLOBAL || mode == BYTE_GLOBAL) {
+            int levels = mode == SHORT_GLOBAL ? SHORT_LEVELS : BYTE_LEVELS;
+            impCal.setFunction(Calibration.STRAIGHT_LINE,
+                    new double[]{getMin(), (getMax() - getMin()) / levels}, "Value");
+        }
+        imp.setCalibration(impCal);
+
+        if (mode == FLOAT16) {
+            imp.setDisplayRange(getMin(), getMax());
+        }
+
+        return imp;
+    }
+
+    private ImageStack requantize() {
+        int levels = mode == SHORT_GLOBAL ? SHORT_LEVELS : BYTE_LEVELS;
+        float globalMin = getMin();
+        float globalStep = (getMax() - globalMin) / levels;
+        float scale = globalStep == 0 ? 0 : 1 / globalStep;
+
+        ImageStack result = new ImageStack(M, N);
+
+        for (int s = 0; s < slices.size(); s++) {
+            short[] compact = slices.get(s);
+            float sliceMin = ranges.get(s)[0];
+            float sliceStep = ranges.get(s)[1];
+
+            //q' = a + b q
+            float a = (sliceMin - globalMin) * scale;
+            float b = sliceStep * scale;
+
+            if (mode == SHORT_GLOBAL) {
+                short[] pixels = new short[compact.length];
+                for (int k = 0; k < compact.length; k++) {
+                    pixels[k] = (short) clamp(Math.round(a + b * (compact[k] & 0xffff)), levels);
+                }
+                result.addSlice(labels.get(s), new ShortProcessor(M, N, pixels, null));
+            } else {
+                byte[] pixels = new byte[compact.length];
+                for (int k = 0; k < compact.length; k++) {
+                    pixels[k] = (byte) clamp(Math.round(a + b * (compact[k] & 0xffff)), levels);
+                }
+                result.addSlice(labels.get(s), new ByteProcessor(M, N, pixels, null));
+            }
+
+            slices.set(s, null);
+        }
+
+        return result;
+    }
+
+    private static int clamp(int q, int levels) {
+        return q < 0 ? 0 : q > levels ? levels : q;
+    }
+
+    private static boolean isFinite(float v) {
+        return !Float.isNaN(v) && !Float.isInfinite(v);
+    }
+
+    /**
+     * Converts to half precision, rounding to the nearest. Values out of
+     * range are saturated.
+     *
+     * @param f
+     * @return
+     */
+    public static short toHalf(float f) {
+        int bits = Float.floatToIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+
+        if (abs >= 0x7f800000) {
+            //inf or NaN
+            return (short) (sign | 0x7c00 | (abs > 0x7f800000 ? 0x200 : 0));
+        }
+
+        int val = abs + 0x1000;
+        if (val >= 0x477ff000) {
+            //largest finite half
+            return (short) (sign | 0x7bff);
+        }
+        if (val >= 0x38800000) {
+            //normal
+            return (short) (sign | ((val - 0x38000000) >>> 13));
+        }
+        if (val < 0x33000000) {
+            //too small, signed zero
+            return (short) sign;
+        }
+
+        //subnormal
+        int exp = abs >>> 23;
+        return (short) (sign | ((((abs & 0x7fffff) | 0x800000)
+                + (0x800000 >>> (exp - 102))) >>> (126 - exp)));
+    }
+
+    /**
+     * Converts from half precision.
+     *
+     * @param h
+     * @return
+     */
+    public static float toFloat(short h) {
+        int mant = h & 0x03ff;
+        int exp = h & 0x7c00;
+
+        if (exp == 0x7c00) {
+            exp = 0x3fc00;
+        } else if (exp != 0) {
+            exp += 0x1c000;
+        } else if (mant != 0) {
+            exp = 0x1c400;
+            do {
+                mant <<= 1;
+                exp -= 0x400;
+            } while ((mant & 0x400) == 0);
+            mant &= 0x3ff;
+        }
+
+        return Float.intBitsToFloat((h & 0x8000) << 16 | (exp | mant) << 13);
+    }
+
+    /**
+     * Smallest finite value added.
+     *
+     * @return
+     */
+    public float getMin() {
+        return min <= max ? min : 0;
+    }
+
+    /**
+     * Largest finite value added.
+     *
+     * @return
+     */
+    public float getMax() {
+        return min <= max ? max : 0;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Half precision slices, decoded when ImageJ asks for them.
+     */
+    private class HalfFloatStack extends VirtualStack {
+
+        HalfFloatStack() {
+            super(M, N, null, null);
+        }
+
+        @Override
+        public ImageProcessor getProcessor(int n) {
+            short[] compact = slices.get(n - 1);
+            float[] pixels = new float[compact.length];
+            for (int k = 0; k < compact.length; k++) {
+                pixels[k] = toFloat(compact[k]);
+            }
+
+            FloatProcessor fp = new FloatProcessor(M, N, pixels);
+            fp.setMinAndMax(getMin(), getMax());
+            return fp;
+        }
+
+        @Override
+        public Object getPixels(int n) {
+            return getProcessor(n).getPixels();
+        }
+
+        @Override
+        public void setPixels(Object pixels, int n) {
+        }
+
+        @Override
+        public int getSize() {
+            return slices.size();
+        }
+
+        @Override
+        public int size() {
+            return getSize();
+        }
+
+        @Override
+        public String getSliceLabel(int n) {
+            return labels.get(n - 1);
+        }
+
+        @Override
+        public int getBitDepth() {
+            return 32;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Interleaved complex field file. A 64 bytes header is followed by M x N
+ * float32 (real, imaginary) pairs, all little endian. Samples are stored in
+ * the order used by Data and JDiffraction (the N samples of column 0, then
+ * column 1 and so on), so each column is a single bulk copy between the file
+ * and a float[M][2N] field. The data is read and written through memory
+ * mapped regions of the file, no stream buffers are involved.
+ * <p>
+ * Header: magic "NPCF", version, M, N (int32); lambda, dx, dy, z (float32,
+ * micrometers, z being the distance of the plane from the hologram); method
+ * (int32, index of the propagation method, -1 if unknown). The rest of the
+ * header is reserved.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class ComplexFile {
+
+    public static final String EXTENSION = ".ncf";
+
+    private static final int MAGIC = 0x4643504E; //"NPCF" read as little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    //largest region mapped at once
+    private static final long MAX_REGION = Integer.MAX_VALUE;
+
+    private final File file;
+
+    private final int M, N;
+    private final float lambda, dx, dy, z;
+    private final int method;
+
+    /**
+     * Describes a file to be written.
+     *
+     * @param file
+     * @param M
+     * @param N
+     * @param lambda
+     * @param dx
+     * @param dy
+     * @param z
+     * @param method
+     */
+    public ComplexFile(File file, int M, int N, float lambda, float dx, float dy, float z,
+            int method) {
+        this.file = file;
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+        this.method = method;
+    }
+
+    /**
+     * Opens an existing file, reading its header.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file isn't a complex field file
+     */
+    public static ComplexFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file.getName() + " is not a complex field file.");
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a complex field file.");
+            }
+            if (header.getInt() > VERSION) {
+                throw new IOException(file.getName() + " was written by a newer version.");
+            }
+
+            int M = header.getInt();
+            int N = header.getInt();
+            float lambda = header.getFloat();
+            float dx = header.getFloat();
+            float dy = header.getFloat();
+            float z = header.getFloat();
+            int method = header.getInt();
+
+            if (M <= 0 || N <= 0 || channel.size() < HEADER_SIZE + 8L * M * N) {
+                throw new IOException(file.getName() + " is truncated or corrupted.");
+            }
+
+            return new ComplexFile(file, M, N, lambda, dx, dy, z, method);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the field into an M x 2N array.
+     *
+     * @param field
+     * @throws IOException
+     */
+    public void read(float[][] field) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            int columns = columnsPerRegion();
+
+            for (int i0 = 0; i0 < M; i0 += columns) {
+                int count = Math.min(columns, M - i0);
+                FloatBuffer fb = map(channel, FileChannel.MapMode.READ_ONLY, i0, count);
+
+                for (int i = i0; i < i0 + count; i++) {
+                    fb.get(field[i], 0, 2 * N);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the field into an off-heap field of the same size.
+     *
+     * @param field
+     * @throws IOException
+     */
+    public void read(OffHeapField field) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            int columns = columnsPerRegion();
+            float[] column = new float[2 * N];
+
+            for (int i0 = 0; i0 < M; i0 += columns) {
+                int count = Math.min(columns, M - i0);
+                FloatBuffer fb = map(channel, FileChannel.MapMode.READ_ONLY, i0, count);
+
+                for (int i = i0; i < i0 + count; i++) {
+                    fb.get(column, 0, 2 * N);
+                    field.setColumn(i, column);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the field into separate real and imaginary pixel arrays, in the
+     * pixel order of ImageJ (j * M + i).
+     *
+     * @param real
+     * @param imaginary
+     * @throws IOException
+     */
+    public void read(float[] real, float[] imaginary) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            int columns = columnsPerRegion();
+
+            for (int i0 = 0; i0 < M; i0 += columns) {
+                int count = Math.min(columns, M - i0);
+                FloatBuffer fb = map(channel, FileChannel.MapMode.READ_ONLY, i0, count);
+
+                for (int i = i0; i < i0 + count; i++) {
+                    for (int j = 0; j < N; j++) {
+                        real[j * M + i] = fb.get();
+                        imaginary[j * M + i] = fb.get();
+                    }
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the header and an M x 2N field, replacing the file.
+     *
+     * @param field
+     * @throws IOException
+     */
+    public void write(float[][] field) throws IOException {
+        RandomAccessFile raf = create();
+        try {
+            FileChannel channel = raf.getChannel();
+            int columns = columnsPerRegion();
+
+            for (int i0 = 0; i0 < M; i0 += columns) {
+                int count = Math.min(columns, M - i0);
+                FloatBuffer fb = map(channel, FileChannel.MapMode.READ_WRITE, i0, count);
+
+                for (int i = i0; i < i0 + count; i++) {
+                    fb.put(field[i], 0, 2 * N);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the header and an off-heap field, replacing the file.
+     *
+     * @param field
+     * @throws IOException
+     */
+    public void write(OffHeapField field) throws IOException {
+        RandomAccessFile raf = create();
+        try {
+            FileChannel channel = raf.getChannel();
+            int columns = columnsPerRegion();
+
+            for (int i0 = 0; i0 < M; i0 += columns) {
+                int count = Math.min(columns, M - i0);
+                FloatBuffer fb = map(channel, FileChannel.MapMode.READ_WRITE, i0, count);
+
+                for (int i = i0; i < i0 + count; i++) {
+                    fb.put(field.getColumn(i), 0, 2 * N);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the header and a field given as pixel arrays in the order of
+     * ImageJ (j * M + i). A null part is written as zero.
+     *
+     * @param real
+     * @param imaginary
+     * @throws IOException
+     */
+    public void write(float[] real, float[] imaginary) throws IOException {
+        RandomAccessFile raf = create();
+        try {
+            FileChannel channel = raf.getChannel();
+            int columns = columnsPerRegion();
+
+            for (int i0 = 0; i0 < M; i0 += columns) {
+                int count = Math.min(columns, M - i0);
+                FloatBuffer fb = map(channel, FileChannel.MapMode.READ_WRITE, i0, count);
+
+                for (int i = i0; i < i0 + count; i++) {
+                    for (int j = 0; j < N; j++) {
+                        fb.put(real == null ? 0 : real[j * M + i]);
+                        fb.put(imaginary == null ? 0 : imaginary[j * M + i]);
+                    }
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates the file with its final size and writes the header.
+     */
+    private RandomAccessFile create() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(HEADER_SIZE + 8L * M * N);
+
+            MappedByteBuffer header = raf.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(M);
+            header.putInt(N);
+            header.putFloat(lambda);
+            header.putFloat(dx);
+            header.putFloat(dy);
+            header.putFloat(z);
+            header.putInt(method);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+
+        return raf;
+    }
+
+    /**
+     * Maps count columns starting at column i0.
+     */
+    private FloatBuffer map(FileChannel channel, FileChannel.MapMode mode, int i0, int count)
+            throws IOException {
+        long columnBytes = 8L * N;
+
+        MappedByteBuffer buffer = channel.map(mode, HEADER_SIZE + i0 * columnBytes,
+                count * columnBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buffer.asFloatBuffer();
+    }
+
+    private int columnsPerRegion() {
+        return (int) Math.max(1, MAX_REGION / (8L * N));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+    public File getFile() {
+        return file;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.WindowManager;
+import ij.gui.GenericDialog;
+import ij.io.OpenDialog;
+import ij.io.SaveDialog;
+import ij.measure.Calibration;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.prefs.Preferences;
+
+/**
+ * Saving, opening and propagating complex field files (see ComplexFile), and
+ * browsing complex volumes written by the batch (see ComplexVolume).
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class ComplexFileTool implements PreferencesKeys {
+
+    private static final String TITLE = "Complex Field File";
+    private static final String[] METHODS = new String[]{"Angular Spectrum", "Fresnel",
+        "Automatic"};
+    private static final int[] METHOD_IDX = new int[]{0, 1, 3};
+
+    //units
+    private final String lambdaUnits;
+    private final String zUnits;
+    private final String inputSizeUnits;
+
+    private final DecimalFormat df;
+    private final Preferences pref;
+
+    public ComplexFileTool() {
+        df = new DecimalFormat("#.####", new DecimalFormatSymbols(Locale.US));
+        pref = Preferences.userNodeForPackage(getClass());
+
+        lambdaUnits = pref.get(LAMBDA_UNITS, "nm");
+        zUnits = pref.get(DISTANCE_UNITS, "m");
+        inputSizeUnits = pref.get(INPUT_SIZE_UNITS, "mm");
+    }
+
+    /**
+     * Saves a field given as real and imaginary images.
+     */
+    public void save() {
+        int[] windowsId = WindowManager.getIDList();
+        if (windowsId == null) {
+            IJ.error(TITLE, "Please open the real and imaginary parts first.");
+            return;
+        }
+
+        String[] titles = new String[windowsId.length + 1];
+        titles[0] = "<none>";
+        for (int i = 0; i < windowsId.length; i++) {
+            ImagePlus imp = WindowManager.getImage(windowsId[i]);
+            titles[i + 1] = imp != null ? imp.getTitle() : "";
+        }
+
+        GenericDialog gd = new GenericDialog("Save " + TITLE);
+        gd.addChoice("Real:", titles, titles[1]);
+        gd.addChoice("Imaginary:", titles, titles[windowsId.length > 1 ? 2 : 0]);
+        gd.addStringField("Wavelength [" + lambdaUnits + "]:", pref.get(LAMBDA, ""), 8);
+        gd.addStringField("Width [" + inputSizeUnits + "]:", pref.get(INPUT_WIDTH, ""), 8);
+        gd.addStringField("Height [" + inputSizeUnits + "]:", pref.get(INPUT_HEIGHT, ""), 8);
+        gd.addStringField("Distance [" + zUnits + "]:", "0", 8);
+        gd.showDialog();
+
+        if (gd.wasCanceled()) {
+            return;
+        }
+
+        int realIdx = gd.getNextChoiceIndex();
+        int imaginaryIdx = gd.getNextChoiceIndex();
+
+        if (realIdx == 0 && imaginaryIdx == 0) {
+            IJ.error(TITLE, "Please select at least one input.");
+            return;
+        }
+
+        float lambda, width, height, z;
+        try {
+            lambda = unitsToum(Float.parseFloat(gd.getNextString()), lambdaUnits);
+            width = unitsToum(Float.parseFloat(gd.getNextString()), inputSizeUnits);
+            height = unitsToum(Float.parseFloat(gd.getNextString()), inputSizeUnits);
+            z = unitsToum(Float.parseFloat(gd.getNextString()), zUnits);
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert valid parameters.");
+            return;
+        }
+
+        if (lambda <= 0 || width == 0 || height == 0) {
+            IJ.error(TITLE, "Wavelength, width and height must be different from 0.");
+            return;
+        }
+
+        ImageProcessor real = realIdx == 0 ? null
+                : WindowManager.getImage(windowsId[realIdx - 1]).getProcessor();
+        ImageProcessor imaginary = imaginaryIdx == 0 ? null
+                : WindowManager.getImage(windowsId[imaginaryIdx - 1]).getProcessor();
+
+        ImageProcessor first = real != null ? real : imaginary;
+        int M = first.getWidth();
+        int N = first.getHeight();
+
+        if (real != null && imaginary != null
+                && (imaginary.getWidth() != M || imaginary.getHeight() != N)) {
+            IJ.error(TITLE, "Input images must have the same dimensions.");
+            return;
+        }
+
+        SaveDialog sd = new SaveDialog("Save " + TITLE, titles[realIdx == 0 ? imaginaryIdx : realIdx],
+                ComplexFile.EXTENSION);
+        if (sd.getFileName() == null) {
+            return;
+        }
+
+        ComplexFile file = new ComplexFile(new File(sd.getDirectory(), sd.getFileName()),
+                M, N, lambda, width / M, height / N, z, -1);
+
+        try {
+            file.write(pixels(real), pixels(imaginary));
+        } catch (IOException e) {
+            IJ.error(TITLE, "The field couldn't be saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a file as real and imaginary images.
+     */
+    public void open() {
+        OpenDialog od = new OpenDialog("Open " + TITLE);
+        if (od.getFileName() == null) {
+            return;
+        }
+
+        try {
+            ComplexFile file = ComplexFile.open(new File(od.getDirectory(), od.getFileName()));
+
+            int M = file.getM();
+            int N = file.getN();
+
+            if ((long) M * N > Integer.MAX_VALUE) {
+                IJ.error(TITLE, od.getFileName() + " is too large to be opened as images,\n"
+                        + "it can still be propagated into another file.");
+                return;
+            }
+
+            float[] real = new float[M * N];
+            float[] imaginary = new float[M * N];
+            file.read(real, imaginary);
+
+            Calibration cal = new Calibration();
+            cal.setUnit(inputSizeUnits);
+            cal.pixelWidth = umToUnits(file.getDx(), inputSizeUnits);
+            cal.pixelHeight = umToUnits(file.getDy(), inputSizeUnits);
+
+            String info = "; z = " + df.format(umToUnits(file.getZ(), zUnits)) + " " + zUnits
+                    + "; " + od.getFileName();
+
+            ImagePlus imp1 = new ImagePlus("Real" + info, new FloatProcessor(M, N, real));
+            imp1.setCalibration(cal);
+            imp1.show();
+
+            ImagePlus imp2 = new ImagePlus("Imaginary" + info, new FloatProcessor(M, N, imaginary));
+            imp2.setCalibration(cal);
+            imp2.show();
+
+            IJ.log(od.getFileName() + ": " + M + "x" + N + ", wavelength "
+                    + df.format(umToUnits(file.getLambda(), lambdaUnits)) + " " + lambdaUnits);
+        } catch (IOException e) {
+            IJ.error(TITLE, e.getMessage());
+        }
+    }
+
+    /**
+     * Propagates a file into another one, without opening any image.
+     */
+    public void propagate() {
+        OpenDialog od = new OpenDialog("Input " + TITLE);
+        if (od.getFileName() == null) {
+            return;
+        }
+
+        ComplexFile input;
+        try {
+            input = ComplexFile.open(new File(od.getDirectory(), od.getFileName()));
+        } catch (IOException e) {
+            IJ.error(TITLE, e.getMessage());
+            return;
+        }
+
+        GenericDialog gd = new GenericDialog("Propagate " + TITLE);
+        gd.addMessage(od.getFileName() + ": " + input.getM() + "x" + input.getN()
+                + ", wavelength " + df.format(umToUnits(input.getLambda(), lambdaUnits))
+                + " " + lambdaUnits);
+        gd.addStringField("Distance [" + zUnits + "]:", pref.get(DISTANCE, ""), 8);
+        gd.addChoice("Method:", METHODS, METHODS[0]);
+        gd.showDialog();
+
+        if (gd.wasCanceled()) {
+            return;
+        }
+
+        float z;
+        try {
+            z = unitsToum(Float.parseFloat(gd.getNextString()), zUnits);
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert a valid distance.");
+            return;
+        }
+        int methodIdx = METHOD_IDX[gd.getNextChoiceIndex()];
+
+        SaveDialog sd = new SaveDialog("Save propagated " + TITLE, od.getFileName()
+                .replace(ComplexFile.EXTENSION, "") + "_z", ComplexFile.EXTENSION);
+        if (sd.getFileName() == null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        try {
+            Data.getInstance().propagate(input, new File(sd.getDirectory(), sd.getFileName()),
+                    methodIdx, z);
+        } catch (IOException e) {
+            IJ.error(TITLE, "The field couldn't be propagated: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            IJ.error(TITLE, e.getMessage());
+            return;
+        }
+
+        IJ.showStatus(TITLE + ": " + sd.getFileName() + " written in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Opens a complex volume as a virtual stack of the selected quantity.
+     */
+    public void openVolume() {
+        OpenDialog od = new OpenDialog("Open complex volume");
+        if (od.getFileName() == null) {
+            return;
+        }
+
+        ComplexVolume volume;
+        try {
+            volume = ComplexVolume.open(new File(od.getDirectory(), od.getFileName()));
+        } catch (IOException e) {
+            IJ.error(TITLE, e.getMessage());
+            return;
+        }
+
+        GenericDialog gd = new GenericDialog("Open complex volume");
+        gd.addMessage(od.getFileName() + ": " + volume.getM() + "x" + volume.getN() + "x"
+                + volume.getPlanes());
+        gd.addChoice("Show:", ComplexVolumeStack.QUANTITIES, ComplexVolumeStack.QUANTITIES[0]);
+        gd.showDialog();
+
+        if (gd.wasCanceled()) {
+            try {
+                volume.close();
+            } catch (IOException e) {
+            }
+            return;
+        }
+
+        int quantity = gd.getNextChoiceIndex();
+
+        String[] labels = new String[volume.getPlanes()];
+        for (int p = 0; p < labels.length; p++) {
+            labels[p] = "z = " + df.format(umToUnits(volume.getZ(p), zUnits)) + " " + zUnits;
+        }
+
+        ComplexVolumeStack stack = new ComplexVolumeStack(volume, quantity, labels);
+        ImagePlus imp = new ImagePlus(ComplexVolumeStack.QUANTITIES[quantity] + "; "
+                + od.getFileName(), stack);
+        stack.closeWith(imp);
+
+        //Fresnel planes have different pixel sizes, they are left uncalibrated
+        if (volume.getDx(0) == volume.getDx(volume.getPlanes() - 1)) {
+            Calibration cal = new Calibration();
+            cal.setUnit(inputSizeUnits);
+            cal.pixelWidth = umToUnits(volume.getDx(0), inputSizeUnits);
+            cal.pixelHeight = umToUnits(volume.getDy(0), inputSizeUnits);
+            imp.setCalibration(cal);
+        }
+
+        imp.show();
+    }
+
+    /**
+     * Float pixels of a processor; float images aren't copied.
+     */
+    private static float[] pixels(ImageProcessor ip) {
+        if (ip == null) {
+            return null;
+        }
+        if (!(ip instanceof FloatProcessor)) {
+            ip = ip.convertToFloat();
+        }
+        return (float[]) ip.getPixels();
+    }
+
+    /**
+     * Helper method to convert from {units} to um.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float unitsToum(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E-3f;
+        } else if (units.equals("mm")) {
+            return val * 1E3f;
+        } else if (units.equals("cm")) {
+            return val * 1E4f;
+        } else if (units.equals("m")) {
+            return val * 1E6f;
+        }
+
+        return val;
+    }
+
+    /**
+     * Helper method to convert from um to {units}.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float umToUnits(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E3f;
+        } else if (units.equals("mm")) {
+            return val * 1E-3f;
+        } else if (units.equals("cm")) {
+            return val * 1E-4f;
+        } else if (units.equals("m")) {
+            return val * 1E-6f;
+        }
+
+        return val;
+    }
+}
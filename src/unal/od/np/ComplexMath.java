@@ -0,0 +1,338 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.process.FloatProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Element-wise complex arithmetic over fields stored as two FloatProcessors
+ * (real and imaginary parts). Every operation works in place on the pixel
+ * arrays of the first operand, so no intermediate interleaved copies are
+ * made. Large images are split in blocks of rows processed in parallel by a
+ * shared pool; the inner loops are plain indexed loops over contiguous
+ * arrays, which the JIT can unroll and vectorize.
+ * <p>
+ * A null real or imaginary part of the second operand is taken as zero.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public final class ComplexMath {
+
+    //operations
+    public static final int ADD = 0;
+    public static final int SUBTRACT = 1;
+    public static final int MULTIPLY = 2;
+    public static final int DIVIDE = 3;
+
+    //images smaller than this number of pixels are processed on the calling
+    //thread, the cost of the hand-off is larger than the work
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService executor;
+
+    private ComplexMath() {
+    }
+
+    /**
+     * (re1, im1) = (re1, im1) op (re2, im2).
+     *
+     * @param operation ADD, SUBTRACT, MULTIPLY or DIVIDE
+     * @param re1
+     * @param im1
+     * @param re2 can be null
+     * @param im2 can be null
+     */
+    public static void apply(final int operation, FloatProcessor re1, FloatProcessor im1,
+            FloatProcessor re2, FloatProcessor im2) {
+
+        final float[] a = (float[]) re1.getPixels();
+        final float[] b = (float[]) im1.getPixels();
+        final float[] c = re2 == null ? null : (float[]) re2.getPixels();
+        final float[] d = im2 == null ? null : (float[]) im2.getPixels();
+
+        run(re1.getWidth(), re1.getHeight(), new Block() {
+            @Override
+            public void process(int from, int to) {
+                apply(operation, a, b, c, d, from, to);
+            }
+        });
+    }
+
+    public static void add(FloatProcessor re1, FloatProcessor im1, FloatProcessor re2,
+            FloatProcessor im2) {
+        apply(ADD, re1, im1, re2, im2);
+    }
+
+    public static void subtract(FloatProcessor re1, FloatProcessor im1, FloatProcessor re2,
+            FloatProcessor im2) {
+        apply(SUBTRACT, re1, im1, re2, im2);
+    }
+
+    public static void multiply(FloatProcessor re1, FloatProcessor im1, FloatProcessor re2,
+            FloatProcessor im2) {
+        apply(MULTIPLY, re1, im1, re2, im2);
+    }
+
+    /**
+     * Division; samples where the divisor is zero become NaN, as with float
+     * division.
+     */
+    public static void divide(FloatProcessor re1, FloatProcessor im1, FloatProcessor re2,
+            FloatProcessor im2) {
+        apply(DIVIDE, re1, im1, re2, im2);
+    }
+
+    /**
+     * Complex conjugate, in place.
+     *
+     * @param im imaginary part
+     */
+    public static void conjugate(FloatProcessor im) {
+        final float[] b = (float[]) im.getPixels();
+
+        run(im.getWidth(), im.getHeight(), new Block() {
+            @Override
+            public void process(int from, int to) {
+                conjugate(b, from, to);
+            }
+        });
+    }
+
+    /**
+     * Multiplication by the complex constant (factorRe + i factorIm), in
+     * place.
+     *
+     * @param re
+     * @param im
+     * @param factorRe
+     * @param factorIm
+     */
+    public static void scale(FloatProcessor re, FloatProcessor im, final float factorRe,
+            final float factorIm) {
+
+        final float[] a = (float[]) re.getPixels();
+        final float[] b = (float[]) im.getPixels();
+
+        run(re.getWidth(), re.getHeight(), new Block() {
+            @Override
+            public void process(int from, int to) {
+                scale(a, b, factorRe, factorIm, from, to);
+            }
+        });
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Kernels">
+    /**
+     * Serial kernels over the [from, to) range of the pixel arrays, for
+     * callers that already parallelize at a coarser level (e.g. by slice).
+     */
+    static void apply(int operation, float[] a, float[] b, float[] c, float[] d, int from,
+            int to) {
+        switch (operation) {
+            case ADD:
+                add(a, b, c, d, from, to);
+                break;
+            case SUBTRACT:
+                subtract(a, b, c, d, from, to);
+                break;
+            case MULTIPLY:
+                multiply(a, b, c, d, from, to);
+                break;
+            case DIVIDE:
+                divide(a, b, c, d, from, to);
+                break;
+        }
+    }
+
+    static void conjugate(float[] b, int from, int to) {
+        for (int k = from; k < to; k++) {
+            b[k] = -b[k];
+        }
+    }
+
+    static void scale(float[] a, float[] b, float factorRe, float factorIm, int from, int to) {
+        if (factorIm == 0) {
+            for (int k = from; k < to; k++) {
+                a[k] *= factorRe;
+                b[k] *= factorRe;
+            }
+            return;
+        }
+
+        for (int k = from; k < to; k++) {
+            float x = a[k];
+            float y = b[k];
+            a[k] = x * factorRe - y * factorIm;
+            b[k] = x * factorIm + y * factorRe;
+        }
+    }
+
+    private static void add(float[] a, float[] b, float[] c, float[] d, int from, int to) {
+        if (c != null) {
+            for (int k = from; k < to; k++) {
+                a[k] += c[k];
+            }
+        }
+        if (d != null) {
+            for (int k = from; k < to; k++) {
+                b[k] += d[k];
+            }
+        }
+    }
+
+    private static void subtract(float[] a, float[] b, float[] c, float[] d, int from, int to) {
+        if (c != null) {
+            for (int k = from; k < to; k++) {
+                a[k] -= c[k];
+            }
+        }
+        if (d != null) {
+            for (int k = from; k < to; k++) {
+                b[k] -= d[k];
+            }
+        }
+    }
+
+    private static void multiply(float[] a, float[] b, float[] c, float[] d, int from, int to) {
+        if (d == null) {
+            //real factor
+            for (int k = from; k < to; k++) {
+                a[k] *= c[k];
+                b[k] *= c[k];
+            }
+        } else if (c == null) {
+            //imaginary factor: (x + iy) * id = -yd + ixd
+            for (int k = from; k < to; k++) {
+                float x = a[k];
+                a[k] = -b[k] * d[k];
+                b[k] = x * d[k];
+            }
+        } else {
+            for (int k = from; k < to; k++) {
+                float x = a[k];
+                float y = b[k];
+                a[k] = x * c[k] - y * d[k];
+                b[k] = x * d[k] + y * c[k];
+            }
+        }
+    }
+
+    private static void divide(float[] a, float[] b, float[] c, float[] d, int from, int to) {
+        if (d == null) {
+            for (int k = from; k < to; k++) {
+                float inv = 1 / c[k];
+                a[k] *= inv;
+                b[k] *= inv;
+            }
+        } else if (c == null) {
+            //(x + iy) / id = y / d - ix / d
+            for (int k = from; k < to; k++) {
+                float inv = 1 / d[k];
+                float x = a[k];
+                a[k] = b[k] * inv;
+                b[k] = -x * inv;
+            }
+        } else {
+            for (int k = from; k < to; k++) {
+                float x = a[k];
+                float y = b[k];
+                float inv = 1 / (c[k] * c[k] + d[k] * d[k]);
+                a[k] = (x * c[k] + y * d[k]) * inv;
+                b[k] = (y * c[k] - x * d[k]) * inv;
+            }
+        }
+    }
+    // </editor-fold>
+
+    /**
+     * Splits the M x N pixels in blocks of whole rows and processes them in
+     * parallel. The calling thread takes the first block.
+     */
+    static void run(int M, int N, final Block block) {
+        int length = M * N;
+
+        if (length < PARALLEL_THRESHOLD || THREADS == 1) {
+            block.process(0, length);
+            return;
+        }
+
+        int blocks = Math.min(THREADS, N);
+        int rows = (N + blocks - 1) / blocks;
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        ExecutorService pool = getExecutor();
+
+        for (int row = rows; row < N; row += rows) {
+            final int from = row * M;
+            final int to = Math.min(N, row + rows) * M;
+
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    block.process(from, to);
+                    return null;
+                }
+            }));
+        }
+
+        block.process(0, Math.min(N, rows) * M);
+
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                private int count;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ComplexMath-" + count++);
+                    //never keeps ImageJ alive on exit
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    interface Block {
+
+        void process(int from, int to);
+    }
+}
@@ -0,0 +1,616 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Chunked, deflate compressed file holding the complex field of a batch of
+ * propagated planes. The volume is split in chunks of tile x tile samples and
+ * a few consecutive planes; each chunk is compressed on its own, so any plane
+ * or sub-volume is read by inflating only the chunks it touches.
+ * <p>
+ * Writing is streamed: planes are added as they are propagated and a chunk
+ * row is compressed and appended once its last plane arrives, so only
+ * planesPerChunk planes are kept in memory. The chunk index is written at the
+ * end of the file when the volume is closed.
+ * <p>
+ * Layout (little endian): a 64 bytes header (magic "NPCV", version, M, N,
+ * planes, tile, planesPerChunk, lambda, dx, dy, z0, dz, method, index
+ * offset), the compressed chunks and the index (offset and length of every
+ * chunk, plane chunk row major, then x tile, then y tile), followed for the
+ * automatic method by one byte per plane with the method it was propagated
+ * with (since version 2). Inside a chunk the
+ * (real, imaginary) float32 pairs follow the layout of Data, column by column
+ * and plane by plane; before deflating, the bytes of the floats are shuffled
+ * by significance, which makes the exponents compress much better.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class ComplexVolume {
+
+    public static final String EXTENSION = ".ncv";
+
+    private static final int MAGIC = 0x5643504E; //"NPCV" read as little endian
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+
+    //decompressed chunks kept by the reader
+    private static final int CACHE_SIZE = 16;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final boolean writing;
+
+    private final int M, N;
+    private final int tile, planesPerChunk;
+    private final int tilesX, tilesY;
+    private final float lambda, dx, dy, z0, dz;
+    private final int method;
+
+    private int planes;
+
+    //method of each plane of an automatic volume, null if the file doesn't
+    //have them
+    private byte[] planeMethods;
+
+    //chunk index
+    private long[] offsets;
+    private int[] lengths;
+
+    //writer: planes of the chunk row being filled
+    private float[][][] pending;
+    private int pendingCount;
+    private Deflater deflater;
+
+    //reader: decompressed chunks, least recently used first
+    private Map<Integer, float[]> cache;
+    private Inflater inflater;
+
+    private ComplexVolume(File file, RandomAccessFile raf, boolean writing, int M, int N,
+            int planes, int tile, int planesPerChunk, float lambda, float dx, float dy,
+            float z0, float dz, int method) {
+        this.file = file;
+        this.raf = raf;
+        this.writing = writing;
+        this.M = M;
+        this.N = N;
+        this.planes = planes;
+        this.tile = tile;
+        this.planesPerChunk = planesPerChunk;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z0 = z0;
+        this.dz = dz;
+        this.method = method;
+
+        tilesX = (M + tile - 1) / tile;
+        tilesY = (N + tile - 1) / tile;
+    }
+
+    /**
+     * Creates a volume to be filled with add(). The number of planes is given
+     * by the planes added before closing.
+     *
+     * @param file
+     * @param M
+     * @param N
+     * @param tile lateral size of the chunks
+     * @param planesPerChunk depth of the chunks
+     * @param level deflate level, 0 (none) to 9
+     * @param lambda
+     * @param dx pixel width: of the output window for Fresnel-Bluestein and
+     * zoom, of the input otherwise
+     * @param dy pixel height, as dx
+     * @param z0 distance of the first plane
+     * @param dz distance between planes
+     * @param method
+     * @return
+     * @throws IOException
+     */
+    public static ComplexVolume create(File file, int M, int N, int tile, int planesPerChunk,
+            int level, float lambda, float dx, float dy, float z0, float dz, int method)
+            throws IOException {
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(HEADER_SIZE);
+        raf.seek(HEADER_SIZE);
+
+        ComplexVolume volume = new ComplexVolume(file, raf, true, M, N, 0,
+                Math.max(1, Math.min(tile, Math.max(M, N))), Math.max(1, planesPerChunk),
+                lambda, dx, dy, z0, dz, method);
+
+        volume.pending = new float[volume.planesPerChunk][][];
+        volume.offsets = new long[0];
+        volume.lengths = new int[0];
+        volume.planeMethods = new byte[16];
+        volume.deflater = new Deflater(Math.max(0, Math.min(9, level)));
+
+        return volume;
+    }
+
+    /**
+     * Opens a volume for reading.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file isn't a complex volume
+     */
+    public static ComplexVolume open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                throw new IOException(file.getName() + " is not a complex volume file.");
+            }
+
+            ByteBuffer header = read(raf, 0, HEADER_SIZE);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a complex volume file.");
+            }
+            int version = header.getInt();
+            if (version > VERSION) {
+                throw new IOException(file.getName() + " was written by a newer version.");
+            }
+
+            int M = header.getInt();
+            int N = header.getInt();
+            int planes = header.getInt();
+            int tile = header.getInt();
+            int planesPerChunk = header.getInt();
+            float lambda = header.getFloat();
+            float dx = header.getFloat();
+            float dy = header.getFloat();
+            float z0 = header.getFloat();
+            float dz = header.getFloat();
+            int method = header.getInt();
+            long indexOffset = header.getLong();
+
+            if (indexOffset <= 0) {
+                throw new IOException(file.getName() + " wasn't closed properly.");
+            }
+
+            ComplexVolume volume = new ComplexVolume(file, raf, false, M, N, planes, tile,
+                    planesPerChunk, lambda, dx, dy, z0, dz, method);
+
+            int chunks = volume.chunkRows() * volume.tilesX * volume.tilesY;
+            ByteBuffer index = read(raf, indexOffset, 12 * chunks);
+
+            volume.offsets = new long[chunks];
+            volume.lengths = new int[chunks];
+            for (int c = 0; c < chunks; c++) {
+                volume.offsets[c] = index.getLong();
+                volume.lengths[c] = index.getInt();
+            }
+
+            if (version >= 2 && method == 3) {
+                volume.planeMethods = read(raf, indexOffset + 12L * chunks, planes).array();
+            }
+
+            volume.cache = new LinkedHashMap<Integer, float[]>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+            volume.inflater = new Inflater();
+
+            return volume;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a plane (M x 2N). The field is copied, so the caller can reuse
+     * it.
+     *
+     * @param field
+     * @param planeMethod for the automatic method, the one the plane was
+     * propagated with (PropagationPlanner.ANGULAR_SPECTRUM or FRESNEL);
+     * ignored by the other methods
+     * @throws IOException
+     */
+    public synchronized void add(float[][] field, int planeMethod) throws IOException {
+        if (!writing) {
+            throw new IllegalStateException("The volume was opened for reading.");
+        }
+
+        if (planes == planeMethods.length) {
+            planeMethods = Arrays.copyOf(planeMethods, 2 * planes);
+        }
+        planeMethods[planes] = (byte) planeMethod;
+
+        float[][] copy = pending[pendingCount];
+        if (copy == null) {
+            copy = new float[M][2 * N];
+            pending[pendingCount] = copy;
+        }
+        for (int i = 0; i < M; i++) {
+            System.arraycopy(field[i], 0, copy[i], 0, 2 * N);
+        }
+
+        pendingCount++;
+        planes++;
+
+        if (pendingCount == planesPerChunk) {
+            flush();
+        }
+    }
+
+    /**
+     * Finishes the volume (writing the pending planes and the index) or
+     * releases the file of a volume opened for reading.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        try {
+            if (writing) {
+                if (pendingCount > 0) {
+                    flush();
+                }
+
+                long indexOffset = raf.length();
+
+                ByteBuffer index = ByteBuffer.allocate(12 * offsets.length
+                        + (method == 3 ? planes : 0));
+                index.order(ByteOrder.LITTLE_ENDIAN);
+                for (int c = 0; c < offsets.length; c++) {
+                    index.putLong(offsets[c]);
+                    index.putInt(lengths[c]);
+                }
+                if (method == 3) {
+                    index.put(planeMethods, 0, planes);
+                }
+                raf.seek(indexOffset);
+                raf.write(index.array());
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(M);
+                header.putInt(N);
+                header.putInt(planes);
+                header.putInt(tile);
+                header.putInt(planesPerChunk);
+                header.putFloat(lambda);
+                header.putFloat(dx);
+                header.putFloat(dy);
+                header.putFloat(z0);
+                header.putFloat(dz);
+                header.putInt(method);
+                header.putLong(indexOffset);
+                raf.seek(0);
+                raf.write(header.array());
+
+                pending = null;
+                deflater.end();
+            } else {
+                inflater.end();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a plane.
+     *
+     * @param plane 0 based
+     * @return field (M x 2N)
+     * @throws IOException
+     */
+    public float[][] readPlane(int plane) throws IOException {
+        return readRegion(0, 0, plane, M, N, 1)[0];
+    }
+
+    /**
+     * Reads a sub-volume; only the chunks it touches are decompressed.
+     *
+     * @param x first column
+     * @param y first row
+     * @param plane first plane, 0 based
+     * @param width
+     * @param height
+     * @param depth number of planes
+     * @return fields (depth x width x 2 height)
+     * @throws IOException
+     */
+    public synchronized float[][][] readRegion(int x, int y, int plane, int width, int height,
+            int depth) throws IOException {
+
+        if (writing) {
+            throw new IllegalStateException("The volume is being written.");
+        }
+        if (x < 0 || y < 0 || plane < 0 || width < 1 || height < 1 || depth < 1
+                || x + width > M || y + height > N || plane + depth > planes) {
+            throw new IllegalArgumentException("The region is out of the volume.");
+        }
+
+        float[][][] region = new float[depth][width][2 * height];
+
+        for (int cz = plane / planesPerChunk; cz <= (plane + depth - 1) / planesPerChunk; cz++) {
+            for (int tx = x / tile; tx <= (x + width - 1) / tile; tx++) {
+                for (int ty = y / tile; ty <= (y + height - 1) / tile; ty++) {
+                    float[] chunk = chunk(cz, tx, ty);
+
+                    int w = tileWidth(tx);
+                    int h = tileHeight(ty);
+
+                    int p0 = Math.max(plane, cz * planesPerChunk);
+                    int p1 = Math.min(plane + depth, (cz + 1) * planesPerChunk);
+                    int i0 = Math.max(x, tx * tile);
+                    int i1 = Math.min(x + width, tx * tile + w);
+                    int j0 = Math.max(y, ty * tile);
+                    int j1 = Math.min(y + height, ty * tile + h);
+
+                    for (int p = p0; p < p1; p++) {
+                        int pc = p - cz * planesPerChunk;
+                        for (int i = i0; i < i1; i++) {
+                            int src = 2 * ((pc * w + (i - tx * tile)) * h + (j0 - ty * tile));
+                            System.arraycopy(chunk, src, region[p - plane][i - x],
+                                    2 * (j0 - y), 2 * (j1 - j0));
+                        }
+                    }
+                }
+            }
+        }
+
+        return region;
+    }
+
+    /**
+     * Compresses the pending planes as one chunk row.
+     */
+    private void flush() throws IOException {
+        int cz = offsets.length / (tilesX * tilesY);
+        int chunks = offsets.length + tilesX * tilesY;
+
+        long[] newOffsets = new long[chunks];
+        int[] newLengths = new int[chunks];
+        System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+        System.arraycopy(lengths, 0, newLengths, 0, lengths.length);
+
+        byte[] out = new byte[64 * 1024];
+
+        for (int tx = 0; tx < tilesX; tx++) {
+            for (int ty = 0; ty < tilesY; ty++) {
+                int w = tileWidth(tx);
+                int h = tileHeight(ty);
+
+                //the last chunk row can have fewer planes, it's padded with
+                //zeros so every chunk row has the same size
+                ByteBuffer raw = ByteBuffer.allocate(8 * planesPerChunk * w * h);
+                raw.order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int p = 0; p < pendingCount; p++) {
+                    float[][] field = pending[p];
+                    for (int i = tx * tile; i < tx * tile + w; i++) {
+                        for (int j = 2 * ty * tile; j < 2 * (ty * tile + h); j++) {
+                            raw.putFloat(field[i][j]);
+                        }
+                    }
+                }
+
+                byte[] shuffled = shuffle(raw.array());
+
+                deflater.reset();
+                deflater.setInput(shuffled);
+                deflater.finish();
+
+                long offset = raf.length();
+                raf.seek(offset);
+
+                int length = 0;
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(out);
+                    raf.write(out, 0, n);
+                    length += n;
+                }
+
+                int c = index(cz, tx, ty);
+                newOffsets[c] = offset;
+                newLengths[c] = length;
+            }
+        }
+
+        offsets = newOffsets;
+        lengths = newLengths;
+        pendingCount = 0;
+    }
+
+    /**
+     * Decompressed chunk, from the cache when possible.
+     */
+    private float[] chunk(int cz, int tx, int ty) throws IOException {
+        int c = index(cz, tx, ty);
+
+        float[] chunk = cache.get(c);
+        if (chunk != null) {
+            return chunk;
+        }
+
+        ByteBuffer compressed = read(raf, offsets[c], lengths[c]);
+
+        byte[] shuffled = new byte[8 * planesPerChunk * tileWidth(tx) * tileHeight(ty)];
+        inflater.reset();
+        inflater.setInput(compressed.array());
+        try {
+            int n = 0;
+            while (n < shuffled.length) {
+                int inflated = inflater.inflate(shuffled, n, shuffled.length - n);
+
+                //a truncated chunk runs out of input, or ends, before the
+                //whole tile is filled
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    throw new IOException("Truncated chunk in " + file.getName());
+                }
+                n += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted chunk in " + file.getName(), e);
+        }
+
+        ByteBuffer raw = ByteBuffer.wrap(unshuffle(shuffled));
+        raw.order(ByteOrder.LITTLE_ENDIAN);
+
+        chunk = new float[shuffled.length / 4];
+        raw.asFloatBuffer().get(chunk);
+
+        cache.put(c, chunk);
+        return chunk;
+    }
+
+    /**
+     * Groups byte k of every float together (k = 0..3).
+     */
+    private static byte[] shuffle(byte[] bytes) {
+        int n = bytes.length / 4;
+        byte[] shuffled = new byte[bytes.length];
+        for (int s = 0; s < n; s++) {
+            shuffled[s] = bytes[4 * s];
+            shuffled[n + s] = bytes[4 * s + 1];
+            shuffled[2 * n + s] = bytes[4 * s + 2];
+            shuffled[3 * n + s] = bytes[4 * s + 3];
+        }
+        return shuffled;
+    }
+
+    private static byte[] unshuffle(byte[] shuffled) {
+        int n = shuffled.length / 4;
+        byte[] bytes = new byte[shuffled.length];
+        for (int s = 0; s < n; s++) {
+            bytes[4 * s] = shuffled[s];
+            bytes[4 * s + 1] = shuffled[n + s];
+            bytes[4 * s + 2] = shuffled[2 * n + s];
+            bytes[4 * s + 3] = shuffled[3 * n + s];
+        }
+        return bytes;
+    }
+
+    private static ByteBuffer read(RandomAccessFile raf, long offset, int length)
+            throws IOException {
+        byte[] bytes = new byte[length];
+        raf.seek(offset);
+        raf.readFully(bytes);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private int index(int cz, int tx, int ty) {
+        return (cz * tilesX + tx) * tilesY + ty;
+    }
+
+    private int chunkRows() {
+        return (planes + planesPerChunk - 1) / planesPerChunk;
+    }
+
+    private int tileWidth(int tx) {
+        return Math.min(tile, M - tx * tile);
+    }
+
+    private int tileHeight(int ty) {
+        return Math.min(tile, N - ty * tile);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+    public File getFile() {
+        return file;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getPlanes() {
+        return planes;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    /**
+     * Pixel width of a plane. Fresnel outputs scale with z; for the automatic
+     * method the one the plane was propagated with is used, or for files
+     * written before it was stored, the plan of PropagationPlanner.
+     *
+     * @param plane 0 based
+     * @return
+     */
+    public float getDx(int plane) {
+        return isFresnel(plane) ? lambda * Math.abs(getZ(plane)) / (M * dx) : dx;
+    }
+
+    /**
+     * Pixel height of a plane, see getDx.
+     *
+     * @param plane 0 based
+     * @return
+     */
+    public float getDy(int plane) {
+        return isFresnel(plane) ? lambda * Math.abs(getZ(plane)) / (N * dy) : dy;
+    }
+
+    private boolean isFresnel(int plane) {
+        if (method != 3) {
+            return method == 1;
+        }
+
+        int planeMethod = planeMethods != null ? planeMethods[plane]
+                : PropagationPlanner.plan(M, N, lambda, getZ(plane), dx, dy).getMethod();
+        return planeMethod == PropagationPlanner.FRESNEL;
+    }
+
+    /**
+     * Distance of a plane.
+     *
+     * @param plane 0 based
+     * @return
+     */
+    public float getZ(int plane) {
+        return z0 + plane * dz;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.IJ;
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.VirtualStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.io.IOException;
+
+/**
+ * Virtual stack over a complex volume. Each slice is decompressed and
+ * converted to the selected quantity only when ImageJ asks for it, so
+ * volumes much larger than the memory can be browsed. The volume stays open
+ * until the image showing the stack is closed.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class ComplexVolumeStack extends VirtualStack implements ImageListener {
+
+    public static final String[] QUANTITIES = {"Phase", "Amplitude", "Intensity", "Real",
+        "Imaginary"};
+
+    private final ComplexVolume volume;
+    private final int quantity;
+    private final String[] labels;
+
+    //image showing the stack, the volume is closed with it
+    private ImagePlus imp;
+
+    /**
+     * Creates the stack.
+     *
+     * @param volume opened for reading
+     * @param quantity index of QUANTITIES
+     * @param labels slice labels, can be null
+     */
+    public ComplexVolumeStack(ComplexVolume volume, int quantity, String[] labels) {
+        super(volume.getM(), volume.getN(), null, null);
+        this.volume = volume;
+        this.quantity = quantity;
+        this.labels = labels;
+    }
+
+    /**
+     * Closes the volume when the given image, which shows this stack, is
+     * closed.
+     *
+     * @param imp
+     */
+    public void closeWith(ImagePlus imp) {
+        this.imp = imp;
+        ImagePlus.addImageListener(this);
+    }
+
+    @Override
+    public void imageOpened(ImagePlus imp) {
+    }
+
+    @Override
+    public void imageClosed(ImagePlus imp) {
+        if (imp != this.imp) {
+            return;
+        }
+
+        ImagePlus.removeImageListener(this);
+        this.imp = null;
+
+        try {
+            volume.close();
+        } catch (IOException e) {
+            IJ.log("Complex volume: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void imageUpdated(ImagePlus imp) {
+    }
+
+    @Override
+    public ImageProcessor getProcessor(int n) {
+        int M = volume.getM();
+        int N = volume.getN();
+        float[] pixels = new float[M * N];
+
+        float[][] field;
+        try {
+            field = volume.readPlane(n - 1);
+        } catch (IOException e) {
+            IJ.log("Complex volume: " + e.getMessage());
+            return new FloatProcessor(M, N, pixels);
+        }
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                float re = field[i][2 * j];
+                float im = field[i][2 * j + 1];
+                float value;
+
+                switch (quantity) {
+                    case 0:
+                        value = (float) Math.atan2(im, re);
+                        break;
+                    case 1:
+                        value = (float) Math.sqrt(re * re + im * im);
+                        break;
+                    case 2:
+                        value = re * re + im * im;
+                        break;
+                    case 3:
+                        value = re;
+                        break;
+                    default:
+                        value = im;
+                        break;
+                }
+
+                pixels[j * M + i] = value;
+            }
+        }
+
+        return new FloatProcessor(M, N, pixels);
+    }
+
+    @Override
+    public Object getPixels(int n) {
+        return getProcessor(n).getPixels();
+    }
+
+    @Override
+    public void setPixels(Object pixels, int n) {
+    }
+
+    @Override
+    public int getSize() {
+        return volume.getPlanes();
+    }
+
+    @Override
+    public int size() {
+        return getSize();
+    }
+
+    @Override
+    public String getSliceLabel(int n) {
+        return labels == null ? null : labels[n - 1];
+    }
+
+    @Override
+    public int getBitDepth() {
+        return 32;
+    }
+}
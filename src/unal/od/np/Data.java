@@ -15,6 +15,9 @@
  */
 package unal.od.np;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 import org.jtransforms.fft.FloatFFT_2D;
 import unal.od.jdiffraction.cpu.FloatAngularSpectrum;
 import unal.od.jdiffraction.cpu.FloatFresnelBluestein;
@@ -32,7 +35,11 @@ public class Data {
 
     private static Data INSTANCE = null;
 
-    private Data() {
+    /**
+     * Creates a private instance, for tools that must not change the state
+     * of the main window. Everything else uses getInstance.
+     */
+    Data() {
     }
 
     private synchronized static void createInstance() {
@@ -50,6 +57,9 @@ public class Data {
 
     private float outputW, outputH;
     private float lambda, z, dx, dy, dxOut, dyOut;
+    private float zoomX0, zoomY0;
+    //samples of the zoom window, 0 keeps the ones of the input
+    private int zoomM, zoomN;
     private int M, N;
 
     private int x, y, w, h;
@@ -62,35 +72,125 @@ public class Data {
     private float curvRadius;
     private float[][] sphericalWave;
 
+    //aberration compensation of the filtered field, see AberrationCompensator
+    private int compensation;
+    private double[] aberration;
+
+    //spherical wave times the aberration correction, and the field, wave and
+    //terms it was built for
+    private float[][] illumination;
+    private float[][] illuminationInput, illuminationWave;
+    private int illuminationTerms;
+
+    //window applied before propagating, see Apodization
+    private int apodization;
+    private float apodizationTaper;
+    private float[] windowX, windowY;
+
+    //array handed over by takeOutputField for the next propagation, null if
+    //it must make a new one
+    private float[][] buffer;
+
+    //spectrum of the input for the z steps, dropped when the input changes
+    private SpectrumPropagator stepper;
+    private boolean stepperFiltered, stepperPlane;
+    private float stepperRadius;
+
 //    private boolean filtered = false;
     private FloatFFT_2D fft;
 
     private FloatPropagator propagator;
+    //plan of the automatic method at the last distance it was asked for
+    private volatile PropagationPlanner.Plan plan;
+    private long duration;
+    private FloatAngularSpectrumZoom zoomPropagator;
+
+    private PhaseUnwrapper unwrapper;
+
+    //held while the spectrum, the filtered field, the working buffer or the
+    //propagators are in use, see isBusy
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Returns true while another thread is transforming, filtering or
+     * propagating the field, e.g. the full resolution propagation that
+     * follows a preview. The frames that use the shared state check it before
+     * starting, so they don't block the event dispatch thread or work on a
+     * half updated field.
+     *
+     * @return
+     */
+    public boolean isBusy() {
+        return lock.isLocked() && !lock.isHeldByCurrentThread();
+    }
 
     public void calculateFFT() {
-        fft = new FloatFFT_2D(M, N);
+        lock.lock();
+        try {
+            stepper = null;
+            fft = new FloatFFT_2D(M, N);
 
-        fft.complexForward(field);
-        ArrayUtils.complexShift(field);
+            fft.complexForward(field);
+            ArrayUtils.complexShift(field);
 
-        imageSpectrum = ArrayUtils.modulus(field);
+            imageSpectrum = ArrayUtils.modulus(field);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void center() {
-        if (mask == null) {
-            center(x, y, w, h);
-            return;
+        lock.lock();
+        try {
+            stepper = null;
+            filteredField = centerSpectrum(field);
+
+            ArrayUtils.complexShift(filteredField);
+            fft.complexInverse(filteredField, true);
+
+//            for (int i = 0; i < M; i++) {
+//                System.arraycopy(filteredField[i], 0, field[i], 0, filteredField[i].length);
+//            }
+        } finally {
+            lock.unlock();
         }
+    }
 
-        filteredField = new float[M][2 * N];
+    /**
+     * Filters a centered spectrum with the current ROI, returning the filtered
+     * field in the spatial domain. The spectrum must have the dimensions of the
+     * input field. Useful to apply the same spatial filtering to several
+     * holograms, e.g. the channels of a multi-wavelength hologram.
+     *
+     * @param spectrum
+     * @param fft
+     * @return filtered field
+     */
+    public float[][] filter(float[][] spectrum, FloatFFT_2D fft) {
+        float[][] filtered = centerSpectrum(spectrum);
 
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                filteredField[i][2 * j] = 0;
-                filteredField[i][2 * j + 1] = 0;
-            }
+        ArrayUtils.complexShift(filtered);
+        fft.complexInverse(filtered, true);
+
+        return filtered;
+    }
+
+    /**
+     * Returns true if a ROI has been set for the spatial filtering.
+     *
+     * @return
+     */
+    public boolean hasROI() {
+        return w > 0 && h > 0;
+    }
+
+    private float[][] centerSpectrum(float[][] spectrum) {
+        if (mask == null) {
+            return centerSpectrum(spectrum, x, y, w, h);
         }
 
+        float[][] centered = new float[M][2 * N];
+
         int a = (M - w - 2 * x) / 2;
         int b = (N - h - 2 * y) / 2;
         int i2 = 0;
@@ -99,93 +199,549 @@ public class Data {
             int j2 = 0;
             for (int j = y; j < y + h; j++) {
                 if (mask[i2][j2] != 0) {
-                    filteredField[i + a][2 * (j + b)] = field[i][2 * j];
-                    filteredField[i + a][2 * (j + b) + 1] = field[i][2 * j + 1];
+                    centered[i + a][2 * (j + b)] = spectrum[i][2 * j];
+                    centered[i + a][2 * (j + b) + 1] = spectrum[i][2 * j + 1];
                 }
                 j2++;
             }
             i2++;
         }
 
-        ArrayUtils.complexShift(filteredField);
-        fft.complexInverse(filteredField, true);
-
-//        for (int i = 0; i < M; i++) {
-//            System.arraycopy(filteredField[i], 0, field[i], 0, filteredField[i].length);
-//        }
+        return centered;
     }
 
-    private void center(int x, int y, int width, int height) {
-        filteredField = new float[M][2 * N];
-
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                filteredField[i][2 * j] = 0;
-                filteredField[i][2 * j + 1] = 0;
-            }
-        }
+    private float[][] centerSpectrum(float[][] spectrum, int x, int y, int width, int height) {
+        float[][] centered = new float[M][2 * N];
 
         int a = (M - width - 2 * x) / 2;
         int b = (N - height - 2 * y) / 2;
         for (int i = x; i < x + width - 1; i++) {
             for (int j = y; j < y + height - 1; j++) {
-                filteredField[i + a][2 * (j + b)] = field[i][2 * j];
-                filteredField[i + a][2 * (j + b) + 1] = field[i][2 * j + 1];
+                centered[i + a][2 * (j + b)] = spectrum[i][2 * j];
+                centered[i + a][2 * (j + b) + 1] = spectrum[i][2 * j + 1];
             }
         }
 
-        ArrayUtils.complexShift(filteredField);
-        fft.complexInverse(filteredField, true);
-
-//        for (int i = 0; i < M; i++) {
-//            System.arraycopy(filteredImage[i], 0, field[i], 0, filteredImage[i].length);
-//        }
+        return centered;
     }
 
     public void propagate(int idx, boolean filtered, boolean isPlane, float curvRadius) {
-        switch (idx) {
-            case 0:
-                propagator = new FloatAngularSpectrum(M, N, lambda, z, dx, dy);
-                break;
-            case 1:
-                propagator = new FloatFresnelFourier(M, N, lambda, z, dx, dy);
-                break;
-            case 2:
-                propagator = new FloatFresnelBluestein(M, N, lambda, z, dx, dy, dxOut, dyOut);
-                break;
-            case 3:
-                float zCrit = M * dx * dx / lambda;
-                if (Math.abs(z) < zCrit) {
+        lock.lock();
+        try {
+            //grid of the kernel, padded by the automatic angular spectrum
+            int P = M;
+            int Q = N;
+
+            switch (idx) {
+                case 0:
                     propagator = new FloatAngularSpectrum(M, N, lambda, z, dx, dy);
-                } else {
+                    break;
+                case 1:
                     propagator = new FloatFresnelFourier(M, N, lambda, z, dx, dy);
+                    break;
+                case 2:
+                    propagator = new FloatFresnelBluestein(M, N, lambda, z, dx, dy, dxOut, dyOut);
+                    break;
+                case 3:
+                    PropagationPlanner.Plan auto = getPlan();
+                    if (auto.getMethod() == PropagationPlanner.ANGULAR_SPECTRUM) {
+                        P = auto.getPaddedM();
+                        Q = auto.getPaddedN();
+                        propagator = new FloatAngularSpectrum(P, Q, lambda, z, dx, dy);
+                    } else {
+                        propagator = new FloatFresnelFourier(M, N, lambda, z, dx, dy);
+                    }
+                    break;
+                case 4:
+                    //the cost of the chirp-z transforms follows the samples of
+                    //the window, not the ones of the input
+                    zoomPropagator = new FloatAngularSpectrumZoom(M, N, lambda, z, dx, dy,
+                            getZoomM(), getZoomN(), getZoomDx(), getZoomDy(), zoomX0, zoomY0);
+                    break;
+            }
+
+            //only an array handed over by takeOutputField is written into, the
+            //ones returned by getOutputField are never overwritten
+            float[][] out = buffer != null && buffer.length == M && buffer[0].length == 2 * N
+                    ? buffer : null;
+            buffer = null;
+
+            float[][] prepared = prepareInput(filtered, isPlane, curvRadius, out);
+
+            long start = System.nanoTime();
+
+            if (idx == 4) {
+                outputField = zoomPropagator.diffract(prepared);
+            } else if (P != M || Q != N) {
+                float[][] padded = pad(prepared, P, Q);
+                propagator.diffract(padded);
+                crop(padded, prepared);
+                outputField = prepared;
+            } else {
+                propagator.diffract(prepared);
+                outputField = prepared;
+            }
+
+            duration = System.nanoTime() - start;
+
+            //the kernels of the automatic method calibrate its cost model
+            if (idx <= 1 || idx == 3) {
+                PropagationPlanner.record(idx == 3 ? getPlan().getMethod() : idx, P, Q, duration);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if propagateStep can be used for the method at the
+     * current distance: angular spectrum, chosen or automatic.
+     *
+     * @param idx
+     * @return
+     */
+    public boolean canStep(int idx) {
+        return idx == 0 || (idx == 3
+                && getPlan().getMethod() == PropagationPlanner.ANGULAR_SPECTRUM);
+    }
+
+    /**
+     * Angular spectrum propagation to the current distance stepping from the
+     * plane of the last call, see SpectrumPropagator.step. The spectrum of
+     * the input is kept until the input, its filtering, illumination or
+     * window change, so consecutive distances cost a complex product and an
+     * inverse FFT. The automatic method steps on its padded grid, which is
+     * only rebuilt when the planned one gets larger. Only valid when canStep
+     * is true.
+     *
+     * @param idx
+     * @param dz step from the last plane, as set by the user; the transfer
+     * function of the step is kept while it doesn't change
+     * @param filtered
+     * @param isPlane
+     * @param curvRadius
+     */
+    public void propagateStep(int idx, float dz, boolean filtered, boolean isPlane,
+            float curvRadius) {
+        lock.lock();
+        try {
+            int P = M;
+            int Q = N;
+            if (idx == 3) {
+                P = getPlan().getPaddedM();
+                Q = getPlan().getPaddedN();
+            }
+
+            //a larger grid than the planned one is still unaliased
+            boolean sized = stepper != null && (idx == 3
+                    ? stepper.getM() >= P && stepper.getN() >= Q
+                    : stepper.getM() == M && stepper.getN() == N);
+
+            if (!sized || stepper.getLambda() != lambda || stepper.getDx() != dx
+                    || stepper.getDy() != dy || stepperFiltered != filtered
+                    || stepperPlane != isPlane || stepperRadius != curvRadius) {
+
+                float[][] input = prepareInput(filtered, isPlane, curvRadius, null);
+                if (P != M || Q != N) {
+                    input = pad(input, P, Q);
                 }
-                break;
+
+                stepper = new SpectrumPropagator(input, lambda, dx, dy);
+                stepperFiltered = filtered;
+                stepperPlane = isPlane;
+                stepperRadius = curvRadius;
+            }
+
+            long start = System.nanoTime();
+            float[][] stepped = stepper.step(z, dz);
+            if (stepper.getM() != M || stepper.getN() != N) {
+                float[][] cropped = new float[M][2 * N];
+                crop(stepped, cropped);
+                stepped = cropped;
+            }
+            outputField = stepped;
+            duration = System.nanoTime() - start;
+        } finally {
+            lock.unlock();
         }
+    }
+
+    /**
+     * Propagates a decimated version of the field, for a quick preview of a
+     * full resolution propagation with the same parameters. Each factor x
+     * factor block is averaged into one sample, so the field has factor times
+     * larger pixels and the kernel is built for them. The choice of method 3
+     * is made as in the full resolution, and the state used by the main
+     * window isn't modified.
+     *
+     * @param idx
+     * @param filtered
+     * @param isPlane
+     * @param curvRadius
+     * @param factor decimation factor
+     * @return (M / factor) x 2(N / factor) output field, of the zoom window
+     * samples over factor for the zoom, null if there is no input
+     */
+    public float[][] propagatePreview(int idx, boolean filtered, boolean isPlane,
+            float curvRadius, int factor) {
 
-        outputField = new float[M][2 * N];
+        lock.lock();
+        try {
+            float[][] input = filtered ? filteredField : field;
+            if (input == null) {
+                return null;
+            }
 
-        if (filtered) {
-            if (isPlane) {
-                for (int i = 0; i < M; i++) {
-                    System.arraycopy(filteredField[i], 0, outputField[i], 0, 2 * N);
+            int m = M / factor;
+            int n = N / factor;
+            float dxp = dx * factor;
+            float dyp = dy * factor;
+            float area = factor * factor;
+
+            float[][] preview = new float[m][2 * n];
+            for (int i = 0; i < m * factor; i++) {
+                float[] row = preview[i / factor];
+                for (int j = 0; j < n * factor; j++) {
+                    int jp = 2 * (j / factor);
+                    row[jp] += input[i][2 * j] / area;
+                    row[jp + 1] += input[i][2 * j + 1] / area;
                 }
-            } else {
-                calculateSphericalWave(curvRadius);
-                outputField = ArrayUtils.complexMultiplication(filteredField, sphericalWave);
             }
-        } else {
-            if (isPlane) {
-                for (int i = 0; i < M; i++) {
-                    System.arraycopy(field[i], 0, outputField[i], 0, 2 * N);
+
+            float[][] wave = isPlane ? null : sphericalWave(m, n, lambda, dxp, dyp, curvRadius);
+
+            int terms = filtered ? compensation : 0;
+            if (terms != 0) {
+                //fitted at full resolution, where it's reused by the propagation
+                calculateIllumination(input, isPlane, curvRadius, terms);
+
+                //coefficients per coarse pixel
+                double f = factor;
+                double[] scaled = new double[]{aberration[0] * f, aberration[1] * f,
+                    aberration[2] * f * f, aberration[3] * f * f, aberration[4] * f * f};
+                wave = AberrationCompensator.correct(wave, scaled, terms, m, n);
+            }
+
+            if (wave != null) {
+                preview = ArrayUtils.complexMultiplication(preview, wave);
+            }
+
+            if (apodization != Apodization.NONE) {
+                float[] wx = Apodization.window(m, apodization, apodizationTaper);
+                float[] wy = Apodization.window(n, apodization, apodizationTaper);
+                for (int i = 0; i < m; i++) {
+                    for (int j = 0; j < n; j++) {
+                        preview[i][2 * j] *= wx[i] * wy[j];
+                        preview[i][2 * j + 1] *= wx[i] * wy[j];
+                    }
+                }
+            }
+
+            if (idx == 3) {
+                idx = getPlan().getMethod();
+            }
+
+            switch (idx) {
+                case 0:
+                    new FloatAngularSpectrum(m, n, lambda, z, dxp, dyp).diffract(preview);
+                    break;
+                case 1:
+                    new FloatFresnelFourier(m, n, lambda, z, dxp, dyp).diffract(preview);
+                    break;
+                case 2:
+                    new FloatFresnelBluestein(m, n, lambda, z, dxp, dyp, dxOut * factor,
+                            dyOut * factor).diffract(preview);
+                    break;
+                case 4:
+                    int p = Math.max(1, getZoomM() / factor);
+                    int q = Math.max(1, getZoomN() / factor);
+                    preview = new FloatAngularSpectrumZoom(m, n, lambda, z, dxp, dyp, p, q,
+                            Math.abs(outputW) / p, Math.abs(outputH) / q, zoomX0, zoomY0)
+                            .diffract(preview);
+                    break;
+            }
+
+            return preview;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the field that is propagated: the input field, or its filtered
+     * version, times the illumination and the apodization window. When the
+     * field is filtered the illumination includes the aberration correction,
+     * if enabled. A new array is returned each time.
+     *
+     * @param filtered
+     * @param isPlane
+     * @param curvRadius
+     * @return M x 2N field, null if there is no input or it hasn't been
+     * filtered yet
+     */
+    public float[][] getInputField(boolean filtered, boolean isPlane, float curvRadius) {
+        lock.lock();
+        try {
+            return prepareInput(filtered, isPlane, curvRadius, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the field to propagate into out in a single pass: a copy of the
+     * input for plane illumination without compensation, otherwise the
+     * product of the input and the cached illumination, in both cases times
+     * the window if apodization is enabled.
+     *
+     * @param filtered
+     * @param isPlane
+     * @param curvRadius
+     * @param out M x 2N array, a new one is created if null
+     * @return out, null if there is no input
+     */
+    private float[][] prepareInput(boolean filtered, boolean isPlane, float curvRadius,
+            float[][] out) {
+
+        float[][] input = filtered ? filteredField : field;
+        if (input == null) {
+            return null;
+        }
+
+        float[][] wave = null;
+        int terms = filtered ? compensation : 0;
+        if (terms != 0) {
+            calculateIllumination(input, isPlane, curvRadius, terms);
+            wave = illumination;
+        } else if (!isPlane) {
+            calculateSphericalWave(curvRadius);
+            wave = sphericalWave;
+        }
+
+        calculateWindows();
+
+        if (out == null) {
+            out = new float[M][2 * N];
+        }
+
+        for (int i = 0; i < M; i++) {
+            float[] in = input[i];
+            float[] o = out[i];
+
+            if (wave == null && windowX == null) {
+                System.arraycopy(in, 0, o, 0, 2 * N);
+                continue;
+            }
+
+            float[] w = wave == null ? null : wave[i];
+            float wx = windowX == null ? 1 : windowX[i];
+
+            for (int j = 0; j < N; j++) {
+                float s = windowX == null ? 1 : wx * windowY[j];
+                float re = s * in[2 * j];
+                float im = s * in[2 * j + 1];
+
+                if (w == null) {
+                    o[2 * j] = re;
+                    o[2 * j + 1] = im;
+                } else {
+                    o[2 * j] = re * w[2 * j] - im * w[2 * j + 1];
+                    o[2 * j + 1] = re * w[2 * j + 1] + im * w[2 * j];
                 }
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Builds the apodization windows for the current size, null if disabled.
+     */
+    private void calculateWindows() {
+        if (apodization == Apodization.NONE) {
+            windowX = null;
+            windowY = null;
+            return;
+        }
+
+        if (windowX != null && windowX.length == M && windowY.length == N) {
+            return;
+        }
+
+        windowX = Apodization.window(M, apodization, apodizationTaper);
+        windowY = Apodization.window(N, apodization, apodizationTaper);
+    }
+
+    /**
+     * Padding that avoids the wrap-around of a propagation with the current
+     * parameters, taking the apodization and, for filtered fields, the
+     * bandwidth of the filter into account. Fresnel methods don't convolve
+     * and need none, and the automatic method already pads its angular
+     * spectrum.
+     *
+     * @param idx propagation method
+     * @param filtered
+     * @return samples to add along each axis
+     */
+    public int[] getGuardBand(int idx, boolean filtered) {
+        if (idx != 0 && idx != 4) {
+            return new int[]{0, 0};
+        }
+
+        float bandwidthX = 1;
+        float bandwidthY = 1;
+        if (filtered && hasROI()) {
+            bandwidthX = Math.min(1, (float) w / M);
+            bandwidthY = Math.min(1, (float) h / N);
+        }
+
+        return new int[]{
+            Apodization.guardBand(M, lambda, z, dx, bandwidthX,
+            Apodization.taperedSamples(M, apodization, apodizationTaper)),
+            Apodization.guardBand(N, lambda, z, dy, bandwidthY,
+            Apodization.taperedSamples(N, apodization, apodizationTaper))
+        };
+    }
+
+    /**
+     * Propagates a field stored on a complex field file and writes the result
+     * to another one. The field is read from the mapped input straight into
+     * the working array and written from it into the mapped output, so no
+     * real and imaginary images are created. Wavelength and pixel size come
+     * from the header of the input. The state used by the main window
+     * (input, filtering and last output) isn't modified. Fields above the 32
+     * bit array limits are propagated off the heap, see OffHeapField.
+     *
+     * @param input
+     * @param output
+     * @param idx 0 angular spectrum, 1 Fresnel, 3 automatic
+     * @param z propagation distance
+     * @return the written file
+     * @throws IOException
+     */
+    public ComplexFile propagate(ComplexFile input, File output, int idx, float z)
+            throws IOException {
+
+        int M = input.getM();
+        int N = input.getN();
+        float lambda = input.getLambda();
+        float dx = input.getDx();
+        float dy = input.getDy();
+
+        //grid of the kernel, padded by the automatic angular spectrum on the
+        //heap; off the heap the field is already too large to pad
+        int P = M;
+        int Q = N;
+        if (idx == 3) {
+            PropagationPlanner.Plan filePlan = PropagationPlanner.plan(M, N, lambda, z, dx, dy);
+            idx = filePlan.getMethod();
+            P = filePlan.getPaddedM();
+            Q = filePlan.getPaddedN();
+        }
+
+        float dxOutput = dx;
+        float dyOutput = dy;
+
+        if (OffHeapField.isRequired(M, N)) {
+            OffHeapField large = new OffHeapField(M, N);
+            input.read(large);
+
+            if (idx == 0) {
+                large.angularSpectrum(lambda, z, dx, dy);
             } else {
-                calculateSphericalWave(curvRadius);
-                outputField = ArrayUtils.complexMultiplication(field, sphericalWave);
+                large.fresnel(lambda, z, dx, dy);
+                dxOutput = lambda * Math.abs(z) / (M * dx);
+                dyOutput = lambda * Math.abs(z) / (N * dy);
             }
+
+            ComplexFile file = new ComplexFile(output, M, N, lambda, dxOutput, dyOutput,
+                    input.getZ() + z, idx);
+            file.write(large);
+
+            return file;
+        }
+
+        float[][] buffer = new float[M][2 * N];
+        input.read(buffer);
+
+        if (idx == 0 && (P != M || Q != N)) {
+            float[][] padded = pad(buffer, P, Q);
+            new FloatAngularSpectrum(P, Q, lambda, z, dx, dy).diffract(padded);
+            crop(padded, buffer);
+        } else if (idx == 0) {
+            new FloatAngularSpectrum(M, N, lambda, z, dx, dy).diffract(buffer);
+        } else {
+            new FloatFresnelFourier(M, N, lambda, z, dx, dy).diffract(buffer);
+            dxOutput = lambda * Math.abs(z) / (M * dx);
+            dyOutput = lambda * Math.abs(z) / (N * dy);
+        }
+
+        ComplexFile file = new ComplexFile(output, M, N, lambda, dxOutput, dyOutput,
+                input.getZ() + z, idx);
+        file.write(buffer);
+
+        return file;
+    }
+
+    /**
+     * Copies a field into the center of a zero P x Q one.
+     */
+    static float[][] pad(float[][] field, int P, int Q) {
+        int M = field.length;
+        int N = field[0].length / 2;
+        int a = (P - M) / 2;
+        int b = (Q - N) / 2;
+
+        float[][] padded = new float[P][2 * Q];
+        for (int i = 0; i < M; i++) {
+            System.arraycopy(field[i], 0, padded[i + a], 2 * b, 2 * N);
+        }
+
+        return padded;
+    }
+
+    /**
+     * Copies the center of a padded field into field, see pad.
+     */
+    static void crop(float[][] padded, float[][] field) {
+        int M = field.length;
+        int N = field[0].length / 2;
+        int a = (padded.length - M) / 2;
+        int b = (padded[0].length / 2 - N) / 2;
+
+        for (int i = 0; i < M; i++) {
+            System.arraycopy(padded[i + a], 2 * b, field[i], 0, 2 * N);
+        }
+    }
+
+    /**
+     * Fits the aberrations of the illuminated input and builds the illumination
+     * with their correction. Both are kept until the input, the spherical wave
+     * or the terms change.
+     */
+    private void calculateIllumination(float[][] input, boolean isPlane, float curvRadius,
+            int terms) {
+
+        float[][] wave = null;
+        if (!isPlane) {
+            calculateSphericalWave(curvRadius);
+            wave = sphericalWave;
         }
 
-        propagator.diffract(outputField);
+        if (illumination != null && illuminationInput == input && illuminationWave == wave
+                && illuminationTerms == terms) {
+            return;
+        }
+
+        float[][] illuminated = wave == null ? input
+                : ArrayUtils.complexMultiplication(input, wave);
+
+        aberration = AberrationCompensator.fit(illuminated, M, N);
+        illumination = AberrationCompensator.correct(wave, aberration, terms, M, N);
+
+        illuminationInput = input;
+        illuminationWave = wave;
+        illuminationTerms = terms;
     }
 
     private void calculateSphericalWave(float curvRadius) {
@@ -194,8 +750,26 @@ public class Data {
             return;
         }
 
-        sphericalWave = new float[M][2 * N];
+        sphericalWave = sphericalWave(M, N, lambda, dx, dy, curvRadius);
         this.curvRadius = curvRadius;
+    }
+
+    /**
+     * Spherical illumination of an M x N field with the given radius of
+     * curvature.
+     *
+     * @param M
+     * @param N
+     * @param lambda
+     * @param dx
+     * @param dy
+     * @param curvRadius
+     * @return M x 2N complex wave
+     */
+    static float[][] sphericalWave(int M, int N, float lambda, float dx, float dy,
+            float curvRadius) {
+
+        float[][] sphericalWave = new float[M][2 * N];
 
         int M2 = M / 2;
         int N2 = N / 2;
@@ -218,6 +792,8 @@ public class Data {
                 sphericalWave[i][2 * j + 1] = (float) Math.sin(phase) / r;
             }
         }
+
+        return sphericalWave;
     }
 
     // <editor-fold defaultstate="collapsed" desc="Setters and getters">
@@ -250,6 +826,67 @@ public class Data {
         dy = inputH / N;
     }
 
+    /**
+     * Sets the center of the output window used by the zoom method, measured
+     * from the center of the input field.
+     *
+     * @param x0
+     * @param y0
+     */
+    public void setZoomCenter(float x0, float y0) {
+        zoomX0 = x0;
+        zoomY0 = y0;
+    }
+
+    /**
+     * Sets the number of samples of the zoom window. The window size is the
+     * output width and height, so its pixel size is the size over the
+     * samples.
+     *
+     * @param M output width in pixels, 0 for the width of the input
+     * @param N output height in pixels, 0 for the height of the input
+     */
+    public void setZoomSamples(int M, int N) {
+        zoomM = M;
+        zoomN = N;
+    }
+
+    /**
+     * Output width of the zoom, in pixels.
+     *
+     * @return
+     */
+    public int getZoomM() {
+        return zoomM > 0 ? zoomM : M;
+    }
+
+    /**
+     * Output height of the zoom, in pixels.
+     *
+     * @return
+     */
+    public int getZoomN() {
+        return zoomN > 0 ? zoomN : N;
+    }
+
+    /**
+     * Pixel width of the zoom window.
+     *
+     * @return
+     */
+    public float getZoomDx() {
+        return Math.abs(outputW) / getZoomM();
+    }
+
+    /**
+     * Pixel height of the zoom window.
+     *
+     * @return
+     */
+    public float getZoomDy() {
+        return Math.abs(outputH) / getZoomN();
+    }
+
     public void setDistance(float z, boolean fb) {
         this.z = z;
 
@@ -261,9 +898,17 @@ public class Data {
     }
 
     public void setInputImages(int M, int N, float[][] inputReal, float[][] inputImaginary) {
-        this.M = M;
-        this.N = N;
-        field = ArrayUtils.complexAmplitude2(inputReal, inputImaginary);
+        float[][] input = ArrayUtils.complexAmplitude2(inputReal, inputImaginary);
+
+        lock.lock();
+        try {
+            stepper = null;
+            this.M = M;
+            this.N = N;
+            field = input;
+        } finally {
+            lock.unlock();
+        }
 
         /*
          if (inputReal != null && inputImaginary != null) {
@@ -313,6 +958,36 @@ public class Data {
         return z;
     }
 
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+    /**
+     * Pixel width of the output window of Fresnel-Bluestein.
+     *
+     * @return
+     */
+    public float getOutputDx() {
+        return Math.abs(dxOut);
+    }
+
+    /**
+     * Pixel height of the output window of Fresnel-Bluestein.
+     *
+     * @return
+     */
+    public float getOutputDy() {
+        return Math.abs(dyOut);
+    }
+
     public int getM() {
         return M;
     }
@@ -325,8 +1000,138 @@ public class Data {
         return imageSpectrum;
     }
 
+    /**
+     * Sets the aberrations compensated on filtered fields.
+     *
+     * @param terms AberrationCompensator.TILT, QUADRATIC, both or 0 for none
+     */
+    public void setCompensation(int terms) {
+        lock.lock();
+        try {
+            if (terms != compensation) {
+                stepper = null;
+            }
+            compensation = terms;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCompensation() {
+        return compensation;
+    }
+
+    /**
+     * Returns the coefficients of the last aberration fit, null if no fit was
+     * made.
+     *
+     * @return
+     */
+    public double[] getAberration() {
+        return aberration;
+    }
+
+    /**
+     * Sets the window applied to the field before propagating.
+     *
+     * @param type Apodization.NONE, TUKEY, HANN or SUPER_GAUSSIAN
+     * @param taper fraction of each side that is tapered, at most 0.45
+     */
+    public void setApodization(int type, float taper) {
+        lock.lock();
+        try {
+            taper = Math.max(0, Math.min(0.45f, taper));
+            if (type != apodization || taper != apodizationTaper) {
+                windowX = null;
+                windowY = null;
+                stepper = null;
+            }
+
+            apodization = type;
+            apodizationTaper = taper;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getApodization() {
+        return apodization;
+    }
+
+    public float getApodizationTaper() {
+        return apodizationTaper;
+    }
+
+    /**
+     * Plan of the automatic method at the current distance. It's made once
+     * for each set of parameters and kept, so the propagation, the stepping,
+     * the preview and the calibration of a plane follow the same choice.
+     *
+     * @return
+     */
+    public PropagationPlanner.Plan getPlan() {
+        PropagationPlanner.Plan current = plan;
+        if (current == null || !current.isFor(M, N, lambda, z, dx, dy)) {
+            current = PropagationPlanner.plan(M, N, lambda, z, dx, dy);
+            plan = current;
+        }
+        return current;
+    }
+
+    /**
+     * Time taken by the kernel of the last propagation, in nanoseconds.
+     *
+     * @return
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Output of the last propagation. Each propagation makes a new array,
+     * so the returned one is never overwritten.
+     *
+     * @return
+     */
     public float[][] getOutputField() {
         return outputField;
     }
+
+    /**
+     * Hands the output of the last propagation over to the caller, and an
+     * array the caller no longer needs to the next propagation, which writes
+     * its output into it instead of making a new one; used by the batch to
+     * recycle its planes.
+     *
+     * @param next free M x 2N array, can be null
+     * @return
+     */
+    public float[][] takeOutputField(float[][] next) {
+        lock.lock();
+        try {
+            float[][] taken = outputField;
+            outputField = null;
+            buffer = next;
+
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the phase unwrapper for M x N outputs. It is created once and
+     * reused while the size of the outputs doesn't change.
+     *
+     * @param M
+     * @param N
+     * @return
+     */
+    public PhaseUnwrapper getPhaseUnwrapper(int M, int N) {
+        if (unwrapper == null || unwrapper.getM() != M || unwrapper.getN() != N) {
+            unwrapper = new PhaseUnwrapper(M, N);
+        }
+        return unwrapper;
+    }
 // </editor-fold>
 }
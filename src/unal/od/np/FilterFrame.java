@@ -67,6 +67,8 @@ public class FilterFrame extends javax.swing.JFrame implements ImageListener, Pr
     private boolean intensityByteSelected;
 //    private boolean realByteSelected;
 //    private boolean imaginaryByteSelected;
+
+    private boolean unwrapSelected;
     // </editor-fold>
 
     private final Preferences pref;
@@ -172,6 +174,8 @@ public class FilterFrame extends javax.swing.JFrame implements ImageListener, Pr
         intensityByteSelected = pref.getBoolean(INTENSITY_8_BIT, true);
 //        realByteSelected = pref.getBoolean(REAL_8_BIT, true);
 //        imaginaryByteSelected = pref.getBoolean(IMAGINARY_8_BIT, true);
+
+        unwrapSelected = pref.getBoolean(UNWRAP_PHASE, false);
     }
 
     public void close(boolean showDialog) {
@@ -424,6 +428,11 @@ public class FilterFrame extends javax.swing.JFrame implements ImageListener, Pr
     }//GEN-LAST:event_coordRadioActionPerformed
 
     private void okBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_okBtnActionPerformed
+        if (data.isBusy()) {
+            JOptionPane.showMessageDialog(this, "A propagation is running, please wait until it finishes.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
         if (manualRadio.isSelected()) {
             ImageProcessor ipRoi = imp.getProcessor();
 
@@ -485,11 +494,12 @@ public class FilterFrame extends javax.swing.JFrame implements ImageListener, Pr
                 + "\nInput Width: " + parameters[4]
                 + "\nInput Height: " + parameters[5]);
 
-        if (idx == 2) {
+        if (MainFrame.hasOutputSize(idx)) {
             info.append("\nOutput Width: " + parameters[6]
                     + "\nOutput Height: " + parameters[7]);
         }
         parent.updateLog(true, info.toString());
+        parent.logCompensation();
 
         float[][] field = data.getOutputField();
         parent.setStepDistance();
@@ -514,6 +524,15 @@ public class FilterFrame extends javax.swing.JFrame implements ImageListener, Pr
                     phaseByteSelected ? ip1.convertToByteProcessor() : ip1);
             imp1.setCalibration(cal);
             imp1.show();
+
+            if (unwrapSelected) {
+                float[][] unwrapped = data.getPhaseUnwrapper(field.length, field[0].length / 2)
+                        .unwrapField(field);
+                ImagePlus imp6 = new ImagePlus("Unwrapped phase; z = " + parameters[3] + names,
+                        new FloatProcessor(unwrapped));
+                imp6.setCalibration(cal);
+                imp6.show();
+            }
         }
 
         if (amplitudeEnabled) {
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import org.jtransforms.fft.FloatFFT_1D;
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+
+/**
+ * Angular spectrum propagation into an arbitrary output window. The spectrum
+ * of the input field is multiplied by the angular spectrum transfer function
+ * and then evaluated only on the requested output grid through two separable
+ * chirp-z (Bluestein) transforms, so the cost of the inverse transform scales
+ * with the output window instead of the whole frame.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class FloatAngularSpectrumZoom {
+
+    private final int M, N, P, Q;
+    private final float lambda, z, dx, dy;
+    private final float dxOut, dyOut;
+    private final float x0, y0;
+
+    private final FloatFFT_2D fft;
+    private final ChirpZ rowsTransform, colsTransform;
+
+    //per row and per column factors applied to the spectrum
+    private final float[] xFactor, yFactor;
+
+    /**
+     * Creates a zoomed angular spectrum propagator.
+     *
+     * @param M input width in pixels
+     * @param N input height in pixels
+     * @param lambda wavelength
+     * @param z propagation distance
+     * @param dx input pixel width
+     * @param dy input pixel height
+     * @param P output width in pixels
+     * @param Q output height in pixels
+     * @param dxOut output pixel width
+     * @param dyOut output pixel height
+     * @param x0 horizontal position of the output window center, measured
+     * from the input field center
+     * @param y0 vertical position of the output window center, measured from
+     * the input field center
+     */
+    public FloatAngularSpectrumZoom(int M, int N, float lambda, float z, float dx,
+            float dy, int P, int Q, float dxOut, float dyOut, float x0, float y0) {
+        this.M = M;
+        this.N = N;
+        this.P = P;
+        this.Q = Q;
+        this.lambda = lambda;
+        this.z = z;
+        this.dx = dx;
+        this.dy = dy;
+        this.dxOut = dxOut;
+        this.dyOut = dyOut;
+        this.x0 = x0;
+        this.y0 = y0;
+
+        fft = new FloatFFT_2D(M, N);
+
+        double dfx = 1.0 / (M * dx);
+        double dfy = 1.0 / (N * dy);
+
+        rowsTransform = new ChirpZ(M, P, dfx * dxOut);
+        colsTransform = new ChirpZ(N, Q, dfy * dyOut);
+
+        xFactor = shiftFactor(M, dfx, x0);
+        yFactor = shiftFactor(N, dfy, y0);
+    }
+
+    /**
+     * Propagates the field. The input array (M x 2N) is overwritten with its
+     * spectrum; the propagated field (P x 2Q) is returned in a new array.
+     *
+     * @param field
+     * @return propagated field
+     */
+    public float[][] diffract(float[][] field) {
+        fft.complexForward(field);
+        ArrayUtils.complexShift(field);
+
+        multiplyKernel(field);
+
+        //chirp-z along x, for every spectrum column
+        float[][] tmp = new float[P][2 * N];
+        float[] in = new float[2 * M];
+        float[] out = new float[2 * P];
+
+        for (int j = 0; j < N; j++) {
+            for (int i = 0; i < M; i++) {
+                in[2 * i] = field[i][2 * j];
+                in[2 * i + 1] = field[i][2 * j + 1];
+            }
+
+            rowsTransform.transform(in, out);
+
+            for (int i = 0; i < P; i++) {
+                tmp[i][2 * j] = out[2 * i];
+                tmp[i][2 * j + 1] = out[2 * i + 1];
+            }
+        }
+
+        //chirp-z along y, for every output row
+        float[][] output = new float[P][2 * Q];
+        for (int i = 0; i < P; i++) {
+            colsTransform.transform(tmp[i], output[i]);
+        }
+
+        return output;
+    }
+
+    /**
+     * Multiplies the centered spectrum by the transfer function, the
+     * normalization of the inverse transform and the linear phases that
+     * account for the pixel origin and the output window position.
+     *
+     * @param spectrum
+     */
+    private void multiplyKernel(float[][] spectrum) {
+        int M2 = M / 2;
+        int N2 = N / 2;
+
+        double k = 2 * Math.PI / lambda;
+        double scale = 1.0 / ((double) M * N);
+
+        for (int i = 0; i < M; i++) {
+            double fx = (i - M2) / (M * (double) dx);
+            double lfx = lambda * fx;
+
+            for (int j = 0; j < N; j++) {
+                double fy = (j - N2) / (N * (double) dy);
+                double lfy = lambda * fy;
+
+                double root = 1 - lfx * lfx - lfy * lfy;
+
+                float re = spectrum[i][2 * j];
+                float im = spectrum[i][2 * j + 1];
+
+                if (root < 0) {
+                    //evanescent waves are discarded
+                    spectrum[i][2 * j] = 0;
+                    spectrum[i][2 * j + 1] = 0;
+                    continue;
+                }
+
+                double phase = k * z * Math.sqrt(root);
+                double hRe = Math.cos(phase) * scale;
+                double hIm = Math.sin(phase) * scale;
+
+                //linear phases of both axes
+                double sRe = xFactor[2 * i] * yFactor[2 * j] - xFactor[2 * i + 1] * yFactor[2 * j + 1];
+                double sIm = xFactor[2 * i] * yFactor[2 * j + 1] + xFactor[2 * i + 1] * yFactor[2 * j];
+
+                double kRe = hRe * sRe - hIm * sIm;
+                double kIm = hRe * sIm + hIm * sRe;
+
+                spectrum[i][2 * j] = (float) (re * kRe - im * kIm);
+                spectrum[i][2 * j + 1] = (float) (re * kIm + im * kRe);
+            }
+        }
+    }
+
+    /**
+     * Linear phase exp(i * a' * (pi + 2 * pi * df * c)), with a' the centered
+     * frequency index. The pi term compensates the pixel origin being at the
+     * center of the frame and the second term moves the window to c.
+     */
+    private static float[] shiftFactor(int n, double df, float c) {
+        float[] factor = new float[2 * n];
+        int n2 = n / 2;
+
+        for (int a = 0; a < n; a++) {
+            double phase = (a - n2) * (Math.PI + 2 * Math.PI * df * c);
+            phase %= 2 * Math.PI;
+
+            factor[2 * a] = (float) Math.cos(phase);
+            factor[2 * a + 1] = (float) Math.sin(phase);
+        }
+
+        return factor;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+    public int getP() {
+        return P;
+    }
+
+    public int getQ() {
+        return Q;
+    }
+
+    public float getDxOut() {
+        return dxOut;
+    }
+
+    public float getDyOut() {
+        return dyOut;
+    }
+
+    public float getX0() {
+        return x0;
+    }
+
+    public float getY0() {
+        return y0;
+    }
+    // </editor-fold>
+
+    /**
+     * One dimensional chirp-z transform computing
+     * y[p'] = sum_a' x[a'] * exp(i * 2 * pi * alpha * a' * p'), with a' and p'
+     * the centered input and output indices, through a circular convolution
+     * of length L >= n + p - 1.
+     */
+    private static class ChirpZ {
+
+        private final int n, p, L;
+        private final FloatFFT_1D fft;
+
+        private final float[] chirpIn, chirpOut;
+        private final float[] kernel;
+        private final float[] buffer;
+
+        ChirpZ(int n, int p, double alpha) {
+            this.n = n;
+            this.p = p;
+
+            int length = 1;
+            while (length < n + p - 1) {
+                length <<= 1;
+            }
+            L = length;
+
+            fft = new FloatFFT_1D(L);
+
+            int n2 = n / 2;
+            int p2 = p / 2;
+
+            chirpIn = chirp(n, n2, alpha);
+            chirpOut = chirp(p, p2, alpha);
+
+            //convolution kernel exp(-i * pi * alpha * t^2), t = k + n2 - p2
+            kernel = new float[2 * L];
+            int c = n2 - p2;
+            for (int k = -(n - 1); k < p; k++) {
+                double t = k + c;
+                double phase = -(Math.PI * alpha * t * t) % (2 * Math.PI);
+                int idx = k < 0 ? k + L : k;
+
+                kernel[2 * idx] = (float) Math.cos(phase);
+                kernel[2 * idx + 1] = (float) Math.sin(phase);
+            }
+            fft.complexForward(kernel);
+
+            buffer = new float[2 * L];
+        }
+
+        private static float[] chirp(int length, int center, double alpha) {
+            float[] c = new float[2 * length];
+
+            for (int a = 0; a < length; a++) {
+                double t = a - center;
+                double phase = (Math.PI * alpha * t * t) % (2 * Math.PI);
+
+                c[2 * a] = (float) Math.cos(phase);
+                c[2 * a + 1] = (float) Math.sin(phase);
+            }
+
+            return c;
+        }
+
+        /**
+         * Transforms in (2n interleaved values) into out (2p interleaved
+         * values).
+         */
+        void transform(float[] in, float[] out) {
+            for (int a = 0; a < n; a++) {
+                float re = in[2 * a];
+                float im = in[2 * a + 1];
+                float cRe = chirpIn[2 * a];
+                float cIm = chirpIn[2 * a + 1];
+
+                buffer[2 * a] = re * cRe - im * cIm;
+                buffer[2 * a + 1] = re * cIm + im * cRe;
+            }
+
+            for (int a = 2 * n; a < 2 * L; a++) {
+                buffer[a] = 0;
+            }
+
+            fft.complexForward(buffer);
+
+            for (int a = 0; a < L; a++) {
+                float re = buffer[2 * a];
+                float im = buffer[2 * a + 1];
+                float kRe = kernel[2 * a];
+                float kIm = kernel[2 * a + 1];
+
+                buffer[2 * a] = re * kRe - im * kIm;
+                buffer[2 * a + 1] = re * kIm + im * kRe;
+            }
+
+            fft.complexInverse(buffer, true);
+
+            for (int b = 0; b < p; b++) {
+                float re = buffer[2 * b];
+                float im = buffer[2 * b + 1];
+                float cRe = chirpOut[2 * b];
+                float cIm = chirpOut[2 * b + 1];
+
+                out[2 * b] = re * cRe - im * cIm;
+                out[2 * b + 1] = re * cIm + im * cRe;
+            }
+        }
+    }
+}
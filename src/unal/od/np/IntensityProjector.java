@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.process.FloatProcessor;
+
+/**
+ * Streaming z projections of the intensity of a batch of propagated fields.
+ * Each plane is added as it is produced, so only one M x N accumulator per
+ * projection is kept no matter how many planes are reconstructed.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class IntensityProjector {
+
+    private final int M, N;
+
+    //accumulators, in the pixel order of ImageJ (j * M + i)
+    private final float[] max, sum, min, depth;
+
+    private int planes;
+
+    /**
+     * Creates the projector. Only the selected projections allocate an
+     * accumulator; the depth map (z of the maximum intensity) also needs the
+     * maximum.
+     *
+     * @param M
+     * @param N
+     * @param maxEnabled
+     * @param meanEnabled
+     * @param minEnabled
+     * @param depthEnabled
+     */
+    public IntensityProjector(int M, int N, boolean maxEnabled, boolean meanEnabled,
+            boolean minEnabled, boolean depthEnabled) {
+        this.M = M;
+        this.N = N;
+
+        max = maxEnabled || depthEnabled ? new float[M * N] : null;
+        sum = meanEnabled ? new float[M * N] : null;
+        min = minEnabled ? new float[M * N] : null;
+        depth = depthEnabled ? new float[M * N] : null;
+    }
+
+    /**
+     * Adds the intensity of a propagated field (M x 2N) located at z.
+     *
+     * @param field
+     * @param z
+     */
+    public void add(float[][] field, float z) {
+        boolean first = planes == 0;
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                float re = field[i][2 * j];
+                float im = field[i][2 * j + 1];
+                float intensity = re * re + im * im;
+
+                int k = j * M + i;
+
+                if (max != null && (first || intensity > max[k])) {
+                    max[k] = intensity;
+                    if (depth != null) {
+                        depth[k] = z;
+                    }
+                }
+
+                if (sum != null) {
+                    sum[k] += intensity;
+                }
+
+                if (min != null && (first || intensity < min[k])) {
+                    min[k] = intensity;
+                }
+            }
+        }
+
+        planes++;
+    }
+
+    /**
+     * Returns true if no plane has been added yet.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return planes == 0;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+    public FloatProcessor getMax() {
+        return new FloatProcessor(M, N, max);
+    }
+
+    public FloatProcessor getMean() {
+        float[] mean = new float[M * N];
+        for (int k = 0; k < mean.length; k++) {
+            mean[k] = sum[k] / planes;
+        }
+        return new FloatProcessor(M, N, mean);
+    }
+
+    public FloatProcessor getMin() {
+        return new FloatProcessor(M, N, min);
+    }
+
+    public FloatProcessor getDepth() {
+        return new FloatProcessor(M, N, depth);
+    }
+
+    public int getPlanes() {
+        return planes;
+    }
+    // </editor-fold>
+}
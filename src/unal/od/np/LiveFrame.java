@@ -0,0 +1,609 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.measure.Calibration;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.awt.Toolkit;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.Preferences;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JOptionPane;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+
+/**
+ * Live propagation: a z slider that updates a single output window. The
+ * field of the last propagation of the main window is transformed once
+ * (SpectrumPropagator), so every plane costs one inverse FFT. Changes are
+ * rendered once the slider stops for DEBOUNCE_MS; a plane that is no longer
+ * the last requested one is dropped between the preview and the refinement,
+ * and before being shown. Planes are computed with angular spectrum, which
+ * keeps the pixel size.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class LiveFrame extends javax.swing.JFrame implements PreferencesKeys {
+
+    private static final String TITLE = "Live Propagation";
+
+    public static final String[] OUTPUTS = {"Phase", "Amplitude", "Intensity"};
+
+    private static final int SLIDER_STEPS = 1000;
+
+    //time without changes before a plane is rendered
+    private static final int DEBOUNCE_MS = 40;
+
+    //level of the coarse preview, 4x decimated
+    private static final int PREVIEW_LEVEL = 2;
+
+    //range and current distance, in um
+    private float from;
+    private float to;
+    private float zUm;
+
+    private boolean updatingSlider;
+
+    // <editor-fold defaultstate="collapsed" desc="Prefs variables">
+    private String fromString;
+    private String toString;
+    private int outputIdx;
+    private boolean previewSelected;
+
+    private String zUnits;
+    private String outputSizeUnits;
+
+    private boolean filterEnabled;
+
+    private boolean isPlane;
+    private float curvRadius;
+
+    private boolean amplitudeLogSelected;
+    private boolean intensityLogSelected;
+    // </editor-fold>
+
+    private SpectrumPropagator propagator;
+    private ImagePlus imp;
+    private Calibration cal;
+
+    //every request gets a new generation; older ones are dropped
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ExecutorService executor;
+    private final Timer debounceTimer;
+
+    private final DecimalFormat df;
+    private final Preferences pref;
+    private final Data data;
+
+    /**
+     * Creates new form LiveFrame
+     */
+    public LiveFrame() {
+        df = new DecimalFormat("#.####", new DecimalFormatSymbols(Locale.US));
+        pref = Preferences.userNodeForPackage(getClass());
+        data = Data.getInstance();
+
+        executor = Executors.newSingleThreadExecutor();
+        debounceTimer = new Timer(DEBOUNCE_MS, new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                submit();
+            }
+        });
+        debounceTimer.setRepeats(false);
+
+        loadPrefs();
+        initComponents();
+    }
+
+    private void savePrefs() {
+        pref.put(LIVE_FROM, fromField.getText());
+        pref.put(LIVE_TO, toField.getText());
+        pref.putInt(LIVE_OUTPUT, outputCombo.getSelectedIndex());
+        pref.putBoolean(LIVE_PREVIEW, previewChk.isSelected());
+    }
+
+    private void loadPrefs() {
+        fromString = pref.get(LIVE_FROM, pref.get(BATCH_START, ""));
+        toString = pref.get(LIVE_TO, pref.get(BATCH_END, ""));
+        outputIdx = pref.getInt(LIVE_OUTPUT, 0);
+        previewSelected = pref.getBoolean(LIVE_PREVIEW, true);
+
+        zUnits = pref.get(DISTANCE_UNITS, "m");
+        outputSizeUnits = pref.get(OUTPUT_SIZE_UNITS, "mm");
+
+        filterEnabled = pref.getBoolean(IS_FILTER_ENABLED, true);
+
+        isPlane = pref.getBoolean(IS_PLANE, true);
+        curvRadius = pref.getFloat(CURV_RADIUS, 1E6f);
+
+        amplitudeLogSelected = pref.getBoolean(AMPLITUDE_LOG, true);
+        intensityLogSelected = pref.getBoolean(INTENSITY_LOG, true);
+    }
+
+    /**
+     * Takes the field of the last propagation and renders the current
+     * distance. Returns false if there is nothing to propagate.
+     *
+     * @return success
+     */
+    public boolean start() {
+        if (data.isBusy()) {
+            IJ.error(TITLE, "A propagation is running, please wait until it finishes.");
+            return false;
+        }
+
+        float[][] input = data.getM() == 0 ? null
+                : data.getInputField(filterEnabled, isPlane, curvRadius);
+        if (input == null) {
+            IJ.error(TITLE, "Please propagate a hologram in the main window first.");
+            return false;
+        }
+
+        propagator = new SpectrumPropagator(input, data.getLambda(), data.getDx(), data.getDy());
+
+        cal = new Calibration();
+        cal.setUnit(outputSizeUnits);
+        cal.pixelWidth = umToUnits(data.getDx(), outputSizeUnits);
+        cal.pixelHeight = umToUnits(data.getDy(), outputSizeUnits);
+
+        zUm = data.getZ();
+        zField.setText(df.format(umToUnits(zUm, zUnits)));
+
+        if (readRange(false)) {
+            updateSlider();
+        }
+
+        request();
+        return true;
+    }
+
+    /**
+     * Reads the range of the slider.
+     *
+     * @param showErrors
+     * @return success
+     */
+    private boolean readRange(boolean showErrors) {
+        float fromUser, toUser;
+        try {
+            fromUser = Float.parseFloat(fromField.getText());
+            toUser = Float.parseFloat(toField.getText());
+        } catch (NumberFormatException e) {
+            if (showErrors) {
+                JOptionPane.showMessageDialog(this, "Please insert a valid range.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            return false;
+        }
+
+        if (fromUser == toUser) {
+            if (showErrors) {
+                JOptionPane.showMessageDialog(this, "Starting and ending distances must be different.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            return false;
+        }
+
+        from = unitsToum(fromUser, zUnits);
+        to = unitsToum(toUser, zUnits);
+        zSlider.setEnabled(true);
+
+        return true;
+    }
+
+    /**
+     * Moves the slider to the current distance without triggering a render.
+     */
+    private void updateSlider() {
+        int value = Math.round(SLIDER_STEPS * (zUm - from) / (to - from));
+
+        updatingSlider = true;
+        zSlider.setValue(Math.max(0, Math.min(SLIDER_STEPS, value)));
+        updatingSlider = false;
+    }
+
+    /**
+     * Schedules a render; consecutive requests within DEBOUNCE_MS are merged.
+     */
+    private void request() {
+        debounceTimer.restart();
+    }
+
+    /**
+     * Starts the render of the current parameters, making the renders in
+     * progress out of date.
+     */
+    private void submit() {
+        final int gen = generation.incrementAndGet();
+        final float z = zUm;
+        final int output = outputCombo.getSelectedIndex();
+        final boolean preview = previewChk.isSelected();
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                render(gen, z, output, preview);
+            }
+        });
+    }
+
+    private boolean isStale(int gen) {
+        return generation.get() != gen;
+    }
+
+    private void render(int gen, float z, int output, boolean preview) {
+        if (isStale(gen)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        if (preview) {
+            float[][] coarse = propagator.propagate(z, PREVIEW_LEVEL);
+            if (isStale(gen)) {
+                return;
+            }
+
+            ImageProcessor ip = toProcessor(coarse, output);
+            ip.setInterpolationMethod(ImageProcessor.BILINEAR);
+            show(ip.resize(propagator.getM(), propagator.getN()), z, output, true, start);
+
+            if (isStale(gen)) {
+                return;
+            }
+        }
+
+        float[][] field = propagator.propagate(z, 0);
+        if (isStale(gen)) {
+            return;
+        }
+
+        show(toProcessor(field, output), z, output, false, start);
+    }
+
+    private ImageProcessor toProcessor(float[][] field, int output) {
+        switch (output) {
+            case 0:
+                return new FloatProcessor(ArrayUtils.phase(field));
+            case 1:
+                ImageProcessor ip1 = new FloatProcessor(ArrayUtils.modulus(field));
+                if (amplitudeLogSelected) {
+                    ip1.log();
+                }
+                return ip1;
+            default:
+                ImageProcessor ip2 = new FloatProcessor(ArrayUtils.modulusSq(field));
+                if (intensityLogSelected) {
+                    ip2.log();
+                }
+                return ip2;
+        }
+    }
+
+    /**
+     * Shows a plane on the output window, which is created again if it was
+     * closed.
+     */
+    private void show(ImageProcessor ip, float z, int output, boolean coarse, long start) {
+        if (output == 0) {
+            ip.setMinAndMax(-Math.PI, Math.PI);
+        } else {
+            ip.resetMinAndMax();
+        }
+
+        String title = OUTPUTS[output] + "; z = " + df.format(umToUnits(z, zUnits)) + " "
+                + zUnits;
+
+        if (imp == null || imp.getWindow() == null) {
+            imp = new ImagePlus(title, ip);
+            imp.setCalibration(cal);
+            imp.show();
+        } else {
+            imp.setProcessor(title, ip);
+        }
+
+        final String time = (coarse ? "Preview: " : "Plane: ")
+                + df.format((System.nanoTime() - start) * 1E-6) + " ms";
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                timeLabel.setText(time);
+            }
+        });
+    }
+
+    /**
+     * Helper method to convert from {units} to um.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float unitsToum(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E-3f;
+        } else if (units.equals("mm")) {
+            return val * 1E3f;
+        } else if (units.equals("cm")) {
+            return val * 1E4f;
+        } else if (units.equals("m")) {
+            return val * 1E6f;
+        }
+
+        return val;
+    }
+
+    /**
+     * Helper method to convert from um to {units}.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float umToUnits(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E3f;
+        } else if (units.equals("mm")) {
+            return val * 1E-3f;
+        } else if (units.equals("cm")) {
+            return val * 1E-4f;
+        } else if (units.equals("m")) {
+            return val * 1E-6f;
+        }
+
+        return val;
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        fromLabel = new javax.swing.JLabel();
+        fromField = new javax.swing.JTextField();
+        toLabel = new javax.swing.JLabel();
+        toField = new javax.swing.JTextField();
+        zSlider = new javax.swing.JSlider();
+        zLabel = new javax.swing.JLabel();
+        zField = new javax.swing.JTextField();
+        outputCombo = new javax.swing.JComboBox();
+        previewChk = new javax.swing.JCheckBox();
+        timeLabel = new javax.swing.JLabel();
+
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        setTitle(TITLE);
+        setIconImage(Toolkit.getDefaultToolkit().getImage(getClass().getResource("/icon.png")));
+        setResizable(false);
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            public void windowClosing(java.awt.event.WindowEvent evt) {
+                formWindowClosing(evt);
+            }
+        });
+
+        fromLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        fromLabel.setText("From [" + zUnits +"]:");
+        fromLabel.setMaximumSize(new java.awt.Dimension(55, 14));
+        fromLabel.setMinimumSize(new java.awt.Dimension(55, 14));
+        fromLabel.setPreferredSize(new java.awt.Dimension(55, 14));
+
+        fromField.setColumns(7);
+        fromField.setText(fromString);
+        fromField.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                rangeFieldActionPerformed(evt);
+            }
+        });
+        fromField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        toLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        toLabel.setText("To [" + zUnits +"]:");
+        toLabel.setMaximumSize(new java.awt.Dimension(55, 14));
+        toLabel.setMinimumSize(new java.awt.Dimension(55, 14));
+        toLabel.setPreferredSize(new java.awt.Dimension(55, 14));
+
+        toField.setColumns(7);
+        toField.setText(toString);
+        toField.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                rangeFieldActionPerformed(evt);
+            }
+        });
+        toField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        zSlider.setMaximum(SLIDER_STEPS);
+        zSlider.setValue(0);
+        zSlider.setEnabled(false);
+        zSlider.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                zSliderStateChanged(evt);
+            }
+        });
+
+        zLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        zLabel.setText("z [" + zUnits +"]:");
+        zLabel.setMaximumSize(new java.awt.Dimension(55, 14));
+        zLabel.setMinimumSize(new java.awt.Dimension(55, 14));
+        zLabel.setPreferredSize(new java.awt.Dimension(55, 14));
+
+        zField.setColumns(7);
+        zField.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                zFieldActionPerformed(evt);
+            }
+        });
+        zField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        outputCombo.setModel(new DefaultComboBoxModel<String>(OUTPUTS));
+        outputCombo.setSelectedIndex(outputIdx);
+        outputCombo.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                outputComboActionPerformed(evt);
+            }
+        });
+
+        previewChk.setSelected(previewSelected);
+        previewChk.setText("Coarse preview first");
+        previewChk.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                outputComboActionPerformed(evt);
+            }
+        });
+
+        timeLabel.setText(" ");
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
+        getContentPane().setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(fromLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(fromField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(toLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(toField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(zSlider, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(zLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(zField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                        .addComponent(outputCombo, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(previewChk)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addComponent(timeLabel)))
+                .addContainerGap())
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(fromLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(fromField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(toLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(toField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addComponent(zSlider, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(zLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(zField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(outputCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(previewChk)
+                    .addComponent(timeLabel))
+                .addContainerGap())
+        );
+
+        pack();
+    }// </editor-fold>//GEN-END:initComponents
+
+    private void zSliderStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_zSliderStateChanged
+        if (updatingSlider) {
+            return;
+        }
+
+        zUm = from + (to - from) * zSlider.getValue() / SLIDER_STEPS;
+        zField.setText(df.format(umToUnits(zUm, zUnits)));
+        request();
+    }//GEN-LAST:event_zSliderStateChanged
+
+    private void zFieldActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_zFieldActionPerformed
+        try {
+            zUm = unitsToum(Float.parseFloat(zField.getText()), zUnits);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid distance.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (zSlider.isEnabled()) {
+            updateSlider();
+        }
+        request();
+    }//GEN-LAST:event_zFieldActionPerformed
+
+    private void rangeFieldActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_rangeFieldActionPerformed
+        if (readRange(true)) {
+            updateSlider();
+        }
+    }//GEN-LAST:event_rangeFieldActionPerformed
+
+    private void outputComboActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_outputComboActionPerformed
+        if (propagator != null) {
+            request();
+        }
+    }//GEN-LAST:event_outputComboActionPerformed
+
+    private void formWindowClosing(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowClosing
+        savePrefs();
+
+        debounceTimer.stop();
+        generation.incrementAndGet();
+        executor.shutdown();
+    }//GEN-LAST:event_formWindowClosing
+
+    private void textFieldFocusGained(java.awt.event.FocusEvent evt) {//GEN-FIRST:event_textFieldFocusGained
+        JTextField field = (JTextField) evt.getComponent();
+        field.selectAll();
+    }//GEN-LAST:event_textFieldFocusGained
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JTextField fromField;
+    private javax.swing.JLabel fromLabel;
+    private javax.swing.JComboBox outputCombo;
+    private javax.swing.JCheckBox previewChk;
+    private javax.swing.JLabel timeLabel;
+    private javax.swing.JTextField toField;
+    private javax.swing.JLabel toLabel;
+    private javax.swing.JTextField zField;
+    private javax.swing.JLabel zLabel;
+    private javax.swing.JSlider zSlider;
+    // End of variables declaration//GEN-END:variables
+}
@@ -15,24 +15,29 @@
  */
 package unal.od.np;
 
+import ij.IJ;
 import ij.ImageListener;
 import ij.ImagePlus;
 import ij.WindowManager;
+import ij.gui.Roi;
 import ij.measure.Calibration;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import java.awt.Frame;
+import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.ImageIcon;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 import unal.od.jdiffraction.cpu.utils.ArrayUtils;
 
 /**
@@ -47,7 +52,10 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     private static final String LOG_HEADER = "Version 1.2 - August 2015";
     private static final String LOG_SEPARATOR = "\n---------------------------";
 
-    public static final String[] PROPAGATION_METHOD = new String[]{"Angular Spectrum", "Fresnel", "Fresnel - Bluestein", "Automatic"};
+    //largest 2x decimated preview, in pixels
+    private static final long PREVIEW_PIXELS = 1 << 21;
+
+    public static final String[] PROPAGATION_METHOD = new String[]{"Angular Spectrum", "Fresnel", "Fresnel - Bluestein", "Automatic", "Angular Spectrum - Zoom"};
 
     //user inputs in user units
     private float lambdaUser;
@@ -70,6 +78,8 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 
     private float stepUm;
     private float zStepUm;
+    //signed step of the last change of zStepUm
+    private float zStepDeltaUm;
 
     //when filtering and same roi are enabled, this variables help to identify if
     //the inputs and the dimensions changed
@@ -80,6 +90,12 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     //input field dimensions, useful for output calibration
     private int M, N;
 
+    //bounds of the roi drawn on the input, centers the zoom window
+    private Rectangle zoomRoi;
+
+    //zoom window center, in um, measured from the input field center
+    private float zoomX0Um, zoomY0Um;
+
     //arrays with the current open images information
     private int[] windowsId;
     private String[] titles;
@@ -91,6 +107,9 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     //calibration object for the output images
     private Calibration cal;
 
+    //a full resolution propagation is running after its preview
+    private boolean propagating;
+
     //formatter
     private final DecimalFormat df;
 
@@ -151,6 +170,11 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     //curvature radius for spherical illumination
     private float curvRadius;
 
+    //progressive preview, for fields of at least progressiveMinSize
+    //megapixels
+    private boolean progressiveSelected;
+    private float progressiveMinSize;
+
     //log scaling options
     private boolean amplitudeLogSelected;
     private boolean intensityLogSelected;
@@ -162,6 +186,12 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 //    private boolean realByteSelected;
 //    private boolean imaginaryByteSelected;
 
+    //unwrapped phase output
+    private boolean unwrapSelected;
+
+    //output width of the zoom in samples, 0 for the width of the input
+    private int zoomSamples;
+
     private boolean relationLock;
 
     private boolean logWrapping;
@@ -293,6 +323,9 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 
         //scaling
         loadScalingPrefs();
+
+        //outputs
+        loadOutputsPrefs();
     }
 
     /**
@@ -317,6 +350,21 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         isPlane = pref.getBoolean(IS_PLANE, true);
 
         curvRadius = pref.getFloat(CURV_RADIUS, 1E6f);
+
+        progressiveSelected = pref.getBoolean(PROGRESSIVE_PREVIEW, true);
+        progressiveMinSize = pref.getFloat(PROGRESSIVE_MIN_SIZE, 4);
+
+        int terms = 0;
+        if (pref.getBoolean(COMPENSATE_TILT, false)) {
+            terms |= AberrationCompensator.TILT;
+        }
+        if (pref.getBoolean(COMPENSATE_QUADRATIC, false)) {
+            terms |= AberrationCompensator.QUADRATIC;
+        }
+        data.setCompensation(terms);
+
+        data.setApodization(pref.getInt(APODIZATION, Apodization.NONE),
+                pref.getFloat(APODIZATION_TAPER, 0.1f));
     }
 
     /**
@@ -333,6 +381,14 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 //        imaginaryByteSelected = pref.getBoolean(IMAGINARY_8_BIT, true);
     }
 
+    /**
+     * Loads additional output options.
+     */
+    private void loadOutputsPrefs() {
+        unwrapSelected = pref.getBoolean(UNWRAP_PHASE, false);
+        zoomSamples = pref.getInt(ZOOM_SAMPLES, 0);
+    }
+
     /**
      * Updates units labels.
      */
@@ -369,6 +425,13 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         loadScalingPrefs();
     }
 
+    /**
+     * Updates additional output options.
+     */
+    public void updateOutputsPrefs() {
+        loadOutputsPrefs();
+    }
+
     /**
      * Posts a message (s) on the log. If useSeparator is true prints a
      * separator before the message.
@@ -383,6 +446,47 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         log.append(s);
     }
 
+    /**
+     * Posts the compensated aberrations of the last propagation on the log.
+     */
+    public void logCompensation() {
+        int terms = data.getCompensation();
+        double[] aberration = data.getAberration();
+        if (terms == 0 || aberration == null) {
+            return;
+        }
+
+        if ((terms & AberrationCompensator.TILT) != 0) {
+            updateLog(false, String.format(Locale.US,
+                    "\nCompensated tilt: %.4g, %.4g rad/px", aberration[0], aberration[1]));
+        }
+        if ((terms & AberrationCompensator.QUADRATIC) != 0) {
+            updateLog(false, String.format(Locale.US,
+                    "\nCompensated quadratic: %.4g, %.4g, %.4g rad/px^2", aberration[2],
+                    aberration[3], aberration[4]));
+        }
+    }
+
+    /**
+     * Prints the apodization of the last propagation and the padding its
+     * kernel needs to avoid wrap-around.
+     */
+    private void logApodization() {
+        int type = data.getApodization();
+        int[] guard = data.getGuardBand(methodIdx, filterEnabled);
+
+        if (type != Apodization.NONE) {
+            String taper = type == Apodization.HANN ? ""
+                    : String.format(Locale.US, " (%.0f%%)", 100 * data.getApodizationTaper());
+            updateLog(false, "\nApodization: " + Apodization.TYPES[type] + taper);
+        }
+
+        if (guard[0] > 0 || guard[1] > 0) {
+            updateLog(false, "\nSuggested padding: " + M + "x" + N + " to "
+                    + (M + guard[0]) + "x" + (N + guard[1]));
+        }
+    }
+
     /**
      * Enables the fields after a propagation is performed. - Same ROI Checkbox
      * - Increase and decrease buttons - Step TextField - Batch button
@@ -444,7 +548,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         inputWUm = unitsToum(inputWUser, inputSizeUnits);
         inputHUm = unitsToum(inputHUser, inputSizeUnits);
 
-        if (methodIdx == 2) {
+        if (hasOutputSize(methodIdx)) {
 //            outputWUm = unitsToum(outputWUser, outputWUnits);
 //            outputHUm = unitsToum(outputHUser, outputHUnits);
             outputWUm = unitsToum(outputWUser, outputSizeUnits);
@@ -473,6 +577,59 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         return val;
     }
 
+    /**
+     * Returns true if the method uses the output width and height given by the
+     * user (Fresnel-Bluestein and zoom).
+     *
+     * @param idx
+     * @return
+     */
+    public static boolean hasOutputSize(int idx) {
+        return idx == 2 || idx == 4;
+    }
+
+    /**
+     * Stores the bounds of the roi drawn on the input image, if any. Its center
+     * is used as the center of the zoom window.
+     *
+     * @param imp
+     */
+    private void setZoomRoi(ImagePlus imp) {
+        Roi roi = imp.getRoi();
+        zoomRoi = (roi != null && roi.isArea()) ? roi.getBounds() : null;
+    }
+
+    /**
+     * Sets the center of the zoom window from the stored roi. If there is no
+     * roi, the window is centered on the input field.
+     */
+    private void setZoomCenter() {
+        zoomX0Um = 0;
+        zoomY0Um = 0;
+
+        if (zoomRoi != null) {
+            zoomX0Um = (zoomRoi.x + zoomRoi.width / 2f - M / 2f) * inputWUm / M;
+            zoomY0Um = (zoomRoi.y + zoomRoi.height / 2f - N / 2f) * inputHUm / N;
+        }
+
+        data.setZoomCenter(zoomX0Um, zoomY0Um);
+    }
+
+    /**
+     * Sets the samples of the zoom window: the width from the settings and
+     * the height from the aspect of the window, so the pixels stay square.
+     * The propagation cost follows these samples instead of the input ones.
+     */
+    private void setZoomSamples() {
+        if (zoomSamples == 0) {
+            data.setZoomSamples(0, 0);
+            return;
+        }
+
+        int rows = Math.max(1, Math.round(zoomSamples * Math.abs(outputHUm / outputWUm)));
+        data.setZoomSamples(zoomSamples, rows);
+    }
+
     /**
      * Sets the image properties to know if the inputs change, useful when
      * filtering and same roi options are enabled.
@@ -530,6 +687,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
             M = newMReal;
             N = newNReal;
             data.setInputImages(M, N, realIp.getFloatArray(), imaginaryIp.getFloatArray());
+            setZoomRoi(realImp);
 
         } else if (hasReal && !hasImaginary) {
             ImagePlus realImp = WindowManager.getImage(windowsId[realIdx - 1]);
@@ -546,6 +704,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
             M = newMReal;
             N = newNReal;
             data.setInputImages(M, N, realIp.getFloatArray(), null);
+            setZoomRoi(realImp);
 
         } else if (!hasReal && hasImaginary) {
             ImagePlus imaginaryImp = WindowManager.getImage(windowsId[imaginaryIdx - 1]);
@@ -562,6 +721,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
             M = newMImaginary;
             N = newNImaginary;
             data.setInputImages(M, N, null, imaginaryIp.getFloatArray());
+            setZoomRoi(imaginaryImp);
         }
 
         return true;
@@ -620,8 +780,8 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 
         methodIdx = methodCombo.getSelectedIndex();
 
-        //output width and height (Fresnel-Bluestein)
-        if (methodIdx == 2) {
+        //output width and height (Fresnel-Bluestein and zoom)
+        if (hasOutputSize(methodIdx)) {
             try {
                 outputWUser = Float.parseFloat(outputWField.getText());
                 if (outputWUser == 0) {
@@ -647,13 +807,18 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 
         fixUnits();
 
-        //sets the parameters, if methodIdx == 2 -> Fresnel-Bluestein
-        if (methodIdx == 2) {
+        //sets the parameters, methodIdx == 2 -> Fresnel-Bluestein, 4 -> zoom
+        if (hasOutputSize(methodIdx)) {
             data.setParameters(lambdaUm, zUm, inputWUm, inputHUm, outputWUm, outputHUm);
         } else {
             data.setParameters(lambdaUm, zUm, inputWUm, inputHUm);
         }
 
+        if (methodIdx == 4) {
+            setZoomCenter();
+            setZoomSamples();
+        }
+
         phaseEnabled = phaseChk.isSelected();
         amplitudeEnabled = amplitudeChk.isSelected();
         intensityEnabled = intensityChk.isSelected();
@@ -710,6 +875,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 
         zStepUser = inc ? zStepUser + stepUser : zStepUser - stepUser;
         zStepUm = inc ? zStepUm + stepUm : zStepUm - stepUm;
+        zStepDeltaUm = inc ? stepUm : -stepUm;
 
         //input width
         try {
@@ -735,10 +901,10 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
             return false;
         }
 
-        //output width and height (Fresnel-Bluestein)
+        //output width and height (Fresnel-Bluestein and zoom)
         methodIdx = methodCombo.getSelectedIndex();
 
-        if (methodIdx == 2) {
+        if (hasOutputSize(methodIdx)) {
             try {
                 outputWUser = Float.parseFloat(outputWField.getText());
                 if (outputWUser == 0) {
@@ -765,13 +931,18 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         fixUnits();
 //        data.setDistance(zStep);
 
-        //sets the parameters, if methodIdx == 2 -> Fresnel-Bluestein
-        if (methodIdx == 2) {
+        //sets the parameters, methodIdx == 2 -> Fresnel-Bluestein, 4 -> zoom
+        if (hasOutputSize(methodIdx)) {
             data.setParameters(lambdaUm, zStepUm, inputWUm, inputHUm, outputWUm, outputHUm);
         } else {
             data.setParameters(lambdaUm, zStepUm, inputWUm, inputHUm);
         }
 
+        if (methodIdx == 4) {
+            setZoomCenter();
+            setZoomSamples();
+        }
+
         phaseEnabled = phaseChk.isSelected();
         amplitudeEnabled = amplitudeChk.isSelected();
         intensityEnabled = intensityChk.isSelected();
@@ -790,16 +961,150 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
 
     /**
      * Propagates, prints the information on the log and shows the output
-     * images.
+     * images. Large fields are first propagated decimated and shown on a
+     * preview window; the full resolution propagation runs on a worker thread
+     * and its outputs replace the preview when it's done. The steps of the
+     * angular spectrum (useZ false) go from the last plane instead, which is
+     * quick enough to skip the preview.
+     *
+     * @param useZ
+     */
+    private void propagate(final boolean useZ) {
+        if (!useZ && data.canStep(methodIdx)) {
+            data.propagateStep(methodIdx, zStepDeltaUm, filterEnabled, isPlane, curvRadius);
+            showOutputs(useZ);
+            return;
+        }
+
+        final int factor = getPreviewFactor();
+
+        if (factor == 1) {
+            data.propagate(methodIdx, filterEnabled, isPlane, curvRadius);
+            showOutputs(useZ);
+            return;
+        }
+
+        final int idx = methodIdx;
+        final boolean filtered = filterEnabled;
+        final boolean plane = isPlane;
+        final float radius = curvRadius;
+
+        long start = System.currentTimeMillis();
+        float[][] preview = data.propagatePreview(idx, filtered, plane, radius, factor);
+        final ImagePlus previewImp = showPreview(preview, useZ, factor);
+
+        IJ.showStatus("Preview in " + (System.currentTimeMillis() - start)
+                + " ms, propagating at full resolution...");
+
+        propagating = true;
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                data.propagate(idx, filtered, plane, radius);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                propagating = false;
+
+                previewImp.changes = false;
+                previewImp.close();
+
+                try {
+                    get();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ExecutionException e) {
+                    IJ.handleException(e.getCause());
+                    return;
+                }
+
+                IJ.showStatus("");
+                showOutputs(useZ);
+            }
+        }.execute();
+    }
+
+    /**
+     * Returns the decimation factor of the preview, 1 if the field is
+     * propagated at full resolution only.
      *
+     * @return
+     */
+    private int getPreviewFactor() {
+        long pixels = (long) M * N;
+        if (!progressiveSelected || pixels < progressiveMinSize * 1E6f) {
+            return 1;
+        }
+
+        //4x for the largest fields, so the preview stays around 1 MP
+        return pixels / 4 > PREVIEW_PIXELS ? 4 : 2;
+    }
+
+    /**
+     * Shows a decimated output on a single window: the phase if selected,
+     * otherwise the amplitude or the intensity.
+     *
+     * @param preview
      * @param useZ
+     * @param factor
+     * @return
      */
-    private void propagate(boolean useZ) {
+    private ImagePlus showPreview(float[][] preview, boolean useZ, int factor) {
+        calibrate(useZ);
+        Calibration previewCal = cal.copy();
+
+        //fresnel keeps the output pixel size and shows a smaller window,
+        //the other methods keep the window with larger pixels
+        boolean fresnel = methodIdx == 1 || (methodIdx == 3
+                && data.getPlan().getMethod() == PropagationPlanner.FRESNEL);
+        if (!fresnel) {
+            previewCal.pixelWidth *= factor;
+            previewCal.pixelHeight *= factor;
+        }
+        previewCal.xOrigin /= factor;
+        previewCal.yOrigin /= factor;
 
-        data.propagate(methodIdx, filterEnabled, isPlane, curvRadius);
+        ImageProcessor ip;
+        String name;
+
+        if (phaseEnabled) {
+            ip = new FloatProcessor(ArrayUtils.phase(preview));
+            name = "Phase";
+        } else if (intensityEnabled && !amplitudeEnabled) {
+            ip = new FloatProcessor(ArrayUtils.modulusSq(preview));
+            if (intensityLogSelected) {
+                ip.log();
+            }
+            name = "Intensity";
+        } else {
+            ip = new FloatProcessor(ArrayUtils.modulus(preview));
+            if (amplitudeLogSelected) {
+                ip.log();
+            }
+            name = "Amplitude";
+        }
 
         String[] parameters = getFormattedParameters(useZ);
 
+        ImagePlus imp = new ImagePlus("Preview 1/" + factor + "; " + name + "; z = "
+                + parameters[3], ip);
+        imp.setCalibration(previewCal);
+        imp.show();
+
+        return imp;
+    }
+
+    /**
+     * Prints the information of the last propagation on the log and shows the
+     * output images.
+     *
+     * @param useZ
+     */
+    private void showOutputs(boolean useZ) {
+        String[] parameters = getFormattedParameters(useZ);
+
         updateLog(true,
                 "\nMethod: " + PROPAGATION_METHOD[methodIdx]
                 + "\nReal input: " + parameters[0]
@@ -809,12 +1114,24 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
                 + "\nInput Width: " + parameters[4]
                 + "\nInput Height: " + parameters[5]);
 
-        if (methodIdx == 2) {
+        if (hasOutputSize(methodIdx)) {
             updateLog(false,
                     "\nOutput Width: " + parameters[6]
                     + "\nOutput Height: " + parameters[7]);
         }
 
+        if (filterEnabled) {
+            logCompensation();
+        }
+        logApodization();
+
+        if (methodIdx == 3 && data.getPlan() != null) {
+            PropagationPlanner.Plan plan = data.getPlan();
+            updateLog(false, "\nAutomatic: " + plan.getReason()
+                    + String.format(Locale.US, "\nExpected %.0f ms, took %.0f ms",
+                            plan.getExpectedMs(), data.getDuration() * 1e-6));
+        }
+
         float[][] field = data.getOutputField();
         if (useZ) {
             setStepDistance();
@@ -838,6 +1155,15 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
                     phaseByteSelected ? ip1.convertToByteProcessor() : ip1);
             imp1.setCalibration(cal);
             imp1.show();
+
+            if (unwrapSelected) {
+                float[][] unwrapped = data.getPhaseUnwrapper(field.length, field[0].length / 2)
+                        .unwrapField(field);
+                ImagePlus imp6 = new ImagePlus("Unwrapped phase; z = " + parameters[3] + names,
+                        new FloatProcessor(unwrapped));
+                imp6.setCalibration(cal);
+                imp6.show();
+            }
         }
 
         if (amplitudeEnabled) {
@@ -917,9 +1243,9 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
             dxOut = outputWUm / M;
             dyOut = outputHUm / N;
         } else if (methodIdx == 3) {
-            float zCrit = M * dx * dx / lambdaUm;
-            //if z < zCrit, uses angular spectrum, else fresnel
-            if (Math.abs(useZ ? zUm : zStepUm) < zCrit) {
+            //the plan the propagation was made with
+            int method = data.getPlan().getMethod();
+            if (method == PropagationPlanner.ANGULAR_SPECTRUM) {
                 dxOut = inputWUm / M;
                 dyOut = inputHUm / N;
             } else {
@@ -929,6 +1255,17 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
                 dxOut *= Math.signum(useZ ? zUm : zStepUm);
                 dyOut *= Math.signum(useZ ? zUm : zStepUm);
             }
+        } else if (methodIdx == 4) {
+            //zoom, the output window size is given by the user, its samples
+            //by the settings and its center by the roi drawn on the input
+            int P = data.getZoomM();
+            int Q = data.getZoomN();
+            dxOut = outputWUm / P;
+            dyOut = outputHUm / Q;
+
+            //origin so the calibrated coordinates match the input ones
+            cal.xOrigin = -(zoomX0Um + (M * dx - P * dxOut) / 2) / dxOut;
+            cal.yOrigin = -(zoomY0Um + (N * dy - Q * dyOut) / 2) / dyOut;
         }
 
         //converts the output size, to user units
@@ -1182,7 +1519,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         });
 
         outputWField.setText(outputWString);
-        outputWField.setEnabled(methodIdx == 2);
+        outputWField.setEnabled(hasOutputSize(methodIdx));
         outputWField.setMaximumSize(new java.awt.Dimension(83, 20));
         outputWField.setMinimumSize(new java.awt.Dimension(83, 20));
         outputWField.setPreferredSize(new java.awt.Dimension(83, 20));
@@ -1198,7 +1535,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         });
 
         outputHField.setText(outputHString);
-        outputHField.setEnabled(methodIdx == 2);
+        outputHField.setEnabled(hasOutputSize(methodIdx));
         outputHField.setMaximumSize(new java.awt.Dimension(83, 20));
         outputHField.setMinimumSize(new java.awt.Dimension(83, 20));
         outputHField.setPreferredSize(new java.awt.Dimension(83, 20));
@@ -1214,7 +1551,7 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
         });
 
         lockBtn.setIcon(new javax.swing.ImageIcon(getClass().getResource(relationLock ? "/lock.png" : "/lock_open.png")));
-        lockBtn.setEnabled(methodIdx == 2);
+        lockBtn.setEnabled(hasOutputSize(methodIdx));
         lockBtn.setMaximumSize(new java.awt.Dimension(25, 25));
         lockBtn.setMinimumSize(new java.awt.Dimension(25, 25));
         lockBtn.setPreferredSize(new java.awt.Dimension(25, 25));
@@ -1592,6 +1929,10 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     }// </editor-fold>//GEN-END:initComponents
 
     private void propagateBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_propagateBtnActionPerformed
+        if (propagating) {
+            return;
+        }
+
         if (filterFrame != null && filterFrame.isVisible()) {
             filterFrame.setState(Frame.NORMAL);
             filterFrame.toFront();
@@ -1658,6 +1999,10 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     }//GEN-LAST:event_settingsBtnActionPerformed
 
     private void decBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_decBtnActionPerformed
+        if (propagating) {
+            return;
+        }
+
         boolean success = setParameters(false);
         if (!success) {
             return;
@@ -1667,6 +2012,10 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     }//GEN-LAST:event_decBtnActionPerformed
 
     private void incBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_incBtnActionPerformed
+        if (propagating) {
+            return;
+        }
+
         boolean success = setParameters(true);
         if (!success) {
             return;
@@ -1676,6 +2025,10 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     }//GEN-LAST:event_incBtnActionPerformed
 
     private void batchBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_batchBtnActionPerformed
+        if (propagating) {
+            return;
+        }
+
         if (batchFrame != null && batchFrame.isVisible()) {
             batchFrame.setState(Frame.NORMAL);
             batchFrame.toFront();
@@ -1720,9 +2073,9 @@ public class MainFrame extends javax.swing.JFrame implements ImageListener, Pref
     }//GEN-LAST:event_formWindowClosing
 
     private void methodComboActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_methodComboActionPerformed
-        outputWField.setEnabled(methodCombo.getSelectedIndex() == 2);
-        outputHField.setEnabled(methodCombo.getSelectedIndex() == 2);
-        lockBtn.setEnabled(methodCombo.getSelectedIndex() == 2);
+        outputWField.setEnabled(hasOutputSize(methodCombo.getSelectedIndex()));
+        outputHField.setEnabled(hasOutputSize(methodCombo.getSelectedIndex()));
+        lockBtn.setEnabled(hasOutputSize(methodCombo.getSelectedIndex()));
     }//GEN-LAST:event_methodComboActionPerformed
 
     private void lockBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_lockBtnActionPerformed
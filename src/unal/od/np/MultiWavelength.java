@@ -0,0 +1,561 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.CompositeImage;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.WindowManager;
+import ij.gui.GenericDialog;
+import ij.measure.Calibration;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.LUT;
+import java.awt.Color;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.prefs.Preferences;
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.FloatAngularSpectrum;
+import unal.od.jdiffraction.cpu.FloatFresnelFourier;
+import unal.od.jdiffraction.cpu.FloatPropagator;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+
+/**
+ * Propagates every channel of a multi-wavelength hologram to the same distance
+ * in one pass. Channels are given as separate images or as the slices of one
+ * stack, they share the spatial filtering of the last propagation and are
+ * processed in parallel. Fresnel outputs are brought to the pixel pitch of the
+ * shortest wavelength by zero padding each channel before propagating.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class MultiWavelength implements PreferencesKeys {
+
+    private static final String TITLE = "Multi-Wavelength Propagation";
+    private static final String[] METHODS = new String[]{"Angular Spectrum", "Fresnel"};
+    private static final int MAX_CHANNELS = 3;
+
+    //user inputs converted to um
+    private float[] lambdaUm;
+    private float zUm;
+    private float inputWUm;
+    private float inputHUm;
+
+    private int M, N;
+    private int methodIdx;
+    private boolean useFilter;
+
+    private boolean compositeIntensity;
+    private boolean compositeAmplitude;
+    private boolean syntheticPhase;
+
+    private float[][][] inputs;
+    private String[] names;
+
+    private int[] windowsId;
+    private String[] titles;
+
+    //units
+    private String lambdaUnits;
+    private String zUnits;
+    private String inputSizeUnits;
+    private String outputSizeUnits;
+
+    private final DecimalFormat df;
+    private final Preferences pref;
+    private final Data data;
+
+    public MultiWavelength() {
+        df = new DecimalFormat("#.####", new DecimalFormatSymbols(Locale.US));
+        pref = Preferences.userNodeForPackage(getClass());
+        data = Data.getInstance();
+
+        lambdaUnits = pref.get(LAMBDA_UNITS, "nm");
+        zUnits = pref.get(DISTANCE_UNITS, "m");
+        inputSizeUnits = pref.get(INPUT_SIZE_UNITS, "mm");
+        outputSizeUnits = pref.get(OUTPUT_SIZE_UNITS, "mm");
+    }
+
+    /**
+     * Shows the dialog and performs the propagation.
+     */
+    public void run() {
+        windowsId = WindowManager.getIDList();
+        if (windowsId == null) {
+            IJ.error(TITLE, "Please open the hologram channels first.");
+            return;
+        }
+
+        titles = new String[windowsId.length + 1];
+        titles[0] = "<none>";
+        for (int i = 0; i < windowsId.length; i++) {
+            ImagePlus imp = WindowManager.getImage(windowsId[i]);
+            titles[i + 1] = imp != null ? imp.getTitle() : "";
+        }
+
+        if (!showDialog()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        float[][][] fields;
+        try {
+            fields = propagate();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            IJ.handleException(e.getCause());
+            return;
+        }
+
+        show(fields);
+
+        IJ.showStatus(TITLE + ": " + fields.length + " channels in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private boolean showDialog() {
+        GenericDialog gd = new GenericDialog(TITLE);
+
+        for (int c = 0; c < MAX_CHANNELS; c++) {
+            gd.addChoice("Channel " + (c + 1) + ":", titles, titles[c < titles.length - 1 ? c + 1 : 0]);
+        }
+        gd.addMessage("A stack on channel 1 and <none> on the others\nuses one slice per channel.");
+        gd.addStringField("Wavelengths [" + lambdaUnits + "]:", pref.get(MW_LAMBDAS, ""), 14);
+        gd.addStringField("Distance [" + zUnits + "]:", pref.get(DISTANCE, ""), 8);
+        gd.addStringField("Input width [" + inputSizeUnits + "]:", pref.get(INPUT_WIDTH, ""), 8);
+        gd.addStringField("Input height [" + inputSizeUnits + "]:", pref.get(INPUT_HEIGHT, ""), 8);
+        gd.addChoice("Method:", METHODS, METHODS[pref.getInt(MW_METHOD_IDX, 0)]);
+        gd.addCheckbox("Use the ROI of the last filtering", pref.getBoolean(MW_FILTER, true));
+        gd.addCheckbox("Composite intensity", pref.getBoolean(MW_INTENSITY, true));
+        gd.addCheckbox("Composite amplitude", pref.getBoolean(MW_AMPLITUDE, false));
+        gd.addCheckbox("Synthetic wavelength phase", pref.getBoolean(MW_SYNTHETIC, false));
+
+        gd.showDialog();
+        if (gd.wasCanceled()) {
+            return false;
+        }
+
+        int[] channelIdx = new int[MAX_CHANNELS];
+        for (int c = 0; c < MAX_CHANNELS; c++) {
+            channelIdx[c] = gd.getNextChoiceIndex();
+        }
+
+        String lambdasString = gd.getNextString();
+        String zString = gd.getNextString();
+        String inputWString = gd.getNextString();
+        String inputHString = gd.getNextString();
+        methodIdx = gd.getNextChoiceIndex();
+        useFilter = gd.getNextBoolean();
+        compositeIntensity = gd.getNextBoolean();
+        compositeAmplitude = gd.getNextBoolean();
+        syntheticPhase = gd.getNextBoolean();
+
+        if (!setInputImages(channelIdx)) {
+            return false;
+        }
+
+        String[] lambdas = lambdasString.split("[,;\\s]+");
+        if (lambdas.length != inputs.length) {
+            IJ.error(TITLE, "Please insert one wavelength per channel (" + inputs.length + ").");
+            return false;
+        }
+
+        lambdaUm = new float[lambdas.length];
+        try {
+            for (int c = 0; c < lambdas.length; c++) {
+                float lambda = Float.parseFloat(lambdas[c]);
+                if (lambda <= 0) {
+                    IJ.error(TITLE, "Wavelengths must be positive numbers and different from 0.");
+                    return false;
+                }
+                lambdaUm[c] = unitsToum(lambda, lambdaUnits);
+            }
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert valid wavelengths.");
+            return false;
+        }
+
+        try {
+            zUm = unitsToum(Float.parseFloat(zString), zUnits);
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert a valid distance.");
+            return false;
+        }
+
+        try {
+            inputWUm = unitsToum(Float.parseFloat(inputWString), inputSizeUnits);
+            inputHUm = unitsToum(Float.parseFloat(inputHString), inputSizeUnits);
+            if (inputWUm == 0 || inputHUm == 0) {
+                IJ.error(TITLE, "Input width and height must be different from 0.");
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert a valid input size.");
+            return false;
+        }
+
+        if (useFilter && !data.hasROI()) {
+            IJ.error(TITLE, "There is no ROI to filter with. Please filter a hologram\n"
+                    + "in the main window first or disable the filtering.");
+            return false;
+        }
+
+        if (useFilter && (data.getM() != M || data.getN() != N)) {
+            IJ.error(TITLE, "The ROI of the last filtering was defined for a "
+                    + data.getM() + "x" + data.getN() + " hologram.");
+            return false;
+        }
+
+        if (!compositeIntensity && !compositeAmplitude && !syntheticPhase) {
+            IJ.error(TITLE, "Please select at least one output.");
+            return false;
+        }
+
+        if (syntheticPhase && inputs.length < 2) {
+            IJ.error(TITLE, "The synthetic wavelength phase needs at least two channels.");
+            return false;
+        }
+
+        pref.put(MW_LAMBDAS, lambdasString);
+        pref.putInt(MW_METHOD_IDX, methodIdx);
+        pref.putBoolean(MW_FILTER, useFilter);
+        pref.putBoolean(MW_INTENSITY, compositeIntensity);
+        pref.putBoolean(MW_AMPLITUDE, compositeAmplitude);
+        pref.putBoolean(MW_SYNTHETIC, syntheticPhase);
+
+        return true;
+    }
+
+    /**
+     * Reads the channels, either from separate images or from the slices of
+     * the stack selected as channel 1.
+     *
+     * @param channelIdx
+     * @return success
+     */
+    private boolean setInputImages(int[] channelIdx) {
+        List<ImageProcessor> processors = new ArrayList<ImageProcessor>();
+        List<String> labels = new ArrayList<String>();
+
+        if (channelIdx[0] == 0) {
+            IJ.error(TITLE, "Please select the first channel.");
+            return false;
+        }
+
+        ImagePlus first = WindowManager.getImage(windowsId[channelIdx[0] - 1]);
+
+        boolean fromStack = first.getStackSize() > 1;
+        for (int c = 1; c < MAX_CHANNELS; c++) {
+            fromStack &= channelIdx[c] == 0;
+        }
+
+        if (fromStack) {
+            ImageStack stack = first.getStack();
+            if (stack.getSize() > MAX_CHANNELS) {
+                IJ.error(TITLE, "The stack must have at most " + MAX_CHANNELS + " slices.");
+                return false;
+            }
+
+            for (int s = 1; s <= stack.getSize(); s++) {
+                processors.add(stack.getProcessor(s));
+                labels.add(first.getTitle() + ":" + s);
+            }
+        } else {
+            for (int c = 0; c < MAX_CHANNELS; c++) {
+                if (channelIdx[c] == 0) {
+                    continue;
+                }
+
+                ImagePlus imp = WindowManager.getImage(windowsId[channelIdx[c] - 1]);
+                processors.add(imp.getProcessor());
+                labels.add(imp.getTitle());
+            }
+        }
+
+        M = processors.get(0).getWidth();
+        N = processors.get(0).getHeight();
+
+        inputs = new float[processors.size()][][];
+        names = new String[processors.size()];
+
+        for (int c = 0; c < inputs.length; c++) {
+            ImageProcessor ip = processors.get(c);
+            if (ip.getWidth() != M || ip.getHeight() != N) {
+                IJ.error(TITLE, "All channels must have the same dimensions.");
+                return false;
+            }
+
+            inputs[c] = ip.getFloatArray();
+            names[c] = labels.get(c);
+        }
+
+        return true;
+    }
+
+    /**
+     * Propagates all the channels in parallel.
+     *
+     * @return propagated fields, M x 2N each
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    private float[][][] propagate() throws InterruptedException, ExecutionException {
+        final float lambdaRef = min(lambdaUm);
+        final float dx = inputWUm / M;
+        final float dy = inputHUm / N;
+
+        int threads = Math.min(inputs.length, Performance.getBatchWorkers());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<float[][]>> futures = new ArrayList<Future<float[][]>>();
+
+            for (int c = 0; c < inputs.length; c++) {
+                final int channel = c;
+                futures.add(executor.submit(new Callable<float[][]>() {
+                    @Override
+                    public float[][] call() {
+                        return propagateChannel(inputs[channel], lambdaUm[channel],
+                                lambdaRef, dx, dy);
+                    }
+                }));
+            }
+
+            float[][][] fields = new float[inputs.length][][];
+            for (int c = 0; c < fields.length; c++) {
+                fields[c] = futures.get(c).get();
+            }
+
+            return fields;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Filters and propagates one channel. For Fresnel, the filtered field is
+     * padded to M * lambda / lambdaRef samples so the output pitch
+     * (lambda * z / (M' * dx)) equals the one of the reference wavelength; the
+     * central M x N region of the output is returned.
+     */
+    private float[][] propagateChannel(float[][] input, float lambda, float lambdaRef,
+            float dx, float dy) {
+
+        float[][] field = ArrayUtils.complexAmplitude2(input, null);
+
+        if (useFilter) {
+            FloatFFT_2D fft = new FloatFFT_2D(M, N);
+            fft.complexForward(field);
+            ArrayUtils.complexShift(field);
+
+            field = data.filter(field, fft);
+        }
+
+        if (methodIdx == 0) {
+            FloatPropagator propagator = new FloatAngularSpectrum(M, N, lambda, zUm, dx, dy);
+            propagator.diffract(field);
+            return field;
+        }
+
+        int MPad = Math.max(M, Math.round(M * lambda / lambdaRef));
+        int NPad = Math.max(N, Math.round(N * lambda / lambdaRef));
+        int a = (MPad - M) / 2;
+        int b = (NPad - N) / 2;
+
+        float[][] padded = new float[MPad][2 * NPad];
+        for (int i = 0; i < M; i++) {
+            System.arraycopy(field[i], 0, padded[i + a], 2 * b, 2 * N);
+        }
+
+        FloatPropagator propagator = new FloatFresnelFourier(MPad, NPad, lambda, zUm, dx, dy);
+        propagator.diffract(padded);
+
+        float[][] output = new float[M][2 * N];
+        for (int i = 0; i < M; i++) {
+            System.arraycopy(padded[i + a], 2 * b, output[i], 0, 2 * N);
+        }
+
+        return output;
+    }
+
+    private void show(float[][][] fields) {
+        Calibration cal = calibration();
+
+        StringBuilder lambdas = new StringBuilder();
+        for (int c = 0; c < lambdaUm.length; c++) {
+            lambdas.append(c == 0 ? "" : ", ").append(df.format(umToUnits(lambdaUm[c], lambdaUnits)));
+        }
+
+        String info = "; z = " + df.format(umToUnits(zUm, zUnits)) + " " + zUnits
+                + "; lambda = " + lambdas + " " + lambdaUnits;
+
+        if (compositeIntensity) {
+            ImageStack stack = new ImageStack(M, N);
+            for (int c = 0; c < fields.length; c++) {
+                stack.addSlice(names[c], new FloatProcessor(ArrayUtils.modulusSq(fields[c])));
+            }
+            showComposite("Intensity" + info, stack, cal);
+        }
+
+        if (compositeAmplitude) {
+            ImageStack stack = new ImageStack(M, N);
+            for (int c = 0; c < fields.length; c++) {
+                stack.addSlice(names[c], new FloatProcessor(ArrayUtils.modulus(fields[c])));
+            }
+            showComposite("Amplitude" + info, stack, cal);
+        }
+
+        if (syntheticPhase) {
+            //phase of u1 * conj(u2), wrapped on the synthetic wavelength
+            float[][] u1 = fields[0];
+            float[][] u2 = fields[1];
+            float[][] phase = new float[M][N];
+
+            for (int i = 0; i < M; i++) {
+                for (int j = 0; j < N; j++) {
+                    float re = u1[i][2 * j] * u2[i][2 * j] + u1[i][2 * j + 1] * u2[i][2 * j + 1];
+                    float im = u1[i][2 * j + 1] * u2[i][2 * j] - u1[i][2 * j] * u2[i][2 * j + 1];
+                    phase[i][j] = (float) Math.atan2(im, re);
+                }
+            }
+
+            float synthetic = lambdaUm[0] * lambdaUm[1] / Math.abs(lambdaUm[0] - lambdaUm[1]);
+
+            ImagePlus imp = new ImagePlus("Synthetic phase; Lambda = "
+                    + df.format(umToUnits(synthetic, lambdaUnits)) + " " + lambdaUnits + info,
+                    new FloatProcessor(phase));
+            imp.setCalibration(cal);
+            imp.show();
+        }
+    }
+
+    private void showComposite(String title, ImageStack stack, Calibration cal) {
+        ImagePlus imp = new ImagePlus(title, stack);
+        imp.setDimensions(stack.getSize(), 1, 1);
+
+        if (stack.getSize() == 1) {
+            imp.setCalibration(cal);
+            imp.show();
+            return;
+        }
+
+        CompositeImage composite = new CompositeImage(imp, IJ.COMPOSITE);
+        for (int c = 0; c < stack.getSize(); c++) {
+            composite.setChannelLut(LUT.createLutFromColor(channelColor(lambdaUm[c])), c + 1);
+            composite.setPosition(c + 1, 1, 1);
+            composite.resetDisplayRange();
+        }
+        composite.setPosition(1, 1, 1);
+        composite.setCalibration(cal);
+        composite.show();
+    }
+
+    /**
+     * Calibration of the outputs. Angular spectrum keeps the input pitch, the
+     * Fresnel outputs share the pitch of the shortest wavelength.
+     */
+    private Calibration calibration() {
+        float dxOut = inputWUm / M;
+        float dyOut = inputHUm / N;
+
+        if (methodIdx == 1) {
+            float lambdaRef = min(lambdaUm);
+            dxOut = Math.signum(zUm) * lambdaRef * zUm / (M * dxOut);
+            dyOut = Math.signum(zUm) * lambdaRef * zUm / (N * dyOut);
+        }
+
+        Calibration cal = new Calibration();
+        cal.setUnit(outputSizeUnits);
+        cal.pixelWidth = umToUnits(dxOut, outputSizeUnits);
+        cal.pixelHeight = umToUnits(dyOut, outputSizeUnits);
+
+        return cal;
+    }
+
+    private static Color channelColor(float lambdaUm) {
+        if (lambdaUm >= 0.59f) {
+            return Color.red;
+        } else if (lambdaUm >= 0.49f) {
+            return Color.green;
+        }
+        return Color.blue;
+    }
+
+    private static float min(float[] values) {
+        float min = Float.MAX_VALUE;
+        for (float v : values) {
+            min = Math.min(min, v);
+        }
+        return min;
+    }
+
+    /**
+     * Helper method to convert from {units} to um.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float unitsToum(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E-3f;
+        } else if (units.equals("mm")) {
+            return val * 1E3f;
+        } else if (units.equals("cm")) {
+            return val * 1E4f;
+        } else if (units.equals("m")) {
+            return val * 1E6f;
+        }
+
+        return val;
+    }
+
+    /**
+     * Helper method to convert from um to {units}.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float umToUnits(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E3f;
+        } else if (units.equals("mm")) {
+            return val * 1E-3f;
+        } else if (units.equals("cm")) {
+            return val * 1E-4f;
+        } else if (units.equals("m")) {
+            return val * 1E-6f;
+        }
+
+        return val;
+    }
+}
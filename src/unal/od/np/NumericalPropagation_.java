@@ -33,6 +33,7 @@ public class NumericalPropagation_ implements PlugIn {
 
     private static MainFrame MAIN_FRAME;
     private static UtilitiesFrame UTILITIES_FRAME;
+    private static LiveFrame LIVE_FRAME;
     private static final String IMAGEJ_VERSION = "1.48s";
     private static final String JDIFFRACTION_VERSION = "1.2";
 
@@ -72,6 +73,8 @@ public class NumericalPropagation_ implements PlugIn {
             return;
         }
 
+        Performance.apply();
+
         if (arg.equalsIgnoreCase("utilities")) {
             if (UTILITIES_FRAME == null || !UTILITIES_FRAME.isDisplayable()) {
                 UTILITIES_FRAME = new UtilitiesFrame();
@@ -83,6 +86,61 @@ public class NumericalPropagation_ implements PlugIn {
             return;
         }
 
+        if (arg.equalsIgnoreCase("live")) {
+            if (LIVE_FRAME == null || !LIVE_FRAME.isDisplayable()) {
+                LIVE_FRAME = new LiveFrame();
+                if (!LIVE_FRAME.start()) {
+                    LIVE_FRAME.dispose();
+                    return;
+                }
+                LIVE_FRAME.setVisible(true);
+            } else {
+                LIVE_FRAME.setVisible(true);
+                LIVE_FRAME.toFront();
+            }
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("multiwavelength")) {
+            new MultiWavelength().run();
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("savecomplex")) {
+            new ComplexFileTool().save();
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("opencomplex")) {
+            new ComplexFileTool().open();
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("propagatecomplex")) {
+            new ComplexFileTool().propagate();
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("openvolume")) {
+            new ComplexFileTool().openVolume();
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("watchfolder")) {
+            new WatchFolder().run();
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("server")) {
+            new PropagationServer().run();
+            return;
+        }
+
+        if (arg.equalsIgnoreCase("roundtrip")) {
+            new RoundTripValidator().run();
+            return;
+        }
+
         if (MAIN_FRAME == null || !MAIN_FRAME.isDisplayable()) {
             MAIN_FRAME = new MainFrame();
             MAIN_FRAME.setVisible(true);
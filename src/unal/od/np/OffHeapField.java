@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import org.jtransforms.fft.FloatFFT_2D;
+import org.jtransforms.utils.CommonUtils;
+import pl.edu.icm.jlargearrays.FloatLargeArray;
+import pl.edu.icm.jlargearrays.LargeArray;
+import pl.edu.icm.jlargearrays.LargeArrayUtils;
+
+/**
+ * M x N complex field stored outside the Java heap, for fields too large for
+ * float[M][2N] working arrays. The samples keep the order of Data and
+ * ComplexFile (the N samples of column 0, then column 1 and so on), which is
+ * the row major order JTransforms expects for an M x N transform, so the
+ * large-array FFT works in place on the native memory.
+ * <p>
+ * The kernels are applied one column at a time through a small heap array,
+ * so the hot loops don't touch the native memory element by element and no
+ * garbage is produced.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class OffHeapField {
+
+    private final int M, N;
+    private final FloatLargeArray data;
+    private final float[] column;
+
+    /**
+     * Returns true if an M x N field is larger than what JTransforms and
+     * JLargeArrays handle with plain Java arrays.
+     *
+     * @param M
+     * @param N
+     * @return
+     */
+    public static boolean isRequired(int M, int N) {
+        return (long) M * N >= LargeArray.getMaxSizeOf32bitArray();
+    }
+
+    /**
+     * Allocates the field. Its contents are undefined until read.
+     *
+     * @param M
+     * @param N
+     */
+    public OffHeapField(int M, int N) {
+        this.M = M;
+        this.N = N;
+
+        data = new FloatLargeArray(2L * M * N, false);
+        column = new float[2 * N];
+    }
+
+    /**
+     * Copies column i (N interleaved samples) into a reused array. The array
+     * is overwritten by the next call.
+     *
+     * @param i
+     * @return
+     */
+    public float[] getColumn(int i) {
+        long start = 2L * N * i;
+        return data.getFloatData(column, start, start + 2 * N, 1);
+    }
+
+    /**
+     * Sets column i from 2N interleaved values.
+     *
+     * @param i
+     * @param values
+     */
+    public void setColumn(int i, float[] values) {
+        LargeArrayUtils.arraycopy(values, 0, data, 2L * N * i, 2 * N);
+    }
+
+    /**
+     * Angular spectrum propagation, in place. Evanescent waves are removed.
+     *
+     * @param lambda
+     * @param z
+     * @param dx
+     * @param dy
+     */
+    public void angularSpectrum(float lambda, float z, float dx, float dy) {
+        FloatFFT_2D fft = createFFT();
+        fft.complexForward(data);
+
+        double k = 2 * Math.PI / lambda;
+        double[] fy2 = new double[N];
+        for (int j = 0; j < N; j++) {
+            double fy = lambda * frequency(j, N) / (N * dy);
+            fy2[j] = fy * fy;
+        }
+
+        for (int i = 0; i < M; i++) {
+            double fx = lambda * frequency(i, M) / (M * dx);
+            float[] c = getColumn(i);
+
+            for (int j = 0; j < N; j++) {
+                double root = 1 - fx * fx - fy2[j];
+                if (root < 0) {
+                    c[2 * j] = 0;
+                    c[2 * j + 1] = 0;
+                    continue;
+                }
+
+                double phase = k * z * Math.sqrt(root);
+                float cos = (float) Math.cos(phase);
+                float sin = (float) Math.sin(phase);
+                float re = c[2 * j];
+                float im = c[2 * j + 1];
+                c[2 * j] = re * cos - im * sin;
+                c[2 * j + 1] = re * sin + im * cos;
+            }
+
+            setColumn(i, c);
+        }
+
+        fft.complexInverse(data, true);
+    }
+
+    /**
+     * Fresnel propagation through a single transform, in place. The output
+     * pixel size is lambda * |z| / (M * dx) and lambda * |z| / (N * dy). M and
+     * N must be even.
+     *
+     * @param lambda
+     * @param z
+     * @param dx
+     * @param dy
+     * @throws IllegalArgumentException if M or N is odd
+     */
+    public void fresnel(float lambda, float z, float dx, float dy) {
+        if (M % 2 != 0 || N % 2 != 0) {
+            throw new IllegalArgumentException("Fresnel propagation needs an even "
+                    + "number of samples, the field is " + M + " x " + N + ".");
+        }
+
+        double k = 2 * Math.PI / lambda;
+        double dxOut = lambda * Math.abs(z) / (M * dx);
+        double dyOut = lambda * Math.abs(z) / (N * dy);
+
+        //the (-1)^(i + j) factors of both chirps center the transform
+        chirp(k / (2 * z), dx, dy, 1, 0);
+
+        createFFT().complexForward(data);
+
+        //exp(ikz) / (i lambda z), with the sign of the centered transform
+        double amplitude = (M / 2 + N / 2) % 2 == 0 ? 1 : -1;
+        amplitude /= lambda * z;
+        double phase = k * z - Math.PI / 2;
+        chirp(k / (2 * z), dxOut, dyOut, amplitude * Math.cos(phase),
+                amplitude * Math.sin(phase));
+    }
+
+    /**
+     * Plans the transform with the large-array code path. JTransforms reads
+     * (and above the 32 bit limit sets) its global switch while the plan is
+     * built, so the previous value is restored for the plain array transforms
+     * used everywhere else.
+     */
+    private FloatFFT_2D createFFT() {
+        synchronized (OffHeapField.class) {
+            boolean useLargeArrays = CommonUtils.isUseLargeArrays();
+            CommonUtils.setUseLargeArrays(true);
+            try {
+                return new FloatFFT_2D(M, N);
+            } finally {
+                CommonUtils.setUseLargeArrays(useLargeArrays);
+            }
+        }
+    }
+
+    /**
+     * Multiplies by (cRe + i cIm) exp(i a (x^2 + y^2)), centered on the field,
+     * alternating the signs of the samples.
+     */
+    private void chirp(double a, double dx, double dy, double cRe, double cIm) {
+
+        double[] y2 = new double[N];
+        for (int j = 0; j < N; j++) {
+            double y = (j - N / 2) * dy;
+            y2[j] = y * y;
+        }
+
+        for (int i = 0; i < M; i++) {
+            double x = (i - M / 2) * dx;
+            float[] c = getColumn(i);
+
+            for (int j = 0; j < N; j++) {
+                double phase = a * (x * x + y2[j]);
+                double sign = (i + j) % 2 == 0 ? 1 : -1;
+                double wRe = sign * (cRe * Math.cos(phase) - cIm * Math.sin(phase));
+                double wIm = sign * (cRe * Math.sin(phase) + cIm * Math.cos(phase));
+
+                float re = c[2 * j];
+                float im = c[2 * j + 1];
+                c[2 * j] = (float) (re * wRe - im * wIm);
+                c[2 * j + 1] = (float) (re * wIm + im * wRe);
+            }
+
+            setColumn(i, c);
+        }
+    }
+
+    /**
+     * Signed frequency index of sample i of an unshifted transform.
+     */
+    private static int frequency(int i, int length) {
+        return i < (length + 1) / 2 ? i : i - length;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+}
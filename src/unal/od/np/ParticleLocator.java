@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streaming 3D localization of bright objects along a batch propagation. The
+ * intensity of each plane is searched for local maxima above mean + k * sigma
+ * as soon as it is produced; detections of adjacent planes closer than the
+ * given radius are merged into one object whose position is taken at the
+ * plane of maximum intensity. Only the current plane and the objects still
+ * open (seen in the last planes) are kept in memory.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class ParticleLocator {
+
+    private final int M, N;
+    private final float thresholdSigma;
+    private final int radius;
+    private final int maxGap;
+    private final float step;
+
+    //intensity of the current plane, in the pixel order of ImageJ
+    private final float[] intensity;
+
+    private final List<Particle> open;
+    private final List<Particle> closed;
+
+    private int plane;
+
+    /**
+     * Creates the locator.
+     *
+     * @param M
+     * @param N
+     * @param thresholdSigma k in mean + k * sigma
+     * @param radius minimum distance between maxima of one plane and maximum
+     * lateral displacement between planes of the same object, in pixels
+     * @param maxGap number of planes an object can be missing before it is
+     * closed
+     * @param step distance between consecutive planes
+     */
+    public ParticleLocator(int M, int N, float thresholdSigma, int radius, int maxGap,
+            float step) {
+        this.M = M;
+        this.N = N;
+        this.thresholdSigma = thresholdSigma;
+        this.radius = Math.max(1, radius);
+        this.maxGap = Math.max(0, maxGap);
+        this.step = step;
+
+        intensity = new float[M * N];
+
+        open = new ArrayList<Particle>();
+        closed = new ArrayList<Particle>();
+    }
+
+    /**
+     * Searches the intensity of a propagated field (M x 2N) located at z.
+     * Planes must be added in order.
+     *
+     * @param field
+     * @param z
+     */
+    public void add(float[][] field, float z) {
+        double sum = 0;
+        double sum2 = 0;
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                float re = field[i][2 * j];
+                float im = field[i][2 * j + 1];
+                float value = re * re + im * im;
+
+                intensity[j * M + i] = value;
+                sum += value;
+                sum2 += value * value;
+            }
+        }
+
+        double mean = sum / (M * N);
+        double sigma = Math.sqrt(Math.max(0, sum2 / (M * N) - mean * mean));
+        float threshold = (float) (mean + thresholdSigma * sigma);
+
+        List<float[]> maxima = findMaxima(threshold);
+
+        //every open object takes, at most, one detection of this plane
+        List<Particle> updated = new ArrayList<Particle>();
+        for (float[] m : maxima) {
+            Particle nearest = null;
+            float best = radius * radius;
+
+            for (Particle p : open) {
+                if (updated.contains(p)) {
+                    continue;
+                }
+
+                float dx = p.lastX - m[0];
+                float dy = p.lastY - m[1];
+                float d = dx * dx + dy * dy;
+                if (d <= best) {
+                    best = d;
+                    nearest = p;
+                }
+            }
+
+            if (nearest == null) {
+                nearest = new Particle(step);
+                open.add(nearest);
+            }
+
+            nearest.update(m[0], m[1], m[2], z, plane);
+            updated.add(nearest);
+        }
+
+        for (Iterator<Particle> it = open.iterator(); it.hasNext();) {
+            Particle p = it.next();
+            if (plane - p.lastPlane > maxGap) {
+                closed.add(p);
+                it.remove();
+            }
+        }
+
+        plane++;
+    }
+
+    /**
+     * Closes the objects still open and returns every object found.
+     *
+     * @return
+     */
+    public List<Particle> finish() {
+        closed.addAll(open);
+        open.clear();
+
+        return closed;
+    }
+
+    /**
+     * Local maxima above the threshold, separated at least by the radius. The
+     * position is refined with the intensity weighted centroid of the 3x3
+     * neighborhood.
+     *
+     * @return list of {x, y, intensity}
+     */
+    private List<float[]> findMaxima(float threshold) {
+        List<float[]> maxima = new ArrayList<float[]>();
+
+        for (int j = 0; j < N; j++) {
+            for (int i = 0; i < M; i++) {
+                float value = intensity[j * M + i];
+                if (value <= threshold || !isMaximum(i, j, value)) {
+                    continue;
+                }
+
+                float sumI = 0, sumX = 0, sumY = 0;
+                for (int b = Math.max(0, j - 1); b <= Math.min(N - 1, j + 1); b++) {
+                    for (int a = Math.max(0, i - 1); a <= Math.min(M - 1, i + 1); a++) {
+                        float v = intensity[b * M + a];
+                        sumI += v;
+                        sumX += v * a;
+                        sumY += v * b;
+                    }
+                }
+
+                maxima.add(new float[]{sumX / sumI, sumY / sumI, value});
+            }
+        }
+
+        return maxima;
+    }
+
+    /**
+     * True if no pixel within the radius is brighter. Ties are broken in favor
+     * of the first pixel in raster order.
+     */
+    private boolean isMaximum(int i, int j, float value) {
+        int r2 = radius * radius;
+
+        for (int b = Math.max(0, j - radius); b <= Math.min(N - 1, j + radius); b++) {
+            for (int a = Math.max(0, i - radius); a <= Math.min(M - 1, i + radius); a++) {
+                int da = a - i;
+                int db = b - j;
+                if (da * da + db * db > r2 || (da == 0 && db == 0)) {
+                    continue;
+                }
+
+                float v = intensity[b * M + a];
+                boolean before = db < 0 || (db == 0 && da < 0);
+                if (v > value || (v == value && before)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Object merged across planes.
+     */
+    public static class Particle {
+
+        private final float step;
+
+        private float x, y, z, peak;
+        private int peakPlane, firstPlane, lastPlane;
+        private float lastX, lastY, lastIntensity;
+
+        //intensities of the planes before and after the peak, used for the
+        //sub-plane refinement of z
+        private float before, after;
+
+        private int planes;
+
+        private Particle(float step) {
+            this.step = step;
+        }
+
+        private void update(float x, float y, float intensity, float z, int plane) {
+            if (planes == 0) {
+                firstPlane = plane;
+            }
+
+            if (planes == 0 || intensity > peak) {
+                before = planes > 0 && plane == lastPlane + 1 ? lastIntensity : 0;
+                after = 0;
+
+                this.x = x;
+                this.y = y;
+                this.z = z;
+                peak = intensity;
+                peakPlane = plane;
+            } else if (plane == peakPlane + 1) {
+                after = intensity;
+            }
+
+            lastX = x;
+            lastY = y;
+            lastIntensity = intensity;
+            lastPlane = plane;
+            planes++;
+        }
+
+        // <editor-fold defaultstate="collapsed" desc="Getters">
+        public float getX() {
+            return x;
+        }
+
+        public float getY() {
+            return y;
+        }
+
+        /**
+         * Distance of the peak, refined with a parabola through the peak and
+         * the intensities of the adjacent planes when both are available.
+         *
+         * @return
+         */
+        public float getZ() {
+            float den = before - 2 * peak + after;
+            if (before <= 0 || after <= 0 || den >= 0 || step == 0) {
+                return z;
+            }
+
+            float offset = 0.5f * (before - after) / den;
+            return z + offset * step;
+        }
+
+        public float getPeak() {
+            return peak;
+        }
+
+        public int getPeakPlane() {
+            return peakPlane;
+        }
+
+        public int getFirstPlane() {
+            return firstPlane;
+        }
+
+        public int getLastPlane() {
+            return lastPlane;
+        }
+
+        public int getPlanes() {
+            return planes;
+        }
+        // </editor-fold>
+    }
+}
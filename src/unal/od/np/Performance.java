@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.IJ;
+import java.util.Arrays;
+import java.util.prefs.Preferences;
+import org.jtransforms.fft.FloatFFT_1D;
+import org.jtransforms.fft.FloatFFT_2D;
+import org.jtransforms.utils.CommonUtils;
+import pl.edu.icm.jlargearrays.ConcurrencyUtils;
+
+/**
+ * Thread and memory settings shared by all the tools. The FFT threads and
+ * thresholds configure JTransforms, which the propagators of JDiffraction
+ * use; the batch workers are the number of planes or fields processed at
+ * the same time, so workers times FFT threads shouldn't exceed the cores.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class Performance implements PreferencesKeys {
+
+    public static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    //defaults of JTransforms
+    public static final long DEFAULT_THRESHOLD_2D = 65536;
+    public static final long DEFAULT_THRESHOLD_1D = 8192;
+
+    public static final int DEFAULT_MEMORY_BUDGET = 50;
+
+    //size of the calibration field
+    private static final int CALIBRATION_SIZE = 1024;
+    private static final int REPETITIONS = 3;
+
+    private static final Preferences PREF = Preferences.userNodeForPackage(Performance.class);
+
+    private Performance() {
+    }
+
+    /**
+     * Configures JTransforms with the stored settings.
+     */
+    public static void apply() {
+        ConcurrencyUtils.setNumberOfThreads(getFFTThreads());
+
+        long threshold2D = PREF.getLong(FFT_THRESHOLD_2D, DEFAULT_THRESHOLD_2D);
+        long threshold1D = PREF.getLong(FFT_THRESHOLD_1D, DEFAULT_THRESHOLD_1D);
+        CommonUtils.setThreadsBeginN_2D(threshold2D);
+        CommonUtils.setThreadsBeginN_1D_FFT_2Threads(threshold1D);
+        CommonUtils.setThreadsBeginN_1D_FFT_4Threads(8 * threshold1D);
+    }
+
+    /**
+     * Threads of each FFT, all the cores if not set.
+     *
+     * @return
+     */
+    public static int getFFTThreads() {
+        int threads = PREF.getInt(FFT_THREADS, 0);
+        return threads > 0 ? threads : CORES;
+    }
+
+    /**
+     * Planes or fields processed at the same time. If not set the cores are
+     * divided among the FFT threads.
+     *
+     * @return
+     */
+    public static int getBatchWorkers() {
+        int workers = PREF.getInt(BATCH_WORKERS, 0);
+        return workers > 0 ? workers : Math.max(1, CORES / getFFTThreads());
+    }
+
+    /**
+     * Memory that can be used by the tools, in bytes.
+     *
+     * @return
+     */
+    public static long getMemoryBudget() {
+        return IJ.maxMemory() / 100 * PREF.getInt(MEMORY_BUDGET, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Part of the budget that isn't in use, in bytes.
+     *
+     * @return
+     */
+    public static long getFreeMemory() {
+        return Math.max(0, getMemoryBudget() - IJ.currentMemory());
+    }
+
+    /**
+     * Measures the local machine. The fastest number of threads is searched
+     * on a 1024 x 1024 field; then, for those threads, the smallest 2D and 1D
+     * sizes at which threading pays off. The stored settings aren't modified,
+     * but JTransforms is configured with them again when finished.
+     *
+     * @return FFT threads, batch workers, 2D threshold and 1D threshold
+     */
+    public static long[] calibrate() {
+        try {
+            int threads = 1;
+            double best = Double.MAX_VALUE;
+
+            //powers of two and all the cores
+            for (int t = 1; t <= CORES; t = t == CORES || 2 * t <= CORES ? 2 * t : CORES) {
+                ConcurrencyUtils.setNumberOfThreads(t);
+                CommonUtils.setThreadsBeginN_2D(DEFAULT_THRESHOLD_2D);
+
+                double time = time2D(CALIBRATION_SIZE);
+                //more threads only if they are clearly faster
+                if (time < 0.95 * best) {
+                    best = time;
+                    threads = t;
+                }
+            }
+
+            long threshold2D = (long) CALIBRATION_SIZE * CALIBRATION_SIZE;
+            long threshold1D = 1 << 20;
+
+            if (threads > 1) {
+                for (int n = 64; n < CALIBRATION_SIZE; n *= 2) {
+                    ConcurrencyUtils.setNumberOfThreads(1);
+                    double serial = time2D(n);
+
+                    ConcurrencyUtils.setNumberOfThreads(threads);
+                    CommonUtils.setThreadsBeginN_2D(1);
+                    if (time2D(n) < serial) {
+                        threshold2D = (long) n * n;
+                        break;
+                    }
+                }
+
+                for (int n = 1024; n < (1 << 20); n *= 2) {
+                    ConcurrencyUtils.setNumberOfThreads(1);
+                    double serial = time1D(n);
+
+                    ConcurrencyUtils.setNumberOfThreads(Math.min(2, threads));
+                    CommonUtils.setThreadsBeginN_1D_FFT_2Threads(1);
+                    if (time1D(n) < serial) {
+                        threshold1D = n;
+                        break;
+                    }
+                }
+            }
+
+            return new long[]{threads, Math.max(1, CORES / threads), threshold2D, threshold1D};
+        } finally {
+            apply();
+        }
+    }
+
+    /**
+     * Median time of a forward and inverse n x n FFT, in nanoseconds.
+     */
+    private static double time2D(int n) {
+        FloatFFT_2D fft = new FloatFFT_2D(n, n);
+        float[][] a = new float[n][2 * n];
+        a[0][0] = 1;
+
+        //warm up
+        fft.complexForward(a);
+        fft.complexInverse(a, true);
+
+        long[] times = new long[REPETITIONS];
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            fft.complexForward(a);
+            fft.complexInverse(a, true);
+            times[r] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(times);
+        return times[REPETITIONS / 2];
+    }
+
+    /**
+     * Median time of a forward and inverse FFT of n samples, in nanoseconds.
+     */
+    private static double time1D(int n) {
+        FloatFFT_1D fft = new FloatFFT_1D(n);
+        float[] a = new float[2 * n];
+        a[0] = 1;
+
+        fft.complexForward(a);
+        fft.complexInverse(a, true);
+
+        long[] times = new long[REPETITIONS];
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            fft.complexForward(a);
+            fft.complexInverse(a, true);
+            times[r] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(times);
+        return times[REPETITIONS / 2];
+    }
+}
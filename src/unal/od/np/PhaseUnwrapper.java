@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import org.jtransforms.dct.FloatDCT_2D;
+
+/**
+ * Unweighted least-squares phase unwrapping. The Poisson equation relating the
+ * unwrapped phase to the wrapped phase differences is solved with Neumann
+ * boundary conditions through a discrete cosine transform. The DCT plan and
+ * the eigenvalues of the discrete laplacian are computed once and can be
+ * shared by several threads unwrapping different planes of the same size.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class PhaseUnwrapper {
+
+    private static final float TWO_PI = (float) (2 * Math.PI);
+
+    private final int M, N;
+    private final FloatDCT_2D dct;
+
+    //eigenvalues of the laplacian along each axis
+    private final float[] xEigen, yEigen;
+
+    /**
+     * Creates an unwrapper for M x N phase maps.
+     *
+     * @param M
+     * @param N
+     */
+    public PhaseUnwrapper(int M, int N) {
+        this.M = M;
+        this.N = N;
+
+        dct = new FloatDCT_2D(M, N);
+
+        xEigen = new float[M];
+        for (int i = 0; i < M; i++) {
+            xEigen[i] = (float) (2 * Math.cos(Math.PI * i / M) - 2);
+        }
+
+        yEigen = new float[N];
+        for (int j = 0; j < N; j++) {
+            yEigen[j] = (float) (2 * Math.cos(Math.PI * j / N) - 2);
+        }
+    }
+
+    /**
+     * Unwraps the phase of a complex field (M x 2N).
+     *
+     * @param field
+     * @return unwrapped phase (M x N)
+     */
+    public float[][] unwrapField(float[][] field) {
+        float[][] phase = new float[M][N];
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                phase[i][j] = (float) Math.atan2(field[i][2 * j + 1], field[i][2 * j]);
+            }
+        }
+
+        return unwrap(phase);
+    }
+
+    /**
+     * Unwraps a wrapped phase map (M x N). The result has zero mean.
+     *
+     * @param wrapped
+     * @return unwrapped phase (M x N)
+     */
+    public float[][] unwrap(float[][] wrapped) {
+        //divergence of the wrapped gradient
+        float[][] rho = new float[M][N];
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                float p = wrapped[i][j];
+                float sum = 0;
+
+                if (i < M - 1) {
+                    sum += wrap(wrapped[i + 1][j] - p);
+                }
+                if (i > 0) {
+                    sum -= wrap(p - wrapped[i - 1][j]);
+                }
+                if (j < N - 1) {
+                    sum += wrap(wrapped[i][j + 1] - p);
+                }
+                if (j > 0) {
+                    sum -= wrap(p - wrapped[i][j - 1]);
+                }
+
+                rho[i][j] = sum;
+            }
+        }
+
+        dct.forward(rho, true);
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                float eigen = xEigen[i] + yEigen[j];
+                rho[i][j] = eigen == 0 ? 0 : rho[i][j] / eigen;
+            }
+        }
+
+        dct.inverse(rho, true);
+
+        return rho;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+    // </editor-fold>
+
+    private static float wrap(float d) {
+        return d - TWO_PI * Math.round(d / TWO_PI);
+    }
+}
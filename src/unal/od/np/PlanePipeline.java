@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Three stage pipeline for sweeps over many planes. The caller produces the
+ * planes (usually propagating them), a second thread derives the outputs of
+ * each plane and a third one stores them, so plane k + 1 is propagated while
+ * the outputs of plane k are derived and those of plane k - 1 are stored.
+ * <p>
+ * The queues between the stages are bounded, a stage that runs ahead waits
+ * for the slower ones instead of piling planes up in memory. Every stage
+ * sees the planes in the order they were added.
+ *
+ * @param <T> planes given by the caller
+ * @param <U> outputs derived from a plane
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class PlanePipeline<T, U> {
+
+    /**
+     * Work done on each plane by one stage.
+     *
+     * @param <I> input of the stage
+     * @param <O> output of the stage, Void for the last one
+     */
+    public interface Stage<I, O> {
+
+        O process(I input) throws Exception;
+    }
+
+    //marks the end of the planes on both queues
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> planes;
+    private final BlockingQueue<Object> outputs;
+
+    private final ExecutorService executor;
+    private final Future<Void> deriveTask;
+    private final Future<Void> storeTask;
+
+    /**
+     * Starts the derive and store threads.
+     *
+     * @param name used for the threads
+     * @param derive runs on the second thread
+     * @param store runs on the third thread
+     * @param depth planes that can wait between two stages
+     */
+    public PlanePipeline(final String name, final Stage<T, U> derive,
+            final Stage<U, Void> store, int depth) {
+
+        planes = new ArrayBlockingQueue<Object>(depth);
+        outputs = new ArrayBlockingQueue<Object>(depth);
+
+        executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + (count++ == 0 ? ": derive" : ": store"));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        storeTask = executor.submit(new Callable<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void call() throws Exception {
+                for (Object o = outputs.take(); o != END; o = outputs.take()) {
+                    store.process((U) o);
+                }
+                return null;
+            }
+        });
+
+        deriveTask = executor.submit(new Callable<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void call() throws Exception {
+                for (Object o = planes.take(); o != END; o = planes.take()) {
+                    put(outputs, derive.process((T) o), storeTask);
+                }
+                put(outputs, END, storeTask);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Passes the next plane to the derive stage, waiting while its queue is
+     * full.
+     *
+     * @param plane
+     * @throws ExecutionException if a stage failed, with its exception as
+     * cause
+     * @throws InterruptedException
+     */
+    public void add(T plane) throws ExecutionException, InterruptedException {
+        try {
+            put(planes, plane, deriveTask);
+        } catch (ExecutionException e) {
+            abort();
+            check();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every plane has gone through all the stages.
+     *
+     * @throws ExecutionException if a stage failed, with its exception as
+     * cause
+     * @throws InterruptedException
+     */
+    public void finish() throws ExecutionException, InterruptedException {
+        try {
+            put(planes, END, deriveTask);
+            deriveTask.get();
+            storeTask.get();
+        } catch (ExecutionException e) {
+            abort();
+            check();
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops both stages, dropping the planes still queued.
+     */
+    public void abort() {
+        deriveTask.cancel(true);
+        storeTask.cancel(true);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Puts an item on the queue of a stage, giving up if the stage has
+     * stopped.
+     */
+    private static void put(BlockingQueue<Object> queue, Object item, Future<Void> consumer)
+            throws ExecutionException, InterruptedException {
+
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (consumer.isDone()) {
+                consumer.get();
+                throw new ExecutionException(new IllegalStateException(
+                        "The pipeline stopped before the last plane."));
+            }
+        }
+    }
+
+    /**
+     * Rethrows the failure of a finished stage. A failed store stage makes
+     * the derive stage fail too, so it is checked first.
+     */
+    private void check() throws ExecutionException, InterruptedException {
+        if (storeTask.isDone() && !storeTask.isCancelled()) {
+            storeTask.get();
+        }
+        if (deriveTask.isDone() && !deriveTask.isCancelled()) {
+            deriveTask.get();
+        }
+    }
+}
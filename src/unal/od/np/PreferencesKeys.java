@@ -26,6 +26,8 @@ public interface PreferencesKeys {
     //utilities frame
     final static String UTILITIES_FRAME_LOC_X = "utilLocX";
     final static String UTILITIES_FRAME_LOC_Y = "utilLocY";
+    final static String SCALE_REAL = "utilScaleReal";
+    final static String SCALE_IMAGINARY = "utilScaleImaginary";
     
     //main frame parameters
     final static String MAIN_FRAME_LOC_X = "mainLocX";
@@ -76,6 +78,68 @@ public interface PreferencesKeys {
     final static String AMPLITUDE_LOG = "LogAmplitude";
     final static String INTENSITY_LOG = "LogIntensity";
 
+    //outputs
+    final static String UNWRAP_PHASE = "unwrapPhase";
+    final static String MAX_PROJECTION = "maxProjection";
+    final static String MEAN_PROJECTION = "meanProjection";
+    final static String MIN_PROJECTION = "minProjection";
+    final static String DEPTH_MAP = "depthMap";
+    final static String ZOOM_SAMPLES = "zoomSamples";
+
+    //particle localization
+    final static String LOCALIZE = "localize";
+    final static String LOCALIZATION_THRESHOLD = "localizationThreshold";
+    final static String LOCALIZATION_RADIUS = "localizationRadius";
+    final static String LOCALIZATION_GAP = "localizationGap";
+    final static String LOCALIZATION_CSV = "localizationCsv";
+
+    //progressive preview
+    final static String PROGRESSIVE_PREVIEW = "progressivePreview";
+    final static String PROGRESSIVE_MIN_SIZE = "progressiveMinSize";
+
+    //aberration compensation
+    final static String COMPENSATE_TILT = "compensateTilt";
+    final static String COMPENSATE_QUADRATIC = "compensateQuadratic";
+
+    //apodization
+    final static String APODIZATION = "apodization";
+    final static String APODIZATION_TAPER = "apodizationTaper";
+
+    //performance
+    final static String FFT_THREADS = "fftThreads";
+    final static String BATCH_WORKERS = "batchWorkers";
+    final static String MEMORY_BUDGET = "memoryBudget";
+    final static String FFT_THRESHOLD_2D = "fftThreshold2D";
+    final static String FFT_THRESHOLD_1D = "fftThreshold1D";
+
+    //storage
+    final static String SAVE_VOLUME = "saveVolume";
+    final static String VOLUME_TILE = "volumeTile";
+    final static String VOLUME_CHUNK_PLANES = "volumeChunkPlanes";
+    final static String VOLUME_LEVEL = "volumeLevel";
+    final static String STACK_STORAGE = "stackStorage";
+    final static String BATCH_TARGET = "batchTarget";
+
+    //watch folder
+    final static String WATCH_START = "watchStart";
+    final static String WATCH_END = "watchEnd";
+    final static String WATCH_PLANES = "watchPlanes";
+    final static String WATCH_METHOD_IDX = "watchMethodIdx";
+    final static String WATCH_FILTER = "watchFilter";
+    final static String WATCH_WORKERS = "watchWorkers";
+    final static String WATCH_QUEUE = "watchQueue";
+
+    //propagation server
+    final static String SERVER_PORT = "serverPort";
+    final static String SERVER_WORKERS = "serverWorkers";
+    final static String SERVER_QUEUE = "serverQueue";
+
+    //live frame
+    final static String LIVE_FROM = "liveFrom";
+    final static String LIVE_TO = "liveTo";
+    final static String LIVE_OUTPUT = "liveOutput";
+    final static String LIVE_PREVIEW = "livePreview";
+
     //filter frame
     final static String IS_FILTER_ENABLED = "filterSelected";
     final static String ROI_X = "roiX";
@@ -113,6 +177,17 @@ public interface PreferencesKeys {
     final static String SPHERICAL_DISTANCE = "sphericalZ";
     final static String SPHERICAL_CURV_RADIUS = "sphericalCurvRadius";
 
+    //multi-wavelength
+    final static String MW_LAMBDAS = "mwLambdas";
+    final static String MW_METHOD_IDX = "mwMethodIdx";
+    final static String MW_FILTER = "mwFilter";
+    final static String MW_INTENSITY = "mwIntensity";
+    final static String MW_AMPLITUDE = "mwAmplitude";
+    final static String MW_SYNTHETIC = "mwSynthetic";
+
+    //round trip validation
+    final static String ROUND_TRIP_TARGET = "roundTripTarget";
+
     //dialogs
     final static String SHOW_FREQUENCIES_DIALOG = "showFreqDialog";
 }
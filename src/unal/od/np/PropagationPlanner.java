@@ -0,0 +1,290 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import java.util.Locale;
+
+/**
+ * Chooses the method of the automatic propagation. Angular spectrum and
+ * Fresnel are checked against the sampling of their kernels: the transfer
+ * function of the angular spectrum aliases beyond zCrit = M dx^2 / lambda,
+ * and the input chirp of Fresnel aliases before it. The angular spectrum is
+ * run zero padded, with the guard band that keeps the light from wrapping
+ * around and, beyond zCrit, the samples that keep its transfer function
+ * unaliased, up to twice the field; so between zCrit and the largest padded
+ * zCrit both methods are valid and the cheapest one is taken. If none is
+ * valid, the one whose sampling is violated the least. The cost is the
+ * number of operations of the FFTs each method needs on its padded grid; the
+ * time per operation learned from the propagations already made only breaks
+ * ties and gives the expected time, so the same parameters always get the
+ * same plan and it can be kept and reused by whoever needs to know how a
+ * plane was propagated.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class PropagationPlanner {
+
+    public static final int ANGULAR_SPECTRUM = 0;
+    public static final int FRESNEL = 1;
+
+    private static final String[] NAMES = {"angular spectrum", "Fresnel"};
+
+    //FFTs of each method
+    private static final int[] FFTS = {2, 1};
+
+    //padded grids are rounded up to a multiple of this, so nearby distances
+    //share them and their FFTs factor in small primes
+    private static final int PADDING_STEP = 64;
+
+    //nanoseconds per M N log2(M N) operation of each method, updated with
+    //every measurement; only used to break ties
+    private static final double[] NS_PER_OPERATION = {2, 2};
+
+    private PropagationPlanner() {
+    }
+
+    /**
+     * Result of the planning.
+     */
+    public static class Plan {
+
+        private final int M, N;
+        private final float lambda, z, dx, dy;
+
+        private final int method;
+        private final boolean valid;
+        private final int paddedM, paddedN;
+        private final double expectedMs;
+        private final String reason;
+
+        private Plan(int M, int N, float lambda, float z, float dx, float dy, int method,
+                boolean valid, int paddedM, int paddedN, double expectedMs, String reason) {
+            this.M = M;
+            this.N = N;
+            this.lambda = lambda;
+            this.z = z;
+            this.dx = dx;
+            this.dy = dy;
+            this.method = method;
+            this.valid = valid;
+            this.paddedM = paddedM;
+            this.paddedN = paddedN;
+            this.expectedMs = expectedMs;
+            this.reason = reason;
+        }
+
+        /**
+         * Returns true if the plan was made for these parameters.
+         *
+         * @param M
+         * @param N
+         * @param lambda
+         * @param z
+         * @param dx
+         * @param dy
+         * @return
+         */
+        public boolean isFor(int M, int N, float lambda, float z, float dx, float dy) {
+            return this.M == M && this.N == N && this.lambda == lambda && this.z == z
+                    && this.dx == dx && this.dy == dy;
+        }
+
+        /**
+         * Index of the chosen method, as used by Data.propagate (0 angular
+         * spectrum, 1 Fresnel).
+         *
+         * @return
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * Returns false if every method violates its sampling condition.
+         *
+         * @return
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Width of the grid the method runs on, the field width if it isn't
+         * padded.
+         *
+         * @return
+         */
+        public int getPaddedM() {
+            return paddedM;
+        }
+
+        /**
+         * Height of the grid the method runs on, see getPaddedM.
+         *
+         * @return
+         */
+        public int getPaddedN() {
+            return paddedN;
+        }
+
+        public double getExpectedMs() {
+            return expectedMs;
+        }
+
+        /**
+         * Why the method was chosen, for the log.
+         *
+         * @return
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Plans the propagation of an M x N field. The result only depends on the
+     * parameters and on the memory budget of the settings.
+     *
+     * @param M
+     * @param N
+     * @param lambda
+     * @param z
+     * @param dx
+     * @param dy
+     * @return
+     */
+    public static Plan plan(int M, int N, float lambda, float z, float dx, float dy) {
+        double absZ = Math.abs(z);
+
+        //distances where the kernels start (AS) or stop (Fresnel) aliasing
+        double zCritX = M * dx * dx / lambda;
+        double zCritY = N * dy * dy / lambda;
+        double zCrit = Math.min(zCritX, zCritY);
+
+        //grids the methods run on; the padding of the angular spectrum is
+        //dropped if it doesn't fit in the memory budget
+        int[][] grids = {
+            {paddedSize(M, lambda, z, dx), paddedSize(N, lambda, z, dy)},
+            {M, N}
+        };
+        if (8L * grids[0][0] * grids[0][1] > Performance.getMemoryBudget()) {
+            grids[0] = new int[]{M, N};
+        }
+
+        //violation of the sampling condition, valid if at most 1
+        double[] violation = {
+            Math.max(absZ * lambda / (grids[0][0] * dx * dx),
+            absZ * lambda / (grids[0][1] * dy * dy)),
+            absZ == 0 ? Double.POSITIVE_INFINITY : Math.max(zCritX, zCritY) / absZ
+        };
+
+        double[] operations = new double[FFTS.length];
+        double[] cost = new double[FFTS.length];
+        int best = -1;
+        for (int m = 0; m < FFTS.length; m++) {
+            operations[m] = FFTS[m] * operations(grids[m][0], grids[m][1]);
+            cost[m] = cost(m, operations[m]);
+            if (violation[m] <= 1 && (best < 0 || operations[m] < operations[best]
+                    || operations[m] == operations[best] && cost[m] < cost[best])) {
+                best = m;
+            }
+        }
+
+        boolean valid = best >= 0;
+        if (!valid) {
+            best = violation[ANGULAR_SPECTRUM] <= violation[FRESNEL] ? ANGULAR_SPECTRUM : FRESNEL;
+        }
+
+        StringBuilder reason = new StringBuilder();
+        reason.append(String.format(Locale.US, "|z| = %.4g um, zCrit = %.4g um: ", absZ, zCrit));
+        if (valid && violation[1 - best] <= 1) {
+            reason.append(String.format(Locale.US, "both methods are sampled correctly, "
+                    + "%s is cheaper (%.3g operations against %.3g)", NAMES[best],
+                    operations[best], operations[1 - best]));
+        } else if (valid) {
+            reason.append(NAMES[best]).append(best == ANGULAR_SPECTRUM
+                    ? " (transfer function sampled correctly)"
+                    : " (input chirp sampled correctly)");
+        } else {
+            reason.append(String.format(Locale.US, "no method is sampled correctly, "
+                    + "%s aliases the least (%.2fx)", NAMES[best], violation[best]));
+        }
+
+        if (best == FRESNEL) {
+            //paraxial phase error at the corners of the input
+            double r = Math.hypot(M * dx, N * dy) / 2;
+            double error = Math.PI * Math.pow(r, 4) / (4 * lambda * Math.pow(absZ, 3));
+            if (error > Math.PI / 2) {
+                reason.append(String.format(Locale.US,
+                        "; Fresnel approximation error up to %.2g rad", error));
+            }
+        } else if (grids[best][0] > M || grids[best][1] > N) {
+            reason.append(String.format(Locale.US, "; padded to %dx%d",
+                    grids[best][0], grids[best][1]));
+        }
+
+        return new Plan(M, N, lambda, z, dx, dy, best, valid, grids[best][0], grids[best][1],
+                cost[best] * 1e-6, reason.toString());
+    }
+
+    /**
+     * Updates the cost model with the time of a propagation.
+     *
+     * @param method 0 angular spectrum, 1 Fresnel
+     * @param M width of the grid it ran on, padding included
+     * @param N height of the grid it ran on
+     * @param ns elapsed time
+     */
+    public static synchronized void record(int method, int M, int N, long ns) {
+        double operations = FFTS[method] * operations(M, N);
+        if (operations <= 0) {
+            return;
+        }
+
+        NS_PER_OPERATION[method] = 0.7 * NS_PER_OPERATION[method] + 0.3 * ns / operations;
+    }
+
+    /**
+     * Samples of the padded angular spectrum along one axis: the guard band
+     * that keeps the light from wrapping around, and at least lambda |z| /
+     * d^2, the size whose transfer function is sampled correctly at z. At
+     * most twice the field.
+     */
+    private static int paddedSize(int length, float lambda, float z, float d) {
+        int guarded = length + Apodization.guardBand(length, lambda, z, d, 1, 0);
+        double unaliased = Math.ceil(lambda * Math.abs(z) / (d * d));
+        double size = Math.max(guarded, unaliased);
+        if (size <= length) {
+            return length;
+        }
+
+        size = Math.ceil(size / PADDING_STEP) * PADDING_STEP;
+        return (int) Math.min(2L * length, size);
+    }
+
+    /**
+     * Expected time of a number of operations of a method, in nanoseconds.
+     */
+    private static synchronized double cost(int method, double operations) {
+        return operations * NS_PER_OPERATION[method];
+    }
+
+    private static double operations(int M, int N) {
+        return (double) M * N * Math.log((double) M * N) / Math.log(2);
+    }
+}
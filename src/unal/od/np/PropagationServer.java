@@ -0,0 +1,640 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.GenericDialog;
+import ij.io.FileSaver;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.Preferences;
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.FloatAngularSpectrum;
+import unal.od.jdiffraction.cpu.FloatFresnelFourier;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+
+/**
+ * Local HTTP service to drive reconstructions from other programs. The
+ * server only listens on the loopback interface. Requests are run by a fixed
+ * number of workers; a bounded number of them can wait in a queue and the
+ * rest are answered with 503 right away.
+ * <p>
+ * POST /propagate reconstructs a hologram sent as the request body (any
+ * format ImageJ opens, "name" gives its file name) or read from "path".
+ * Parameters go on the query string, lengths in micrometers:
+ * <ul>
+ * <li>lambda: wavelength (required)</li>
+ * <li>dx, dy: pixel size of the hologram (dx required, dy defaults to dx)</li>
+ * <li>z: distance, or several separated by commas (required)</li>
+ * <li>method: as, fresnel or auto (default)</li>
+ * <li>filter: true to use the ROI of the last filtering of the main
+ * window</li>
+ * <li>curvature: radius of a spherical illumination, plane if missing</li>
+ * <li>output: phase, amplitude (default), intensity, real, imaginary;
+ * several separated by commas</li>
+ * <li>dir: folder where the outputs are written as 32-bit TIFF files. Without
+ * it the single requested output is sent back as a TIFF (a stack for several
+ * distances)</li>
+ * </ul>
+ * The time spent waiting and processing is returned in the JSON response, or
+ * in the X-Queue-Time-Ms, X-Process-Time-Ms and X-Total-Time-Ms headers of a
+ * TIFF response. GET /status returns the counters of the server.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class PropagationServer implements PreferencesKeys {
+
+    private static final String TITLE = "Propagation Server";
+    private static final String[] OUTPUTS = new String[]{"phase", "amplitude", "intensity",
+        "real", "imaginary"};
+
+    //the server currently running, if any
+    private static PropagationServer RUNNING;
+
+    private int port;
+    private int workers;
+    private int queueSize;
+
+    private HttpServer server;
+    private ThreadPoolExecutor executor;
+    private ExecutorService handlers;
+
+    //counters
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final DecimalFormat df;
+    private final Preferences pref;
+    private final Data data;
+
+    public PropagationServer() {
+        df = new DecimalFormat("#.###", new DecimalFormatSymbols(Locale.US));
+        pref = Preferences.userNodeForPackage(getClass());
+        data = Data.getInstance();
+    }
+
+    /**
+     * Starts the server or, if it's already running, shows its counters and
+     * asks whether to stop it.
+     */
+    public void run() {
+        PropagationServer running = getRunning();
+        if (running != null) {
+            running.showStatusDialog();
+            return;
+        }
+
+        if (!showDialog()) {
+            return;
+        }
+
+        try {
+            start();
+        } catch (IOException e) {
+            IJ.error(TITLE, "The server couldn't be started: " + e.getMessage());
+        }
+    }
+
+    private synchronized static PropagationServer getRunning() {
+        return RUNNING;
+    }
+
+    private synchronized static void setRunning(PropagationServer server) {
+        RUNNING = server;
+    }
+
+    private boolean showDialog() {
+        GenericDialog gd = new GenericDialog(TITLE);
+        gd.addNumericField("Port:", pref.getInt(SERVER_PORT, 8765), 0);
+        gd.addNumericField("Workers:", pref.getInt(SERVER_WORKERS,
+                Performance.getBatchWorkers()), 0);
+        gd.addNumericField("Queued requests:", pref.getInt(SERVER_QUEUE, 16), 0);
+        gd.addMessage("Only connections from this computer are accepted.");
+        gd.showDialog();
+
+        if (gd.wasCanceled()) {
+            return false;
+        }
+
+        port = (int) gd.getNextNumber();
+        workers = (int) gd.getNextNumber();
+        queueSize = (int) gd.getNextNumber();
+
+        if (gd.invalidNumber() || port < 1 || port > 65535) {
+            IJ.error(TITLE, "Please insert a valid port.");
+            return false;
+        }
+
+        if (workers < 1 || queueSize < 1) {
+            IJ.error(TITLE, "Workers and queued requests must be 1 or more.");
+            return false;
+        }
+
+        pref.putInt(SERVER_PORT, port);
+        pref.putInt(SERVER_WORKERS, workers);
+        pref.putInt(SERVER_QUEUE, queueSize);
+
+        return true;
+    }
+
+    private void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+
+        //the exchanges only wait for the workers, rejected ones return at once
+        handlers = Executors.newCachedThreadPool();
+
+        server.createContext("/propagate", new PropagateHandler());
+        server.createContext("/status", new StatusHandler());
+        server.setExecutor(handlers);
+        server.start();
+
+        setRunning(this);
+
+        IJ.log(TITLE + ": listening on http://" + server.getAddress().getHostString() + ":"
+                + port + "/ with " + workers + " workers.");
+    }
+
+    private void stop() {
+        server.stop(1);
+        executor.shutdown();
+        handlers.shutdown();
+        setRunning(null);
+
+        IJ.log(TITLE + ": stopped, " + counters() + ".");
+    }
+
+    private String counters() {
+        return completed.get() + " completed, " + failed.get() + " failed, " + rejected.get()
+                + " rejected";
+    }
+
+    private void showStatusDialog() {
+        GenericDialog gd = new GenericDialog(TITLE);
+        gd.addMessage("Listening on port " + port + "\n" + counters() + "\n" + active.get()
+                + " running, " + executor.getQueue().size() + " queued.");
+        gd.setOKLabel("Stop");
+        gd.showDialog();
+
+        if (gd.wasOKed()) {
+            stop();
+        }
+    }
+
+    /**
+     * Result of a request.
+     */
+    private static class Result {
+
+        private int M, N, planes;
+        private String[] outputs;
+        private ImageStack[] stacks;
+        private final List<String> files = new ArrayList<String>();
+        private long queueNanos, processNanos;
+    }
+
+    private class PropagateHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final long received = System.nanoTime();
+
+            try {
+                if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+                    sendError(exchange, 405, "Please use POST.");
+                    return;
+                }
+
+                final Map<String, String> params = parseQuery(exchange.getRequestURI()
+                        .getRawQuery());
+                final byte[] upload = params.containsKey("path") ? null
+                        : readAll(exchange.getRequestBody());
+
+                Future<Result> future;
+                try {
+                    future = executor.submit(new Callable<Result>() {
+                        @Override
+                        public Result call() throws IOException {
+                            long started = System.nanoTime();
+                            active.incrementAndGet();
+                            try {
+                                Result result = process(params, upload);
+                                result.queueNanos = started - received;
+                                result.processNanos = System.nanoTime() - started;
+                                return result;
+                            } finally {
+                                active.decrementAndGet();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected.incrementAndGet();
+                    sendError(exchange, 503, "The server is busy, please try again later.");
+                    return;
+                }
+
+                Result result;
+                try {
+                    result = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    sendError(exchange, 503, "The server is stopping.");
+                    return;
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet();
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IllegalArgumentException) {
+                        sendError(exchange, 400, cause.getMessage());
+                    } else if (cause instanceof FileNotFoundException) {
+                        sendError(exchange, 404, cause.getMessage());
+                    } else {
+                        IJ.log(TITLE + ": " + cause);
+                        sendError(exchange, 500, String.valueOf(cause.getMessage()));
+                    }
+                    return;
+                }
+
+                completed.incrementAndGet();
+                long totalNanos = System.nanoTime() - received;
+
+                if (result.stacks == null) {
+                    sendJson(exchange, 200, resultJson(result, totalNanos));
+                } else {
+                    byte[] tiff = new FileSaver(new ImagePlus(result.outputs[0],
+                            result.stacks[0])).serialize();
+
+                    exchange.getResponseHeaders().set("Content-Type", "image/tiff");
+                    exchange.getResponseHeaders().set("X-Queue-Time-Ms", ms(result.queueNanos));
+                    exchange.getResponseHeaders().set("X-Process-Time-Ms", ms(result.processNanos));
+                    exchange.getResponseHeaders().set("X-Total-Time-Ms", ms(totalNanos));
+                    send(exchange, 200, tiff);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class StatusHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                sendJson(exchange, 200, "{\"workers\": " + workers
+                        + ", \"queueSize\": " + queueSize
+                        + ", \"running\": " + active.get()
+                        + ", \"queued\": " + executor.getQueue().size()
+                        + ", \"completed\": " + completed.get()
+                        + ", \"failed\": " + failed.get()
+                        + ", \"rejected\": " + rejected.get() + "}");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Reads, filters and propagates the hologram of a request.
+     */
+    private Result process(Map<String, String> params, byte[] upload) throws IOException {
+        String name;
+        ImagePlus imp;
+
+        if (params.containsKey("path")) {
+            File file = new File(params.get("path"));
+            if (!file.isFile()) {
+                throw new FileNotFoundException(file.getPath() + " doesn't exist.");
+            }
+            name = file.getName();
+            imp = IJ.openImage(file.getPath());
+        } else {
+            name = params.containsKey("name") ? params.get("name") : "hologram.tif";
+            imp = decode(upload, name);
+        }
+
+        if (imp == null) {
+            throw new IllegalArgumentException("The hologram couldn't be read.");
+        }
+
+        float lambda = floatParam(params, "lambda");
+        float dx = floatParam(params, "dx");
+        float dy = params.containsKey("dy") ? floatParam(params, "dy") : dx;
+        if (lambda <= 0 || dx <= 0 || dy <= 0) {
+            throw new IllegalArgumentException("lambda, dx and dy must be positive.");
+        }
+
+        float[] z = floatsParam(params, "z");
+
+        String method = params.containsKey("method") ? params.get("method") : "auto";
+        if (!method.equals("as") && !method.equals("fresnel") && !method.equals("auto")) {
+            throw new IllegalArgumentException("method must be as, fresnel or auto.");
+        }
+
+        String[] outputs = (params.containsKey("output") ? params.get("output") : "amplitude")
+                .split(",");
+        int[] outputIdx = new int[outputs.length];
+        for (int k = 0; k < outputs.length; k++) {
+            outputIdx[k] = indexOf(OUTPUTS, outputs[k].trim());
+            if (outputIdx[k] < 0) {
+                throw new IllegalArgumentException("Unknown output: " + outputs[k] + ".");
+            }
+        }
+
+        String dir = params.get("dir");
+        if (dir == null && outputs.length > 1) {
+            throw new IllegalArgumentException("Only one output can be sent back, "
+                    + "please give a dir to write several.");
+        }
+
+        ImageProcessor ip = imp.getProcessor();
+        int M = ip.getWidth();
+        int N = ip.getHeight();
+
+        float[][] field = ArrayUtils.complexAmplitude2(ip.getFloatArray(), null);
+
+        if (Boolean.parseBoolean(params.get("filter"))) {
+            if (!data.hasROI() || data.getM() != M || data.getN() != N) {
+                throw new IllegalArgumentException("There is no ROI for a " + M + "x" + N
+                        + " hologram, please filter one in the main window first.");
+            }
+
+            FloatFFT_2D fft = new FloatFFT_2D(M, N);
+            fft.complexForward(field);
+            ArrayUtils.complexShift(field);
+            field = data.filter(field, fft);
+        }
+
+        if (params.containsKey("curvature")) {
+            field = ArrayUtils.complexMultiplication(field, Data.sphericalWave(M, N, lambda,
+                    dx, dy, floatParam(params, "curvature")));
+        }
+
+        ImageStack[] stacks = new ImageStack[outputs.length];
+        for (int k = 0; k < outputs.length; k++) {
+            stacks[k] = new ImageStack(M, N);
+        }
+
+        for (int p = 0; p < z.length; p++) {
+            float[][] plane = field;
+            if (p < z.length - 1) {
+                plane = new float[M][];
+                for (int i = 0; i < M; i++) {
+                    plane[i] = field[i].clone();
+                }
+            }
+
+            //the automatic method runs as planned, padding included
+            PropagationPlanner.Plan plan = method.equals("auto")
+                    ? PropagationPlanner.plan(M, N, lambda, z[p], dx, dy) : null;
+            boolean fresnel = method.equals("fresnel")
+                    || plan != null && plan.getMethod() == PropagationPlanner.FRESNEL;
+
+            if (fresnel) {
+                new FloatFresnelFourier(M, N, lambda, z[p], dx, dy).diffract(plane);
+            } else if (plan != null && (plan.getPaddedM() != M || plan.getPaddedN() != N)) {
+                int P = plan.getPaddedM();
+                int Q = plan.getPaddedN();
+                float[][] padded = Data.pad(plane, P, Q);
+                new FloatAngularSpectrum(P, Q, lambda, z[p], dx, dy).diffract(padded);
+                Data.crop(padded, plane);
+            } else {
+                new FloatAngularSpectrum(M, N, lambda, z[p], dx, dy).diffract(plane);
+            }
+
+            for (int k = 0; k < outputs.length; k++) {
+                stacks[k].addSlice("z = " + df.format(z[p]) + " um",
+                        new FloatProcessor(output(plane, outputIdx[k])));
+            }
+        }
+
+        Result result = new Result();
+        result.M = M;
+        result.N = N;
+        result.planes = z.length;
+        result.outputs = outputs;
+
+        if (dir == null) {
+            result.stacks = stacks;
+            return result;
+        }
+
+        File folder = new File(dir);
+        if (!folder.isDirectory()) {
+            throw new FileNotFoundException(dir + " isn't a folder.");
+        }
+
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+
+        for (int k = 0; k < outputs.length; k++) {
+            String path = new File(folder, base + "_" + OUTPUTS[outputIdx[k]] + ".tif").getPath();
+            FileSaver saver = new FileSaver(new ImagePlus(outputs[k], stacks[k]));
+            if (!(z.length > 1 ? saver.saveAsTiffStack(path) : saver.saveAsTiff(path))) {
+                throw new IOException(path + " couldn't be written.");
+            }
+            result.files.add(path);
+        }
+
+        return result;
+    }
+
+    /**
+     * Opens an uploaded image through a temporary file, so every format
+     * known by ImageJ is accepted.
+     */
+    private static ImagePlus decode(byte[] upload, String name) throws IOException {
+        if (upload.length == 0) {
+            throw new IllegalArgumentException("Please send the hologram or give its path.");
+        }
+
+        int dot = name.lastIndexOf('.');
+        File temp = File.createTempFile("hologram", dot > 0 ? name.substring(dot) : ".tif");
+        try {
+            Files.write(temp.toPath(), upload);
+            return IJ.openImage(temp.getPath());
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static float[][] output(float[][] field, int idx) {
+        switch (idx) {
+            case 0:
+                return ArrayUtils.phase(field);
+            case 1:
+                return ArrayUtils.modulus(field);
+            case 2:
+                return ArrayUtils.modulusSq(field);
+            case 3:
+                return ArrayUtils.real(field);
+            default:
+                return ArrayUtils.imaginary(field);
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Request helpers">
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query == null) {
+            return params;
+        }
+
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+
+        return params;
+    }
+
+    private static float floatParam(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + key + ".");
+        }
+
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value + ".");
+        }
+    }
+
+    private static float[] floatsParam(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + key + ".");
+        }
+
+        String[] parts = value.split(",");
+        float[] values = new float[parts.length];
+        try {
+            for (int k = 0; k < parts.length; k++) {
+                values[k] = Float.parseFloat(parts[k].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value + ".");
+        }
+
+        return values;
+    }
+
+    private static int indexOf(String[] array, String value) {
+        for (int k = 0; k < array.length; k++) {
+            if (array[k].equals(value)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private String resultJson(Result result, long totalNanos) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"width\": ").append(result.M)
+                .append(", \"height\": ").append(result.N)
+                .append(", \"planes\": ").append(result.planes)
+                .append(", \"files\": [");
+
+        for (int k = 0; k < result.files.size(); k++) {
+            json.append(k == 0 ? "" : ", ").append(quote(result.files.get(k)));
+        }
+
+        json.append("], \"queueTimeMs\": ").append(ms(result.queueNanos))
+                .append(", \"processTimeMs\": ").append(ms(result.processNanos))
+                .append(", \"totalTimeMs\": ").append(ms(totalNanos))
+                .append("}");
+
+        return json.toString();
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private String ms(long nanos) {
+        return df.format(nanos * 1E-6);
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message)
+            throws IOException {
+        sendJson(exchange, code, "{\"error\": " + quote(message) + "}");
+    }
+
+    private static void sendJson(HttpExchange exchange, int code, String json)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, code, json.getBytes("UTF-8"));
+    }
+
+    private static void send(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+    // </editor-fold>
+}
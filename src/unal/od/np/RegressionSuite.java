@@ -0,0 +1,443 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+
+/**
+ * Correctness and timing checks on synthetic holograms, meant to be run
+ * before deploying a new version or a new JDiffraction/JTransforms build.
+ * <p>
+ * The correctness checks reconstruct the phase object of a SyntheticHologram
+ * through the spatial filter, propagate a field to z and back to -z, check
+ * that the angular spectrum conserves the energy and that a point source
+ * focuses at the center. The timing checks measure Data.propagate for the
+ * methods 0 to 3, Data.center and the derivation of the outputs. Timings are
+ * compared with a baseline file; if the file doesn't exist the current
+ * timings are recorded in it, so the first run on a machine always passes.
+ * <p>
+ * Usage: RegressionSuite [size] [baseline file] [tolerance]. The exit status
+ * is 1 if any check failed.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class RegressionSuite {
+
+    private static final int DEFAULT_SIZE = 512;
+    private static final String DEFAULT_BASELINE = "regression-baseline.properties";
+    //slowdown tolerated before a timing check fails
+    private static final float DEFAULT_TOLERANCE = 0.25f;
+
+    //runs of each timed operation, the fastest is kept since it is the
+    //least disturbed by the rest of the machine
+    private static final int RUNS = 7;
+    //absolute slowdown always tolerated, nanoseconds, for very quick
+    //operations
+    private static final long SLACK = 500000;
+
+    //micrometers
+    private static final float LAMBDA = 0.633f;
+    private static final float PIXEL = 3.45f;
+
+    //correctness limits
+    private static final double MAX_PHASE_ERROR = 0.05;
+    private static final double MAX_ROUND_TRIP_ERROR = 1e-3;
+    private static final double MAX_ENERGY_LOSS = 1e-3;
+    private static final double MIN_FOCUSED_ENERGY = 0.5;
+    private static final int FOCUS_RADIUS = 3;
+
+    private final int M, N;
+    private final float z;
+    private final File baselineFile;
+    private final float tolerance;
+
+    private final Data data;
+    private final Properties timings;
+    private int failures;
+
+    /**
+     * Creates the suite.
+     *
+     * @param size side of the synthetic holograms
+     * @param baselineFile timings to compare with
+     * @param tolerance relative slowdown tolerated
+     */
+    public RegressionSuite(int size, File baselineFile, float tolerance) {
+        M = size;
+        N = size;
+        this.baselineFile = baselineFile;
+        this.tolerance = tolerance;
+
+        //twice the distance at which the field is critically sampled
+        z = 2 * M * PIXEL * PIXEL / LAMBDA;
+
+        data = Data.getInstance();
+        timings = new Properties();
+    }
+
+    public static void main(String... args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        File baseline = new File(args.length > 1 ? args[1] : DEFAULT_BASELINE);
+        float tolerance = args.length > 2 ? Float.parseFloat(args[2]) : DEFAULT_TOLERANCE;
+
+        Performance.apply();
+
+        boolean passed;
+        try {
+            passed = new RegressionSuite(size, baseline, tolerance).run();
+        } catch (IOException e) {
+            System.out.println("Baseline: " + e.getMessage());
+            passed = false;
+        }
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Runs every check, printing one line per check.
+     *
+     * @return true if all of them passed
+     * @throws IOException if the baseline can't be read or written
+     */
+    public boolean run() throws IOException {
+        failures = 0;
+
+        //the checks assume a plain propagation of the input
+        data.setApodization(Apodization.NONE, 0);
+        data.setCompensation(0);
+
+        System.out.println("Synthetic hologram: " + M + " x " + N + ", z = " + z + " um");
+
+        checkReconstruction();
+        checkEnergy();
+        checkRoundTrip();
+        checkFocus();
+
+        timePropagation();
+        timeOutputs();
+        compareTimings();
+
+        System.out.println(failures == 0 ? "All checks passed." : failures + " checks failed.");
+        return failures == 0;
+    }
+
+    /**
+     * Filters the object order and compares its phase with the object.
+     */
+    private void checkReconstruction() {
+        SyntheticHologram hologram = new SyntheticHologram(M, N, LAMBDA, PIXEL, PIXEL);
+        float[][] object = hologram.getObject();
+
+        data.setInputImages(M, N, hologram.getHologram(), null);
+        data.calculateFFT();
+
+        int[] order = hologram.getObjectOrder();
+        data.setROI(order[0], order[1], order[2], order[3], null);
+
+        long[] times = new long[RUNS];
+        for (int r = 0; r < RUNS; r++) {
+            long start = System.nanoTime();
+            data.center();
+            times[r] = System.nanoTime() - start;
+        }
+        timings.setProperty("center", "" + best(times));
+
+        float[][] filtered = data.getInputField(true, true, 0);
+        double error = phaseError(filtered, object, M / 8);
+
+        report("Reconstructed phase", error <= MAX_PHASE_ERROR,
+                "RMS error " + format(error) + " rad, limit " + MAX_PHASE_ERROR);
+    }
+
+    /**
+     * The angular spectrum only removes the evanescent waves, none for a
+     * smooth object.
+     */
+    private void checkEnergy() {
+        float[][] object = new SyntheticHologram(M, N, LAMBDA, PIXEL, PIXEL).getObject();
+        float[][] output = propagate(object, 0, z);
+
+        double loss = Math.abs(1 - energy(output) / energy(object));
+
+        report("Energy conservation", loss <= MAX_ENERGY_LOSS,
+                "relative loss " + format(loss) + ", limit " + MAX_ENERGY_LOSS);
+    }
+
+    /**
+     * Propagates to z and back to -z with the angular spectrum.
+     */
+    private void checkRoundTrip() {
+        float[][] object = new SyntheticHologram(M, N, LAMBDA, PIXEL, PIXEL).getObject();
+        float[][] back = propagate(propagate(object, 0, z), 0, -z);
+
+        double error = rmsError(back, object);
+
+        report("Round trip z, -z", error <= MAX_ROUND_TRIP_ERROR,
+                "relative RMS error " + format(error) + ", limit " + MAX_ROUND_TRIP_ERROR);
+    }
+
+    /**
+     * A point source at z before the hologram must focus at the center.
+     */
+    private void checkFocus() {
+        SyntheticHologram hologram = new SyntheticHologram(M, N, LAMBDA, PIXEL, PIXEL);
+        hologram.setPhase(0);
+        hologram.setPointSource(z);
+
+        float[][] focused = ArrayUtils.modulusSq(propagate(hologram.getObject(), 0, -z));
+
+        int peakX = 0;
+        int peakY = 0;
+        double total = 0;
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                total += focused[i][j];
+                if (focused[i][j] > focused[peakX][peakY]) {
+                    peakX = i;
+                    peakY = j;
+                }
+            }
+        }
+
+        double spot = 0;
+        for (int i = M / 2 - FOCUS_RADIUS; i <= M / 2 + FOCUS_RADIUS; i++) {
+            for (int j = N / 2 - FOCUS_RADIUS; j <= N / 2 + FOCUS_RADIUS; j++) {
+                spot += focused[i][j];
+            }
+        }
+        double fraction = spot / total;
+
+        boolean centered = Math.abs(peakX - M / 2) <= 1 && Math.abs(peakY - N / 2) <= 1;
+        report("Point source focus", centered && fraction >= MIN_FOCUSED_ENERGY,
+                "peak at (" + peakX + ", " + peakY + "), " + format(fraction)
+                + " of the energy within " + FOCUS_RADIUS + " px, limit "
+                + MIN_FOCUSED_ENERGY);
+    }
+
+    /**
+     * Best time of Data.propagate for the methods 0 to 3.
+     */
+    private void timePropagation() {
+        float[][] object = new SyntheticHologram(M, N, LAMBDA, PIXEL, PIXEL).getObject();
+        data.setInputImages(M, N, ArrayUtils.real(object), ArrayUtils.imaginary(object));
+        data.setParameters(LAMBDA, z, M * PIXEL, N * PIXEL, M * PIXEL, N * PIXEL);
+
+        for (int idx = 0; idx <= 3; idx++) {
+            long[] times = new long[RUNS];
+
+            //the first run warms up the JIT and the FFT plans
+            data.propagate(idx, false, true, 0);
+            for (int r = 0; r < RUNS; r++) {
+                long start = System.nanoTime();
+                data.propagate(idx, false, true, 0);
+                times[r] = System.nanoTime() - start;
+            }
+
+            timings.setProperty("propagate." + idx, "" + best(times));
+        }
+    }
+
+    /**
+     * Best time of the outputs shown by MainFrame and stored by batches.
+     */
+    private void timeOutputs() {
+        float[][] field = data.getOutputField();
+        long[] phase = new long[RUNS];
+        long[] amplitude = new long[RUNS];
+        long[] intensity = new long[RUNS];
+        long[] stack = new long[RUNS];
+
+        CompactStack compact = new CompactStack(M, N, CompactStack.FLOAT32);
+
+        for (int r = 0; r < RUNS; r++) {
+            long start = System.nanoTime();
+            ArrayUtils.phase(field);
+            phase[r] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new FloatProcessor(ArrayUtils.modulus(field)).log();
+            amplitude[r] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ImageProcessor ip = new FloatProcessor(ArrayUtils.modulusSq(field));
+            ip.log();
+            intensity[r] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            compact.addSlice("", ip, true);
+            stack[r] = System.nanoTime() - start;
+        }
+
+        timings.setProperty("output.phase", "" + best(phase));
+        timings.setProperty("output.amplitude", "" + best(amplitude));
+        timings.setProperty("output.intensity", "" + best(intensity));
+        timings.setProperty("output.stack", "" + best(stack));
+    }
+
+    /**
+     * Compares the timings with the baseline, or records them if there is
+     * none.
+     */
+    private void compareTimings() throws IOException {
+        String prefix = M + "x" + N + ".";
+
+        Properties baseline = new Properties();
+        if (baselineFile.isFile()) {
+            InputStream in = new FileInputStream(baselineFile);
+            try {
+                baseline.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        boolean recorded = false;
+        String[] names = timings.stringPropertyNames().toArray(new String[0]);
+        Arrays.sort(names);
+
+        for (String name : names) {
+            long time = Long.parseLong(timings.getProperty(name));
+            String base = baseline.getProperty(prefix + name);
+
+            if (base == null) {
+                baseline.setProperty(prefix + name, "" + time);
+                recorded = true;
+                report("Time " + name, true, format(time / 1e6) + " ms, recorded");
+                continue;
+            }
+
+            double limit = Long.parseLong(base) * (1 + tolerance) + SLACK;
+            report("Time " + name, time <= limit, format(time / 1e6) + " ms, limit "
+                    + format(limit / 1e6) + " ms");
+        }
+
+        if (recorded) {
+            OutputStream out = new FileOutputStream(baselineFile);
+            try {
+                baseline.store(out, "Best timings in nanoseconds, see RegressionSuite");
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Propagates an M x 2N field with Data, returning a copy of the output.
+     */
+    private float[][] propagate(float[][] field, int idx, float distance) {
+        data.setInputImages(M, N, ArrayUtils.real(field), ArrayUtils.imaginary(field));
+        data.setParameters(LAMBDA, distance, M * PIXEL, N * PIXEL, M * PIXEL, N * PIXEL);
+        data.propagate(idx, false, true, 0);
+
+        return data.takeOutputField(null);
+    }
+
+    private void report(String name, boolean passed, String detail) {
+        if (!passed) {
+            failures++;
+        }
+        System.out.println(String.format("%-24s %-5s %s", name, passed ? "PASS" : "FAIL",
+                detail));
+    }
+
+    /**
+     * RMS of the phase difference over the field without a border, after
+     * removing the mean phase offset.
+     */
+    static double phaseError(float[][] a, float[][] b, int border) {
+        int rows = a.length;
+        int cols = a[0].length / 2;
+
+        //a times the conjugate of b
+        double sumRe = 0;
+        double sumIm = 0;
+        for (int i = border; i < rows - border; i++) {
+            for (int j = border; j < cols - border; j++) {
+                float aRe = a[i][2 * j];
+                float aIm = a[i][2 * j + 1];
+                float bRe = b[i][2 * j];
+                float bIm = b[i][2 * j + 1];
+                sumRe += aRe * bRe + aIm * bIm;
+                sumIm += aIm * bRe - aRe * bIm;
+            }
+        }
+        double offset = Math.atan2(sumIm, sumRe);
+
+        double sum = 0;
+        int count = 0;
+        for (int i = border; i < rows - border; i++) {
+            for (int j = border; j < cols - border; j++) {
+                double d = Math.atan2(a[i][2 * j + 1], a[i][2 * j])
+                        - Math.atan2(b[i][2 * j + 1], b[i][2 * j]) - offset;
+                d = Math.atan2(Math.sin(d), Math.cos(d));
+                sum += d * d;
+                count++;
+            }
+        }
+
+        return Math.sqrt(sum / count);
+    }
+
+    /**
+     * RMS of the complex difference relative to the RMS of b.
+     */
+    static double rmsError(float[][] a, float[][] b) {
+        double diff = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int k = 0; k < a[i].length; k++) {
+                double d = a[i][k] - b[i][k];
+                diff += d * d;
+            }
+        }
+
+        return Math.sqrt(diff / energy(b));
+    }
+
+    static double energy(float[][] field) {
+        double sum = 0;
+        for (float[] column : field) {
+            for (float v : column) {
+                sum += v * v;
+            }
+        }
+
+        return sum;
+    }
+
+    private static long best(long[] values) {
+        long min = Long.MAX_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static String format(double value) {
+        return String.format("%.4g", value);
+    }
+}
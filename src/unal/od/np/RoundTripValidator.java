@@ -0,0 +1,425 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.WindowManager;
+import ij.gui.GenericDialog;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.prefs.Preferences;
+import unal.od.jdiffraction.cpu.FloatAngularSpectrum;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+
+/**
+ * Measures the accuracy given up by each propagation method. A field is
+ * propagated to z with Data.propagate and back to -z, and the result is
+ * compared with the original field: RMS amplitude error (relative to the RMS
+ * amplitude), RMS phase error (weighted by the intensity, after removing the
+ * mean phase offset) and energy loss, next to the time of the forward
+ * propagation. Methods 0 to 3 are measured, and the fastest one whose phase
+ * error meets the target is reported.
+ * <p>
+ * The field is taken from the selected real and imaginary images or, if none
+ * is selected, a SyntheticHologram phase object is used. The propagations run
+ * on a private Data instance, so the input, parameters and settings of the
+ * main window are left untouched; apodization and compensation stay disabled
+ * there, since the window alone would dominate the errors.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class RoundTripValidator implements PreferencesKeys {
+
+    private static final String TITLE = "Round Trip Validation";
+
+    //side of the synthetic object
+    private static final int SYNTHETIC_SIZE = 512;
+
+    //units
+    private final String lambdaUnits;
+    private final String zUnits;
+    private final String inputSizeUnits;
+
+    private final DecimalFormat df;
+    private final Preferences pref;
+    private final Data data;
+
+    /**
+     * Errors of a round trip with one method.
+     */
+    public static class Result {
+
+        private final int method;
+        private final double amplitudeError;
+        private final double phaseError;
+        private final double energyLoss;
+        private final long nanos;
+
+        private Result(int method, double amplitudeError, double phaseError,
+                double energyLoss, long nanos) {
+            this.method = method;
+            this.amplitudeError = amplitudeError;
+            this.phaseError = phaseError;
+            this.energyLoss = energyLoss;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Index of the method, as used by Data.propagate.
+         *
+         * @return
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        public double getAmplitudeError() {
+            return amplitudeError;
+        }
+
+        /**
+         * Intensity weighted RMS phase error, in radians.
+         *
+         * @return
+         */
+        public double getPhaseError() {
+            return phaseError;
+        }
+
+        /**
+         * Relative energy lost by the round trip, negative if it was gained.
+         *
+         * @return
+         */
+        public double getEnergyLoss() {
+            return energyLoss;
+        }
+
+        /**
+         * Time of the forward propagation, in nanoseconds.
+         *
+         * @return
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    public RoundTripValidator() {
+        df = new DecimalFormat("#.####", new DecimalFormatSymbols(Locale.US));
+        pref = Preferences.userNodeForPackage(getClass());
+        data = new Data();
+
+        lambdaUnits = pref.get(LAMBDA_UNITS, "nm");
+        zUnits = pref.get(DISTANCE_UNITS, "m");
+        inputSizeUnits = pref.get(INPUT_SIZE_UNITS, "mm");
+    }
+
+    /**
+     * Asks for the field and the parameters, and shows the errors of each
+     * method.
+     */
+    public void run() {
+        int[] windowsId = WindowManager.getIDList();
+        int windows = windowsId == null ? 0 : windowsId.length;
+
+        String[] titles = new String[windows + 1];
+        titles[0] = "<none>";
+        for (int i = 0; i < windows; i++) {
+            ImagePlus imp = WindowManager.getImage(windowsId[i]);
+            titles[i + 1] = imp != null ? imp.getTitle() : "";
+        }
+
+        GenericDialog gd = new GenericDialog(TITLE);
+        gd.addChoice("Real:", titles, titles[windows > 0 ? 1 : 0]);
+        gd.addChoice("Imaginary:", titles, titles[windows > 1 ? 2 : 0]);
+        gd.addStringField("Wavelength [" + lambdaUnits + "]:", pref.get(LAMBDA, ""), 8);
+        gd.addStringField("Width [" + inputSizeUnits + "]:", pref.get(INPUT_WIDTH, ""), 8);
+        gd.addStringField("Height [" + inputSizeUnits + "]:", pref.get(INPUT_HEIGHT, ""), 8);
+        gd.addStringField("Distance [" + zUnits + "]:", pref.get(DISTANCE, ""), 8);
+        gd.addNumericField("Max. phase error [rad]:", pref.getFloat(ROUND_TRIP_TARGET, 0.01f), 4);
+        gd.addMessage("With no input images, a " + SYNTHETIC_SIZE + " x " + SYNTHETIC_SIZE
+                + " synthetic phase object is used.");
+        gd.showDialog();
+
+        if (gd.wasCanceled()) {
+            return;
+        }
+
+        int realIdx = gd.getNextChoiceIndex();
+        int imaginaryIdx = gd.getNextChoiceIndex();
+
+        float lambda, width, height, z;
+        try {
+            lambda = unitsToum(Float.parseFloat(gd.getNextString()), lambdaUnits);
+            width = unitsToum(Float.parseFloat(gd.getNextString()), inputSizeUnits);
+            height = unitsToum(Float.parseFloat(gd.getNextString()), inputSizeUnits);
+            z = unitsToum(Float.parseFloat(gd.getNextString()), zUnits);
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert valid parameters.");
+            return;
+        }
+
+        float target = (float) gd.getNextNumber();
+
+        if (lambda <= 0 || width == 0 || height == 0 || z == 0) {
+            IJ.error(TITLE, "Wavelength, width, height and distance must be different from 0.");
+            return;
+        }
+
+        if (Float.isNaN(target) || target <= 0) {
+            IJ.error(TITLE, "Please insert a valid phase error.");
+            return;
+        }
+
+        pref.putFloat(ROUND_TRIP_TARGET, target);
+
+        float[][] field;
+        if (realIdx == 0 && imaginaryIdx == 0) {
+            field = new SyntheticHologram(SYNTHETIC_SIZE, SYNTHETIC_SIZE, lambda,
+                    width / SYNTHETIC_SIZE, height / SYNTHETIC_SIZE).getObject();
+        } else {
+            ImageProcessor real = realIdx == 0 ? null
+                    : WindowManager.getImage(windowsId[realIdx - 1]).getProcessor();
+            ImageProcessor imaginary = imaginaryIdx == 0 ? null
+                    : WindowManager.getImage(windowsId[imaginaryIdx - 1]).getProcessor();
+
+            if (real != null && imaginary != null
+                    && (imaginary.getWidth() != real.getWidth()
+                    || imaginary.getHeight() != real.getHeight())) {
+                IJ.error(TITLE, "Input images must have the same dimensions.");
+                return;
+            }
+
+            field = ArrayUtils.complexAmplitude2(real == null ? null : real.getFloatArray(),
+                    imaginary == null ? null : imaginary.getFloatArray());
+        }
+
+        int M = field.length;
+        int N = field[0].length / 2;
+
+        IJ.showStatus(TITLE + "...");
+
+        Result[] results = new Result[4];
+        try {
+            for (int idx = 0; idx < results.length; idx++) {
+                IJ.showProgress(idx, results.length);
+                results[idx] = validate(data, field, idx, lambda, z, width / M, height / N);
+            }
+        } finally {
+            IJ.showProgress(1.0);
+            IJ.showStatus("");
+        }
+
+        show(results, target, z);
+    }
+
+    /**
+     * Propagates the field to z and back to -z with one method, comparing
+     * the result with the field. The input of the given Data is replaced.
+     *
+     * @param data
+     * @param field M x 2N field
+     * @param idx method 0 to 3
+     * @param lambda
+     * @param z
+     * @param dx
+     * @param dy
+     * @return
+     */
+    public static Result validate(Data data, float[][] field, int idx, float lambda, float z,
+            float dx, float dy) {
+
+        int M = field.length;
+        int N = field[0].length / 2;
+
+        data.setInputImages(M, N, ArrayUtils.real(field), ArrayUtils.imaginary(field));
+        data.setParameters(lambda, z, M * dx, N * dy, M * dx, N * dy);
+
+        //the first run builds the FFT plans and warms up the JIT
+        data.propagate(idx, false, true, 0);
+
+        long start = System.nanoTime();
+        data.propagate(idx, false, true, 0);
+        long nanos = System.nanoTime() - start;
+
+        float[][] forward = data.getOutputField();
+
+        //the way back uses the kernel of the way there, Fresnel changes the
+        //pixel size
+        PropagationPlanner.Plan plan = idx == 3 ? data.getPlan() : null;
+        int back = idx;
+        if (plan != null) {
+            back = plan.getMethod() == PropagationPlanner.FRESNEL ? 1 : 0;
+        }
+
+        float backDx = dx;
+        float backDy = dy;
+        if (back == 1) {
+            backDx = lambda * Math.abs(z) / (M * dx);
+            backDy = lambda * Math.abs(z) / (N * dy);
+        }
+
+        float[][] result;
+        if (back == 0 && plan != null
+                && (plan.getPaddedM() != M || plan.getPaddedN() != N)) {
+            //a padded angular spectrum is only undone on the same padded grid
+            int P = plan.getPaddedM();
+            int Q = plan.getPaddedN();
+            float[][] padded = Data.pad(forward, P, Q);
+            new FloatAngularSpectrum(P, Q, lambda, -z, dx, dy).diffract(padded);
+            result = new float[M][2 * N];
+            Data.crop(padded, result);
+        } else {
+            data.setInputImages(M, N, ArrayUtils.real(forward), ArrayUtils.imaginary(forward));
+            data.setParameters(lambda, -z, M * backDx, N * backDy, M * dx, N * dy);
+            data.propagate(back, false, true, 0);
+            result = data.getOutputField();
+        }
+
+        //mean phase offset, the result times the conjugate of the field
+        double sumRe = 0;
+        double sumIm = 0;
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                float aRe = field[i][2 * j];
+                float aIm = field[i][2 * j + 1];
+                float bRe = result[i][2 * j];
+                float bIm = result[i][2 * j + 1];
+                sumRe += bRe * aRe + bIm * aIm;
+                sumIm += bIm * aRe - bRe * aIm;
+            }
+        }
+        double offset = Math.atan2(sumIm, sumRe);
+
+        double energy = 0;
+        double resultEnergy = 0;
+        double amplitudeSum = 0;
+        double phaseSum = 0;
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                float aRe = field[i][2 * j];
+                float aIm = field[i][2 * j + 1];
+                float bRe = result[i][2 * j];
+                float bIm = result[i][2 * j + 1];
+
+                double a2 = aRe * aRe + aIm * aIm;
+                double b2 = bRe * bRe + bIm * bIm;
+                double da = Math.sqrt(b2) - Math.sqrt(a2);
+
+                double dp = Math.atan2(bIm, bRe) - Math.atan2(aIm, aRe) - offset;
+                dp = Math.atan2(Math.sin(dp), Math.cos(dp));
+
+                energy += a2;
+                resultEnergy += b2;
+                amplitudeSum += da * da;
+                phaseSum += a2 * dp * dp;
+            }
+        }
+
+        if (energy == 0) {
+            return new Result(idx, 0, 0, 0, nanos);
+        }
+
+        return new Result(idx, Math.sqrt(amplitudeSum / energy), Math.sqrt(phaseSum / energy),
+                1 - resultEnergy / energy, nanos);
+    }
+
+    /**
+     * Shows the results table and logs the fastest method within the
+     * target.
+     */
+    private void show(Result[] results, float target, float z) {
+        ResultsTable rt = new ResultsTable();
+        rt.showRowNumbers(false);
+
+        Result fastest = null;
+        for (Result r : results) {
+            boolean meets = r.getPhaseError() <= target;
+
+            rt.incrementCounter();
+            rt.addValue("Method", MainFrame.PROPAGATION_METHOD[r.getMethod()]);
+            rt.addValue("Amplitude error", r.getAmplitudeError());
+            rt.addValue("Phase error [rad]", r.getPhaseError());
+            rt.addValue("Energy loss", r.getEnergyLoss());
+            rt.addValue("Time [ms]", r.getNanos() / 1e6);
+            rt.addValue("Meets target", meets ? "Yes" : "No");
+
+            if (meets && (fastest == null || r.getNanos() < fastest.getNanos())) {
+                fastest = r;
+            }
+        }
+
+        rt.show(TITLE + "; z = " + df.format(umToUnits(z, zUnits)) + " " + zUnits);
+
+        if (fastest == null) {
+            IJ.log(TITLE + ": no method meets a phase error of " + target + " rad.");
+        } else {
+            IJ.log(TITLE + ": " + MainFrame.PROPAGATION_METHOD[fastest.getMethod()]
+                    + " is the fastest method within " + target + " rad ("
+                    + df.format(fastest.getNanos() / 1e6) + " ms).");
+        }
+    }
+
+    /**
+     * Helper method to convert from {units} to um.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float unitsToum(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E-3f;
+        } else if (units.equals("mm")) {
+            return val * 1E3f;
+        } else if (units.equals("cm")) {
+            return val * 1E4f;
+        } else if (units.equals("m")) {
+            return val * 1E6f;
+        }
+
+        return val;
+    }
+
+    /**
+     * Helper method to convert from um to {units}.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float umToUnits(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E3f;
+        } else if (units.equals("mm")) {
+            return val * 1E-3f;
+        } else if (units.equals("cm")) {
+            return val * 1E-4f;
+        } else if (units.equals("m")) {
+            return val * 1E-6f;
+        }
+
+        return val;
+    }
+}
@@ -15,10 +15,14 @@
  */
 package unal.od.np;
 
+import java.awt.Cursor;
 import java.awt.Toolkit;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
+import javax.swing.DefaultComboBoxModel;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 
 /**
  *
@@ -64,8 +68,57 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
 //    private boolean realByteSelected;
 //    private boolean imaginaryByteSelected;
 
-    //flag
+    //outputs
+    private boolean unwrapSelected;
+
+    private boolean maxProjectionSelected;
+    private boolean meanProjectionSelected;
+    private boolean minProjectionSelected;
+    private boolean depthMapSelected;
+    private String zoomSamplesString;
+
+    //localization
+    private boolean localizeSelected;
+    private String thresholdString;
+    private String radiusString;
+    private String gapString;
+    private boolean csvSelected;
+
+    //storage
+    private boolean volumeSelected;
+    private String tileString;
+    private String chunkPlanesString;
+    private String levelString;
+    private int stackStorageIdx;
+    private int batchTargetIdx;
+
+    //preview
+    private boolean progressiveSelected;
+    private String minSizeString;
+
+    //aberrations
+    private boolean tiltSelected;
+    private boolean quadraticSelected;
+
+    //apodization
+    private int apodizationIdx;
+    private String taperString;
+
+    //performance
+    private String fftThreadsString;
+    private String batchWorkersString;
+    private String memoryBudgetString;
+    private String threshold2DString;
+    private String threshold1DString;
+
+    //flags
     private boolean propagationError = false;
+    private boolean localizationError = false;
+    private boolean storageError = false;
+    private boolean outputsError = false;
+    private boolean previewError = false;
+    private boolean apodizationError = false;
+    private boolean performanceError = false;
 
     private final Preferences pref;
 
@@ -129,6 +182,49 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
         intensityByteSelected = pref.getBoolean(INTENSITY_8_BIT, true);
 //        realByteSelected = pref.getBoolean(REAL_8_BIT, true);
 //        imaginaryByteSelected = pref.getBoolean(IMAGINARY_8_BIT, true);
+
+        //outputs
+        unwrapSelected = pref.getBoolean(UNWRAP_PHASE, false);
+
+        maxProjectionSelected = pref.getBoolean(MAX_PROJECTION, false);
+        meanProjectionSelected = pref.getBoolean(MEAN_PROJECTION, false);
+        minProjectionSelected = pref.getBoolean(MIN_PROJECTION, false);
+        depthMapSelected = pref.getBoolean(DEPTH_MAP, false);
+        zoomSamplesString = "" + pref.getInt(ZOOM_SAMPLES, 0);
+
+        //localization
+        localizeSelected = pref.getBoolean(LOCALIZE, false);
+        thresholdString = "" + pref.getFloat(LOCALIZATION_THRESHOLD, 5);
+        radiusString = "" + pref.getInt(LOCALIZATION_RADIUS, 5);
+        gapString = "" + pref.getInt(LOCALIZATION_GAP, 1);
+        csvSelected = pref.getBoolean(LOCALIZATION_CSV, false);
+
+        //storage
+        volumeSelected = pref.getBoolean(SAVE_VOLUME, false);
+        tileString = "" + pref.getInt(VOLUME_TILE, 256);
+        chunkPlanesString = "" + pref.getInt(VOLUME_CHUNK_PLANES, 8);
+        levelString = "" + pref.getInt(VOLUME_LEVEL, 1);
+        stackStorageIdx = pref.getInt(STACK_STORAGE, CompactStack.FLOAT32);
+        batchTargetIdx = pref.getInt(BATCH_TARGET, BatchWriter.WINDOWS);
+
+        //preview
+        progressiveSelected = pref.getBoolean(PROGRESSIVE_PREVIEW, true);
+        minSizeString = "" + pref.getFloat(PROGRESSIVE_MIN_SIZE, 4);
+
+        //aberrations
+        tiltSelected = pref.getBoolean(COMPENSATE_TILT, false);
+        quadraticSelected = pref.getBoolean(COMPENSATE_QUADRATIC, false);
+
+        //apodization
+        apodizationIdx = pref.getInt(APODIZATION, Apodization.NONE);
+        taperString = "" + 100 * pref.getFloat(APODIZATION_TAPER, 0.1f);
+
+        //performance
+        fftThreadsString = "" + pref.getInt(FFT_THREADS, 0);
+        batchWorkersString = "" + pref.getInt(BATCH_WORKERS, 0);
+        memoryBudgetString = "" + pref.getInt(MEMORY_BUDGET, Performance.DEFAULT_MEMORY_BUDGET);
+        threshold2DString = "" + pref.getLong(FFT_THRESHOLD_2D, Performance.DEFAULT_THRESHOLD_2D);
+        threshold1DString = "" + pref.getLong(FFT_THRESHOLD_1D, Performance.DEFAULT_THRESHOLD_1D);
     }
 
     private int unitToIdx(String unit) {
@@ -195,6 +291,76 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
         phaseByteChk = new javax.swing.JCheckBox();
         amplitudeByteChk = new javax.swing.JCheckBox();
         intensityByteChk = new javax.swing.JCheckBox();
+        outputsPanel = new javax.swing.JPanel();
+        phaseOutputPanel = new javax.swing.JPanel();
+        unwrapChk = new javax.swing.JCheckBox();
+        projectionPanel = new javax.swing.JPanel();
+        maxProjectionChk = new javax.swing.JCheckBox();
+        meanProjectionChk = new javax.swing.JCheckBox();
+        minProjectionChk = new javax.swing.JCheckBox();
+        depthMapChk = new javax.swing.JCheckBox();
+        zoomPanel = new javax.swing.JPanel();
+        zoomSamplesLabel = new javax.swing.JLabel();
+        zoomSamplesField = new javax.swing.JTextField();
+        applyOutputsBtn = new javax.swing.JButton();
+        localizationPanel = new javax.swing.JPanel();
+        particlesPanel = new javax.swing.JPanel();
+        localizeChk = new javax.swing.JCheckBox();
+        thresholdLabel = new javax.swing.JLabel();
+        thresholdField = new javax.swing.JTextField();
+        radiusLabel = new javax.swing.JLabel();
+        radiusField = new javax.swing.JTextField();
+        gapLabel = new javax.swing.JLabel();
+        gapField = new javax.swing.JTextField();
+        csvChk = new javax.swing.JCheckBox();
+        applyLocalizationBtn = new javax.swing.JButton();
+        storagePanel = new javax.swing.JPanel();
+        volumePanel = new javax.swing.JPanel();
+        volumeChk = new javax.swing.JCheckBox();
+        tileLabel = new javax.swing.JLabel();
+        tileField = new javax.swing.JTextField();
+        chunkPlanesLabel = new javax.swing.JLabel();
+        chunkPlanesField = new javax.swing.JTextField();
+        levelLabel = new javax.swing.JLabel();
+        levelField = new javax.swing.JTextField();
+        stacksPanel = new javax.swing.JPanel();
+        stackStorageLabel = new javax.swing.JLabel();
+        stackStorageCombo = new javax.swing.JComboBox();
+        batchTargetLabel = new javax.swing.JLabel();
+        batchTargetCombo = new javax.swing.JComboBox();
+        applyStorageBtn = new javax.swing.JButton();
+        previewPanel = new javax.swing.JPanel();
+        progressivePanel = new javax.swing.JPanel();
+        progressiveChk = new javax.swing.JCheckBox();
+        minSizeLabel = new javax.swing.JLabel();
+        minSizeField = new javax.swing.JTextField();
+        applyPreviewBtn = new javax.swing.JButton();
+        aberrationsPanel = new javax.swing.JPanel();
+        compensationPanel = new javax.swing.JPanel();
+        tiltChk = new javax.swing.JCheckBox();
+        quadraticChk = new javax.swing.JCheckBox();
+        applyAberrationsBtn = new javax.swing.JButton();
+        apodizationTabPanel = new javax.swing.JPanel();
+        apodizationPanel = new javax.swing.JPanel();
+        windowLabel = new javax.swing.JLabel();
+        windowCombo = new javax.swing.JComboBox();
+        taperLabel = new javax.swing.JLabel();
+        taperField = new javax.swing.JTextField();
+        applyApodizationBtn = new javax.swing.JButton();
+        performanceTabPanel = new javax.swing.JPanel();
+        performancePanel = new javax.swing.JPanel();
+        fftThreadsLabel = new javax.swing.JLabel();
+        fftThreadsField = new javax.swing.JTextField();
+        batchWorkersLabel = new javax.swing.JLabel();
+        batchWorkersField = new javax.swing.JTextField();
+        memoryBudgetLabel = new javax.swing.JLabel();
+        memoryBudgetField = new javax.swing.JTextField();
+        threshold2DLabel = new javax.swing.JLabel();
+        threshold2DField = new javax.swing.JTextField();
+        threshold1DLabel = new javax.swing.JLabel();
+        threshold1DField = new javax.swing.JTextField();
+        calibrateBtn = new javax.swing.JButton();
+        applyPerformanceBtn = new javax.swing.JButton();
         cancelBtn = new javax.swing.JButton();
         okBtn = new javax.swing.JButton();
 
@@ -205,6 +371,8 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
         setMinimumSize(new java.awt.Dimension(229, 389));
         setResizable(false);
 
+        settingsPane.setTabLayoutPolicy(javax.swing.JTabbedPane.SCROLL_TAB_LAYOUT);
+
         tabUnitsPanel.setMaximumSize(new java.awt.Dimension(214, 322));
         tabUnitsPanel.setMinimumSize(new java.awt.Dimension(214, 322));
         tabUnitsPanel.setPreferredSize(new java.awt.Dimension(214, 322));
@@ -679,6 +847,1008 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
 
         settingsPane.addTab("Scaling", scalingPanel);
 
+        outputsPanel.setMaximumSize(new java.awt.Dimension(214, 322));
+        outputsPanel.setMinimumSize(new java.awt.Dimension(214, 322));
+        outputsPanel.setPreferredSize(new java.awt.Dimension(214, 322));
+
+        phaseOutputPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Phase"));
+        phaseOutputPanel.setMaximumSize(new java.awt.Dimension(194, 56));
+        phaseOutputPanel.setMinimumSize(new java.awt.Dimension(194, 56));
+        phaseOutputPanel.setPreferredSize(new java.awt.Dimension(194, 56));
+
+        unwrapChk.setSelected(unwrapSelected);
+        unwrapChk.setText("Unwrapped (least squares)");
+        unwrapChk.setToolTipText("Adds the unwrapped phase to the phase outputs");
+        unwrapChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        javax.swing.GroupLayout phaseOutputPanelLayout = new javax.swing.GroupLayout(phaseOutputPanel);
+        phaseOutputPanel.setLayout(phaseOutputPanelLayout);
+        phaseOutputPanelLayout.setHorizontalGroup(
+            phaseOutputPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(phaseOutputPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(unwrapChk)
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        phaseOutputPanelLayout.setVerticalGroup(
+            phaseOutputPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(phaseOutputPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(unwrapChk)
+                .addContainerGap())
+        );
+
+        projectionPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Batch Projections"));
+        projectionPanel.setMaximumSize(new java.awt.Dimension(194, 117));
+        projectionPanel.setMinimumSize(new java.awt.Dimension(194, 117));
+        projectionPanel.setPreferredSize(new java.awt.Dimension(194, 117));
+
+        maxProjectionChk.setSelected(maxProjectionSelected);
+        maxProjectionChk.setText("Maximum intensity");
+        maxProjectionChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        meanProjectionChk.setSelected(meanProjectionSelected);
+        meanProjectionChk.setText("Mean intensity");
+        meanProjectionChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        minProjectionChk.setSelected(minProjectionSelected);
+        minProjectionChk.setText("Minimum intensity");
+        minProjectionChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        depthMapChk.setSelected(depthMapSelected);
+        depthMapChk.setText("Depth map");
+        depthMapChk.setToolTipText("Distance of the maximum intensity of each pixel");
+        depthMapChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        javax.swing.GroupLayout projectionPanelLayout = new javax.swing.GroupLayout(projectionPanel);
+        projectionPanel.setLayout(projectionPanelLayout);
+        projectionPanelLayout.setHorizontalGroup(
+            projectionPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(projectionPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(projectionPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(maxProjectionChk)
+                    .addComponent(meanProjectionChk)
+                    .addComponent(minProjectionChk)
+                    .addComponent(depthMapChk))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        projectionPanelLayout.setVerticalGroup(
+            projectionPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(projectionPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(maxProjectionChk)
+                .addGap(0, 0, 0)
+                .addComponent(meanProjectionChk)
+                .addGap(0, 0, 0)
+                .addComponent(minProjectionChk)
+                .addGap(0, 0, 0)
+                .addComponent(depthMapChk)
+                .addContainerGap())
+        );
+
+        zoomPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Zoom Window"));
+        zoomPanel.setMaximumSize(new java.awt.Dimension(194, 56));
+        zoomPanel.setMinimumSize(new java.awt.Dimension(194, 56));
+        zoomPanel.setPreferredSize(new java.awt.Dimension(194, 56));
+
+        zoomSamplesLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        zoomSamplesLabel.setText("Samples:");
+        zoomSamplesLabel.setToolTipText("Output width in samples, the height follows the window; 0 keeps the input size");
+        zoomSamplesLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        zoomSamplesLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        zoomSamplesLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        zoomSamplesField.setText(zoomSamplesString);
+        zoomSamplesField.setMaximumSize(new java.awt.Dimension(59, 20));
+        zoomSamplesField.setMinimumSize(new java.awt.Dimension(59, 20));
+        zoomSamplesField.setPreferredSize(new java.awt.Dimension(59, 20));
+        zoomSamplesField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        javax.swing.GroupLayout zoomPanelLayout = new javax.swing.GroupLayout(zoomPanel);
+        zoomPanel.setLayout(zoomPanelLayout);
+        zoomPanelLayout.setHorizontalGroup(
+            zoomPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(zoomPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(zoomSamplesLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(zoomSamplesField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        zoomPanelLayout.setVerticalGroup(
+            zoomPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(zoomPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(zoomPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(zoomSamplesLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(zoomSamplesField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        applyOutputsBtn.setText("Apply");
+        applyOutputsBtn.setMaximumSize(new java.awt.Dimension(70, 23));
+        applyOutputsBtn.setMinimumSize(new java.awt.Dimension(70, 23));
+        applyOutputsBtn.setPreferredSize(new java.awt.Dimension(70, 23));
+        applyOutputsBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                applyOutputsBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout outputsPanelLayout = new javax.swing.GroupLayout(outputsPanel);
+        outputsPanel.setLayout(outputsPanelLayout);
+        outputsPanelLayout.setHorizontalGroup(
+            outputsPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(outputsPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(outputsPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, outputsPanelLayout.createSequentialGroup()
+                        .addGap(124, 124, 124)
+                        .addComponent(applyOutputsBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(outputsPanelLayout.createSequentialGroup()
+                        .addGroup(outputsPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                            .addComponent(phaseOutputPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(projectionPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(zoomPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addContainerGap())
+        );
+        outputsPanelLayout.setVerticalGroup(
+            outputsPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(outputsPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(phaseOutputPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(projectionPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(zoomPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(applyOutputsBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap())
+        );
+
+        settingsPane.addTab("Outputs", outputsPanel);
+
+        localizationPanel.setMaximumSize(new java.awt.Dimension(214, 322));
+        localizationPanel.setMinimumSize(new java.awt.Dimension(214, 322));
+        localizationPanel.setPreferredSize(new java.awt.Dimension(214, 322));
+
+        particlesPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Particle Localization"));
+        particlesPanel.setMaximumSize(new java.awt.Dimension(194, 160));
+        particlesPanel.setMinimumSize(new java.awt.Dimension(194, 160));
+        particlesPanel.setPreferredSize(new java.awt.Dimension(194, 160));
+
+        localizeChk.setSelected(localizeSelected);
+        localizeChk.setText("Localize in batch propagation");
+        localizeChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        thresholdLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        thresholdLabel.setText("Threshold (k):");
+        thresholdLabel.setToolTipText("Local maxima brighter than mean + k * std. dev. of each plane");
+        thresholdLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        thresholdLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        thresholdLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        thresholdField.setText(thresholdString);
+        thresholdField.setMaximumSize(new java.awt.Dimension(59, 20));
+        thresholdField.setMinimumSize(new java.awt.Dimension(59, 20));
+        thresholdField.setPreferredSize(new java.awt.Dimension(59, 20));
+        thresholdField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        radiusLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        radiusLabel.setText("Radius [px]:");
+        radiusLabel.setToolTipText("Minimum distance between objects and maximum shift between planes");
+        radiusLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        radiusLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        radiusLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        radiusField.setText(radiusString);
+        radiusField.setMaximumSize(new java.awt.Dimension(59, 20));
+        radiusField.setMinimumSize(new java.awt.Dimension(59, 20));
+        radiusField.setPreferredSize(new java.awt.Dimension(59, 20));
+        radiusField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        gapLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        gapLabel.setText("Max. gap [planes]:");
+        gapLabel.setToolTipText("Planes an object can be missed before it is closed");
+        gapLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        gapLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        gapLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        gapField.setText(gapString);
+        gapField.setMaximumSize(new java.awt.Dimension(59, 20));
+        gapField.setMinimumSize(new java.awt.Dimension(59, 20));
+        gapField.setPreferredSize(new java.awt.Dimension(59, 20));
+        gapField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        csvChk.setSelected(csvSelected);
+        csvChk.setText("Save results as CSV");
+        csvChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        javax.swing.GroupLayout particlesPanelLayout = new javax.swing.GroupLayout(particlesPanel);
+        particlesPanel.setLayout(particlesPanelLayout);
+        particlesPanelLayout.setHorizontalGroup(
+            particlesPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(particlesPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(particlesPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(localizeChk)
+                    .addGroup(particlesPanelLayout.createSequentialGroup()
+                        .addComponent(thresholdLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(thresholdField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(particlesPanelLayout.createSequentialGroup()
+                        .addComponent(radiusLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(radiusField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(particlesPanelLayout.createSequentialGroup()
+                        .addComponent(gapLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(gapField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(csvChk))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        particlesPanelLayout.setVerticalGroup(
+            particlesPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(particlesPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(localizeChk)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(particlesPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(thresholdLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(thresholdField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(particlesPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(radiusLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(radiusField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(particlesPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(gapLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(gapField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(csvChk)
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        applyLocalizationBtn.setText("Apply");
+        applyLocalizationBtn.setMaximumSize(new java.awt.Dimension(70, 23));
+        applyLocalizationBtn.setMinimumSize(new java.awt.Dimension(70, 23));
+        applyLocalizationBtn.setPreferredSize(new java.awt.Dimension(70, 23));
+        applyLocalizationBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                applyLocalizationBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout localizationPanelLayout = new javax.swing.GroupLayout(localizationPanel);
+        localizationPanel.setLayout(localizationPanelLayout);
+        localizationPanelLayout.setHorizontalGroup(
+            localizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(localizationPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(localizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, localizationPanelLayout.createSequentialGroup()
+                        .addGap(124, 124, 124)
+                        .addComponent(applyLocalizationBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(localizationPanelLayout.createSequentialGroup()
+                        .addComponent(particlesPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addContainerGap())
+        );
+        localizationPanelLayout.setVerticalGroup(
+            localizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(localizationPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(particlesPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(applyLocalizationBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap())
+        );
+
+        settingsPane.addTab("Localization", localizationPanel);
+
+        storagePanel.setMaximumSize(new java.awt.Dimension(214, 322));
+        storagePanel.setMinimumSize(new java.awt.Dimension(214, 322));
+        storagePanel.setPreferredSize(new java.awt.Dimension(214, 322));
+
+        volumePanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Complex Volume"));
+        volumePanel.setMaximumSize(new java.awt.Dimension(194, 135));
+        volumePanel.setMinimumSize(new java.awt.Dimension(194, 135));
+        volumePanel.setPreferredSize(new java.awt.Dimension(194, 135));
+
+        volumeChk.setSelected(volumeSelected);
+        volumeChk.setText("Save batch complex volume");
+        volumeChk.setToolTipText("Writes the complex field of every batch plane to a compressed volume file");
+        volumeChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        tileLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        tileLabel.setText("Tile size [px]:");
+        tileLabel.setToolTipText("Lateral size of the chunks");
+        tileLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        tileLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        tileLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        tileField.setText(tileString);
+        tileField.setMaximumSize(new java.awt.Dimension(59, 20));
+        tileField.setMinimumSize(new java.awt.Dimension(59, 20));
+        tileField.setPreferredSize(new java.awt.Dimension(59, 20));
+        tileField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        chunkPlanesLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        chunkPlanesLabel.setText("Planes per chunk:");
+        chunkPlanesLabel.setToolTipText("Number of planes compressed together");
+        chunkPlanesLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        chunkPlanesLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        chunkPlanesLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        chunkPlanesField.setText(chunkPlanesString);
+        chunkPlanesField.setMaximumSize(new java.awt.Dimension(59, 20));
+        chunkPlanesField.setMinimumSize(new java.awt.Dimension(59, 20));
+        chunkPlanesField.setPreferredSize(new java.awt.Dimension(59, 20));
+        chunkPlanesField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        levelLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        levelLabel.setText("Compression:");
+        levelLabel.setToolTipText("Deflate level, from 0 (none) to 9 (best)");
+        levelLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        levelLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        levelLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        levelField.setText(levelString);
+        levelField.setMaximumSize(new java.awt.Dimension(59, 20));
+        levelField.setMinimumSize(new java.awt.Dimension(59, 20));
+        levelField.setPreferredSize(new java.awt.Dimension(59, 20));
+        levelField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        javax.swing.GroupLayout volumePanelLayout = new javax.swing.GroupLayout(volumePanel);
+        volumePanel.setLayout(volumePanelLayout);
+        volumePanelLayout.setHorizontalGroup(
+            volumePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(volumePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(volumePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(volumeChk)
+                    .addGroup(volumePanelLayout.createSequentialGroup()
+                        .addComponent(tileLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(tileField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(volumePanelLayout.createSequentialGroup()
+                        .addComponent(chunkPlanesLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(chunkPlanesField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(volumePanelLayout.createSequentialGroup()
+                        .addComponent(levelLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(levelField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        volumePanelLayout.setVerticalGroup(
+            volumePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(volumePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(volumeChk)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(volumePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(tileLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(tileField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(volumePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(chunkPlanesLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(chunkPlanesField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(volumePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(levelLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(levelField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        stacksPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Batch Stacks"));
+        stacksPanel.setMaximumSize(new java.awt.Dimension(194, 80));
+        stacksPanel.setMinimumSize(new java.awt.Dimension(194, 80));
+        stacksPanel.setPreferredSize(new java.awt.Dimension(194, 80));
+
+        stackStorageLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        stackStorageLabel.setText("Storage:");
+        stackStorageLabel.setToolTipText("Global scale modes use a single range for the whole stack");
+        stackStorageLabel.setMaximumSize(new java.awt.Dimension(45, 14));
+        stackStorageLabel.setMinimumSize(new java.awt.Dimension(45, 14));
+        stackStorageLabel.setPreferredSize(new java.awt.Dimension(45, 14));
+
+        stackStorageCombo.setModel(new DefaultComboBoxModel<String>(CompactStack.MODES));
+        stackStorageCombo.setSelectedIndex(stackStorageIdx);
+        stackStorageCombo.setMaximumSize(new java.awt.Dimension(120, 20));
+        stackStorageCombo.setMinimumSize(new java.awt.Dimension(120, 20));
+        stackStorageCombo.setPreferredSize(new java.awt.Dimension(120, 20));
+
+        batchTargetLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        batchTargetLabel.setText("Target:");
+        batchTargetLabel.setToolTipText("Files are written as the planes are computed, without opening windows");
+        batchTargetLabel.setMaximumSize(new java.awt.Dimension(45, 14));
+        batchTargetLabel.setMinimumSize(new java.awt.Dimension(45, 14));
+        batchTargetLabel.setPreferredSize(new java.awt.Dimension(45, 14));
+
+        batchTargetCombo.setModel(new DefaultComboBoxModel<String>(BatchWriter.TARGETS));
+        batchTargetCombo.setSelectedIndex(batchTargetIdx);
+        batchTargetCombo.setMaximumSize(new java.awt.Dimension(120, 20));
+        batchTargetCombo.setMinimumSize(new java.awt.Dimension(120, 20));
+        batchTargetCombo.setPreferredSize(new java.awt.Dimension(120, 20));
+
+        javax.swing.GroupLayout stacksPanelLayout = new javax.swing.GroupLayout(stacksPanel);
+        stacksPanel.setLayout(stacksPanelLayout);
+        stacksPanelLayout.setHorizontalGroup(
+            stacksPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(stacksPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(stacksPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(stacksPanelLayout.createSequentialGroup()
+                        .addComponent(stackStorageLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(stackStorageCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(stacksPanelLayout.createSequentialGroup()
+                        .addComponent(batchTargetLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(batchTargetCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        stacksPanelLayout.setVerticalGroup(
+            stacksPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(stacksPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(stacksPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(stackStorageLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(stackStorageCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(stacksPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(batchTargetLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(batchTargetCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        applyStorageBtn.setText("Apply");
+        applyStorageBtn.setMaximumSize(new java.awt.Dimension(70, 23));
+        applyStorageBtn.setMinimumSize(new java.awt.Dimension(70, 23));
+        applyStorageBtn.setPreferredSize(new java.awt.Dimension(70, 23));
+        applyStorageBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                applyStorageBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout storagePanelLayout = new javax.swing.GroupLayout(storagePanel);
+        storagePanel.setLayout(storagePanelLayout);
+        storagePanelLayout.setHorizontalGroup(
+            storagePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(storagePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(storagePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, storagePanelLayout.createSequentialGroup()
+                        .addGap(124, 124, 124)
+                        .addComponent(applyStorageBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(storagePanelLayout.createSequentialGroup()
+                        .addGroup(storagePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                            .addComponent(volumePanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(stacksPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addContainerGap())
+        );
+        storagePanelLayout.setVerticalGroup(
+            storagePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(storagePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(volumePanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(stacksPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(applyStorageBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap())
+        );
+
+        settingsPane.addTab("Storage", storagePanel);
+
+        previewPanel.setMaximumSize(new java.awt.Dimension(214, 322));
+        previewPanel.setMinimumSize(new java.awt.Dimension(214, 322));
+        previewPanel.setPreferredSize(new java.awt.Dimension(214, 322));
+
+        progressivePanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Progressive Preview"));
+        progressivePanel.setMaximumSize(new java.awt.Dimension(194, 75));
+        progressivePanel.setMinimumSize(new java.awt.Dimension(194, 75));
+        progressivePanel.setPreferredSize(new java.awt.Dimension(194, 75));
+
+        progressiveChk.setSelected(progressiveSelected);
+        progressiveChk.setText("Coarse preview first");
+        progressiveChk.setToolTipText("Shows a decimated propagation while the full resolution one is computed");
+        progressiveChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        minSizeLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        minSizeLabel.setText("Min. size [MP]:");
+        minSizeLabel.setToolTipText("Smaller holograms are propagated at full resolution only");
+        minSizeLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        minSizeLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        minSizeLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        minSizeField.setText(minSizeString);
+        minSizeField.setMaximumSize(new java.awt.Dimension(59, 20));
+        minSizeField.setMinimumSize(new java.awt.Dimension(59, 20));
+        minSizeField.setPreferredSize(new java.awt.Dimension(59, 20));
+        minSizeField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        javax.swing.GroupLayout progressivePanelLayout = new javax.swing.GroupLayout(progressivePanel);
+        progressivePanel.setLayout(progressivePanelLayout);
+        progressivePanelLayout.setHorizontalGroup(
+            progressivePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(progressivePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(progressivePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(progressiveChk)
+                    .addGroup(progressivePanelLayout.createSequentialGroup()
+                        .addComponent(minSizeLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(minSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        progressivePanelLayout.setVerticalGroup(
+            progressivePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(progressivePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(progressiveChk)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(progressivePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(minSizeLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(minSizeField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        applyPreviewBtn.setText("Apply");
+        applyPreviewBtn.setMaximumSize(new java.awt.Dimension(70, 23));
+        applyPreviewBtn.setMinimumSize(new java.awt.Dimension(70, 23));
+        applyPreviewBtn.setPreferredSize(new java.awt.Dimension(70, 23));
+        applyPreviewBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                applyPreviewBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout previewPanelLayout = new javax.swing.GroupLayout(previewPanel);
+        previewPanel.setLayout(previewPanelLayout);
+        previewPanelLayout.setHorizontalGroup(
+            previewPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(previewPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(previewPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, previewPanelLayout.createSequentialGroup()
+                        .addGap(124, 124, 124)
+                        .addComponent(applyPreviewBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(previewPanelLayout.createSequentialGroup()
+                        .addComponent(progressivePanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addContainerGap())
+        );
+        previewPanelLayout.setVerticalGroup(
+            previewPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(previewPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(progressivePanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(applyPreviewBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap())
+        );
+
+        settingsPane.addTab("Preview", previewPanel);
+
+        aberrationsPanel.setMaximumSize(new java.awt.Dimension(214, 322));
+        aberrationsPanel.setMinimumSize(new java.awt.Dimension(214, 322));
+        aberrationsPanel.setPreferredSize(new java.awt.Dimension(214, 322));
+
+        compensationPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Automatic Compensation"));
+        compensationPanel.setMaximumSize(new java.awt.Dimension(194, 75));
+        compensationPanel.setMinimumSize(new java.awt.Dimension(194, 75));
+        compensationPanel.setPreferredSize(new java.awt.Dimension(194, 75));
+
+        tiltChk.setSelected(tiltSelected);
+        tiltChk.setText("Tilt");
+        tiltChk.setToolTipText("Removes the residual linear phase of the filtered field");
+        tiltChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        quadraticChk.setSelected(quadraticSelected);
+        quadraticChk.setText("Defocus and astigmatism");
+        quadraticChk.setToolTipText("Removes the residual quadratic phase of the filtered field");
+        quadraticChk.setMargin(new java.awt.Insets(0, 0, 0, 0));
+
+        javax.swing.GroupLayout compensationPanelLayout = new javax.swing.GroupLayout(compensationPanel);
+        compensationPanel.setLayout(compensationPanelLayout);
+        compensationPanelLayout.setHorizontalGroup(
+            compensationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(compensationPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(compensationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(tiltChk)
+                    .addComponent(quadraticChk))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        compensationPanelLayout.setVerticalGroup(
+            compensationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(compensationPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(tiltChk)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(quadraticChk)
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        applyAberrationsBtn.setText("Apply");
+        applyAberrationsBtn.setMaximumSize(new java.awt.Dimension(70, 23));
+        applyAberrationsBtn.setMinimumSize(new java.awt.Dimension(70, 23));
+        applyAberrationsBtn.setPreferredSize(new java.awt.Dimension(70, 23));
+        applyAberrationsBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                applyAberrationsBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout aberrationsPanelLayout = new javax.swing.GroupLayout(aberrationsPanel);
+        aberrationsPanel.setLayout(aberrationsPanelLayout);
+        aberrationsPanelLayout.setHorizontalGroup(
+            aberrationsPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(aberrationsPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(aberrationsPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, aberrationsPanelLayout.createSequentialGroup()
+                        .addGap(124, 124, 124)
+                        .addComponent(applyAberrationsBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(aberrationsPanelLayout.createSequentialGroup()
+                        .addComponent(compensationPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addContainerGap())
+        );
+        aberrationsPanelLayout.setVerticalGroup(
+            aberrationsPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(aberrationsPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(compensationPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(applyAberrationsBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap())
+        );
+
+        settingsPane.addTab("Aberrations", aberrationsPanel);
+
+        apodizationTabPanel.setMaximumSize(new java.awt.Dimension(214, 322));
+        apodizationTabPanel.setMinimumSize(new java.awt.Dimension(214, 322));
+        apodizationTabPanel.setPreferredSize(new java.awt.Dimension(214, 322));
+
+        apodizationPanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Window"));
+        apodizationPanel.setMaximumSize(new java.awt.Dimension(194, 80));
+        apodizationPanel.setMinimumSize(new java.awt.Dimension(194, 80));
+        apodizationPanel.setPreferredSize(new java.awt.Dimension(194, 80));
+
+        windowLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        windowLabel.setText("Window:");
+        windowLabel.setToolTipText("Tapers the edges of the field before propagating");
+        windowLabel.setMaximumSize(new java.awt.Dimension(53, 14));
+        windowLabel.setMinimumSize(new java.awt.Dimension(53, 14));
+        windowLabel.setPreferredSize(new java.awt.Dimension(53, 14));
+
+        windowCombo.setModel(new DefaultComboBoxModel<String>(Apodization.TYPES));
+        windowCombo.setSelectedIndex(apodizationIdx);
+        windowCombo.setMaximumSize(new java.awt.Dimension(99, 20));
+        windowCombo.setMinimumSize(new java.awt.Dimension(99, 20));
+        windowCombo.setPreferredSize(new java.awt.Dimension(99, 20));
+
+        taperLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        taperLabel.setText("Taper [%]:");
+        taperLabel.setToolTipText("Part of each side that is tapered, ignored by Hann");
+        taperLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        taperLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        taperLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        taperField.setText(taperString);
+        taperField.setMaximumSize(new java.awt.Dimension(59, 20));
+        taperField.setMinimumSize(new java.awt.Dimension(59, 20));
+        taperField.setPreferredSize(new java.awt.Dimension(59, 20));
+        taperField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        javax.swing.GroupLayout apodizationPanelLayout = new javax.swing.GroupLayout(apodizationPanel);
+        apodizationPanel.setLayout(apodizationPanelLayout);
+        apodizationPanelLayout.setHorizontalGroup(
+            apodizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(apodizationPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(apodizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(apodizationPanelLayout.createSequentialGroup()
+                        .addComponent(windowLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(windowCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(apodizationPanelLayout.createSequentialGroup()
+                        .addComponent(taperLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(taperField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        apodizationPanelLayout.setVerticalGroup(
+            apodizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(apodizationPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(apodizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(windowLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(windowCombo, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(apodizationPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(taperLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(taperField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        applyApodizationBtn.setText("Apply");
+        applyApodizationBtn.setMaximumSize(new java.awt.Dimension(70, 23));
+        applyApodizationBtn.setMinimumSize(new java.awt.Dimension(70, 23));
+        applyApodizationBtn.setPreferredSize(new java.awt.Dimension(70, 23));
+        applyApodizationBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                applyApodizationBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout apodizationTabPanelLayout = new javax.swing.GroupLayout(apodizationTabPanel);
+        apodizationTabPanel.setLayout(apodizationTabPanelLayout);
+        apodizationTabPanelLayout.setHorizontalGroup(
+            apodizationTabPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(apodizationTabPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(apodizationTabPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, apodizationTabPanelLayout.createSequentialGroup()
+                        .addGap(124, 124, 124)
+                        .addComponent(applyApodizationBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(apodizationTabPanelLayout.createSequentialGroup()
+                        .addComponent(apodizationPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addContainerGap())
+        );
+        apodizationTabPanelLayout.setVerticalGroup(
+            apodizationTabPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(apodizationTabPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(apodizationPanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(applyApodizationBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap())
+        );
+
+        settingsPane.addTab("Apodization", apodizationTabPanel);
+
+        performanceTabPanel.setMaximumSize(new java.awt.Dimension(214, 322));
+        performanceTabPanel.setMinimumSize(new java.awt.Dimension(214, 322));
+        performanceTabPanel.setPreferredSize(new java.awt.Dimension(214, 322));
+
+        performancePanel.setBorder(javax.swing.BorderFactory.createTitledBorder("Threads and memory"));
+        performancePanel.setMaximumSize(new java.awt.Dimension(194, 190));
+        performancePanel.setMinimumSize(new java.awt.Dimension(194, 190));
+        performancePanel.setPreferredSize(new java.awt.Dimension(194, 190));
+
+        fftThreadsLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        fftThreadsLabel.setText("FFT threads:");
+        fftThreadsLabel.setToolTipText("Threads of each FFT, 0 uses all the cores");
+        fftThreadsLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        fftThreadsLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        fftThreadsLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        fftThreadsField.setText(fftThreadsString);
+        fftThreadsField.setMaximumSize(new java.awt.Dimension(59, 20));
+        fftThreadsField.setMinimumSize(new java.awt.Dimension(59, 20));
+        fftThreadsField.setPreferredSize(new java.awt.Dimension(59, 20));
+        fftThreadsField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        batchWorkersLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        batchWorkersLabel.setText("Batch workers:");
+        batchWorkersLabel.setToolTipText("Planes processed at the same time, 0 divides the cores among the FFT threads");
+        batchWorkersLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        batchWorkersLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        batchWorkersLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        batchWorkersField.setText(batchWorkersString);
+        batchWorkersField.setMaximumSize(new java.awt.Dimension(59, 20));
+        batchWorkersField.setMinimumSize(new java.awt.Dimension(59, 20));
+        batchWorkersField.setPreferredSize(new java.awt.Dimension(59, 20));
+        batchWorkersField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        memoryBudgetLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        memoryBudgetLabel.setText("Memory [%]:");
+        memoryBudgetLabel.setToolTipText("Part of the ImageJ memory the tools can use");
+        memoryBudgetLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        memoryBudgetLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        memoryBudgetLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        memoryBudgetField.setText(memoryBudgetString);
+        memoryBudgetField.setMaximumSize(new java.awt.Dimension(59, 20));
+        memoryBudgetField.setMinimumSize(new java.awt.Dimension(59, 20));
+        memoryBudgetField.setPreferredSize(new java.awt.Dimension(59, 20));
+        memoryBudgetField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        threshold2DLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        threshold2DLabel.setText("2D threshold:");
+        threshold2DLabel.setToolTipText("Smallest 2D FFT, in samples, computed with several threads");
+        threshold2DLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        threshold2DLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        threshold2DLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        threshold2DField.setText(threshold2DString);
+        threshold2DField.setMaximumSize(new java.awt.Dimension(59, 20));
+        threshold2DField.setMinimumSize(new java.awt.Dimension(59, 20));
+        threshold2DField.setPreferredSize(new java.awt.Dimension(59, 20));
+        threshold2DField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        threshold1DLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        threshold1DLabel.setText("1D threshold:");
+        threshold1DLabel.setToolTipText("Smallest 1D FFT, in samples, computed with several threads");
+        threshold1DLabel.setMaximumSize(new java.awt.Dimension(93, 14));
+        threshold1DLabel.setMinimumSize(new java.awt.Dimension(93, 14));
+        threshold1DLabel.setPreferredSize(new java.awt.Dimension(93, 14));
+
+        threshold1DField.setText(threshold1DString);
+        threshold1DField.setMaximumSize(new java.awt.Dimension(59, 20));
+        threshold1DField.setMinimumSize(new java.awt.Dimension(59, 20));
+        threshold1DField.setPreferredSize(new java.awt.Dimension(59, 20));
+        threshold1DField.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusGained(java.awt.event.FocusEvent evt) {
+                textFieldFocusGained(evt);
+            }
+        });
+
+        calibrateBtn.setText("Calibrate");
+        calibrateBtn.setToolTipText("Measures this computer and fills the fields");
+        calibrateBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                calibrateBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout performancePanelLayout = new javax.swing.GroupLayout(performancePanel);
+        performancePanel.setLayout(performancePanelLayout);
+        performancePanelLayout.setHorizontalGroup(
+            performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(performancePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(performancePanelLayout.createSequentialGroup()
+                        .addComponent(fftThreadsLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(fftThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(performancePanelLayout.createSequentialGroup()
+                        .addComponent(batchWorkersLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(batchWorkersField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(performancePanelLayout.createSequentialGroup()
+                        .addComponent(memoryBudgetLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(memoryBudgetField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(performancePanelLayout.createSequentialGroup()
+                        .addComponent(threshold2DLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(threshold2DField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(performancePanelLayout.createSequentialGroup()
+                        .addComponent(threshold1DLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(threshold1DField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(calibrateBtn))
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+        performancePanelLayout.setVerticalGroup(
+            performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(performancePanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(fftThreadsLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(fftThreadsField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(batchWorkersLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(batchWorkersField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(memoryBudgetLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(memoryBudgetField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(threshold2DLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(threshold2DField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(performancePanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(threshold1DLabel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(threshold1DField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(calibrateBtn)
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
+        );
+
+        applyPerformanceBtn.setText("Apply");
+        applyPerformanceBtn.setMaximumSize(new java.awt.Dimension(70, 23));
+        applyPerformanceBtn.setMinimumSize(new java.awt.Dimension(70, 23));
+        applyPerformanceBtn.setPreferredSize(new java.awt.Dimension(70, 23));
+        applyPerformanceBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                applyPerformanceBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout performanceTabPanelLayout = new javax.swing.GroupLayout(performanceTabPanel);
+        performanceTabPanel.setLayout(performanceTabPanelLayout);
+        performanceTabPanelLayout.setHorizontalGroup(
+            performanceTabPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(performanceTabPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(performanceTabPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, performanceTabPanelLayout.createSequentialGroup()
+                        .addGap(124, 124, 124)
+                        .addComponent(applyPerformanceBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addGroup(performanceTabPanelLayout.createSequentialGroup()
+                        .addComponent(performancePanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addContainerGap())
+        );
+        performanceTabPanelLayout.setVerticalGroup(
+            performanceTabPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(performanceTabPanelLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(performancePanel, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(applyPerformanceBtn, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addContainerGap())
+        );
+
+        settingsPane.addTab("Performance", performanceTabPanel);
+
         cancelBtn.setText("Cancel");
         cancelBtn.setMaximumSize(new java.awt.Dimension(70, 23));
         cancelBtn.setMinimumSize(new java.awt.Dimension(70, 23));
@@ -812,6 +1982,268 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
         parent.updateScalingPrefs();
     }//GEN-LAST:event_applyScalingBtnActionPerformed
 
+    private void applyOutputsBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyOutputsBtnActionPerformed
+        pref.putBoolean(UNWRAP_PHASE, unwrapChk.isSelected());
+
+        pref.putBoolean(MAX_PROJECTION, maxProjectionChk.isSelected());
+        pref.putBoolean(MEAN_PROJECTION, meanProjectionChk.isSelected());
+        pref.putBoolean(MIN_PROJECTION, minProjectionChk.isSelected());
+        pref.putBoolean(DEPTH_MAP, depthMapChk.isSelected());
+
+        try {
+            int samples = Integer.parseInt(zoomSamplesField.getText());
+            if (samples < 0) {
+                JOptionPane.showMessageDialog(this, "Zoom samples can't be negative.", "Error", JOptionPane.ERROR_MESSAGE);
+                outputsError = true;
+                return;
+            }
+            pref.putInt(ZOOM_SAMPLES, samples);
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid integer.", "Error", JOptionPane.ERROR_MESSAGE);
+            outputsError = true;
+            return;
+        }
+
+        outputsError = false;
+        parent.updateOutputsPrefs();
+    }//GEN-LAST:event_applyOutputsBtnActionPerformed
+
+    private void applyLocalizationBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyLocalizationBtnActionPerformed
+        float threshold;
+        try {
+            threshold = Float.parseFloat(thresholdField.getText());
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid threshold.", "Error", JOptionPane.ERROR_MESSAGE);
+            localizationError = true;
+            return;
+        }
+
+        int radius;
+        try {
+            radius = Integer.parseInt(radiusField.getText());
+            if (radius < 1) {
+                JOptionPane.showMessageDialog(this, "Radius must be 1 or more pixels.", "Error", JOptionPane.ERROR_MESSAGE);
+                localizationError = true;
+                return;
+            }
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid integer radius.", "Error", JOptionPane.ERROR_MESSAGE);
+            localizationError = true;
+            return;
+        }
+
+        int gap;
+        try {
+            gap = Integer.parseInt(gapField.getText());
+            if (gap < 0) {
+                JOptionPane.showMessageDialog(this, "Max. gap can't be negative.", "Error", JOptionPane.ERROR_MESSAGE);
+                localizationError = true;
+                return;
+            }
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid integer gap.", "Error", JOptionPane.ERROR_MESSAGE);
+            localizationError = true;
+            return;
+        }
+
+        pref.putBoolean(LOCALIZE, localizeChk.isSelected());
+        pref.putFloat(LOCALIZATION_THRESHOLD, threshold);
+        pref.putInt(LOCALIZATION_RADIUS, radius);
+        pref.putInt(LOCALIZATION_GAP, gap);
+        pref.putBoolean(LOCALIZATION_CSV, csvChk.isSelected());
+
+        localizationError = false;
+    }//GEN-LAST:event_applyLocalizationBtnActionPerformed
+
+    private void applyStorageBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyStorageBtnActionPerformed
+        int tile;
+        try {
+            tile = Integer.parseInt(tileField.getText());
+            if (tile < 16) {
+                JOptionPane.showMessageDialog(this, "Tile size must be 16 or more pixels.", "Error", JOptionPane.ERROR_MESSAGE);
+                storageError = true;
+                return;
+            }
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid integer tile size.", "Error", JOptionPane.ERROR_MESSAGE);
+            storageError = true;
+            return;
+        }
+
+        int chunkPlanes;
+        try {
+            chunkPlanes = Integer.parseInt(chunkPlanesField.getText());
+            if (chunkPlanes < 1) {
+                JOptionPane.showMessageDialog(this, "Planes per chunk must be 1 or more.", "Error", JOptionPane.ERROR_MESSAGE);
+                storageError = true;
+                return;
+            }
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid integer number of planes per chunk.", "Error", JOptionPane.ERROR_MESSAGE);
+            storageError = true;
+            return;
+        }
+
+        int level;
+        try {
+            level = Integer.parseInt(levelField.getText());
+            if (level < 0 || level > 9) {
+                JOptionPane.showMessageDialog(this, "Compression must be in the [0,9] range.", "Error", JOptionPane.ERROR_MESSAGE);
+                storageError = true;
+                return;
+            }
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid integer compression level.", "Error", JOptionPane.ERROR_MESSAGE);
+            storageError = true;
+            return;
+        }
+
+        pref.putBoolean(SAVE_VOLUME, volumeChk.isSelected());
+        pref.putInt(VOLUME_TILE, tile);
+        pref.putInt(VOLUME_CHUNK_PLANES, chunkPlanes);
+        pref.putInt(VOLUME_LEVEL, level);
+        pref.putInt(STACK_STORAGE, stackStorageCombo.getSelectedIndex());
+        pref.putInt(BATCH_TARGET, batchTargetCombo.getSelectedIndex());
+
+        storageError = false;
+    }//GEN-LAST:event_applyStorageBtnActionPerformed
+
+    private void applyPreviewBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyPreviewBtnActionPerformed
+        float minSize;
+        try {
+            minSize = Float.parseFloat(minSizeField.getText());
+            if (minSize < 0) {
+                JOptionPane.showMessageDialog(this, "Min. size can't be negative.", "Error", JOptionPane.ERROR_MESSAGE);
+                previewError = true;
+                return;
+            }
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid min. size.", "Error", JOptionPane.ERROR_MESSAGE);
+            previewError = true;
+            return;
+        }
+
+        pref.putBoolean(PROGRESSIVE_PREVIEW, progressiveChk.isSelected());
+        pref.putFloat(PROGRESSIVE_MIN_SIZE, minSize);
+
+        previewError = false;
+        parent.updatePropagationPrefs();
+    }//GEN-LAST:event_applyPreviewBtnActionPerformed
+
+    private void applyAberrationsBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyAberrationsBtnActionPerformed
+        pref.putBoolean(COMPENSATE_TILT, tiltChk.isSelected());
+        pref.putBoolean(COMPENSATE_QUADRATIC, quadraticChk.isSelected());
+
+        parent.updatePropagationPrefs();
+    }//GEN-LAST:event_applyAberrationsBtnActionPerformed
+
+    private void applyApodizationBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyApodizationBtnActionPerformed
+        float taper;
+        try {
+            taper = Float.parseFloat(taperField.getText());
+            if (taper < 0 || taper > 45) {
+                JOptionPane.showMessageDialog(this, "Taper must be between 0 and 45%.", "Error", JOptionPane.ERROR_MESSAGE);
+                apodizationError = true;
+                return;
+            }
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert a valid taper.", "Error", JOptionPane.ERROR_MESSAGE);
+            apodizationError = true;
+            return;
+        }
+
+        pref.putInt(APODIZATION, windowCombo.getSelectedIndex());
+        pref.putFloat(APODIZATION_TAPER, taper / 100);
+
+        apodizationError = false;
+        parent.updatePropagationPrefs();
+    }//GEN-LAST:event_applyApodizationBtnActionPerformed
+
+    private void applyPerformanceBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyPerformanceBtnActionPerformed
+        int threads, workers, memory;
+        long threshold2D, threshold1D;
+        try {
+            threads = Integer.parseInt(fftThreadsField.getText());
+            workers = Integer.parseInt(batchWorkersField.getText());
+            memory = Integer.parseInt(memoryBudgetField.getText());
+            threshold2D = Long.parseLong(threshold2DField.getText());
+            threshold1D = Long.parseLong(threshold1DField.getText());
+        } catch (NumberFormatException exc) {
+            JOptionPane.showMessageDialog(this, "Please insert valid performance settings.", "Error", JOptionPane.ERROR_MESSAGE);
+            performanceError = true;
+            return;
+        }
+
+        if (threads < 0 || workers < 0) {
+            JOptionPane.showMessageDialog(this, "Threads and workers can't be negative.", "Error", JOptionPane.ERROR_MESSAGE);
+            performanceError = true;
+            return;
+        }
+
+        if (memory < 1 || memory > 100) {
+            JOptionPane.showMessageDialog(this, "Memory must be between 1 and 100%.", "Error", JOptionPane.ERROR_MESSAGE);
+            performanceError = true;
+            return;
+        }
+
+        if (threshold2D < 1 || threshold1D < 1) {
+            JOptionPane.showMessageDialog(this, "Thresholds must be positive.", "Error", JOptionPane.ERROR_MESSAGE);
+            performanceError = true;
+            return;
+        }
+
+        pref.putInt(FFT_THREADS, threads);
+        pref.putInt(BATCH_WORKERS, workers);
+        pref.putInt(MEMORY_BUDGET, memory);
+        pref.putLong(FFT_THRESHOLD_2D, threshold2D);
+        pref.putLong(FFT_THRESHOLD_1D, threshold1D);
+
+        performanceError = false;
+        Performance.apply();
+    }//GEN-LAST:event_applyPerformanceBtnActionPerformed
+
+    private void calibrateBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_calibrateBtnActionPerformed
+        calibrateBtn.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        //the benchmark takes a few seconds, the fields are filled when done
+        //and stored only if applied
+        new SwingWorker<long[], Void>() {
+            @Override
+            protected long[] doInBackground() {
+                return Performance.calibrate();
+            }
+
+            @Override
+            protected void done() {
+                calibrateBtn.setEnabled(true);
+                setCursor(Cursor.getDefaultCursor());
+
+                long[] values;
+                try {
+                    values = get();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(SettingsFrame.this, "The calibration failed: "
+                            + e.getCause(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+
+                fftThreadsField.setText("" + values[0]);
+                batchWorkersField.setText("" + values[1]);
+                threshold2DField.setText("" + values[2]);
+                threshold1DField.setText("" + values[3]);
+
+                parent.updateLog(true, "\nCalibration on " + Performance.CORES + " cores:"
+                        + "\nFFT threads: " + values[0]
+                        + "\nBatch workers: " + values[1]
+                        + "\n2D threshold: " + values[2]
+                        + "\n1D threshold: " + values[3]);
+            }
+        }.execute();
+    }//GEN-LAST:event_calibrateBtnActionPerformed
+
     private void planeWaveRadioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_planeWaveRadioActionPerformed
         curvRadiusField.setEnabled(!planeWaveRadio.isSelected());
     }//GEN-LAST:event_planeWaveRadioActionPerformed
@@ -831,8 +2263,45 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
             return;
         }
 
+        applyLocalizationBtnActionPerformed(null);
+        if (localizationError) {
+            localizationError = false;
+            return;
+        }
+
+        applyStorageBtnActionPerformed(null);
+        if (storageError) {
+            storageError = false;
+            return;
+        }
+
+        applyOutputsBtnActionPerformed(null);
+        if (outputsError) {
+            outputsError = false;
+            return;
+        }
+
+        applyPreviewBtnActionPerformed(null);
+        if (previewError) {
+            previewError = false;
+            return;
+        }
+
+        applyApodizationBtnActionPerformed(null);
+        if (apodizationError) {
+            apodizationError = false;
+            return;
+        }
+
+        applyPerformanceBtnActionPerformed(null);
+        if (performanceError) {
+            performanceError = false;
+            return;
+        }
+
         applyUnitsBtnActionPerformed(null);
         applyScalingBtnActionPerformed(null);
+        applyAberrationsBtnActionPerformed(null);
 
         setVisible(false);
         dispose();
@@ -849,22 +2318,46 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
     }//GEN-LAST:event_textFieldFocusGained
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JPanel aberrationsPanel;
     private javax.swing.JCheckBox amplitudeByteChk;
     private javax.swing.JCheckBox amplitudeLogChk;
+    private javax.swing.JPanel apodizationPanel;
+    private javax.swing.JPanel apodizationTabPanel;
+    private javax.swing.JButton applyAberrationsBtn;
+    private javax.swing.JButton applyApodizationBtn;
+    private javax.swing.JButton applyLocalizationBtn;
+    private javax.swing.JButton applyOutputsBtn;
+    private javax.swing.JButton applyPerformanceBtn;
+    private javax.swing.JButton applyPreviewBtn;
     private javax.swing.JButton applyPropagationPanel;
     private javax.swing.JButton applyScalingBtn;
+    private javax.swing.JButton applyStorageBtn;
     private javax.swing.JButton applyUnitsBtn;
     private javax.swing.ButtonGroup batchGroup;
     private javax.swing.JPanel batchPanel;
+    private javax.swing.JComboBox batchTargetCombo;
+    private javax.swing.JLabel batchTargetLabel;
+    private javax.swing.JTextField batchWorkersField;
+    private javax.swing.JLabel batchWorkersLabel;
     private javax.swing.JPanel bytePanel;
+    private javax.swing.JButton calibrateBtn;
     private javax.swing.JButton cancelBtn;
+    private javax.swing.JTextField chunkPlanesField;
+    private javax.swing.JLabel chunkPlanesLabel;
+    private javax.swing.JPanel compensationPanel;
+    private javax.swing.JCheckBox csvChk;
     private javax.swing.JLabel curvRadiusCLabel;
     private javax.swing.JComboBox curvRadiusCombo;
     private javax.swing.JTextField curvRadiusField;
     private javax.swing.JLabel curvRadiusLabel;
+    private javax.swing.JCheckBox depthMapChk;
     private javax.swing.JCheckBox fftByteChk;
     private javax.swing.JCheckBox fftLogChk;
+    private javax.swing.JTextField fftThreadsField;
+    private javax.swing.JLabel fftThreadsLabel;
     private javax.swing.JCheckBox filterChk;
+    private javax.swing.JTextField gapField;
+    private javax.swing.JLabel gapLabel;
     private javax.swing.ButtonGroup illuminationGroup;
     private javax.swing.JPanel illuminationPanel;
     private javax.swing.JComboBox inputSizeCombo;
@@ -873,24 +2366,70 @@ public class SettingsFrame extends javax.swing.JFrame implements PreferencesKeys
     private javax.swing.JCheckBox intensityLogChk;
     private javax.swing.JComboBox lambdaCombo;
     private javax.swing.JLabel lambdaLabel;
+    private javax.swing.JTextField levelField;
+    private javax.swing.JLabel levelLabel;
+    private javax.swing.JPanel localizationPanel;
+    private javax.swing.JCheckBox localizeChk;
     private javax.swing.JPanel logPanel;
+    private javax.swing.JCheckBox maxProjectionChk;
+    private javax.swing.JCheckBox meanProjectionChk;
+    private javax.swing.JTextField memoryBudgetField;
+    private javax.swing.JLabel memoryBudgetLabel;
+    private javax.swing.JCheckBox minProjectionChk;
+    private javax.swing.JTextField minSizeField;
+    private javax.swing.JLabel minSizeLabel;
     private javax.swing.JButton okBtn;
     private javax.swing.JComboBox outputSizeCombo;
     private javax.swing.JLabel outputWLabel;
+    private javax.swing.JPanel outputsPanel;
+    private javax.swing.JPanel particlesPanel;
+    private javax.swing.JPanel performancePanel;
+    private javax.swing.JPanel performanceTabPanel;
     private javax.swing.JCheckBox phaseByteChk;
+    private javax.swing.JPanel phaseOutputPanel;
     private javax.swing.JRadioButton planeWaveRadio;
     private javax.swing.JRadioButton planesRadio;
+    private javax.swing.JPanel previewPanel;
+    private javax.swing.JCheckBox progressiveChk;
+    private javax.swing.JPanel progressivePanel;
+    private javax.swing.JPanel projectionPanel;
     private javax.swing.JPanel propagationPanel;
+    private javax.swing.JCheckBox quadraticChk;
+    private javax.swing.JTextField radiusField;
+    private javax.swing.JLabel radiusLabel;
     private javax.swing.JButton rstDialogsBtn;
     private javax.swing.JPanel scalingPanel;
     private javax.swing.JTabbedPane settingsPane;
     private javax.swing.JRadioButton spheWaveRadio;
+    private javax.swing.JComboBox stackStorageCombo;
+    private javax.swing.JLabel stackStorageLabel;
+    private javax.swing.JPanel stacksPanel;
     private javax.swing.JRadioButton stepRadio;
+    private javax.swing.JPanel storagePanel;
     private javax.swing.JPanel tabUnitsPanel;
+    private javax.swing.JTextField taperField;
+    private javax.swing.JLabel taperLabel;
+    private javax.swing.JTextField threshold1DField;
+    private javax.swing.JLabel threshold1DLabel;
+    private javax.swing.JTextField threshold2DField;
+    private javax.swing.JLabel threshold2DLabel;
+    private javax.swing.JTextField thresholdField;
+    private javax.swing.JLabel thresholdLabel;
+    private javax.swing.JTextField tileField;
+    private javax.swing.JLabel tileLabel;
+    private javax.swing.JCheckBox tiltChk;
     private javax.swing.JPanel unitsPanel;
+    private javax.swing.JCheckBox unwrapChk;
+    private javax.swing.JCheckBox volumeChk;
+    private javax.swing.JPanel volumePanel;
     private javax.swing.JTextField warningField;
     private javax.swing.JLabel warningLabel;
+    private javax.swing.JComboBox windowCombo;
+    private javax.swing.JLabel windowLabel;
     private javax.swing.JComboBox zCombo;
     private javax.swing.JLabel zLabel;
+    private javax.swing.JPanel zoomPanel;
+    private javax.swing.JTextField zoomSamplesField;
+    private javax.swing.JLabel zoomSamplesLabel;
     // End of variables declaration//GEN-END:variables
 }
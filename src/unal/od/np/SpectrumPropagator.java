@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import org.jtransforms.fft.FloatFFT_2D;
+
+/**
+ * Angular spectrum propagation of a fixed field to any distance. The spectrum
+ * of the field is computed once, so each distance costs a single inverse FFT;
+ * the longitudinal wave numbers (kz) are computed once too and shared by all
+ * the distances.
+ * <p>
+ * Coarse versions of a plane can be obtained keeping only the central
+ * frequencies of the spectrum: level l gives an (M / 2^l) x (N / 2^l) field
+ * covering the same area with 2^l times the pixel size, at 1 / 4^l of the
+ * cost.
+ * <p>
+ * Close planes can also be reached stepping: the spectrum of the last plane
+ * is kept and multiplied by the transfer function of the distance between
+ * planes, cached while the step doesn't change, so each step costs a complex
+ * product and an inverse FFT. Every REANCHOR_STEPS steps the plane is
+ * computed again from the spectrum of the field, so the rounding errors of
+ * the products don't build up.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class SpectrumPropagator {
+
+    public static final int MAX_LEVEL = 3;
+    public static final int REANCHOR_STEPS = 32;
+
+    //relative difference between z minus the last z and the step taken as
+    //rounding, larger ones re-anchor the plane
+    private static final float STEP_TOLERANCE = 1e-3f;
+
+    private final int M, N;
+    private final float lambda, dx, dy;
+
+    //unshifted spectrum of the field
+    private final float[][] spectrum;
+
+    //per level, created when first used; kz is kept in double precision
+    //since kz z easily reaches 1e5 rad
+    private final double[][][] kz = new double[MAX_LEVEL + 1][][];
+    private final FloatFFT_2D[] ffts = new FloatFFT_2D[MAX_LEVEL + 1];
+
+    //spectrum of the last plane given by step, and its distance
+    private float[][] current;
+    private float currentZ;
+    private int steps;
+
+    //transfer function of the last distance between planes
+    private float[][] transfer;
+    private float transferDz;
+
+    /**
+     * Computes the spectrum of the field; the field isn't modified.
+     *
+     * @param field M x 2N
+     * @param lambda
+     * @param dx
+     * @param dy
+     */
+    public SpectrumPropagator(float[][] field, float lambda, float dx, float dy) {
+        M = field.length;
+        N = field[0].length / 2;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+
+        spectrum = new float[M][];
+        for (int i = 0; i < M; i++) {
+            spectrum[i] = field[i].clone();
+        }
+
+        ffts[0] = new FloatFFT_2D(M, N);
+        ffts[0].complexForward(spectrum);
+    }
+
+    /**
+     * Propagates the field.
+     *
+     * @param z
+     * @param level 0 for full resolution, up to MAX_LEVEL
+     * @return (M >> level) x 2(N >> level) field
+     */
+    public float[][] propagate(float z, int level) {
+        int m = size(M, level);
+        int n = size(N, level);
+        double[][] kzLevel = getKz(level);
+
+        //amplitude of the full resolution field
+        float norm = (float) m * n / ((float) M * N);
+
+        float[][] out = new float[m][2 * n];
+
+        for (int u = 0; u < m; u++) {
+            float[] s = spectrum[source(u, m, M)];
+            double[] k = kzLevel[u];
+            float[] o = out[u];
+
+            for (int v = 0; v < n; v++) {
+                if (Double.isNaN(k[v])) {
+                    continue;
+                }
+
+                int sv = 2 * source(v, n, N);
+                double phase = (z * k[v]) % (2 * Math.PI);
+                float c = (float) Math.cos(phase) * norm;
+                float sn = (float) Math.sin(phase) * norm;
+
+                o[2 * v] = s[sv] * c - s[sv + 1] * sn;
+                o[2 * v + 1] = s[sv] * sn + s[sv + 1] * c;
+            }
+        }
+
+        getFFT(level).complexInverse(out, true);
+        return out;
+    }
+
+    /**
+     * Propagates the field at full resolution, starting from the last plane
+     * given by this method. The transfer function is cached by the step the
+     * caller intends, dz, and not by z minus the last z: distances built
+     * adding steps in float differ from it in their last bits. If the last
+     * plane isn't about dz away from z, the plane is computed again from the
+     * spectrum of the field.
+     *
+     * @param z
+     * @param dz step from the last plane
+     * @return M x 2N field
+     */
+    public float[][] step(float z, float dz) {
+        boolean close = current != null
+                && Math.abs(z - currentZ - dz) <= STEP_TOLERANCE * Math.abs(dz);
+
+        if (current == null || steps >= REANCHOR_STEPS || (z != currentZ && !close)) {
+            current = getTransfer(z);
+
+            for (int u = 0; u < M; u++) {
+                multiply(current[u], spectrum[u]);
+            }
+
+            steps = 0;
+        } else if (z != currentZ) {
+            if (transfer == null || dz != transferDz) {
+                transfer = getTransfer(dz);
+                transferDz = dz;
+            }
+
+            for (int u = 0; u < M; u++) {
+                multiply(current[u], transfer[u]);
+            }
+
+            steps++;
+        }
+
+        currentZ = z;
+
+        float[][] out = new float[M][];
+        for (int u = 0; u < M; u++) {
+            out[u] = current[u].clone();
+        }
+
+        getFFT(0).complexInverse(out, true);
+        return out;
+    }
+
+    /**
+     * Transfer function of a distance, zero for the evanescent waves. The
+     * phases are computed in double precision, kz z easily reaches 1e5 rad.
+     */
+    private float[][] getTransfer(float z) {
+        float[][] t = new float[M][2 * N];
+
+        double k0 = 2 * Math.PI / lambda;
+        double dfx = lambda / (M * (double) dx);
+        double dfy = lambda / (N * (double) dy);
+
+        for (int u = 0; u < M; u++) {
+            double fx = (u < (M + 1) / 2 ? u : u - M) * dfx;
+
+            for (int v = 0; v < N; v++) {
+                double fy = (v < (N + 1) / 2 ? v : v - N) * dfy;
+
+                double root = 1 - fx * fx - fy * fy;
+                if (root >= 0) {
+                    double phase = (k0 * Math.sqrt(root) * z) % (2 * Math.PI);
+                    t[u][2 * v] = (float) Math.cos(phase);
+                    t[u][2 * v + 1] = (float) Math.sin(phase);
+                }
+            }
+        }
+
+        return t;
+    }
+
+    /**
+     * Complex product of two interleaved rows, stored in a.
+     */
+    private static void multiply(float[] a, float[] b) {
+        for (int v = 0; v < a.length; v += 2) {
+            float re = a[v];
+            float im = a[v + 1];
+
+            a[v] = re * b[v] - im * b[v + 1];
+            a[v + 1] = re * b[v + 1] + im * b[v];
+        }
+    }
+
+    /**
+     * Number of samples of a level.
+     *
+     * @param size
+     * @param level
+     * @return
+     */
+    public static int size(int size, int level) {
+        return Math.max(1, size >> level);
+    }
+
+    /**
+     * Index on the full spectrum of the index u of a cropped one with the
+     * size m, keeping the lowest frequencies of both signs.
+     */
+    private static int source(int u, int m, int M) {
+        return u < (m + 1) / 2 ? u : M - m + u;
+    }
+
+    private double[][] getKz(int level) {
+        if (kz[level] != null) {
+            return kz[level];
+        }
+
+        int m = size(M, level);
+        int n = size(N, level);
+        double[][] k = new double[m][n];
+
+        double k0 = 2 * Math.PI / lambda;
+        double dfx = lambda / (M * (double) dx);
+        double dfy = lambda / (N * (double) dy);
+
+        for (int u = 0; u < m; u++) {
+            int iu = source(u, m, M);
+            double fx = (iu < (M + 1) / 2 ? iu : iu - M) * dfx;
+
+            for (int v = 0; v < n; v++) {
+                int iv = source(v, n, N);
+                double fy = (iv < (N + 1) / 2 ? iv : iv - N) * dfy;
+
+                double root = 1 - fx * fx - fy * fy;
+                //evanescent waves are removed
+                k[u][v] = root < 0 ? Double.NaN : k0 * Math.sqrt(root);
+            }
+        }
+
+        kz[level] = k;
+        return k;
+    }
+
+    private FloatFFT_2D getFFT(int level) {
+        if (ffts[level] == null) {
+            ffts[level] = new FloatFFT_2D(size(M, level), size(N, level));
+        }
+        return ffts[level];
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.io.FileSaver;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Complex utilities over whole stacks. The first field gives the number of
+ * slices; each part of the second field can have the same number of slices
+ * or a single one, which is then broadcast to every slice. Slices are
+ * processed in parallel, one slice per task; a single image is split in
+ * blocks of rows instead. When the result doesn't fit
+ * comfortably in memory the slices are written to a temporary folder as they
+ * are finished and returned as virtual stacks.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class StackMath {
+
+    //operations, in the order of UtilitiesFrame.OPERATIONS
+    public static final int PHASE = 0;
+    public static final int AMPLITUDE = 1;
+    public static final int INTENSITY = 2;
+    public static final int ADD = 3;
+    public static final int SUBTRACT = 4;
+    public static final int MULTIPLY = 5;
+    public static final int DIVIDE = 6;
+    public static final int CONJUGATE = 7;
+    public static final int SCALE = 8;
+
+    private final int operation;
+    private final ImageStack real1, imaginary1, real2, imaginary2;
+
+    private final int M, N, slices;
+
+    private float scaleReal = 1;
+    private float scaleImaginary;
+
+    private boolean virtual;
+
+    /**
+     * Creates the operation. The stacks must have the same width and height;
+     * real2 and imaginary2 can be null.
+     *
+     * @param operation
+     * @param real1
+     * @param imaginary1
+     * @param real2
+     * @param imaginary2
+     */
+    public StackMath(int operation, ImageStack real1, ImageStack imaginary1,
+            ImageStack real2, ImageStack imaginary2) {
+        this.operation = operation;
+        this.real1 = real1;
+        this.imaginary1 = imaginary1;
+        this.real2 = real2;
+        this.imaginary2 = imaginary2;
+
+        M = real1.getWidth();
+        N = real1.getHeight();
+        slices = real1.getSize();
+    }
+
+    /**
+     * Returns true if the operation uses the second field.
+     *
+     * @param operation
+     * @return
+     */
+    public static boolean isBinary(int operation) {
+        return operation >= ADD && operation <= DIVIDE;
+    }
+
+    /**
+     * Factor of the SCALE operation.
+     *
+     * @param real
+     * @param imaginary
+     */
+    public void setScale(float real, float imaginary) {
+        scaleReal = real;
+        scaleImaginary = imaginary;
+    }
+
+    /**
+     * Computes the operation.
+     *
+     * @return result stacks: one for phase, amplitude and intensity; real and
+     * imaginary parts otherwise
+     * @throws IOException if the slices of a virtual result can't be written
+     */
+    public ImageStack[] run() throws IOException {
+        final int outputs = operation <= INTENSITY ? 1 : 2;
+
+        //the result must fit in the memory budget
+        long bytes = 4L * M * N * slices * outputs;
+        virtual = slices > 1 && bytes > Performance.getFreeMemory();
+
+        final File[] dirs = new File[outputs];
+        final ImageStack[] result = new ImageStack[outputs];
+
+        for (int k = 0; k < outputs; k++) {
+            if (virtual) {
+                dirs[k] = Files.createTempDirectory("np").toFile();
+                dirs[k].deleteOnExit();
+            } else {
+                result[k] = new ImageStack(M, N, slices);
+            }
+        }
+
+        //broadcast operands are converted once
+        final float[] broadcastReal = real2 != null && real2.getSize() == 1
+                ? pixels(real2, 1) : null;
+        final float[] broadcastImaginary = imaginary2 != null && imaginary2.getSize() == 1
+                ? pixels(imaginary2, 1) : null;
+
+        final AtomicInteger done = new AtomicInteger();
+
+        int threads = Math.min(slices, Performance.getBatchWorkers());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+
+            for (int s = 1; s <= slices; s++) {
+                final int slice = s;
+
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        float[] c = real2 == null ? null
+                                : broadcastReal != null ? broadcastReal : pixels(real2, slice);
+                        float[] d = imaginary2 == null ? null
+                                : broadcastImaginary != null ? broadcastImaginary
+                                        : pixels(imaginary2, slice);
+
+                        float[][] out = calculate(slice, c, d);
+
+                        for (int k = 0; k < outputs; k++) {
+                            if (virtual) {
+                                FloatProcessor fp = new FloatProcessor(M, N, out[k]);
+                                File file = new File(dirs[k], fileName(slice));
+                                file.deleteOnExit();
+
+                                if (!new FileSaver(new ImagePlus("", fp))
+                                        .saveAsTiff(file.getPath())) {
+                                    throw new IOException("Couldn't write " + file);
+                                }
+                            } else {
+                                result[k].setPixels(out[k], slice);
+                            }
+                        }
+
+                        IJ.showProgress(done.incrementAndGet(), slices);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (virtual) {
+            for (int k = 0; k < outputs; k++) {
+                VirtualStack vs = new VirtualStack(M, N, null, dirs[k].getPath() + File.separator);
+                for (int s = 1; s <= slices; s++) {
+                    vs.addSlice(fileName(s));
+                }
+                result[k] = vs;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns true if the last result was streamed to disk.
+     *
+     * @return
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Computes one slice. A single image has no slices to spread over the
+     * workers, so it's split in blocks of rows by ComplexMath instead.
+     */
+    private float[][] calculate(int slice, float[] c, float[] d) {
+        int length = M * N;
+
+        if (operation <= INTENSITY) {
+            final float[] a = pixels(real1, slice);
+            final float[] b = pixels(imaginary1, slice);
+            final float[] out = new float[length];
+
+            if (slices == 1) {
+                ComplexMath.run(M, N, new ComplexMath.Block() {
+                    @Override
+                    public void process(int from, int to) {
+                        magnitude(a, b, out, from, to);
+                    }
+                });
+            } else {
+                magnitude(a, b, out, 0, length);
+            }
+
+            return new float[][]{out};
+        }
+
+        //the first field is modified in place, so it's always copied
+        float[] a = copy(real1, slice);
+        float[] b = copy(imaginary1, slice);
+
+        if (slices == 1) {
+            FloatProcessor re = new FloatProcessor(M, N, a);
+            FloatProcessor im = new FloatProcessor(M, N, b);
+            FloatProcessor re2 = c == null ? null : new FloatProcessor(M, N, c);
+            FloatProcessor im2 = d == null ? null : new FloatProcessor(M, N, d);
+
+            switch (operation) {
+                case ADD:
+                    ComplexMath.add(re, im, re2, im2);
+                    break;
+                case SUBTRACT:
+                    ComplexMath.subtract(re, im, re2, im2);
+                    break;
+                case MULTIPLY:
+                    ComplexMath.multiply(re, im, re2, im2);
+                    break;
+                case DIVIDE:
+                    ComplexMath.divide(re, im, re2, im2);
+                    break;
+                case CONJUGATE:
+                    ComplexMath.conjugate(im);
+                    break;
+                default:
+                    ComplexMath.scale(re, im, scaleReal, scaleImaginary);
+                    break;
+            }
+
+            return new float[][]{a, b};
+        }
+
+        switch (operation) {
+            case CONJUGATE:
+                ComplexMath.conjugate(b, 0, length);
+                break;
+            case SCALE:
+                ComplexMath.scale(a, b, scaleReal, scaleImaginary, 0, length);
+                break;
+            default:
+                ComplexMath.apply(operation - ADD + ComplexMath.ADD, a, b, c, d, 0, length);
+                break;
+        }
+
+        return new float[][]{a, b};
+    }
+
+    /**
+     * Phase, amplitude or intensity over the [from, to) range.
+     */
+    private void magnitude(float[] a, float[] b, float[] out, int from, int to) {
+        for (int k = from; k < to; k++) {
+            switch (operation) {
+                case PHASE:
+                    out[k] = (float) Math.atan2(b[k], a[k]);
+                    break;
+                case AMPLITUDE:
+                    out[k] = (float) Math.sqrt(a[k] * a[k] + b[k] * b[k]);
+                    break;
+                default:
+                    out[k] = a[k] * a[k] + b[k] * b[k];
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Float pixels of a slice, without copying float slices.
+     */
+    private static float[] pixels(ImageStack stack, int slice) {
+        ImageProcessor ip = stack.getProcessor(slice);
+        if (!(ip instanceof FloatProcessor)) {
+            ip = ip.convertToFloat();
+        }
+        return (float[]) ip.getPixels();
+    }
+
+    /**
+     * Float pixels of a slice that can be modified.
+     */
+    private static float[] copy(ImageStack stack, int slice) {
+        ImageProcessor ip = stack.getProcessor(slice);
+        if (ip instanceof FloatProcessor) {
+            return ((float[]) ip.getPixels()).clone();
+        }
+        //the conversion already makes a new array
+        return (float[]) ip.convertToFloat().getPixels();
+    }
+
+    private static String fileName(int slice) {
+        return String.format("%06d.tif", slice);
+    }
+}
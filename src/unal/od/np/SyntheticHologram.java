@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import java.util.Random;
+
+/**
+ * Deterministic off-axis hologram of a synthetic object, for checking the
+ * reconstruction without recorded data. The object has unit amplitude and a
+ * Gaussian phase bump at the center; optionally it is multiplied by the
+ * spherical wave of a point source at a known distance. The hologram is the
+ * intensity of the object plus a tilted plane reference wave, with optional
+ * Gaussian noise drawn from a seeded generator, so the same settings always
+ * give the same pixels.
+ * <p>
+ * Arrays follow the conventions of Data: M x N for real images (x, y) and
+ * M x 2N interleaved for complex fields.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class SyntheticHologram {
+
+    private final int M, N;
+    private final float lambda, dx, dy;
+
+    //peak of the phase bump, radians
+    private float phase = (float) Math.PI;
+    //standard deviation of the bump, as a fraction of the smallest side
+    private float width = 0.1f;
+    //reference wave frequencies, cycles per pixel
+    private float carrierX = 0.25f;
+    private float carrierY = 0.25f;
+    //standard deviation of the noise, relative to the mean intensity
+    private float noise = 0;
+    private long seed = 1;
+    //distance to the point source, 0 for none
+    private float pointSourceZ = 0;
+
+    /**
+     * Creates a generator with the default object and carrier.
+     *
+     * @param M
+     * @param N
+     * @param lambda
+     * @param dx
+     * @param dy
+     */
+    public SyntheticHologram(int M, int N, float lambda, float dx, float dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * Complex field of the object on the hologram plane.
+     *
+     * @return M x 2N field
+     */
+    public float[][] getObject() {
+        float[][] object = new float[M][2 * N];
+
+        float sigma = width * Math.min(M, N);
+        float k = (float) (2 * Math.PI / lambda);
+
+        for (int i = 0; i < M; i++) {
+            float x = i - M / 2;
+
+            for (int j = 0; j < N; j++) {
+                float y = j - N / 2;
+
+                double phi = phase * Math.exp(-(x * x + y * y) / (2 * sigma * sigma));
+
+                if (pointSourceZ != 0) {
+                    double xu = x * dx;
+                    double yu = y * dy;
+                    double r = Math.sqrt(xu * xu + yu * yu + pointSourceZ * pointSourceZ);
+                    phi += k * (r - Math.abs(pointSourceZ));
+                }
+
+                object[i][2 * j] = (float) Math.cos(phi);
+                object[i][2 * j + 1] = (float) Math.sin(phi);
+            }
+        }
+
+        return object;
+    }
+
+    /**
+     * Intensity of the object plus the reference wave.
+     *
+     * @return M x N image
+     */
+    public float[][] getHologram() {
+        float[][] object = getObject();
+        float[][] hologram = new float[M][N];
+        Random random = new Random(seed);
+
+        //the object and the reference have unit amplitude
+        float mean = 2;
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                double carrier = 2 * Math.PI * (carrierX * i + carrierY * j);
+                float re = object[i][2 * j] + (float) Math.cos(carrier);
+                float im = object[i][2 * j + 1] + (float) Math.sin(carrier);
+
+                float value = re * re + im * im;
+                if (noise > 0) {
+                    value += (float) (noise * mean * random.nextGaussian());
+                }
+                hologram[i][j] = value;
+            }
+        }
+
+        return hologram;
+    }
+
+    /**
+     * Spectral region of the object term in the centered spectrum of the
+     * hologram, as x, y, width, height. That term is the object times the
+     * conjugate of the reference, so it sits at minus the carrier frequency.
+     *
+     * @return
+     */
+    public int[] getObjectOrder() {
+        int w = Math.round(Math.min(Math.abs(carrierX), 0.25f) * M);
+        int h = Math.round(Math.min(Math.abs(carrierY), 0.25f) * N);
+
+        int cx = Math.round(M / 2 - carrierX * M);
+        int cy = Math.round(N / 2 - carrierY * N);
+
+        return new int[]{cx - w / 2, cy - h / 2, w, h};
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Setters and getters">
+    public void setPhase(float phase) {
+        this.phase = phase;
+    }
+
+    public void setWidth(float width) {
+        this.width = width;
+    }
+
+    /**
+     * Sets the frequencies of the reference wave, in cycles per pixel. They
+     * must be below 0.5 and far enough from 0 to separate the orders.
+     *
+     * @param carrierX
+     * @param carrierY
+     */
+    public void setCarrier(float carrierX, float carrierY) {
+        this.carrierX = carrierX;
+        this.carrierY = carrierY;
+    }
+
+    public void setNoise(float noise) {
+        this.noise = noise;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Multiplies the object by the spherical wave of a point source at the
+     * given distance before the hologram plane, so a propagation by minus
+     * that distance focuses it at the center. 0 removes it.
+     *
+     * @param z
+     */
+    public void setPointSource(float z) {
+        pointSourceZ = z;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getPhase() {
+        return phase;
+    }
+    // </editor-fold>
+}
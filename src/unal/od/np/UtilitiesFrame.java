@@ -15,12 +15,16 @@
  */
 package unal.od.np;
 
+import ij.IJ;
 import ij.ImageListener;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.WindowManager;
+import ij.gui.GenericDialog;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import java.awt.Toolkit;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Locale;
@@ -28,7 +32,6 @@ import java.util.prefs.Preferences;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
-import unal.od.jdiffraction.cpu.utils.ArrayUtils;
 
 /**
  *
@@ -41,7 +44,11 @@ public class UtilitiesFrame extends javax.swing.JFrame implements ImageListener,
     private static final String TITLE = "Utilities";
 
     public static final String[] OPERATIONS = {"Phase", "Amplitude", "Intensity",
-        "Add", "Subtract", "Multiply"};
+        "Add", "Subtract", "Multiply", "Divide", "Conjugate", "Scale"};
+
+    //names used in the titles of the complex results, from "Add" on
+    private static final String[] RESULT_NAMES = {"sum", "subtraction",
+        "multiplication", "division", "conjugate", "scaling"};
 
     private int[] windowsId;
     private String[] titles1;
@@ -224,115 +231,12 @@ public class UtilitiesFrame extends javax.swing.JFrame implements ImageListener,
         sphericalCurvRadiusString = pref.get(SPHERICAL_CURV_RADIUS, "");
     }
 
-    private void phase() {
-        int realIdx = realCombo1.getSelectedIndex();
-        int imaginaryIdx = imaginaryCombo1.getSelectedIndex();
-
-        String realTitle = titles1[realIdx];
-        String imaginaryTitle = titles1[imaginaryIdx];
-
-        if (realTitle.equalsIgnoreCase("<none>") || imaginaryTitle.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please select the inputs for the complex field.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        ImagePlus impReal = WindowManager.getImage(windowsId[realIdx]);
-        ImagePlus impImaginary = WindowManager.getImage(windowsId[imaginaryIdx]);
-
-        ImageProcessor ipReal = impReal.getProcessor();
-        ImageProcessor ipImaginary = impImaginary.getProcessor();
-
-        int M = ipReal.getWidth();
-        int N = ipReal.getHeight();
-
-        if (M != ipImaginary.getWidth() || N != ipImaginary.getHeight()) {
-            JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        float[][] field = ArrayUtils.complexAmplitude2(ipReal.getFloatArray(), ipImaginary.getFloatArray());
-
-        float[][] phase = ArrayUtils.phase(field);
-
-        ImageProcessor ip = new FloatProcessor(phase);
-        ImagePlus imp = new ImagePlus("Phase of " + realTitle
-                + " and " + imaginaryTitle, ip);
-        imp.show();
-    }
-
-    private void amplitude() {
-        int realIdx = realCombo1.getSelectedIndex();
-        int imaginaryIdx = imaginaryCombo1.getSelectedIndex();
-
-        String realTitle = titles1[realIdx];
-        String imaginaryTitle = titles1[imaginaryIdx];
-
-        if (realTitle.equalsIgnoreCase("<none>") || imaginaryTitle.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please select the inputs for the complex field.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        ImagePlus impReal = WindowManager.getImage(windowsId[realIdx]);
-        ImagePlus impImaginary = WindowManager.getImage(windowsId[imaginaryIdx]);
-
-        ImageProcessor ipReal = impReal.getProcessor();
-        ImageProcessor ipImaginary = impImaginary.getProcessor();
-
-        int M = ipReal.getWidth();
-        int N = ipReal.getHeight();
-
-        if (M != ipImaginary.getWidth() || N != ipImaginary.getHeight()) {
-            JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        float[][] field = ArrayUtils.complexAmplitude2(ipReal.getFloatArray(), ipImaginary.getFloatArray());
-
-        float[][] amplitude = ArrayUtils.modulus(field);
-
-        ImageProcessor ip = new FloatProcessor(amplitude);
-        ImagePlus imp = new ImagePlus("Amplitude of " + realTitle
-                + " and " + imaginaryTitle, ip);
-        imp.show();
-    }
-
-    private void intensity() {
-        int realIdx = realCombo1.getSelectedIndex();
-        int imaginaryIdx = imaginaryCombo1.getSelectedIndex();
-
-        String realTitle = titles1[realIdx];
-        String imaginaryTitle = titles1[imaginaryIdx];
-
-        if (realTitle.equalsIgnoreCase("<none>") || imaginaryTitle.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please select the inputs for the complex field.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        ImagePlus impReal = WindowManager.getImage(windowsId[realIdx]);
-        ImagePlus impImaginary = WindowManager.getImage(windowsId[imaginaryIdx]);
-
-        ImageProcessor ipReal = impReal.getProcessor();
-        ImageProcessor ipImaginary = impImaginary.getProcessor();
-
-        int M = ipReal.getWidth();
-        int N = ipReal.getHeight();
-
-        if (M != ipImaginary.getWidth() || N != ipImaginary.getHeight()) {
-            JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        float[][] field = ArrayUtils.complexAmplitude2(ipReal.getFloatArray(), ipImaginary.getFloatArray());
-
-        float[][] intensity = ArrayUtils.modulusSq(field);
-
-        ImageProcessor ip = new FloatProcessor(intensity);
-        ImagePlus imp = new ImagePlus("Intensity of " + realTitle
-                + " and " + imaginaryTitle, ip);
-        imp.show();
-    }
-
-    private void add() {
+    /**
+     * Applies the selected operation. Whole stacks are processed; every part
+     * of the second field can have the slices of the first field or a single
+     * slice, used for all of them.
+     */
+    private void calculate(int operation) {
         int realIdx1 = realCombo1.getSelectedIndex();
         int imaginaryIdx1 = imaginaryCombo1.getSelectedIndex();
 
@@ -340,223 +244,134 @@ public class UtilitiesFrame extends javax.swing.JFrame implements ImageListener,
         String imaginaryTitle1 = titles1[imaginaryIdx1];
 
         if (realTitle1.equalsIgnoreCase("<none>") || imaginaryTitle1.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please both inputs for the first complex field.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        int realIdx2 = realCombo2.getSelectedIndex();
-        int imaginaryIdx2 = imaginaryCombo2.getSelectedIndex();
-
-        String realTitle2 = titles2[realIdx2];
-        String imaginaryTitle2 = titles2[imaginaryIdx2];
-
-        if (realTitle2.equalsIgnoreCase("<none>") || imaginaryTitle2.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please both inputs for the second complex field.", "Error", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, "Please select the inputs for the complex field.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        ImagePlus impReal1 = WindowManager.getImage(windowsId[realIdx1]);
-        ImagePlus impImaginary1 = WindowManager.getImage(windowsId[imaginaryIdx1]);
-
-        ImageProcessor ipReal1 = impReal1.getProcessor();
-        ImageProcessor ipImaginary1 = impImaginary1.getProcessor();
+        ImageStack real1 = WindowManager.getImage(windowsId[realIdx1]).getStack();
+        ImageStack imaginary1 = WindowManager.getImage(windowsId[imaginaryIdx1]).getStack();
 
-        int M = ipReal1.getWidth();
-        int N = ipReal1.getHeight();
+        int M = real1.getWidth();
+        int N = real1.getHeight();
+        int slices = real1.getSize();
 
-        ImagePlus impReal2 = WindowManager.getImage(windowsId[realIdx2 - 1]);
-        ImagePlus impImaginary2 = WindowManager.getImage(windowsId[imaginaryIdx2 - 1]);
-
-        ImageProcessor ipReal2 = impReal2.getProcessor();
-        ImageProcessor ipImaginary2 = impImaginary2.getProcessor();
-
-        if (M != ipImaginary1.getWidth() || N != ipImaginary1.getHeight()
-                || M != ipReal2.getWidth() || N != ipReal2.getHeight()
-                || M != ipImaginary2.getWidth() || N != ipImaginary2.getHeight()) {
+        if (!sameSize(imaginary1, M, N)) {
             JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-//        System.out.println("" + M);
-//        System.out.println("" + N);
-        float[][] real1 = ipReal1.getFloatArray();
-        float[][] imaginary1 = ipImaginary1.getFloatArray();
-
-        float[][] real2 = ipReal2.getFloatArray();
-        float[][] imaginary2 = ipImaginary2.getFloatArray();
-
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                real1[i][j] += real2[i][j];
-                imaginary1[i][j] += imaginary2[i][j];
-            }
-        }
-
-        ImageProcessor ip1 = new FloatProcessor(real1);
-        ImagePlus imp1 = new ImagePlus("Real; result of sum", ip1);
-        imp1.show();
-
-        ImageProcessor ip2 = new FloatProcessor(imaginary1);
-        ImagePlus imp2 = new ImagePlus("Imaginary; result of sum", ip2);
-        imp2.show();
-    }
-
-    private void subtract() {
-        int realIdx1 = realCombo1.getSelectedIndex();
-        int imaginaryIdx1 = imaginaryCombo1.getSelectedIndex();
-
-        String realTitle1 = titles1[realIdx1];
-        String imaginaryTitle1 = titles1[imaginaryIdx1];
-
-        if (realTitle1.equalsIgnoreCase("<none>") || imaginaryTitle1.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please both inputs for the first complex field.", "Error", JOptionPane.ERROR_MESSAGE);
+        if (imaginary1.getSize() != slices) {
+            JOptionPane.showMessageDialog(this, "The real and imaginary parts must have the same number of slices.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        int realIdx2 = realCombo2.getSelectedIndex();
-        int imaginaryIdx2 = imaginaryCombo2.getSelectedIndex();
+        ImageStack real2 = null;
+        ImageStack imaginary2 = null;
 
-        String realTitle2 = titles2[realIdx2];
-        String imaginaryTitle2 = titles2[imaginaryIdx2];
+        if (StackMath.isBinary(operation)) {
+            int realIdx2 = realCombo2.getSelectedIndex();
+            int imaginaryIdx2 = imaginaryCombo2.getSelectedIndex();
 
-        if (realTitle2.equalsIgnoreCase("<none>") || imaginaryTitle2.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please both inputs for the second complex field.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
+            boolean hasReal = !titles2[realIdx2].equalsIgnoreCase("<none>");
+            boolean hasImaginary = !titles2[imaginaryIdx2].equalsIgnoreCase("<none>");
 
-        ImagePlus impReal1 = WindowManager.getImage(windowsId[realIdx1]);
-        ImagePlus impImaginary1 = WindowManager.getImage(windowsId[imaginaryIdx1]);
+            //a missing part is taken as zero, except for sums and subtractions
+            boolean requireBoth = operation == StackMath.ADD || operation == StackMath.SUBTRACT;
 
-        ImageProcessor ipReal1 = impReal1.getProcessor();
-        ImageProcessor ipImaginary1 = impImaginary1.getProcessor();
+            if (requireBoth && (!hasReal || !hasImaginary)) {
+                JOptionPane.showMessageDialog(this, "Please select both inputs for the second complex field.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-        int M = ipReal1.getWidth();
-        int N = ipReal1.getHeight();
+            if (!hasReal && !hasImaginary) {
+                JOptionPane.showMessageDialog(this, "Please select at least one input for the second complex field.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-        ImagePlus impReal2 = WindowManager.getImage(windowsId[realIdx2 - 1]);
-        ImagePlus impImaginary2 = WindowManager.getImage(windowsId[imaginaryIdx2 - 1]);
+            real2 = hasReal ? WindowManager.getImage(windowsId[realIdx2 - 1]).getStack() : null;
+            imaginary2 = hasImaginary
+                    ? WindowManager.getImage(windowsId[imaginaryIdx2 - 1]).getStack() : null;
 
-        ImageProcessor ipReal2 = impReal2.getProcessor();
-        ImageProcessor ipImaginary2 = impImaginary2.getProcessor();
+            if (!sameSize(real2, M, N) || !sameSize(imaginary2, M, N)) {
+                JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-        if (M != ipImaginary1.getWidth() || N != ipImaginary1.getHeight()
-                || M != ipReal2.getWidth() || N != ipReal2.getHeight()
-                || M != ipImaginary2.getWidth() || N != ipImaginary2.getHeight()) {
-            JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
+            if (!canBroadcast(real2, slices) || !canBroadcast(imaginary2, slices)) {
+                JOptionPane.showMessageDialog(this, "The second complex field must have one slice or "
+                        + "the same number of slices as the first.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
         }
 
-        float[][] real1 = ipReal1.getFloatArray();
-        float[][] imaginary1 = ipImaginary1.getFloatArray();
+        StackMath math = new StackMath(operation, real1, imaginary1, real2, imaginary2);
 
-        float[][] real2 = ipReal2.getFloatArray();
-        float[][] imaginary2 = ipImaginary2.getFloatArray();
+        if (operation == StackMath.SCALE) {
+            GenericDialog gd = new GenericDialog("Scale");
+            gd.addMessage("Multiplies the field by a + ib");
+            gd.addNumericField("a:", pref.getFloat(SCALE_REAL, 1), 4);
+            gd.addNumericField("b:", pref.getFloat(SCALE_IMAGINARY, 0), 4);
+            gd.showDialog();
 
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                real1[i][j] -= real2[i][j];
-                imaginary1[i][j] -= imaginary2[i][j];
+            if (gd.wasCanceled()) {
+                return;
             }
-        }
 
-        ImageProcessor ip1 = new FloatProcessor(real1);
-        ImagePlus imp1 = new ImagePlus("Real, result of subtraction", ip1);
-        imp1.show();
+            float a = (float) gd.getNextNumber();
+            float b = (float) gd.getNextNumber();
 
-        ImageProcessor ip2 = new FloatProcessor(imaginary1);
-        ImagePlus imp2 = new ImagePlus("Imaginary, result of subtraction", ip2);
-        imp2.show();
-    }
+            if (gd.invalidNumber()) {
+                JOptionPane.showMessageDialog(this, "Please insert a valid scale factor.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-    private void multiply() {
-        int realIdx1 = realCombo1.getSelectedIndex();
-        int imaginaryIdx1 = imaginaryCombo1.getSelectedIndex();
+            pref.putFloat(SCALE_REAL, a);
+            pref.putFloat(SCALE_IMAGINARY, b);
 
-        String realTitle1 = titles1[realIdx1];
-        String imaginaryTitle1 = titles1[imaginaryIdx1];
+            math.setScale(a, b);
+        }
 
-        if (realTitle1.equalsIgnoreCase("<none>") || imaginaryTitle1.equalsIgnoreCase("<none>")) {
-            JOptionPane.showMessageDialog(this, "Please select the inputs for the first complex field.", "Error", JOptionPane.ERROR_MESSAGE);
+        ImageStack[] result;
+        try {
+            result = math.run();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "The result couldn't be written: "
+                    + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        int realIdx2 = realCombo2.getSelectedIndex();
-        int imaginaryIdx2 = imaginaryCombo2.getSelectedIndex();
-
-        String realTitle2 = titles2[realIdx2];
-        String imaginaryTitle2 = titles2[imaginaryIdx2];
-
-        boolean hasReal = !realTitle2.equalsIgnoreCase("<none>");
-        boolean hasImaginary = !imaginaryTitle2.equalsIgnoreCase("<none>");
-
-        if (!hasReal && !hasImaginary) {
-            JOptionPane.showMessageDialog(this, "Please select at least one input for the second complex field.", "Error", JOptionPane.ERROR_MESSAGE);
+        if (result == null) {
             return;
         }
 
-        ImagePlus impReal1 = WindowManager.getImage(windowsId[realIdx1]);
-        ImagePlus impImaginary1 = WindowManager.getImage(windowsId[imaginaryIdx1]);
-
-        ImageProcessor ipReal1 = impReal1.getProcessor();
-        ImageProcessor ipImaginary1 = impImaginary1.getProcessor();
-
-        int M = ipReal1.getWidth();
-        int N = ipReal1.getHeight();
-
-        float[][] field2 = null;
-
-        if (hasReal && hasImaginary) {
-            ImagePlus impReal2 = WindowManager.getImage(windowsId[realIdx2 - 1]);
-            ImagePlus impImaginary2 = WindowManager.getImage(windowsId[imaginaryIdx2 - 1]);
-
-            ImageProcessor ipReal2 = impReal2.getProcessor();
-            ImageProcessor ipImaginary2 = impImaginary2.getProcessor();
-
-            if (M != ipImaginary1.getWidth() || N != ipImaginary1.getHeight()
-                    || M != ipReal2.getWidth() || N != ipReal2.getHeight()
-                    || M != ipImaginary2.getWidth() || N != ipImaginary2.getHeight()) {
-                JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-
-            field2 = ArrayUtils.complexAmplitude2(ipReal2.getFloatArray(), ipImaginary2.getFloatArray());
-        } else if (hasReal && !hasImaginary) {
-            ImagePlus impReal2 = WindowManager.getImage(windowsId[realIdx2 - 1]);
-
-            ImageProcessor ipReal2 = impReal2.getProcessor();
-
-            if (M != ipImaginary1.getWidth() || N != ipImaginary1.getHeight()
-                    || M != ipReal2.getWidth() || N != ipReal2.getHeight()) {
-                JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-
-            field2 = ArrayUtils.complexAmplitude2(ipReal2.getFloatArray(), null);
-        } else if (!hasReal && hasImaginary) {
-            ImagePlus impImaginary2 = WindowManager.getImage(windowsId[imaginaryIdx2 - 1]);
-
-            ImageProcessor ipImaginary2 = impImaginary2.getProcessor();
-
-            if (M != ipImaginary1.getWidth() || N != ipImaginary1.getHeight()
-                    || M != ipImaginary2.getWidth() || N != ipImaginary2.getHeight()) {
-                JOptionPane.showMessageDialog(this, "Input images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-
-            field2 = ArrayUtils.complexAmplitude2(null, ipImaginary2.getFloatArray());
+        if (result.length == 1) {
+            String name = OPERATIONS[operation];
+            show(name + " of " + realTitle1 + " and " + imaginaryTitle1, result[0]);
+        } else {
+            String name = RESULT_NAMES[operation - StackMath.ADD];
+            show("Real, result of " + name, result[0]);
+            show("Imaginary, result of " + name, result[1]);
         }
 
-        float[][] field1 = ArrayUtils.complexAmplitude2(ipReal1.getFloatArray(), ipImaginary1.getFloatArray());
+        if (math.isVirtual()) {
+            IJ.log("Utilities: the result didn't fit in memory, it was saved to a "
+                    + "temporary folder and opened as a virtual stack.");
+        }
+    }
 
-        ArrayUtils.complexMultiplication2(field1, field2);
+    private void show(String title, ImageStack stack) {
+        ImagePlus imp = stack.getSize() == 1
+                ? new ImagePlus(title, stack.getProcessor(1))
+                : new ImagePlus(title, stack);
+        imp.show();
+    }
 
-        ImageProcessor ip1 = new FloatProcessor(ArrayUtils.real(field1));
-        ImagePlus imp1 = new ImagePlus("Real, result of multiplication", ip1);
-        imp1.show();
+    private static boolean sameSize(ImageStack stack, int M, int N) {
+        return stack == null || (stack.getWidth() == M && stack.getHeight() == N);
+    }
 
-        ImageProcessor ip2 = new FloatProcessor(ArrayUtils.imaginary(field1));
-        ImagePlus imp2 = new ImagePlus("Imaginary, result of multiplication", ip2);
-        imp2.show();
+    private static boolean canBroadcast(ImageStack stack, int slices) {
+        return stack == null || stack.getSize() == 1 || stack.getSize() == slices;
     }
 
     private float unitsToum(float val, String units) {
@@ -1462,35 +1277,15 @@ public class UtilitiesFrame extends javax.swing.JFrame implements ImageListener,
 
     private void operationComboActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_operationComboActionPerformed
         int idx = operationCombo.getSelectedIndex();
-        boolean enable = !((idx == 0) || (idx == 1) || (idx == 2));
+        boolean enable = idx >= 3 && idx <= 6;
 
         realCombo2.setEnabled(enable);
         imaginaryCombo2.setEnabled(enable);
     }//GEN-LAST:event_operationComboActionPerformed
 
     private void okMathBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_okMathBtnActionPerformed
-        int idx = operationCombo.getSelectedIndex();
-
-        switch (idx) {
-            case 0:
-                phase();
-                break;
-            case 1:
-                amplitude();
-                break;
-            case 2:
-                intensity();
-                break;
-            case 3:
-                add();
-                break;
-            case 4:
-                subtract();
-                break;
-            case 5:
-                multiply();
-                break;
-        }
+        //the operations follow the order of OPERATIONS
+        calculate(operationCombo.getSelectedIndex());
     }//GEN-LAST:event_okMathBtnActionPerformed
 
     private void formWindowClosing(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowClosing
@@ -0,0 +1,840 @@
+/*
+ * Copyright 2015 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.np;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.GenericDialog;
+import ij.io.DirectoryChooser;
+import ij.io.FileSaver;
+import ij.measure.Calibration;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.prefs.Preferences;
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.FloatAngularSpectrum;
+import unal.od.jdiffraction.cpu.FloatFresnelFourier;
+import unal.od.jdiffraction.cpu.FloatPropagator;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+
+/**
+ * Reconstructs every hologram written to a folder, e.g. by the acquisition
+ * software of a camera. New files are reported by a WatchService and handed
+ * to a fixed number of workers through a bounded queue; when the queue is
+ * full the watcher waits (back-pressure) instead of piling up holograms in
+ * memory. Each worker keeps its own FFT plan, illumination and propagation
+ * kernels, so consecutive holograms only cost the FFTs. The outputs of each
+ * hologram are saved as TIFF files (one stack per output when a range of
+ * distances is used) in the output folder.
+ * <p>
+ * The spatial filtering uses the ROI of the last propagation of the main
+ * window, and the illumination and output scaling are taken from the
+ * settings. Running the command again shows the throughput and allows to
+ * stop the service; the holograms already queued are finished first.
+ *
+ * @author Raul Castañeda (racastanedaq@unal.edu.co)
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ */
+public class WatchFolder implements PreferencesKeys {
+
+    private static final String TITLE = "Watch Folder";
+    private static final String[] METHODS = new String[]{"Angular Spectrum", "Fresnel",
+        "Automatic"};
+    private static final int[] METHOD_IDX = new int[]{0, 1, 3};
+    private static final String[] OUTPUTS = new String[]{"Phase", "Amplitude", "Intensity",
+        "Real", "Imaginary"};
+    private static final String[] EXTENSIONS = new String[]{".tif", ".tiff", ".png", ".bmp",
+        ".jpg", ".jpeg", ".gif"};
+
+    //marks the end of the queue for the workers
+    private static final File STOP = new File("");
+
+    //the service currently running, if any
+    private static WatchFolder RUNNING;
+
+    //parameters, in um
+    private File inputDir;
+    private File outputDir;
+    private float lambdaUm;
+    private float inputWUm;
+    private float inputHUm;
+    private float[] zUm;
+    private int methodIdx;
+    private boolean useFilter;
+    private final boolean[] outputs = new boolean[OUTPUTS.length];
+    private int workers;
+    private int queueSize;
+
+    // <editor-fold defaultstate="collapsed" desc="Prefs variables">
+    private final String lambdaUnits;
+    private final String zUnits;
+    private final String inputSizeUnits;
+
+    private final boolean isPlane;
+    private final float curvRadius;
+
+    private final boolean amplitudeLogSelected;
+    private final boolean intensityLogSelected;
+
+    private final boolean phaseByteSelected;
+    private final boolean amplitudeByteSelected;
+    private final boolean intensityByteSelected;
+    // </editor-fold>
+
+    //service state
+    private WatchService watcher;
+    private BlockingQueue<File> queue;
+    private ScheduledExecutorService monitor;
+    //modification time of the files already queued, by name; deleted files
+    //are removed, so a hologram written again under the same name is
+    //processed again
+    private final ConcurrentHashMap<String, Long> seen = new ConcurrentHashMap<String, Long>();
+
+    //throughput counters
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger stalls = new AtomicInteger();
+    private final AtomicInteger alive = new AtomicInteger();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private long startTime;
+    private volatile long endTime;
+    private int lastProcessed;
+    private long lastTime;
+
+    private final DecimalFormat df;
+    private final Preferences pref;
+    private final Data data;
+
+    public WatchFolder() {
+        df = new DecimalFormat("#.##", new DecimalFormatSymbols(Locale.US));
+        pref = Preferences.userNodeForPackage(getClass());
+        data = Data.getInstance();
+
+        lambdaUnits = pref.get(LAMBDA_UNITS, "nm");
+        zUnits = pref.get(DISTANCE_UNITS, "m");
+        inputSizeUnits = pref.get(INPUT_SIZE_UNITS, "mm");
+
+        isPlane = pref.getBoolean(IS_PLANE, true);
+        curvRadius = pref.getFloat(CURV_RADIUS, 1E6f);
+
+        amplitudeLogSelected = pref.getBoolean(AMPLITUDE_LOG, true);
+        intensityLogSelected = pref.getBoolean(INTENSITY_LOG, true);
+
+        phaseByteSelected = pref.getBoolean(PHASE_8_BIT, true);
+        amplitudeByteSelected = pref.getBoolean(AMPLITUDE_8_BIT, true);
+        intensityByteSelected = pref.getBoolean(INTENSITY_8_BIT, true);
+    }
+
+    /**
+     * Starts watching a folder or, if the service is already running, shows
+     * its throughput and asks whether to stop it.
+     */
+    public void run() {
+        WatchFolder running = getRunning();
+        if (running != null) {
+            running.showStatusDialog();
+            return;
+        }
+
+        if (!showDialog()) {
+            return;
+        }
+
+        try {
+            start();
+        } catch (IOException e) {
+            IJ.error(TITLE, "The folder couldn't be watched: " + e.getMessage());
+        }
+    }
+
+    private synchronized static WatchFolder getRunning() {
+        return RUNNING;
+    }
+
+    private synchronized static void setRunning(WatchFolder service) {
+        RUNNING = service;
+    }
+
+    private boolean showDialog() {
+        DirectoryChooser input = new DirectoryChooser("Folder to watch");
+        if (input.getDirectory() == null) {
+            return false;
+        }
+        inputDir = new File(input.getDirectory());
+
+        DirectoryChooser output = new DirectoryChooser("Output folder");
+        if (output.getDirectory() == null) {
+            return false;
+        }
+        outputDir = new File(output.getDirectory());
+
+        if (inputDir.getAbsoluteFile().equals(outputDir.getAbsoluteFile())) {
+            IJ.error(TITLE, "The output folder must be different from the watched one.");
+            return false;
+        }
+
+        GenericDialog gd = new GenericDialog(TITLE);
+        gd.addMessage("Watching: " + inputDir.getPath() + "\nOutput: " + outputDir.getPath());
+        gd.addStringField("Wavelength [" + lambdaUnits + "]:", pref.get(LAMBDA, ""), 8);
+        gd.addStringField("Input width [" + inputSizeUnits + "]:", pref.get(INPUT_WIDTH, ""), 8);
+        gd.addStringField("Input height [" + inputSizeUnits + "]:", pref.get(INPUT_HEIGHT, ""), 8);
+        gd.addStringField("Distance from [" + zUnits + "]:", pref.get(WATCH_START,
+                pref.get(DISTANCE, "")), 8);
+        gd.addStringField("Distance to [" + zUnits + "]:", pref.get(WATCH_END, ""), 8);
+        gd.addNumericField("Planes:", pref.getInt(WATCH_PLANES, 1), 0);
+        gd.addChoice("Method:", METHODS, METHODS[pref.getInt(WATCH_METHOD_IDX, 0)]);
+        gd.addCheckbox("Use the ROI of the last filtering", pref.getBoolean(WATCH_FILTER, true));
+        gd.addCheckbox("Phase", pref.getBoolean(PHASE_CHECKED, false));
+        gd.addCheckbox("Amplitude", pref.getBoolean(AMPLITUDE_CHECKED, false));
+        gd.addCheckbox("Intensity", pref.getBoolean(INTENSITY_CHECKED, false));
+        gd.addCheckbox("Real", pref.getBoolean(REAL_CHECKED, false));
+        gd.addCheckbox("Imaginary", pref.getBoolean(IMAGINARY_CHECKED, false));
+        gd.addNumericField("Workers:", pref.getInt(WATCH_WORKERS, Performance.getBatchWorkers()), 0);
+        gd.addNumericField("Queue size:", pref.getInt(WATCH_QUEUE, 32), 0);
+
+        gd.showDialog();
+        if (gd.wasCanceled()) {
+            return false;
+        }
+
+        String lambdaString = gd.getNextString();
+        String inputWString = gd.getNextString();
+        String inputHString = gd.getNextString();
+        String fromString = gd.getNextString();
+        String toString = gd.getNextString();
+        int planes = (int) gd.getNextNumber();
+        int methodChoice = gd.getNextChoiceIndex();
+        methodIdx = METHOD_IDX[methodChoice];
+        useFilter = gd.getNextBoolean();
+        for (int k = 0; k < OUTPUTS.length; k++) {
+            outputs[k] = gd.getNextBoolean();
+        }
+        workers = (int) gd.getNextNumber();
+        queueSize = (int) gd.getNextNumber();
+
+        try {
+            lambdaUm = unitsToum(Float.parseFloat(lambdaString), lambdaUnits);
+            if (lambdaUm <= 0) {
+                IJ.error(TITLE, "Wavelength must be a positive number and different from 0.");
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert a valid wavelength.");
+            return false;
+        }
+
+        try {
+            inputWUm = unitsToum(Float.parseFloat(inputWString), inputSizeUnits);
+            inputHUm = unitsToum(Float.parseFloat(inputHString), inputSizeUnits);
+            if (inputWUm == 0 || inputHUm == 0) {
+                IJ.error(TITLE, "Input width and height must be different from 0.");
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert a valid input size.");
+            return false;
+        }
+
+        if (gd.invalidNumber() || planes < 1) {
+            IJ.error(TITLE, "The number of planes must be 1 or more.");
+            return false;
+        }
+
+        float from, to;
+        try {
+            from = unitsToum(Float.parseFloat(fromString), zUnits);
+            to = planes == 1 ? from : unitsToum(Float.parseFloat(toString), zUnits);
+        } catch (NumberFormatException e) {
+            IJ.error(TITLE, "Please insert valid distances.");
+            return false;
+        }
+
+        zUm = new float[planes];
+        for (int p = 0; p < planes; p++) {
+            zUm[p] = planes == 1 ? from : from + p * (to - from) / (planes - 1);
+        }
+
+        if (useFilter && !data.hasROI()) {
+            IJ.error(TITLE, "There is no ROI to filter with. Please filter a hologram\n"
+                    + "in the main window first or disable the filtering.");
+            return false;
+        }
+
+        boolean anyOutput = false;
+        for (boolean selected : outputs) {
+            anyOutput |= selected;
+        }
+        if (!anyOutput) {
+            IJ.error(TITLE, "Please select at least one output.");
+            return false;
+        }
+
+        if (workers < 1 || queueSize < 1) {
+            IJ.error(TITLE, "Workers and queue size must be 1 or more.");
+            return false;
+        }
+
+        pref.put(WATCH_START, fromString);
+        pref.put(WATCH_END, toString);
+        pref.putInt(WATCH_PLANES, planes);
+        pref.putInt(WATCH_METHOD_IDX, methodChoice);
+        pref.putBoolean(WATCH_FILTER, useFilter);
+        pref.putInt(WATCH_WORKERS, workers);
+        pref.putInt(WATCH_QUEUE, queueSize);
+
+        return true;
+    }
+
+    /**
+     * Registers the folder and starts the watcher, the workers and the
+     * throughput monitor.
+     */
+    private void start() throws IOException {
+        watcher = inputDir.toPath().getFileSystem().newWatchService();
+        inputDir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        //only the files written from now on are processed
+        File[] existing = inputDir.listFiles();
+        if (existing != null) {
+            for (File file : existing) {
+                seen.put(file.getName(), file.lastModified());
+            }
+        }
+
+        queue = new ArrayBlockingQueue<File>(queueSize);
+        startTime = lastTime = System.nanoTime();
+
+        alive.set(workers);
+        for (int w = 0; w < workers; w++) {
+            Thread worker = new Thread(new Worker(), TITLE + " worker " + (w + 1));
+            worker.start();
+        }
+
+        Thread watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, TITLE);
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+        monitor = Executors.newSingleThreadScheduledExecutor();
+        monitor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                showStatus();
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        setRunning(this);
+
+        IJ.log(TITLE + ": watching " + inputDir.getPath() + " with " + workers + " workers, "
+                + zUm.length + (zUm.length == 1 ? " plane" : " planes") + " per hologram.");
+    }
+
+    /**
+     * Closes the watch service; the watcher then queues the end marks, so
+     * the workers stop after the pending holograms.
+     */
+    private void stop() {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Loop of the watcher thread. Blocks on the queue when the workers are
+     * behind.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        //some events were lost, the folder is listed instead
+                        rescan();
+                        continue;
+                    }
+
+                    Path name = (Path) event.context();
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        seen.remove(name.toString());
+                        continue;
+                    }
+
+                    enqueue(new File(inputDir, name.toString()));
+                }
+
+                if (!key.reset()) {
+                    IJ.log(TITLE + ": " + inputDir.getPath() + " is no longer accessible.");
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+        } catch (ClosedWatchServiceException e) {
+        } finally {
+            try {
+                for (int w = 0; w < workers; w++) {
+                    queue.put(STOP);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void rescan() throws InterruptedException {
+        File[] files = inputDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        //deletions may have been lost too
+        Set<String> names = new HashSet<String>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        seen.keySet().retainAll(names);
+
+        for (File file : files) {
+            enqueue(file);
+        }
+    }
+
+    /**
+     * Queues a file unless it was already queued with the same modification
+     * time.
+     */
+    private void enqueue(File file) throws InterruptedException {
+        if (!isImage(file.getName())) {
+            return;
+        }
+
+        Long modified = file.lastModified();
+        if (modified.equals(seen.put(file.getName(), modified))) {
+            return;
+        }
+
+        if (!queue.offer(file)) {
+            stalls.incrementAndGet();
+            queue.put(file);
+        }
+    }
+
+    private static boolean isImage(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        for (String extension : EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits until the size of a file stops changing, as the camera software
+     * may still be writing it when it's reported.
+     *
+     * @return false if the file is still growing after half a second
+     */
+    private static boolean waitUntilWritten(File file) throws InterruptedException {
+        long size = -1;
+        for (int k = 0; k < 50; k++) {
+            long length = file.length();
+            if (length > 0 && length == size) {
+                return true;
+            }
+            size = length;
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private void showStatus() {
+        long now = System.nanoTime();
+        int count = processed.get();
+        float fps = (count - lastProcessed) * 1E9f / (now - lastTime);
+        lastProcessed = count;
+        lastTime = now;
+
+        IJ.showStatus(TITLE + ": " + count + " holograms, " + df.format(fps) + " fps, "
+                + queue.size() + "/" + queueSize + " queued");
+    }
+
+    private String summary() {
+        long end = endTime != 0 ? endTime : System.nanoTime();
+        float seconds = (end - startTime) * 1E-9f;
+        int count = processed.get();
+
+        return count + " holograms in " + df.format(seconds) + " s ("
+                + df.format(count / seconds) + " fps), "
+                + (count == 0 ? "-" : df.format(busyNanos.get() * 1E-6f / count))
+                + " ms per hologram and worker, " + failed.get() + " failed, "
+                + stalls.get() + " times the queue was full";
+    }
+
+    private void showStatusDialog() {
+        GenericDialog gd = new GenericDialog(TITLE);
+        gd.addMessage("Watching: " + inputDir.getPath() + "\n" + summary() + "\n"
+                + queue.size() + " holograms queued.");
+        gd.setOKLabel("Stop");
+        gd.showDialog();
+
+        if (gd.wasOKed()) {
+            stop();
+        }
+    }
+
+    /**
+     * Called by each worker when it ends; the last one closes the service.
+     */
+    private void workerFinished() {
+        if (alive.decrementAndGet() > 0) {
+            return;
+        }
+
+        endTime = System.nanoTime();
+        monitor.shutdown();
+        setRunning(null);
+
+        IJ.showStatus("");
+        IJ.log(TITLE + ": stopped, " + summary() + ".");
+    }
+
+    /**
+     * Takes holograms from the queue until the end mark. The FFT plan, the
+     * illumination and the propagators are created for the first hologram and
+     * kept while the size doesn't change.
+     */
+    private class Worker implements Runnable {
+
+        private int M, N;
+        private FloatFFT_2D fft;
+        private float[][] illumination;
+        private FloatPropagator[] propagators;
+        private PropagationPlanner.Plan[] plans;
+        private Calibration cal;
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    File file = queue.take();
+                    if (file == STOP) {
+                        break;
+                    }
+
+                    long start = System.nanoTime();
+                    try {
+                        if (process(file)) {
+                            processed.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                        IJ.log(TITLE + ": " + file.getName() + ": " + e);
+                    } catch (OutOfMemoryError e) {
+                        failed.incrementAndGet();
+                        IJ.log(TITLE + ": " + file.getName() + ": out of memory.");
+                    }
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                }
+            } catch (InterruptedException e) {
+            } finally {
+                workerFinished();
+            }
+        }
+
+        private boolean process(File file) throws InterruptedException {
+            if (!waitUntilWritten(file)) {
+                IJ.log(TITLE + ": " + file.getName() + " is still being written, skipped.");
+                return false;
+            }
+
+            //the file may have changed since it was queued; a rescan must
+            //not queue it again
+            seen.put(file.getName(), file.lastModified());
+
+            ImagePlus imp = IJ.openImage(file.getPath());
+            if (imp == null) {
+                IJ.log(TITLE + ": " + file.getName() + " couldn't be opened.");
+                return false;
+            }
+
+            ImageProcessor ip = imp.getProcessor();
+            if (useFilter && (ip.getWidth() != data.getM() || ip.getHeight() != data.getN())) {
+                IJ.log(TITLE + ": " + file.getName() + " doesn't have the size of the filtered"
+                        + " hologram (" + data.getM() + "x" + data.getN() + ").");
+                return false;
+            }
+
+            if (ip.getWidth() != M || ip.getHeight() != N) {
+                prepare(ip.getWidth(), ip.getHeight());
+            }
+
+            float[][] field = ArrayUtils.complexAmplitude2(ip.getFloatArray(), null);
+
+            if (useFilter) {
+                fft.complexForward(field);
+                ArrayUtils.complexShift(field);
+                field = data.filter(field, fft);
+            }
+
+            if (!isPlane) {
+                field = ArrayUtils.complexMultiplication(field, illumination);
+            }
+
+            ImageStack[] stacks = new ImageStack[OUTPUTS.length];
+            for (int k = 0; k < OUTPUTS.length; k++) {
+                if (outputs[k]) {
+                    stacks[k] = new ImageStack(M, N);
+                }
+            }
+
+            for (int p = 0; p < zUm.length; p++) {
+                //the last plane takes the input field itself
+                float[][] plane = field;
+                if (p < zUm.length - 1) {
+                    plane = new float[M][];
+                    for (int i = 0; i < M; i++) {
+                        plane[i] = field[i].clone();
+                    }
+                }
+
+                PropagationPlanner.Plan plan = plans[p];
+                if (plan != null && plan.getMethod() == PropagationPlanner.ANGULAR_SPECTRUM
+                        && (plan.getPaddedM() != M || plan.getPaddedN() != N)) {
+                    float[][] padded = Data.pad(plane, plan.getPaddedM(), plan.getPaddedN());
+                    propagator(p).diffract(padded);
+                    Data.crop(padded, plane);
+                } else {
+                    propagator(p).diffract(plane);
+                }
+                addOutputs(stacks, plane, "z = " + df.format(umToUnits(zUm[p], zUnits)) + " "
+                        + zUnits);
+            }
+
+            String name = file.getName();
+            String base = name.substring(0, name.lastIndexOf('.'));
+
+            for (int k = 0; k < OUTPUTS.length; k++) {
+                if (stacks[k] == null) {
+                    continue;
+                }
+
+                ImagePlus out = new ImagePlus(OUTPUTS[k] + "; " + name, stacks[k]);
+                if (cal != null) {
+                    out.setCalibration(cal);
+                }
+
+                String path = new File(outputDir, base + "_" + OUTPUTS[k].toLowerCase(Locale.US)
+                        + ".tif").getPath();
+                FileSaver saver = new FileSaver(out);
+                if (!(zUm.length > 1 ? saver.saveAsTiffStack(path) : saver.saveAsTiff(path))) {
+                    IJ.log(TITLE + ": " + path + " couldn't be written.");
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Creates the objects that depend on the size of the holograms. The
+         * propagators are kept only if they fit comfortably in memory.
+         */
+        private void prepare(int M, int N) {
+            this.M = M;
+            this.N = N;
+
+            float dx = inputWUm / M;
+            float dy = inputHUm / N;
+
+            fft = useFilter ? new FloatFFT_2D(M, N) : null;
+            illumination = isPlane ? null
+                    : Data.sphericalWave(M, N, lambdaUm, dx, dy, curvRadius);
+
+            long bytes = 8L * M * N * zUm.length * workers;
+            propagators = bytes < Performance.getFreeMemory() / 2
+                    ? new FloatPropagator[zUm.length] : null;
+
+            //the automatic method is planned once per plane, and every
+            //hologram of this size follows the same plans
+            plans = new PropagationPlanner.Plan[zUm.length];
+            if (methodIdx == 3) {
+                for (int p = 0; p < zUm.length; p++) {
+                    plans[p] = PropagationPlanner.plan(M, N, lambdaUm, zUm[p], dx, dy);
+                }
+            }
+
+            //the pixel size is kept only if every plane uses angular spectrum
+            boolean calibrated = true;
+            for (int p = 0; p < zUm.length; p++) {
+                calibrated &= !usesFresnel(p);
+            }
+
+            cal = null;
+            if (calibrated) {
+                cal = new Calibration();
+                cal.setUnit(inputSizeUnits);
+                cal.pixelWidth = umToUnits(dx, inputSizeUnits);
+                cal.pixelHeight = umToUnits(dy, inputSizeUnits);
+            }
+        }
+
+        private boolean usesFresnel(int p) {
+            return methodIdx == 1 || methodIdx == 3
+                    && plans[p].getMethod() == PropagationPlanner.FRESNEL;
+        }
+
+        private FloatPropagator propagator(int p) {
+            if (propagators != null && propagators[p] != null) {
+                return propagators[p];
+            }
+
+            float dx = inputWUm / M;
+            float dy = inputHUm / N;
+
+            //the angular spectrum of the automatic method runs on its padded grid
+            int P = plans[p] != null ? plans[p].getPaddedM() : M;
+            int Q = plans[p] != null ? plans[p].getPaddedN() : N;
+
+            FloatPropagator propagator = usesFresnel(p)
+                    ? new FloatFresnelFourier(M, N, lambdaUm, zUm[p], dx, dy)
+                    : new FloatAngularSpectrum(P, Q, lambdaUm, zUm[p], dx, dy);
+
+            if (propagators != null) {
+                propagators[p] = propagator;
+            }
+            return propagator;
+        }
+
+        private void addOutputs(ImageStack[] stacks, float[][] field, String label) {
+            float[][] amplitude = null;
+            float max = Float.MIN_VALUE;
+
+            if (outputs[3] || outputs[4]) {
+                amplitude = ArrayUtils.modulus(field);
+                max = ArrayUtils.max(amplitude);
+            }
+
+            if (outputs[0]) {
+                ImageProcessor ip1 = new FloatProcessor(ArrayUtils.phase(field));
+                stacks[0].addSlice(label, phaseByteSelected ? ip1.convertToByteProcessor() : ip1);
+            }
+
+            if (outputs[1]) {
+                ImageProcessor ip2 = new FloatProcessor(amplitude != null ? amplitude
+                        : ArrayUtils.modulus(field));
+                if (amplitudeLogSelected) {
+                    ip2.log();
+                }
+                stacks[1].addSlice(label, amplitudeByteSelected ? ip2.convertToByteProcessor() : ip2);
+            }
+
+            if (outputs[2]) {
+                ImageProcessor ip3 = new FloatProcessor(ArrayUtils.modulusSq(field));
+                if (intensityLogSelected) {
+                    ip3.log();
+                }
+                stacks[2].addSlice(label, intensityByteSelected ? ip3.convertToByteProcessor() : ip3);
+            }
+
+            if (outputs[3]) {
+                float[][] real = ArrayUtils.real(field);
+                ArrayUtils.divide(real, max);
+                stacks[3].addSlice(label, new FloatProcessor(real));
+            }
+
+            if (outputs[4]) {
+                float[][] imaginary = ArrayUtils.imaginary(field);
+                ArrayUtils.divide(imaginary, max);
+                stacks[4].addSlice(label, new FloatProcessor(imaginary));
+            }
+        }
+    }
+
+    /**
+     * Helper method to convert from {units} to um.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float unitsToum(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E-3f;
+        } else if (units.equals("mm")) {
+            return val * 1E3f;
+        } else if (units.equals("cm")) {
+            return val * 1E4f;
+        } else if (units.equals("m")) {
+            return val * 1E6f;
+        }
+
+        return val;
+    }
+
+    /**
+     * Helper method to convert from um to {units}.
+     *
+     * @param val
+     * @param units
+     * @return
+     */
+    private float umToUnits(float val, String units) {
+        if (units.equals("nm")) {
+            return val * 1E3f;
+        } else if (units.equals("mm")) {
+            return val * 1E-3f;
+        } else if (units.equals("cm")) {
+            return val * 1E-4f;
+        } else if (units.equals("m")) {
+            return val * 1E-6f;
+        }
+
+        return val;
+    }
+}